@@ -38,6 +38,19 @@ int umfpack_di_solve(
     double *Control,
     double *Info);
 
+int umfpack_di_wsolve(
+    int sys,
+    jint *Ap,
+    jint *Ai,
+    jdouble *Ax,
+    jdouble *X,
+    jdouble *B,
+    void *Numeric,
+    double *Control,
+    double *Info,
+    jint *Wi,
+    double *W);
+
 extern void umfpack_di_free_symbolic(void **Symbolic);
 
 extern void umfpack_di_free_numeric(void **Numeric);
@@ -172,6 +185,43 @@ JNIEXPORT void JNICALL Java_org_openlca_julia_Julia_umfSolveFactorized(
     (*env)->ReleaseDoubleArrayElements(env, result, resultPtr, 0);
 }
 
+// umfSolveFactorizedMany
+// Solves A * X = B for multiple right-hand sides with a factorized matrix. B
+// and X are dense matrices in column-major order (size = n * columns). The
+// work arrays of UMFPACK are allocated once for all columns and not in each
+// solve call (5 * n doubles are required with iterative refinement).
+JNIEXPORT void JNICALL Java_org_openlca_julia_Julia_umfSolveFactorizedMany(
+    JNIEnv *env, jclass jclazz, jlong pointer,
+    jint n, jint columns, jdoubleArray b, jdoubleArray x)
+{
+    jdouble *bPtr = (*env)->GetDoubleArrayElements(env, b, NULL);
+    jdouble *xPtr = (*env)->GetDoubleArrayElements(env, x, NULL);
+
+    UmfFactorizedMatrix *fm = (void *)pointer;
+    jint *Wi = malloc((size_t)n * sizeof(jint));
+    double *W = malloc((size_t)5 * n * sizeof(double));
+
+    double *null = (double *)NULL;
+    for (jint j = 0; j < columns; j++)
+    {
+        umfpack_di_wsolve(
+            UMFPACK_A,
+            fm->columnPointers,
+            fm->rowIndices,
+            fm->values,
+            xPtr + (size_t)j * n,
+            bPtr + (size_t)j * n,
+            fm->Numeric,
+            null, null,
+            Wi, W);
+    }
+
+    free(Wi);
+    free(W);
+    (*env)->ReleaseDoubleArrayElements(env, b, bPtr, JNI_ABORT);
+    (*env)->ReleaseDoubleArrayElements(env, x, xPtr, 0);
+}
+
 // umfDispose
 JNIEXPORT void JNICALL Java_org_openlca_julia_Julia_umfDispose(
     JNIEnv *env, jclass jclazz, jlong pointer)
@@ -183,3 +233,149 @@ JNIEXPORT void JNICALL Java_org_openlca_julia_Julia_umfDispose(
     umfpack_di_free_numeric(&(fm->Numeric));
     free(fm);
 }
+
+typedef struct
+{
+    jint n;
+    void *Symbolic;
+} UmfSymbolicAnalysis;
+
+// umfSymbolic
+JNIEXPORT jlong JNICALL Java_org_openlca_julia_Julia_umfSymbolic(
+    JNIEnv *env, jclass jclazz,
+    jint n,
+    jintArray columnPointers,
+    jintArray rowIndices,
+    jdoubleArray values)
+{
+    jint *columnPointersPtr = (*env)->GetIntArrayElements(env, columnPointers, NULL);
+    jint *rowIndicesPtr = (*env)->GetIntArrayElements(env, rowIndices, NULL);
+    jdouble *valuesPtr = (*env)->GetDoubleArrayElements(env, values, NULL);
+
+    double *null = (double *)NULL;
+    UmfSymbolicAnalysis *sa = malloc(sizeof(UmfSymbolicAnalysis));
+    sa->n = n;
+    umfpack_di_symbolic(
+        n,
+        n,
+        columnPointersPtr,
+        rowIndicesPtr,
+        valuesPtr,
+        &(sa->Symbolic),
+        null, null);
+
+    // the symbolic analysis does not modify the arrays
+    (*env)->ReleaseIntArrayElements(env, columnPointers, columnPointersPtr, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, rowIndices, rowIndicesPtr, JNI_ABORT);
+    (*env)->ReleaseDoubleArrayElements(env, values, valuesPtr, JNI_ABORT);
+
+    return (jlong)sa;
+}
+
+// umfNumeric
+// Creates the numeric factorization of a matrix with the sparsity pattern of
+// the given symbolic analysis. The returned pointer can be used with the
+// functions umfSolveFactorized and umfDispose.
+JNIEXPORT jlong JNICALL Java_org_openlca_julia_Julia_umfNumeric(
+    JNIEnv *env, jclass jclazz,
+    jlong symbolic,
+    jintArray columnPointers,
+    jintArray rowIndices,
+    jdoubleArray values)
+{
+    UmfSymbolicAnalysis *sa = (void *)symbolic;
+    UmfFactorizedMatrix *fm = malloc(sizeof(UmfFactorizedMatrix));
+
+    jsize numElems = 0;
+    size_t numBytes = 0;
+
+    // copy column pointers
+    numElems = (*env)->GetArrayLength(env, columnPointers);
+    numBytes = numElems * sizeof(jint);
+    fm->columnPointers = malloc(numBytes);
+    (*env)->GetIntArrayRegion(env, columnPointers, 0, numElems, fm->columnPointers);
+
+    // copy row indices
+    numElems = (*env)->GetArrayLength(env, rowIndices);
+    numBytes = numElems * sizeof(jint);
+    fm->rowIndices = malloc(numBytes);
+    (*env)->GetIntArrayRegion(env, rowIndices, 0, numElems, fm->rowIndices);
+
+    // copy values
+    numElems = (*env)->GetArrayLength(env, values);
+    numBytes = numElems * sizeof(jdouble);
+    fm->values = malloc(numBytes);
+    (*env)->GetDoubleArrayRegion(env, values, 0, numElems, fm->values);
+
+    double *null = (double *)NULL;
+    void *Numeric;
+    umfpack_di_numeric(
+        fm->columnPointers,
+        fm->rowIndices,
+        fm->values,
+        sa->Symbolic,
+        &Numeric,
+        null, null);
+    fm->Numeric = Numeric;
+
+    return (jlong)fm;
+}
+
+// umfDisposeSymbolic
+JNIEXPORT void JNICALL Java_org_openlca_julia_Julia_umfDisposeSymbolic(
+    JNIEnv *env, jclass jclazz, jlong pointer)
+{
+    UmfSymbolicAnalysis *sa = (void *)pointer;
+    umfpack_di_free_symbolic(&(sa->Symbolic));
+    free(sa);
+}
+
+// cscMultiply
+// Calculates the product C := A * B of a sparse matrix A in compressed column
+// format and a dense matrix B (column-major, size = colsA * colsB). With
+// colsB = 1 this is a sparse matrix-vector product. A is not modified and no
+// UMFPACK function is called here; it is in this library because it is the
+// one that handles the sparse matrices.
+JNIEXPORT void JNICALL Java_org_openlca_julia_Julia_cscMultiply(
+    JNIEnv *env, jclass jclazz,
+    jint rowsA,
+    jint colsA,
+    jintArray columnPointers,
+    jintArray rowIndices,
+    jdoubleArray values,
+    jint colsB,
+    jdoubleArray b,
+    jdoubleArray c)
+{
+    jint *columnPointersPtr = (*env)->GetIntArrayElements(env, columnPointers, NULL);
+    jint *rowIndicesPtr = (*env)->GetIntArrayElements(env, rowIndices, NULL);
+    jdouble *valuesPtr = (*env)->GetDoubleArrayElements(env, values, NULL);
+    jdouble *bPtr = (*env)->GetDoubleArrayElements(env, b, NULL);
+    jdouble *cPtr = (*env)->GetDoubleArrayElements(env, c, NULL);
+
+    for (jint j = 0; j < colsB; j++)
+    {
+        jdouble *bj = bPtr + (size_t)j * colsA;
+        jdouble *cj = cPtr + (size_t)j * rowsA;
+        for (jint i = 0; i < rowsA; i++)
+        {
+            cj[i] = 0;
+        }
+        for (jint col = 0; col < colsA; col++)
+        {
+            jdouble x = bj[col];
+            if (x == 0)
+                continue;
+            for (jint k = columnPointersPtr[col]; k < columnPointersPtr[col + 1]; k++)
+            {
+                cj[rowIndicesPtr[k]] += valuesPtr[k] * x;
+            }
+        }
+    }
+
+    (*env)->ReleaseIntArrayElements(env, columnPointers, columnPointersPtr, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, rowIndices, rowIndicesPtr, JNI_ABORT);
+    (*env)->ReleaseDoubleArrayElements(env, values, valuesPtr, JNI_ABORT);
+    (*env)->ReleaseDoubleArrayElements(env, b, bPtr, JNI_ABORT);
+    (*env)->ReleaseDoubleArrayElements(env, c, cPtr, 0);
+}
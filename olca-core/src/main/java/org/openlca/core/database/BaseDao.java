@@ -225,13 +225,13 @@ public class BaseDao<T extends AbstractEntity> implements IDao<T> {
 
 	private <X> List<Set<X>> split(Set<X> all) {
 		List<Set<X>> split = new ArrayList<>();
-		List<X> rest = new ArrayList<>(all);
-		while (!rest.isEmpty()) {
-			int toPos = rest.size() > MAX_LIST_SIZE ? MAX_LIST_SIZE : rest
-					.size();
-			List<X> nextChunk = rest.subList(0, toPos);
-			split.add(new HashSet<X>(nextChunk));
-			nextChunk.clear(); // clears also the elements in rest
+		Set<X> next = null;
+		for (X x : all) {
+			if (next == null || next.size() == MAX_LIST_SIZE) {
+				next = new HashSet<>();
+				split.add(next);
+			}
+			next.add(x);
 		}
 		return split;
 	}
@@ -355,10 +355,7 @@ public class BaseDao<T extends AbstractEntity> implements IDao<T> {
 			statement.setObject(i + 1, parameters.get(i));
 		ResultSet resultSet = statement.executeQuery();
 		while (resultSet.next()) {
-			Object[] result = new Object[fields.length];
-			for (int i = 0; i < fields.length; i++)
-				result[i] = getValue(resultSet, fields[i]);
-			results.add(result);
+			results.add(rowOf(resultSet, fields));
 			if (single)
 				break;
 		}
@@ -367,6 +364,17 @@ public class BaseDao<T extends AbstractEntity> implements IDao<T> {
 		return results;
 	}
 
+	/**
+	 * Reads the values of the given fields from the current row of the given
+	 * result set.
+	 */
+	Object[] rowOf(ResultSet resultSet, String[] fields) throws SQLException {
+		Object[] row = new Object[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			row[i] = getValue(resultSet, fields[i]);
+		return row;
+	}
+
 	private Object getValue(ResultSet resultSet, String field)
 			throws SQLException {
 		Object value = resultSet.getObject(field);
@@ -8,7 +8,8 @@ import java.util.List;
  * Provides the functionality for loading of data for a given set of IDs with a
  * minimal amount of queries but with block sizes of ID sets that are not
  * greater than the allowed maximum list size for queries (see
- * {@link BaseDao#MAX_LIST_SIZE}).
+ * {@link BaseDao#MAX_LIST_SIZE}). See also {@link ChunkFetch} for fetching
+ * rows for large arrays of IDs concurrently.
  */
 public class BlockFetch<T> {
 
@@ -31,15 +32,10 @@ public class BlockFetch<T> {
 	public List<T> doFetch(List<Long> ids) {
 		if (ids == null || ids.isEmpty())
 			return Collections.emptyList();
-		List<Long> restToLoad = new ArrayList<>(ids);
 		List<T> results = new ArrayList<>();
-		while (!restToLoad.isEmpty()) {
-			int toPos = restToLoad.size() > BaseDao.MAX_LIST_SIZE ? BaseDao.MAX_LIST_SIZE
-					: restToLoad.size();
-			List<Long> nextChunk = restToLoad.subList(0, toPos);
-			List<T> chunkResults = func.fetchChunk(nextChunk);
-			results.addAll(chunkResults);
-			nextChunk.clear(); // clears also the elements in rest
+		for (int start = 0; start < ids.size(); start += BaseDao.MAX_LIST_SIZE) {
+			int end = Math.min(start + BaseDao.MAX_LIST_SIZE, ids.size());
+			results.addAll(func.fetchChunk(ids.subList(start, end)));
 		}
 		return results;
 	}
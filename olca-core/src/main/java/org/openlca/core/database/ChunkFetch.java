@@ -0,0 +1,248 @@
+package org.openlca.core.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Runs a query for a possibly large array of IDs in chunks. The query must end
+ * with an `in` clause without its list, e.g.:
+ * <p>
+ * `select id, name from tbl_flows where id in`
+ * <p>
+ * A list of parameter placeholders is appended to this query for the chunks.
+ * The last chunk is padded with its last ID to one of a few fixed sizes (the
+ * chunk size, half of it, and so on) so that the prepared statements can be
+ * reused. The chunks are executed concurrently where each worker takes its own
+ * connection from the (pooled) connections of the database. The workers run
+ * in the calling thread and in a thread pool that is created for the query,
+ * so that the blocking JDBC calls do not occupy the threads of the common
+ * fork-join pool. The rows are
+ * mapped on the worker threads and passed to the consumer chunk by chunk; the
+ * consumer is never called concurrently. Note that the IDs should be unique
+ * as duplicate IDs in different chunks result in duplicate rows.
+ */
+public final class ChunkFetch {
+
+	private final IDatabase db;
+	private int chunkSize = BaseDao.MAX_LIST_SIZE;
+	private int threads = Math.min(4,
+			Runtime.getRuntime().availableProcessors());
+
+	private ChunkFetch(IDatabase db) {
+		this.db = db;
+	}
+
+	public static ChunkFetch on(IDatabase db) {
+		return new ChunkFetch(db);
+	}
+
+	/**
+	 * Sets the maximum number of IDs in a chunk. The default is the maximum
+	 * list size of the DAOs.
+	 */
+	public ChunkFetch withChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of chunks that are executed at the same time,
+	 * and thus, the number of connections that are used by the fetch.
+	 */
+	public ChunkFetch withThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Runs the query for the given IDs and passes the mapped rows to the given
+	 * consumer.
+	 */
+	public <T> void query(String query, long[] ids, RowMapper<T> mapper,
+			Consumer<T> consumer) {
+		if (ids == null || ids.length == 0)
+			return;
+		var task = new Task<>(query, ids, mapper, consumer);
+		int workers = Math.min(threads, task.chunks);
+		if (workers == 1) {
+			task.run();
+			return;
+		}
+
+		var pool = Executors.newFixedThreadPool(workers - 1, runnable -> {
+			var thread = new Thread(runnable, "olca-chunk-fetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			var futures = new ArrayList<Future<?>>(workers - 1);
+			for (int i = 1; i < workers; i++) {
+				futures.add(pool.submit(task::run));
+			}
+			task.run();
+			for (var future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			task.failed = true;
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("chunk query interrupted: " + query, e);
+		} catch (ExecutionException e) {
+			var cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException("chunk query failed: " + query, cause);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs the query for the given IDs and returns the mapped rows in a list.
+	 */
+	public <T> List<T> queryAll(String query, long[] ids,
+			RowMapper<T> mapper) {
+		var list = new ArrayList<T>();
+		query(query, ids, mapper, list::add);
+		return list;
+	}
+
+	/**
+	 * Returns the size of the statement for a chunk with the given number of
+	 * IDs; this is the smallest size of the sequence `chunkSize`,
+	 * `chunkSize / 2`, ..., `1` that is not smaller than `n`.
+	 */
+	static int paddedSize(int n, int chunkSize) {
+		int size = chunkSize;
+		while (size > 1 && (size / 2) >= n) {
+			size /= 2;
+		}
+		return size;
+	}
+
+	/**
+	 * Maps the current row of a result set to an object. This function is
+	 * called from different threads.
+	 */
+	@FunctionalInterface
+	public interface RowMapper<T> {
+		T map(ResultSet r) throws SQLException;
+	}
+
+	private class Task<T> {
+
+		final String query;
+		final long[] ids;
+		final RowMapper<T> mapper;
+		final Consumer<T> consumer;
+		final int chunks;
+		final AtomicInteger next = new AtomicInteger();
+		volatile boolean failed;
+
+		Task(String query, long[] ids, RowMapper<T> mapper,
+				Consumer<T> consumer) {
+			this.query = query;
+			this.ids = ids;
+			this.mapper = mapper;
+			this.consumer = consumer;
+			this.chunks = (ids.length + chunkSize - 1) / chunkSize;
+		}
+
+		/** Takes the next chunks until all chunks are done. */
+		void run() {
+			try (var con = db.createConnection();
+					var statements = new Statements(con)) {
+				int chunk;
+				while (!failed
+						&& (chunk = next.getAndIncrement()) < chunks) {
+					int start = chunk * chunkSize;
+					int end = Math.min(start + chunkSize, ids.length);
+					int size = paddedSize(end - start, chunkSize);
+					var stmt = statements.get(size);
+					for (int i = 0; i < size; i++) {
+						int pos = Math.min(start + i, end - 1);
+						stmt.setLong(i + 1, ids[pos]);
+					}
+					var rows = new ArrayList<T>();
+					try (var r = stmt.executeQuery()) {
+						while (r.next()) {
+							rows.add(mapper.map(r));
+						}
+					}
+					synchronized (this) {
+						for (T row : rows) {
+							consumer.accept(row);
+						}
+					}
+				}
+			} catch (SQLException e) {
+				failed = true;
+				throw new RuntimeException("chunk query failed: " + query, e);
+			} catch (RuntimeException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		/**
+		 * The prepared statements of a worker by their number of parameters.
+		 * They are reused for the chunks of the worker and are all closed
+		 * when the worker is done or fails.
+		 */
+		private class Statements implements AutoCloseable {
+
+			final Connection con;
+			final TIntObjectHashMap<PreparedStatement> map =
+					new TIntObjectHashMap<>();
+
+			Statements(Connection con) {
+				this.con = con;
+			}
+
+			PreparedStatement get(int size) throws SQLException {
+				var stmt = map.get(size);
+				if (stmt != null)
+					return stmt;
+				var sql = new StringBuilder(query.length() + 2 * size + 3);
+				sql.append(query).append(" (");
+				for (int i = 0; i < size; i++) {
+					if (i > 0) {
+						sql.append(',');
+					}
+					sql.append('?');
+				}
+				sql.append(')');
+				stmt = con.prepareStatement(sql.toString());
+				map.put(size, stmt);
+				return stmt;
+			}
+
+			@Override
+			public void close() throws SQLException {
+				SQLException err = null;
+				for (var stmt : map.valueCollection()) {
+					try {
+						stmt.close();
+					} catch (SQLException e) {
+						if (err == null) {
+							err = e;
+						}
+					}
+				}
+				if (err != null)
+					throw err;
+			}
+		}
+	}
+}
@@ -221,10 +221,12 @@ public class EntityCache {
 				log.error("unknown descriptor class {}, returning null", clazz);
 				return;
 			}
-			List<? extends Descriptor> descriptors = dao
-					.getDescriptors(new HashSet<>(ids));
-			for (Descriptor descriptor : descriptors)
-				result.put(Key.get(clazz, descriptor.id), descriptor);
+			long[] unique = ids.stream()
+					.mapToLong(Long::longValue)
+					.distinct()
+					.toArray();
+			dao.eachDescriptor(unique,
+					d -> result.put(Key.get(clazz, d.id), d));
 		}
 
 		@Override
@@ -11,6 +11,7 @@ import java.util.Set;
 
 import javax.persistence.EntityManagerFactory;
 
+import org.eclipse.persistence.jpa.JpaHelper;
 import org.openlca.core.model.AbstractEntity;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.RootEntity;
@@ -250,5 +251,14 @@ public interface IDatabase extends Closeable, INotifiable {
 		}
 		NativeSql.on(this).runUpdate("UPDATE SEQUENCE SET SEQ_COUNT = 0");
 		this.clearCache();
+
+		// drop the IDs that the entity manager preallocated from the old
+		// sequence; otherwise it would generate duplicate IDs later
+		var emf = getEntityFactory();
+		if (emf != null) {
+			JpaHelper.getServerSession(emf)
+					.getSequencingControl()
+					.initializePreallocated();
+		}
 	}
 }
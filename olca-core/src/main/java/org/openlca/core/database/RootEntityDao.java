@@ -9,6 +9,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.persistence.Table;
 
@@ -70,11 +71,37 @@ public class RootEntityDao<T extends RootEntity, V extends Descriptor> extends B
 	public List<V> getDescriptors(Set<Long> ids) {
 		if (ids == null || ids.isEmpty())
 			return Collections.emptyList();
-		if (ids.size() > MAX_LIST_SIZE)
-			return executeChunked(ids, this::getDescriptors);
-		String sql = getDescriptorQuery() + " where id in (" + Strings.join(ids, ',') + ")";
-		List<Object[]> results = selectAll(sql, getDescriptorFields(), Collections.emptyList());
-		return createDescriptors(results);
+		long[] array = new long[ids.size()];
+		int i = 0;
+		for (Long id : ids) {
+			array[i++] = id;
+		}
+		List<V> descriptors = new ArrayList<>(array.length);
+		eachDescriptor(array, descriptors::add);
+		return descriptors;
+	}
+
+	/**
+	 * Loads the descriptors of the given IDs and passes them to the given
+	 * consumer. The IDs should be unique. The descriptors are loaded in chunks
+	 * which are executed concurrently (see {@link ChunkFetch}) but the consumer
+	 * is not called concurrently.
+	 */
+	public void eachDescriptor(long[] ids, Consumer<V> fn) {
+		if (ids == null || ids.length == 0 || fn == null)
+			return;
+		String[] fields = getDescriptorFields();
+		try {
+			ChunkFetch.on(getDatabase()).query(
+					getDescriptorQuery() + " where id in", ids,
+					r -> createDescriptor(rowOf(r, fields)),
+					d -> {
+						if (d != null)
+							fn.accept(d);
+					});
+		} catch (Exception e) {
+			DatabaseException.logAndThrow(log, "failed to load descriptors", e);
+		}
 	}
 
 	public V getDescriptorForRefId(String refId) {
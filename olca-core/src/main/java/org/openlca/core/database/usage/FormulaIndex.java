@@ -0,0 +1,656 @@
+package org.openlca.core.database.usage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.IDatabaseListener;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.ParameterScope;
+import org.openlca.core.model.descriptors.Descriptor;
+import org.openlca.formula.Formulas;
+import org.openlca.util.Strings;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * An inverted index from parameter names to the places in a database where
+ * these names are used: the definitions of parameters, the formulas of
+ * parameters, exchanges, allocation factors, and characterization factors,
+ * and the parameter redefinitions of product systems and projects. The
+ * variables of the formulas are extracted with the lexer of the formula
+ * module (see `Formulas.getVariables`). Names are indexed in lower case.
+ * <p>
+ * The index is optional and needs to be enabled for a database via
+ * `FormulaIndex.enable(db)`. It is then built on the first access and kept
+ * in memory for the lifetime of the database. Changes of processes, impact
+ * categories, parameters, product systems, and projects via the data access
+ * objects are tracked via the database listeners and the index entries of
+ * these models are updated on the next access. Modifications via native SQL
+ * are not tracked; call `FormulaIndex.invalidate(db)` after such
+ * modifications.
+ */
+public final class FormulaIndex {
+
+	private static final Map<IDatabase, Slot> slots = new WeakHashMap<>();
+
+	public enum Type {
+		/** The amount formula of an exchange. */
+		EXCHANGE,
+		/** The cost formula of an exchange. */
+		EXCHANGE_COSTS,
+		ALLOCATION_FACTOR,
+		IMPACT_FACTOR,
+		/** The definition or formula of a global or local parameter. */
+		PARAMETER,
+		/** A redefinition in a parameter set of a product system. */
+		SYSTEM_REDEF,
+		/** A redefinition in a project variant. */
+		PROJECT_REDEF,
+	}
+
+	/**
+	 * An indexed usage of one or more parameter names. Which fields are set
+	 * depends on the type of the entry.
+	 */
+	public static final class Entry {
+
+		public final Type type;
+
+		/**
+		 * The ID of the exchange, allocation factor, characterization factor,
+		 * parameter, or parameter redefinition.
+		 */
+		public final long id;
+
+		/**
+		 * The ID of the process, impact category, product system, or project
+		 * of the entry; this is 0 for global parameters.
+		 */
+		public final long ownerId;
+
+		/** The flow of an exchange or characterization factor. */
+		public long flowId;
+
+		/** The parameter set or project variant of a redefinition. */
+		public long groupId;
+		public String groupName;
+
+		/** The name of a parameter or redefined parameter. */
+		public String name;
+		public String formula;
+
+		/** The context of a redefinition; `null` for global parameters. */
+		public Long contextId;
+
+		public ParameterScope scope;
+		public boolean isInputParameter;
+
+		Entry(Type type, long id, long ownerId) {
+			this.type = type;
+			this.id = id;
+			this.ownerId = ownerId;
+		}
+
+		/**
+		 * Returns true if this is the definition of a parameter with the given
+		 * name.
+		 */
+		public boolean isDefinitionOf(String name) {
+			return type == Type.PARAMETER
+					&& this.name != null
+					&& name != null
+					&& this.name.trim().equalsIgnoreCase(name.trim());
+		}
+
+		/**
+		 * Returns true if this entry is a formula of a matrix value (an
+		 * exchange amount or costs, an allocation factor, or a
+		 * characterization factor).
+		 */
+		public boolean isMatrixFormula() {
+			switch (type) {
+				case EXCHANGE:
+				case EXCHANGE_COSTS:
+				case ALLOCATION_FACTOR:
+				case IMPACT_FACTOR:
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	/** lower case name -> entries that use this name */
+	private final HashMap<String, Set<Entry>> byName = new HashMap<>();
+
+	/**
+	 * Contains the entries of the indexed models: ID of the process, impact
+	 * category, product system, project, or global parameter -> entries.
+	 */
+	private final TLongObjectHashMap<List<Entry>> byModel = new TLongObjectHashMap<>();
+
+	/** The owners of the local parameters: parameter ID -> owner ID. */
+	private final TLongLongHashMap localParams = new TLongLongHashMap();
+
+	private FormulaIndex() {
+	}
+
+	/**
+	 * Enables the formula index for the given database. The index is built on
+	 * the first access.
+	 */
+	public static void enable(IDatabase db) {
+		if (db == null)
+			return;
+		synchronized (slots) {
+			if (slots.containsKey(db))
+				return;
+			var slot = new Slot();
+			db.addListener(slot.listener);
+			slots.put(db, slot);
+		}
+	}
+
+	/**
+	 * Disables the formula index for the given database and removes it from
+	 * memory.
+	 */
+	public static void disable(IDatabase db) {
+		if (db == null)
+			return;
+		Slot slot;
+		synchronized (slots) {
+			slot = slots.remove(db);
+		}
+		if (slot != null) {
+			db.removeListener(slot.listener);
+		}
+	}
+
+	public static boolean isEnabled(IDatabase db) {
+		if (db == null)
+			return false;
+		synchronized (slots) {
+			return slots.containsKey(db);
+		}
+	}
+
+	/**
+	 * Returns the current index of the given database or `null` if the index
+	 * is not enabled for that database. The index is built or updated if
+	 * necessary.
+	 */
+	public static FormulaIndex of(IDatabase db) {
+		if (db == null)
+			return null;
+		Slot slot;
+		synchronized (slots) {
+			slot = slots.get(db);
+		}
+		return slot != null
+				? slot.get(db)
+				: null;
+	}
+
+	/**
+	 * Invalidates the index of the given database if it is enabled. The index
+	 * is rebuilt on the next access.
+	 */
+	public static void invalidate(IDatabase db) {
+		if (db == null)
+			return;
+		Slot slot;
+		synchronized (slots) {
+			slot = slots.get(db);
+		}
+		if (slot != null) {
+			slot.invalidate();
+		}
+	}
+
+	/**
+	 * Builds a new index of the given database. This index is not updated
+	 * when the database changes.
+	 */
+	public static FormulaIndex build(IDatabase db) {
+		var index = new FormulaIndex();
+		new Scan(db, index).all();
+		return index;
+	}
+
+	/**
+	 * Returns the entries that use the given parameter name: the definitions
+	 * of parameters with that name, the formulas that contain that name as
+	 * variable, and the redefinitions of parameters with that name.
+	 */
+	public synchronized List<Entry> entriesOf(String name) {
+		var entries = byName.get(keyOf(name));
+		return entries != null
+				? new ArrayList<>(entries)
+				: Collections.emptyList();
+	}
+
+	/**
+	 * Returns the entries of the given type that use the given parameter name.
+	 */
+	public synchronized List<Entry> entriesOf(String name, Type type) {
+		var entries = byName.get(keyOf(name));
+		if (entries == null)
+			return Collections.emptyList();
+		var list = new ArrayList<Entry>();
+		for (var e : entries) {
+			if (e.type == type) {
+				list.add(e);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the given name and the names of all parameters which formulas
+	 * depend directly or indirectly on the given name in lower case. Note that
+	 * the scopes of the parameters are not considered here, so that the
+	 * returned set can contain more names than actually depend on a specific
+	 * parameter with that name.
+	 */
+	public synchronized Set<String> dependentsOf(String name) {
+		var names = new HashSet<String>();
+		var first = keyOf(name);
+		if (first.isEmpty())
+			return names;
+		var queue = new ArrayDeque<String>();
+		names.add(first);
+		queue.add(first);
+		while (!queue.isEmpty()) {
+			var next = queue.poll();
+			var entries = byName.get(next);
+			if (entries == null)
+				continue;
+			for (var e : entries) {
+				if (e.type != Type.PARAMETER
+						|| e.isInputParameter
+						|| e.isDefinitionOf(next))
+					continue;
+				var dep = keyOf(e.name);
+				if (!dep.isEmpty() && names.add(dep)) {
+					queue.add(dep);
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the formulas of matrix values (exchange amounts and costs,
+	 * allocation factors, and characterization factors) that depend directly
+	 * or indirectly on the given parameter name (see `dependentsOf`).
+	 */
+	public synchronized List<Entry> matrixFormulasOf(String name) {
+		var list = new ArrayList<Entry>();
+		var seen = new HashSet<Entry>();
+		for (var dep : dependentsOf(name)) {
+			var entries = byName.get(dep);
+			if (entries == null)
+				continue;
+			for (var e : entries) {
+				if (e.isMatrixFormula() && seen.add(e)) {
+					list.add(e);
+				}
+			}
+		}
+		return list;
+	}
+
+	/** Returns the number of indexed names. */
+	public synchronized int size() {
+		return byName.size();
+	}
+
+	private static String keyOf(String name) {
+		return name == null
+				? ""
+				: name.trim().toLowerCase();
+	}
+
+	private void put(long model, Entry entry) {
+		var list = byModel.get(model);
+		if (list == null) {
+			list = new ArrayList<>();
+			byModel.put(model, list);
+		}
+		list.add(entry);
+		for (var key : keysOf(entry)) {
+			byName.computeIfAbsent(key, k -> new HashSet<>()).add(entry);
+		}
+	}
+
+	private void remove(long model) {
+		var entries = byModel.remove(model);
+		if (entries == null)
+			return;
+		for (var e : entries) {
+			if (e.type == Type.PARAMETER && e.ownerId != 0) {
+				localParams.remove(e.id);
+			}
+			for (var key : keysOf(e)) {
+				var set = byName.get(key);
+				if (set == null)
+					continue;
+				set.remove(e);
+				if (set.isEmpty()) {
+					byName.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the names under which the given entry is indexed.
+	 */
+	private static Set<String> keysOf(Entry e) {
+		var keys = new HashSet<String>();
+		if (e.name != null
+				&& (e.type == Type.PARAMETER
+						|| e.type == Type.SYSTEM_REDEF
+						|| e.type == Type.PROJECT_REDEF)) {
+			keys.add(keyOf(e.name));
+		}
+		if (Strings.notEmpty(e.formula)) {
+			for (var v : Formulas.getVariables(e.formula)) {
+				var key = keyOf(v);
+				if (!key.isEmpty()) {
+					keys.add(key);
+				}
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Reads the index entries from the database, either for all models or for
+	 * single models.
+	 */
+	private static class Scan {
+
+		private final IDatabase db;
+		private final FormulaIndex index;
+
+		Scan(IDatabase db, FormulaIndex index) {
+			this.db = db;
+			this.index = index;
+		}
+
+		void all() {
+			exchanges(null);
+			allocationFactors(null);
+			impactFactors(null);
+			parameters(null);
+			systemRedefs(null);
+			projectRedefs(null);
+		}
+
+		/**
+		 * Updates the entries of the given changed models: model ID -> type.
+		 * When a local parameter was changed directly, the entries of its
+		 * owner are updated.
+		 */
+		void update(Map<Long, ModelType> changes) {
+			var models = new HashMap<Long, ModelType>();
+			for (var change : changes.entrySet()) {
+				long id = change.getKey();
+				var type = change.getValue();
+				if (type != ModelType.PARAMETER) {
+					models.put(id, type);
+					continue;
+				}
+				long owner = ownerOf(id);
+				if (owner > 0) {
+					models.put(owner, ModelType.PROCESS);
+				} else {
+					models.putIfAbsent(id, ModelType.PARAMETER);
+				}
+			}
+
+			for (var model : models.entrySet()) {
+				long id = model.getKey();
+				index.remove(id);
+				switch (model.getValue()) {
+					case PROCESS:
+					case IMPACT_CATEGORY:
+						processOrImpact(id);
+						break;
+					case PARAMETER:
+						parameters("id = " + id);
+						break;
+					case PRODUCT_SYSTEM:
+						systemRedefs("s.f_product_system = " + id);
+						break;
+					case PROJECT:
+						projectRedefs("v.f_project = " + id);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+
+		/**
+		 * Returns the owner of the parameter with the given ID or 0 if it is a
+		 * global parameter (or if it does not exist).
+		 */
+		private long ownerOf(long paramId) {
+			if (index.localParams.containsKey(paramId))
+				return index.localParams.get(paramId);
+			long[] owner = {0};
+			var sql = "SELECT f_owner FROM tbl_parameters WHERE id = " + paramId;
+			NativeSql.on(db).query(sql, r -> {
+				owner[0] = r.getLong(1);
+				return false;
+			});
+			return owner[0];
+		}
+
+		private void processOrImpact(long id) {
+			exchanges("f_owner = " + id);
+			allocationFactors("f_process = " + id);
+			impactFactors("f_impact_category = " + id);
+			parameters("f_owner = " + id);
+		}
+
+		private void exchanges(String filter) {
+			var sql = "SELECT id, f_owner, f_flow, resulting_amount_formula, "
+					+ "cost_formula FROM tbl_exchanges WHERE "
+					+ "(resulting_amount_formula IS NOT NULL "
+					+ "OR cost_formula IS NOT NULL)"
+					+ and(filter);
+			NativeSql.on(db).query(sql, r -> {
+				long id = r.getLong(1);
+				long owner = r.getLong(2);
+				long flow = r.getLong(3);
+				var formula = r.getString(4);
+				if (Strings.notEmpty(formula)) {
+					var e = new Entry(Type.EXCHANGE, id, owner);
+					e.flowId = flow;
+					e.formula = formula;
+					index.put(owner, e);
+				}
+				var costFormula = r.getString(5);
+				if (Strings.notEmpty(costFormula)) {
+					var e = new Entry(Type.EXCHANGE_COSTS, id, owner);
+					e.flowId = flow;
+					e.formula = costFormula;
+					index.put(owner, e);
+				}
+				return true;
+			});
+		}
+
+		private void allocationFactors(String filter) {
+			var sql = "SELECT id, f_process, formula FROM tbl_allocation_factors"
+					+ " WHERE formula IS NOT NULL" + and(filter);
+			NativeSql.on(db).query(sql, r -> {
+				long owner = r.getLong(2);
+				var e = new Entry(Type.ALLOCATION_FACTOR, r.getLong(1), owner);
+				e.formula = r.getString(3);
+				index.put(owner, e);
+				return true;
+			});
+		}
+
+		private void impactFactors(String filter) {
+			var sql = "SELECT id, f_impact_category, f_flow, formula FROM "
+					+ "tbl_impact_factors WHERE formula IS NOT NULL" + and(filter);
+			NativeSql.on(db).query(sql, r -> {
+				long owner = r.getLong(2);
+				var e = new Entry(Type.IMPACT_FACTOR, r.getLong(1), owner);
+				e.flowId = r.getLong(3);
+				e.formula = r.getString(4);
+				index.put(owner, e);
+				return true;
+			});
+		}
+
+		private void parameters(String filter) {
+			var sql = "SELECT id, f_owner, name, is_input_param, scope, formula "
+					+ "FROM tbl_parameters"
+					+ (filter != null ? " WHERE " + filter : "");
+			NativeSql.on(db).query(sql, r -> {
+				long id = r.getLong(1);
+				long owner = r.getLong(2);
+				if (r.wasNull() || owner < 0) {
+					owner = 0;
+				}
+				var e = new Entry(Type.PARAMETER, id, owner);
+				e.name = r.getString(3);
+				e.isInputParameter = r.getBoolean(4);
+				var scope = r.getString(5);
+				e.scope = scope != null
+						? ParameterScope.valueOf(scope)
+						: ParameterScope.GLOBAL;
+				if (!e.isInputParameter) {
+					e.formula = r.getString(6);
+				}
+				if (owner != 0) {
+					index.localParams.put(id, owner);
+				}
+				index.put(owner != 0 ? owner : id, e);
+				return true;
+			});
+		}
+
+		private void systemRedefs(String filter) {
+			var sql = "SELECT r.id, r.name, r.f_context, s.id, s.name, "
+					+ "s.f_product_system FROM tbl_parameter_redefs r "
+					+ "INNER JOIN tbl_parameter_redef_sets s ON r.f_owner = s.id"
+					+ (filter != null ? " WHERE " + filter : "");
+			redefs(sql, Type.SYSTEM_REDEF);
+		}
+
+		private void projectRedefs(String filter) {
+			var sql = "SELECT r.id, r.name, r.f_context, v.id, v.name, "
+					+ "v.f_project FROM tbl_parameter_redefs r "
+					+ "INNER JOIN tbl_project_variants v ON r.f_owner = v.id"
+					+ (filter != null ? " WHERE " + filter : "");
+			redefs(sql, Type.PROJECT_REDEF);
+		}
+
+		private void redefs(String sql, Type type) {
+			NativeSql.on(db).query(sql, r -> {
+				long owner = r.getLong(6);
+				var e = new Entry(type, r.getLong(1), owner);
+				e.name = r.getString(2);
+				long context = r.getLong(3);
+				e.contextId = r.wasNull() || context == 0
+						? null
+						: context;
+				e.groupId = r.getLong(4);
+				e.groupName = r.getString(5);
+				index.put(owner, e);
+				return true;
+			});
+		}
+
+		private static String and(String filter) {
+			return filter != null
+					? " AND " + filter
+					: "";
+		}
+	}
+
+	/**
+	 * Holds the index of a database. It does not reference the database so
+	 * that the registry does not prevent closed databases from being garbage
+	 * collected.
+	 */
+	private static class Slot {
+
+		final IDatabaseListener listener;
+		final Map<Long, ModelType> changes = new HashMap<>();
+		FormulaIndex current;
+
+		Slot() {
+			this.listener = new IDatabaseListener() {
+				@Override
+				public void modelInserted(Descriptor d) {
+					onChange(d);
+				}
+
+				@Override
+				public void modelUpdated(Descriptor d) {
+					onChange(d);
+				}
+
+				@Override
+				public void modelDeleted(Descriptor d) {
+					onChange(d);
+				}
+			};
+		}
+
+		private synchronized void onChange(Descriptor d) {
+			if (d == null || d.type == null || current == null)
+				return;
+			switch (d.type) {
+				case PROCESS:
+				case IMPACT_CATEGORY:
+				case PARAMETER:
+				case PRODUCT_SYSTEM:
+				case PROJECT:
+					changes.put(d.id, d.type);
+					break;
+				default:
+					break;
+			}
+		}
+
+		synchronized void invalidate() {
+			current = null;
+			changes.clear();
+		}
+
+		synchronized FormulaIndex get(IDatabase db) {
+			if (current == null) {
+				current = build(db);
+				changes.clear();
+				return current;
+			}
+			if (changes.isEmpty())
+				return current;
+			synchronized (current) {
+				new Scan(db, current).update(changes);
+			}
+			changes.clear();
+			return current;
+		}
+	}
+}
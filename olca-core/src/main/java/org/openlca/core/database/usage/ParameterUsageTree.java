@@ -3,6 +3,7 @@ package org.openlca.core.database.usage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
@@ -13,6 +14,7 @@ import org.openlca.core.database.NativeSql;
 import org.openlca.core.database.ParameterDao;
 import org.openlca.core.database.ProductSystemDao;
 import org.openlca.core.database.ProjectDao;
+import org.openlca.core.database.usage.FormulaIndex.Type;
 import org.openlca.core.model.CategorizedEntity;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.Parameter;
@@ -22,6 +24,8 @@ import org.openlca.core.model.descriptors.Descriptor;
 import org.openlca.core.model.descriptors.FlowDescriptor;
 import org.openlca.core.model.descriptors.ImpactDescriptor;
 import org.openlca.core.model.descriptors.ProcessDescriptor;
+import org.openlca.core.model.descriptors.ProductSystemDescriptor;
+import org.openlca.core.model.descriptors.ProjectDescriptor;
 import org.openlca.util.Formula;
 import org.openlca.util.Strings;
 
@@ -29,7 +33,9 @@ import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.hash.TLongHashSet;
 
 /**
- * Calculates the usage tree for a parameter.
+ * Calculates the usage tree for a parameter. When the `FormulaIndex` is
+ * enabled for the database, the usages are taken from that index instead of
+ * scanning the tables and loading all product systems and projects.
  */
 public class ParameterUsageTree {
 
@@ -184,6 +190,9 @@ public class ParameterUsageTree {
 		private final IDatabase db;
 		private final EntityCache cache;
 
+		/** The formula index of the database if it is enabled. */
+		private final FormulaIndex index;
+
 		// optional parameter context
 		private Parameter param;
 		private CategorizedDescriptor owner;
@@ -204,6 +213,7 @@ public class ParameterUsageTree {
 			this.param = null;
 			this.owner = null;
 			this.cache = EntityCache.create(db);
+			this.index = FormulaIndex.of(db);
 		}
 
 		Search(Parameter param, CategorizedDescriptor owner, IDatabase db) {
@@ -211,7 +221,13 @@ public class ParameterUsageTree {
 			this.param = param;
 			this.owner = owner;
 
-			if (owner == null) {
+			if (owner == null && index != null) {
+				for (var e : index.entriesOf(name, Type.PARAMETER)) {
+					if (e.ownerId > 0 && matches(e.name)) {
+						hasLocalDef.add(e.ownerId);
+					}
+				}
+			} else if (owner == null) {
 				var sql = "select f_owner, name from tbl_parameters";
 				NativeSql.on(db).query(sql, r -> {
 					long ownerID = r.getLong(1);
@@ -248,46 +264,64 @@ public class ParameterUsageTree {
 		}
 
 		private void exchanges() {
+			if (index != null) {
+				for (var e : index.entriesOf(name, Type.EXCHANGE)) {
+					exchange(e.ownerId, e.flowId, e.formula);
+				}
+				return;
+			}
 			String sql = "SELECT f_owner, f_flow, "
 					+ "resulting_amount_formula FROM tbl_exchanges "
 					+ " WHERE resulting_amount_formula IS NOT NULL";
 			NativeSql.on(db).query(sql, r -> {
-				var formula = r.getString(3);
-				if (!matches(formula))
-					return true;
-				long ownerID = r.getLong(1);
-				if (skipOwner(ownerID))
-					return true;
-				var root = root(ownerID, ProcessDescriptor.class);
-				var flow = cache.get(FlowDescriptor.class, r.getLong(2));
-				if (root == null || flow == null)
-					return true;
-				root.add(new Node(flow).of(UsageType.FORMULA, formula));
+				exchange(r.getLong(1), r.getLong(2), r.getString(3));
 				return true;
 			});
 		}
 
+		private void exchange(long ownerID, long flowID, String formula) {
+			if (!matches(formula) || skipOwner(ownerID))
+				return;
+			var root = root(ownerID, ProcessDescriptor.class);
+			var flow = cache.get(FlowDescriptor.class, flowID);
+			if (root == null || flow == null)
+				return;
+			root.add(new Node(flow).of(UsageType.FORMULA, formula));
+		}
+
 		private void allocationFactors() {
+			if (index != null) {
+				for (var e : index.entriesOf(name, Type.ALLOCATION_FACTOR)) {
+					allocationFactor(e.id, e.ownerId, e.formula);
+				}
+				return;
+			}
 			var sql = "SELECT id, f_process, formula FROM " +
 					"tbl_allocation_factors WHERE formula IS NOT NULL";
 			NativeSql.on(db).query(sql, r -> {
-				var formula = r.getString(3);
-				if (!matches(formula))
-					return true;
-				long ownerID = r.getLong(2);
-				if (skipOwner(ownerID))
-					return true;
-				var root = root(ownerID, ProcessDescriptor.class);
-				if (root == null)
-					return true;
-				var child = new Node(r.getLong(1), "allocation factor")
-						.of(UsageType.FORMULA, formula);
-				root.add(child);
+				allocationFactor(r.getLong(1), r.getLong(2), r.getString(3));
 				return true;
 			});
 		}
 
+		private void allocationFactor(long id, long ownerID, String formula) {
+			if (!matches(formula) || skipOwner(ownerID))
+				return;
+			var root = root(ownerID, ProcessDescriptor.class);
+			if (root == null)
+				return;
+			var child = new Node(id, "allocation factor")
+					.of(UsageType.FORMULA, formula);
+			root.add(child);
+		}
+
 		private void impacts() {
+			if (index != null) {
+				for (var e : index.entriesOf(name, Type.IMPACT_FACTOR)) {
+					impactFactor(e.ownerId, e.flowId, e.formula);
+				}
+				return;
+			}
 			String sql = "SELECT cat.id AS category," +
 					"  fac.f_flow AS flow," +
 					"  fac.formula AS FORMULA" +
@@ -296,21 +330,21 @@ public class ParameterUsageTree {
 					"  ON fac.f_impact_category = cat.id" +
 					"  WHERE fac.formula IS NOT NULL";
 			NativeSql.on(db).query(sql, r -> {
-				String formula = r.getString(3);
-				if (!matches(formula))
-					return true;
-				long ownerID = r.getLong(1);
-				if (skipOwner(ownerID))
-					return true;
-				var root = root(ownerID, ImpactDescriptor.class);
-				var flow = cache.get(FlowDescriptor.class, r.getLong(2));
-				if (root == null || flow == null)
-					return true;
-				root.add(new Node(flow).of(UsageType.FORMULA, formula));
+				impactFactor(r.getLong(1), r.getLong(2), r.getString(3));
 				return true;
 			});
 		}
 
+		private void impactFactor(long ownerID, long flowID, String formula) {
+			if (!matches(formula) || skipOwner(ownerID))
+				return;
+			var root = root(ownerID, ImpactDescriptor.class);
+			var flow = cache.get(FlowDescriptor.class, flowID);
+			if (root == null || flow == null)
+				return;
+			root.add(new Node(flow).of(UsageType.FORMULA, formula));
+		}
+
 		private boolean skipOwner(long ownerID) {
 			// if an owner is set, the ID must match, otherwise skip it
 			if (owner != null)
@@ -325,21 +359,37 @@ public class ParameterUsageTree {
 
 		private void parameters() {
 
-			// collect the parameter owners: id -> owner id
-			var sql = "select id, f_owner from tbl_parameters";
+			// collect the parameter owners: id -> owner id; with the formula
+			// index, we only load the parameters that use the name
 			var owners = new TLongLongHashMap();
-			NativeSql.on(db).query(sql, r -> {
-				long id = r.getLong(1);
-				long owner = r.getLong(2);
-				if (!r.wasNull() && owner > 0L) {
-					owners.put(id, owner);
+			List<Parameter> params;
+			if (index != null) {
+				var ids = new HashSet<Long>();
+				for (var e : index.entriesOf(name, Type.PARAMETER)) {
+					ids.add(e.id);
+					if (e.ownerId > 0) {
+						owners.put(e.id, e.ownerId);
+					}
 				}
-				return true;
-			});
+				params = ids.isEmpty()
+						? Collections.emptyList()
+						: new ParameterDao(db).getForIds(ids);
+			} else {
+				var sql = "select id, f_owner from tbl_parameters";
+				NativeSql.on(db).query(sql, r -> {
+					long id = r.getLong(1);
+					long owner = r.getLong(2);
+					if (!r.wasNull() && owner > 0L) {
+						owners.put(id, owner);
+					}
+					return true;
+				});
+				params = new ParameterDao(db).getAll();
+			}
 
 			if (owner != null) {
 				// search only in formulas of local parameters
-				for (var p : new ParameterDao(db).getAll()) {
+				for (var p : params) {
 					long ownerID = owners.get(p.id);
 					if (ownerID != owner.id
 							|| p.isInputParameter
@@ -355,7 +405,7 @@ public class ParameterUsageTree {
 				// search only in global formulas and in local
 				// formulas where there is no local definition
 				// of a parameter with the same name
-				for (var p : new ParameterDao(db).getAll()) {
+				for (var p : params) {
 					long ownerID = owners.get(p.id);
 					if (hasLocalDef.contains(ownerID)
 							|| !matches(p.formula))
@@ -372,7 +422,7 @@ public class ParameterUsageTree {
 			}
 
 			// search via all text matches
-			for (var p : new ParameterDao(db).getAll()) {
+			for (var p : params) {
 				var nameMatch = matches(p.name);
 				var formulaMatch = !nameMatch
 						&& !p.isInputParameter
@@ -393,6 +443,18 @@ public class ParameterUsageTree {
 		}
 
 		private void systemRedefs() {
+			if (index != null) {
+				for (var e : index.entriesOf(name, Type.SYSTEM_REDEF)) {
+					if (!matches(e.name, e.contextId))
+						continue;
+					var system = cache.get(
+							ProductSystemDescriptor.class, e.ownerId);
+					if (system == null)
+						continue;
+					redef(system, e);
+				}
+				return;
+			}
 			for (var system : new ProductSystemDao(db).getAll()) {
 				for (var paramset : system.parameterSets) {
 					for (var redef : paramset.parameters) {
@@ -411,6 +473,17 @@ public class ParameterUsageTree {
 		}
 
 		private void projectRedefs() {
+			if (index != null) {
+				for (var e : index.entriesOf(name, Type.PROJECT_REDEF)) {
+					if (!matches(e.name, e.contextId))
+						continue;
+					var project = cache.get(ProjectDescriptor.class, e.ownerId);
+					if (project == null)
+						continue;
+					redef(project, e);
+				}
+				return;
+			}
 			for (var project : new ProjectDao(db).getAll()) {
 				for (var variant : project.variants) {
 					for (var redef : variant.parameterRedefs) {
@@ -446,14 +519,31 @@ public class ParameterUsageTree {
 			return false;
 		}
 
+		/**
+		 * Adds an indexed redefinition of the given product system or project
+		 * to the tree.
+		 */
+		private void redef(CategorizedDescriptor model, FormulaIndex.Entry e) {
+			var root = roots.computeIfAbsent(model.id, _i -> new Node(model));
+			var inner = root.addIfAbsent(
+					e.groupId, () -> new Node(e.groupId, e.groupName));
+			var leaf = new Node(e.id, e.name)
+					.of(UsageType.REDEFINITION, e.name);
+			inner.add(leaf);
+		}
+
 		private boolean matches(ParameterRedef redef) {
-			if (!matches(redef.name))
+			return matches(redef.name, redef.contextId);
+		}
+
+		private boolean matches(String redefName, Long contextId) {
+			if (!matches(redefName))
 				return false;
 			if (owner != null)
-				return redef.contextId != null
-						&& redef.contextId == owner.id;
+				return contextId != null
+						&& contextId == owner.id;
 			if (param != null)
-				return redef.contextId == null;
+				return contextId == null;
 			return true;
 		}
 
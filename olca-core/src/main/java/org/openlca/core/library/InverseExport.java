@@ -0,0 +1,172 @@
+package org.openlca.core.library;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.format.MatrixConverter;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.io.npy.MappedNpy;
+import org.openlca.core.matrix.io.npy.Npy;
+import org.openlca.core.matrix.solvers.Factorization;
+import org.openlca.core.matrix.solvers.MatrixSolver;
+
+/**
+ * Writes the inverse `INV = A^-1` of the technology matrix `A` and the
+ * intensity matrix `M = B * INV` of a library into the files `INV.npy` and
+ * `M.npy`. Instead of inverting `A` in memory, `A` is factorized once and the
+ * columns of `INV` and `M` are calculated in blocks that are directly written
+ * into pre-sized, memory mapped NPY files. The blocks are calculated in the
+ * given thread pool; thus, only one block per thread is held in memory.
+ * <p>
+ * Optionally, the LCIA intensities `CM = C * M` of each block are written as
+ * result tile (see `ResultTiles`). No tiles are written for `INV` and `M` as
+ * their columns can be directly read from the mapped NPY files.
+ */
+class InverseExport {
+
+	private final MatrixSolver solver;
+	private final MatrixData data;
+	private final File folder;
+	private int blockSize = ResultTiles.BLOCK_SIZE;
+	private boolean withTiles;
+
+	private InverseExport(MatrixSolver solver, MatrixData data, File folder) {
+		this.solver = solver;
+		this.data = data;
+		this.folder = folder;
+	}
+
+	static InverseExport of(MatrixSolver solver, MatrixData data, File folder) {
+		return new InverseExport(solver, data, folder);
+	}
+
+	/**
+	 * Sets the number of columns that are calculated in one block.
+	 */
+	InverseExport withBlockSize(int blockSize) {
+		this.blockSize = Math.max(1, blockSize);
+		return this;
+	}
+
+	/**
+	 * Also write the LCIA intensities of the blocks as result tiles. This has
+	 * no effect when there is no flow or impact matrix.
+	 */
+	InverseExport withTiles(boolean b) {
+		this.withTiles = b;
+		return this;
+	}
+
+	/**
+	 * Calculates and writes the matrices. The blocks are submitted to the given
+	 * thread pool and this method waits until all blocks are written. It must
+	 * not be called from a thread of that pool.
+	 */
+	void run(ExecutorService pool) {
+		var techMatrix = data.techMatrix;
+		int n = techMatrix.rows();
+		var factorization = solver.factorize(techMatrix);
+		var inv = Npy.create(new File(folder, "INV.npy"), n, n);
+
+		// convert a sparse B once and not for each block
+		MatrixReader flowMatrix = null;
+		MappedNpy m = null;
+		if (data.flowMatrix != null) {
+			flowMatrix = data.flowMatrix.isSparse()
+					? MatrixConverter.csc(data.flowMatrix)
+					: data.flowMatrix;
+			m = Npy.create(new File(folder, "M.npy"), flowMatrix.rows(), n);
+		}
+		MatrixReader impactMatrix = null;
+		if (withTiles && flowMatrix != null && data.impactMatrix != null) {
+			var tileDir = new File(folder, "tiles");
+			if (!tileDir.exists() && !tileDir.mkdirs())
+				throw new RuntimeException("failed to create folder " + tileDir);
+			impactMatrix = data.impactMatrix.isSparse()
+					? MatrixConverter.csc(data.impactMatrix)
+					: data.impactMatrix;
+		}
+
+		var futures = new ArrayList<Future<?>>();
+		for (int start = 0; start < n; start += blockSize) {
+			int end = Math.min(n, start + blockSize);
+			var block = new Block(start, end, factorization, inv, flowMatrix, m,
+					impactMatrix);
+			futures.add(pool.submit(block));
+		}
+
+		try {
+			for (var future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			futures.forEach(f -> f.cancel(true));
+			throw new RuntimeException("failed to calculate INV and M", e);
+		} finally {
+			factorization.dispose();
+		}
+		inv.flush();
+		if (m != null) {
+			m.flush();
+		}
+
+		if (impactMatrix != null) {
+			ResultTiles.writeIndex(folder, blockSize, n,
+					EnumSet.of(LibraryMatrix.CM));
+		}
+	}
+
+	private class Block implements Runnable {
+
+		private final int start;
+		private final int end;
+		private final Factorization factorization;
+		private final MappedNpy inv;
+		private final MatrixReader flowMatrix;
+		private final MappedNpy m;
+		private final MatrixReader impactMatrix;
+
+		Block(int start, int end, Factorization factorization, MappedNpy inv,
+				MatrixReader flowMatrix, MappedNpy m, MatrixReader impactMatrix) {
+			this.start = start;
+			this.end = end;
+			this.factorization = factorization;
+			this.inv = inv;
+			this.flowMatrix = flowMatrix;
+			this.m = m;
+			this.impactMatrix = impactMatrix;
+		}
+
+		@Override
+		public void run() {
+			var indices = new int[end - start];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = start + i;
+			}
+			var x = factorization.solve(indices, 1.0);
+			var cmColumns = impactMatrix != null
+					? new double[indices.length][]
+					: null;
+			for (int i = 0; i < indices.length; i++) {
+				var column = x.getColumn(i);
+				inv.setColumn(start + i, column);
+				if (m == null)
+					continue;
+				var mColumn = solver.multiply(flowMatrix, column);
+				m.setColumn(start + i, mColumn);
+				if (cmColumns != null) {
+					cmColumns[i] = solver.multiply(impactMatrix, mColumn);
+				}
+			}
+			if (cmColumns != null) {
+				ResultTiles.write(folder, LibraryMatrix.CM, start / blockSize,
+						impactMatrix.rows(), cmColumns);
+			}
+		}
+	}
+}
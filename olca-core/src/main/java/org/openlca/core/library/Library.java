@@ -4,13 +4,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.openlca.core.database.CategorizedEntityDao;
@@ -40,9 +40,11 @@ public class Library {
 	 * The folder where the library files are stored.
 	 */
 	public final File folder;
-	private LibraryInfo _info;
+	private volatile LibraryInfo _info;
 
-	private final Map<LibraryMatrix, MatrixReader> matrixCache = new HashMap<>();
+	private final Map<LibraryMatrix, MatrixReader> matrixCache =
+			new ConcurrentHashMap<>();
+	private volatile Optional<ResultTiles> _tiles;
 
 	public Library(File folder) {
 		this.folder = folder;
@@ -57,7 +59,16 @@ public class Library {
 	 * libraries before calling this function).
 	 */
 	public static Library create(MatrixData data, File folder) {
-		return MatrixDataExport.of(data, folder);
+		return MatrixDataExport.of(data, folder, false);
+	}
+
+	/**
+	 * Same as `create(data, folder)` but optionally also writes precomputed
+	 * result tiles of the LCIA intensities (see `ResultTiles`).
+	 */
+	public static Library create(
+			MatrixData data, File folder, boolean withResultTiles) {
+		return MatrixDataExport.of(data, folder, withResultTiles);
 	}
 
 	public LibraryInfo getInfo() {
@@ -280,53 +291,68 @@ public class Library {
 		return npz.exists();
 	}
 
+	/**
+	 * Returns the given matrix of this library. The matrix is memory mapped
+	 * from its file when it is requested the first time. Thus, the values of
+	 * the returned matrix are not copied into the heap but read directly from
+	 * the mapped file (via the page cache of the operating system).
+	 */
 	public Optional<MatrixReader> getMatrix(LibraryMatrix m) {
 		var matrix = matrixCache.get(m);
 		if (matrix != null)
 			return Optional.of(matrix);
+		return Optional.ofNullable(matrixCache.computeIfAbsent(m, this::mapMatrix));
+	}
 
+	private MatrixReader mapMatrix(LibraryMatrix m) {
 		try {
 			var npy = new File(folder, m.name() + ".npy");
-			if (npy.exists()) {
-				matrix = Npy.load(npy);
-				matrixCache.put(m, matrix);
-				return Optional.of(matrix);
-			}
-
+			if (npy.exists())
+				return Npy.map(npy);
 			var npz = new File(folder, m.name() + ".npz");
-			if (npz.exists()) {
-				matrix = Npz.load(npz);
-				matrixCache.put(m, matrix);
-				return Optional.of(matrix);
-			}
-
-			return Optional.empty();
-
+			if (npz.exists())
+				return Npz.map(npz);
+			return null;
 		} catch (Exception e) {
 			var log = LoggerFactory.getLogger(getClass());
 			log.error("failed to read matrix from " + folder, e);
-			return Optional.empty();
+			return null;
 		}
 	}
 
-	public Optional<double[]> getColumn(LibraryMatrix m, int column) {
-		var matrix = matrixCache.get(m);
-		if (matrix != null)
-			return Optional.of(matrix.getColumn(column));
-
-		try {
-
-			// do not cache dense matrices
-			var npy = new File(folder, m.name() + ".npy");
-			if (npy.exists())
-				return Optional.of(Npy.loadColumn(npy, column));
+	/**
+	 * Returns true if this library has precomputed result tiles of the current
+	 * version that contain the given matrix.
+	 */
+	public boolean hasTiles(LibraryMatrix m) {
+		return tiles().map(tiles -> tiles.has(m)).orElse(false);
+	}
 
-			// force caching of sparse matrices
-			matrix = getMatrix(m).orElse(null);
-			return matrix == null
-				? Optional.empty()
-				: Optional.of(matrix.getColumn(column));
+	private Optional<ResultTiles> tiles() {
+		var tiles = _tiles;
+		if (tiles != null)
+			return tiles;
+		tiles = ResultTiles.of(this);
+		_tiles = tiles;
+		return tiles;
+	}
 
+	/**
+	 * Returns the given column of the given matrix. If the library has result
+	 * tiles for that matrix, the column is read from its tile. Otherwise it is
+	 * read from the full matrix.
+	 */
+	public Optional<double[]> getColumn(LibraryMatrix m, int column) {
+		if (hasTiles(m)) {
+			var tileColumn = tiles().flatMap(t -> t.getColumn(m, column));
+			if (tileColumn.isPresent())
+				return tileColumn;
+		}
+		var matrix = getMatrix(m).orElse(null);
+		if (matrix == null)
+			return Optional.empty();
+		try {
+			return Optional.of(matrix.getColumn(column));
 		} catch (Exception e) {
 			var log = LoggerFactory.getLogger(getClass());
 			log.error("failed to read matrix column "
@@ -339,28 +365,7 @@ public class Library {
 	 * Get the diagonal of the given library matrix.
 	 */
 	public Optional<double[]> getDiagonal(LibraryMatrix m) {
-		var matrix = matrixCache.get(m);
-		if (matrix != null)
-			return Optional.of(matrix.diag());
-
-		try {
-			// do not cache dense matrices
-			var npy = new File(folder, m.name() + ".npy");
-			if (npy.exists())
-				return Optional.of(Npy.loadDiagonal(npy));
-
-			// force caching of sparse matrices
-			matrix = getMatrix(m).orElse(null);
-			return matrix == null
-				? Optional.empty()
-				: Optional.of(matrix.diag());
-
-		} catch (Exception e) {
-			var log = LoggerFactory.getLogger(getClass());
-			log.error("failed to read matrix diagonal"
-								+ " from " + m + " in " + folder, e);
-			return Optional.empty();
-		}
+		return getMatrix(m).map(MatrixReader::diag);
 	}
 
 	/**
@@ -47,6 +47,7 @@ public class LibraryExport implements Runnable {
 	private AllocationMethod allocation;
 	private boolean withImpacts;
 	private boolean withUncertainties;
+	private boolean withResultTiles;
 
 	public LibraryExport(IDatabase db, File folder) {
 		this.db = db;
@@ -73,6 +74,16 @@ public class LibraryExport implements Runnable {
 		return this;
 	}
 
+	/**
+	 * Also write precomputed result tiles of the LCIA intensities (see
+	 * `ResultTiles`). This requires a solver and LCIA data. Tiles are optional
+	 * and are not written by default.
+	 */
+	public LibraryExport withResultTiles(boolean b) {
+		this.withResultTiles = b;
+		return this;
+	}
+
 	/**
 	 * Optionally set meta-data and configurations of the library that should
 	 * be created.
@@ -118,21 +129,26 @@ public class LibraryExport implements Runnable {
 				new IndexWriter(folder, d, db).run();
 				log.info("finished with matrix indices");
 			});
+		}
 
-			if (solver != null) {
-				threadPool.execute(() -> {
-					log.info("create matrix INV");
-					var inv = solver.invert(d.techMatrix);
-					MatrixExport.toNpy(folder, inv, "INV");
-					log.info("create matrix M");
-					var m = solver.multiply(d.flowMatrix, inv);
-					MatrixExport.toNpy(folder, m, "M");
-					log.info("finished with INV and M");
-				});
-			}
+		// the blocks of INV and M are calculated in the thread pool while
+		// the other tasks are running; we wait for them before we shut it down
+		boolean tiles = withResultTiles
+				&& solver != null
+				&& data.isPresent()
+				&& data.get().flowMatrix != null
+				&& data.get().impactMatrix != null;
+		if (data.isPresent() && solver != null) {
+			log.info("create matrices INV and M");
+			InverseExport.of(solver, data.get(), folder)
+				.withTiles(tiles)
+				.run(threadPool);
+			log.info("finished with INV and M");
 		}
 
-		// write library meta-data
+		// write library meta-data; the tile version is only set when the
+		// tiles are on disk
+		info.resultTiles = tiles ? ResultTiles.VERSION : 0;
 		Json.write(info.toJson(), new File(folder, "library.json"));
 
 		try {
@@ -50,6 +50,13 @@ public class LibraryInfo {
 	 */
 	public boolean hasUncertaintyData;
 
+	/**
+	 * The version of the precomputed result tiles of the library or `0` if the
+	 * library has no result tiles. Tiles of an unknown version are ignored, so
+	 * that the results are then calculated from the full matrices.
+	 */
+	public int resultTiles;
+
 	public static LibraryInfo of(String name, String version) {
 		var info = new LibraryInfo();
 		info.name = name;
@@ -81,6 +88,9 @@ public class LibraryInfo {
 		Json.put(obj, "description", description);
 		obj.addProperty("isRegionalized", isRegionalized);
 		obj.addProperty("hasUncertaintyData", hasUncertaintyData);
+		if (resultTiles > 0) {
+			obj.addProperty("resultTiles", resultTiles);
+		}
 		if (dependencies.isEmpty())
 			return obj;
 		var deps = new JsonArray();
@@ -97,6 +107,7 @@ public class LibraryInfo {
 		info.version = Version.format(Json.getString(obj, "version"));
 		info.isRegionalized = Json.getBool(obj, "isRegionalized", false);
 		info.hasUncertaintyData = Json.getBool(obj, "hasUncertaintyData", false);
+		info.resultTiles = Json.getInt(obj, "resultTiles", 0);
 		var deps = Json.getArray(obj, "dependencies");
 		if (deps != null) {
 			Json.stream(deps)
@@ -27,4 +27,11 @@ public enum LibraryMatrix {
 	 */
 	M,
 
+	/**
+	 * The LCIA intensities `C * M`: the total impacts of one unit of each
+	 * product. This matrix is only available in the result tiles of a library
+	 * (see `ResultTiles`).
+	 */
+	CM,
+
 }
@@ -3,6 +3,7 @@ package org.openlca.core.library;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.EnumSet;
 
 import org.openlca.core.matrix.MatrixData;
 import org.openlca.core.matrix.format.CSCMatrix;
@@ -21,14 +22,16 @@ class MatrixDataExport {
 
 	private final File folder;
 	private final MatrixData data;
+	private final boolean withTiles;
 
-	private MatrixDataExport(MatrixData data, File folder) {
+	private MatrixDataExport(MatrixData data, File folder, boolean withTiles) {
 		this.folder = folder;
 		this.data = data;
+		this.withTiles = withTiles;
 	}
 
-	static Library of(MatrixData data, File folder) {
-		return new MatrixDataExport(data, folder).run();
+	static Library of(MatrixData data, File folder, boolean withTiles) {
+		return new MatrixDataExport(data, folder, withTiles).run();
 	}
 
 	private Library run() {
@@ -38,13 +41,13 @@ class MatrixDataExport {
 						"Could not create folder: " + folder);
 			}
 		}
-		writeInfo();
 		writeIndices();
-		writeMatrices();
+		boolean tiles = writeMatrices();
+		writeInfo(tiles);
 		return new Library(folder);
 	}
 
-	private void writeInfo() {
+	private void writeInfo(boolean tiles) {
 		var fullName = folder.getName();
 		var nameParts = fullName.split("_");
 		var versionPart = nameParts.length == 1
@@ -64,6 +67,9 @@ class MatrixDataExport {
 		info.version = version;
 		info.isRegionalized = data.flowIndex != null
 				&& data.flowIndex.isRegionalized;
+		info.resultTiles = tiles
+				? ResultTiles.VERSION
+				: 0;
 		Json.write(info.toJson(), new File(folder, "library.json"));
 	}
 
@@ -97,7 +103,10 @@ class MatrixDataExport {
 		}
 	}
 
-	private void writeMatrices() {
+	/**
+	 * Writes the matrices and returns true when result tiles were written.
+	 */
+	private boolean writeMatrices() {
 
 		// we scale the tech. matrix to 1|-1 on the diag.
 		var techMatrix = data.techMatrix;
@@ -140,7 +149,7 @@ class MatrixDataExport {
 		}
 
 		if (techMatrix == null)
-			return;
+			return false;
 
 		var solver = Julia.isLoaded()
 				? new JuliaSolver()
@@ -148,16 +157,60 @@ class MatrixDataExport {
 
 		// create the inverse
 		var inv = solver.invert(techMatrix);
-		writeMatrix("INV", inv);
+		boolean invMapped = writeMatrix("INV", inv);
 
 		// create the intensity matrix
-		if (flowMatrix == null)
-			return;
-		var m = solver.multiply(flowMatrix, inv);
-		writeMatrix("M", m);
+		MatrixReader m = null;
+		boolean mMapped = false;
+		if (flowMatrix != null) {
+			m = solver.multiply(flowMatrix, inv);
+			mMapped = writeMatrix("M", m);
+		}
+
+		if (!withTiles)
+			return false;
+
+		// write the result tiles; INV and M only need tiles when they are not
+		// stored as NPY files that can be directly mapped
+		var matrices = EnumSet.noneOf(LibraryMatrix.class);
+		if (!invMapped) {
+			matrices.add(LibraryMatrix.INV);
+		}
+		MatrixReader cm = null;
+		if (m != null) {
+			if (!mMapped) {
+				matrices.add(LibraryMatrix.M);
+			}
+			if (data.impactMatrix != null) {
+				cm = solver.multiply(data.impactMatrix, m);
+				matrices.add(LibraryMatrix.CM);
+			}
+		}
+		if (matrices.isEmpty())
+			return false;
+
+		var tileDir = new File(folder, "tiles");
+		if (!tileDir.exists() && !tileDir.mkdirs())
+			throw new RuntimeException("Could not create folder: " + tileDir);
+		int blockSize = ResultTiles.BLOCK_SIZE;
+		if (matrices.contains(LibraryMatrix.INV)) {
+			ResultTiles.writeAll(folder, LibraryMatrix.INV, inv, blockSize);
+		}
+		if (matrices.contains(LibraryMatrix.M)) {
+			ResultTiles.writeAll(folder, LibraryMatrix.M, m, blockSize);
+		}
+		if (cm != null) {
+			ResultTiles.writeAll(folder, LibraryMatrix.CM, cm, blockSize);
+		}
+		ResultTiles.writeIndex(folder, blockSize, inv.columns(), matrices);
+		return true;
 	}
 
-	private void writeMatrix(String name, MatrixReader matrix) {
+	/**
+	 * Writes the given matrix into an NPZ file if it is sparse and into an NPY
+	 * file otherwise. Returns true when it was written as NPY file.
+	 */
+	private boolean writeMatrix(String name, MatrixReader matrix) {
 		MatrixReader m = matrix;
 		if (m instanceof HashPointMatrix) {
 			m = CSCMatrix.of(m);
@@ -165,9 +218,10 @@ class MatrixDataExport {
 		if (m instanceof CSCMatrix) {
 			var csc = (CSCMatrix) m;
 			Npz.save(new File(folder, name + ".npz"), csc);
-		} else {
-			Npy.save(new File(folder, name + ".npy"), m);
+			return false;
 		}
+		Npy.save(new File(folder, name + ".npy"), m);
+		return true;
 	}
 
 	private void write(String file, IndexWriter.Output fn) {
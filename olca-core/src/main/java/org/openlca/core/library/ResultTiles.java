@@ -0,0 +1,180 @@
+package org.openlca.core.library;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.io.npy.Npz;
+import org.openlca.jsonld.Json;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional, precomputed result tiles of a library. The columns of the LCIA
+ * intensities `CM = C * M` are stored in blocks of a fixed number of columns;
+ * `INV` and `M` only have tiles when they are not stored as NPY files that
+ * can be directly memory mapped: each block is a sparse CSC matrix in an
+ * uncompressed NPZ file `tiles/<matrix>_<block>.npz` so that it can be memory
+ * mapped. The file `tiles/index.json` contains the block size and the
+ * available matrices. Reading a column is then just a lookup in the mapped
+ * tile of that column.
+ * <p>
+ * The version of the tile format is stored in the library information (see
+ * `LibraryInfo.resultTiles`). Libraries without tiles or with another version
+ * are read from their full matrices.
+ */
+final class ResultTiles {
+
+	/**
+	 * The current version of the tile format.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The default number of columns in a tile.
+	 */
+	static final int BLOCK_SIZE = 256;
+
+	private final File dir;
+	private final int blockSize;
+	private final int columns;
+	private final Set<LibraryMatrix> matrices;
+	private final Map<String, MatrixReader> cache = new ConcurrentHashMap<>();
+
+	private ResultTiles(File dir, int blockSize, int columns,
+			Set<LibraryMatrix> matrices) {
+		this.dir = dir;
+		this.blockSize = blockSize;
+		this.columns = columns;
+		this.matrices = matrices;
+	}
+
+	/**
+	 * Opens the result tiles of the given library. Returns an empty option
+	 * if the library has no tiles of the current version.
+	 */
+	static Optional<ResultTiles> of(Library lib) {
+		if (lib == null || lib.getInfo().resultTiles != VERSION)
+			return Optional.empty();
+		var dir = new File(lib.folder, "tiles");
+		var obj = Json.readObject(new File(dir, "index.json")).orElse(null);
+		if (obj == null)
+			return Optional.empty();
+		int blockSize = Json.getInt(obj, "blockSize", 0);
+		int columns = Json.getInt(obj, "columns", 0);
+		if (blockSize <= 0)
+			return Optional.empty();
+		var matrices = EnumSet.noneOf(LibraryMatrix.class);
+		var array = Json.getArray(obj, "matrices");
+		if (array != null) {
+			Json.stream(array)
+					.filter(JsonElement::isJsonPrimitive)
+					.map(JsonElement::getAsString)
+					.forEach(name -> matrices.add(LibraryMatrix.valueOf(name)));
+		}
+		return Optional.of(new ResultTiles(dir, blockSize, columns, matrices));
+	}
+
+	boolean has(LibraryMatrix m) {
+		return matrices.contains(m);
+	}
+
+	/**
+	 * Returns the given column of the given matrix from its tile or an empty
+	 * option if there is no such tile.
+	 */
+	Optional<double[]> getColumn(LibraryMatrix m, int column) {
+		if (!has(m) || column < 0 || column >= columns)
+			return Optional.empty();
+		int block = column / blockSize;
+		var name = m.name() + "_" + block;
+		var tile = cache.computeIfAbsent(name, key -> {
+			var file = new File(dir, key + ".npz");
+			return file.exists()
+					? Npz.map(file)
+					: null;
+		});
+		if (tile == null) {
+			LoggerFactory.getLogger(getClass())
+					.error("missing result tile {} in {}", name, dir);
+			return Optional.empty();
+		}
+		return Optional.of(tile.getColumn(column - block * blockSize));
+	}
+
+	/**
+	 * Writes the given columns as tile of the given block. The columns are
+	 * stored in a sparse CSC matrix with the given number of rows.
+	 */
+	static void write(File folder, LibraryMatrix m, int block,
+			int rows, double[][] columns) {
+		var pointers = new int[columns.length + 1];
+		int count = 0;
+		for (var column : columns) {
+			for (double val : column) {
+				if (val != 0) {
+					count++;
+				}
+			}
+		}
+		var values = new double[count];
+		var indices = new int[count];
+		int pos = 0;
+		for (int j = 0; j < columns.length; j++) {
+			pointers[j] = pos;
+			var column = columns[j];
+			for (int i = 0; i < column.length; i++) {
+				if (column[i] == 0)
+					continue;
+				values[pos] = column[i];
+				indices[pos] = i;
+				pos++;
+			}
+		}
+		pointers[columns.length] = pos;
+		var csc = new CSCMatrix(rows, columns.length, values, pointers, indices);
+		var dir = new File(folder, "tiles");
+		Npz.save(new File(dir, m.name() + "_" + block + ".npz"), csc);
+	}
+
+	/**
+	 * Writes all tiles of the given matrix with the given block size.
+	 */
+	static void writeAll(File folder, LibraryMatrix m, MatrixReader matrix,
+			int blockSize) {
+		int n = matrix.columns();
+		for (int start = 0; start < n; start += blockSize) {
+			int end = Math.min(n, start + blockSize);
+			var columns = new double[end - start][];
+			for (int j = start; j < end; j++) {
+				columns[j - start] = matrix.getColumn(j);
+			}
+			write(folder, m, start / blockSize, matrix.rows(), columns);
+		}
+	}
+
+	/**
+	 * Writes the index of the tiles of a library with the given number of
+	 * columns.
+	 */
+	static void writeIndex(File folder, int blockSize, int columns,
+			Set<LibraryMatrix> matrices) {
+		var obj = new JsonObject();
+		obj.addProperty("version", VERSION);
+		obj.addProperty("blockSize", blockSize);
+		obj.addProperty("columns", columns);
+		var array = new JsonArray();
+		for (var m : matrices) {
+			array.add(m.name());
+		}
+		obj.add("matrices", array);
+		Json.write(obj, new File(new File(folder, "tiles"), "index.json"));
+	}
+}
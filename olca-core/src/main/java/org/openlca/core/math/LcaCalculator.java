@@ -7,6 +7,7 @@ import org.openlca.core.matrix.TechIndex;
 import org.openlca.core.matrix.format.MatrixReader;
 import org.openlca.core.matrix.solvers.JavaSolver;
 import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.core.matrix.solvers.SymbolicAnalysis;
 import org.openlca.core.results.ContributionResult;
 import org.openlca.core.results.FullResult;
 import org.openlca.core.results.SimpleResult;
@@ -27,6 +28,7 @@ public class LcaCalculator {
 
 	private final MatrixData data;
 	private final IDatabase db;
+	private SymbolicAnalysis analysis;
 
 	public LcaCalculator(IDatabase db, MatrixData data) {
 		this.data = data;
@@ -34,16 +36,26 @@ public class LcaCalculator {
 		this.db = db;
 	}
 
+	/**
+	 * Set a symbolic analysis of the technology matrix that should be reused
+	 * for its factorization, e.g. in the iterations of a Monte-Carlo
+	 * simulation where the sparsity pattern of the matrix does not change.
+	 */
+	public LcaCalculator withAnalysis(SymbolicAnalysis analysis) {
+		this.analysis = analysis;
+		return this;
+	}
+
 	private ResultProvider solution(boolean forceLazy) {
 		if (data.hasLibraryLinks())
 			return LibraryResultProvider.of(db, data);
 		if (forceLazy)
-			return LazyResultProvider.create(data);
+			return LazyResultProvider.create(data, analysis);
 		if (!data.isSparse())
 			return EagerResultProvider.create(data);
 		var solver = MatrixSolver.Instance.getNew();
 		return solver.hasSparseSupport()
-			? LazyResultProvider.create(data)
+			? LazyResultProvider.create(data, analysis)
 			: EagerResultProvider.create(data);
 	}
 
@@ -1,10 +1,49 @@
 package org.openlca.core.math;
 
-import java.util.Random;
-
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates random numbers of an uncertainty distribution. The numbers can be
+ * drawn from an explicitly given random stream, e.g. the stream of a seeded
+ * simulation, or from a default stream of the generator.
+ */
 public abstract class NumberGenerator {
 
-	public abstract double next();
+	/**
+	 * The default stream of this generator that is used when no explicit
+	 * stream is given. It is lazily initialized with a random seed.
+	 */
+	private SplittableRandom random;
+
+	/**
+	 * Generates the next number using the default stream of this generator.
+	 */
+	public double next() {
+		if (random == null) {
+			random = new SplittableRandom();
+		}
+		return next(random);
+	}
+
+	/**
+	 * Generates the next number using the given random stream. With a seeded
+	 * stream the generated numbers are reproducible.
+	 */
+	public abstract double next(SplittableRandom random);
+
+	/**
+	 * Fills the given array with numbers drawn from the given random stream.
+	 * This is the same as calling `next(random)` for each element of the array
+	 * but implementations may generate the numbers more efficiently in bulk.
+	 */
+	public void fill(double[] values, SplittableRandom random) {
+		if (values == null)
+			return;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = next(random);
+		}
+	}
 
 	public static NumberGenerator normal(double mean, double standardDeviation) {
 		return new Normal(mean, standardDeviation);
@@ -31,21 +70,62 @@ public abstract class NumberGenerator {
 		return new Discrete(val);
 	}
 
+	/**
+	 * Fills the given array with standard normal distributed numbers using the
+	 * polar method of Marsaglia which generates two numbers per accepted pair
+	 * of uniform numbers.
+	 */
+	private static void standardNormals(
+			double[] values, SplittableRandom random) {
+		int i = 0;
+		while (i < values.length) {
+			double v1, v2, s;
+			do {
+				v1 = 2 * random.nextDouble() - 1;
+				v2 = 2 * random.nextDouble() - 1;
+				s = v1 * v1 + v2 * v2;
+			} while (s >= 1 || s == 0);
+			double f = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+			values[i++] = v1 * f;
+			if (i < values.length) {
+				values[i++] = v2 * f;
+			}
+		}
+	}
+
+	private static double standardNormal(SplittableRandom random) {
+		double v1, v2, s;
+		do {
+			v1 = 2 * random.nextDouble() - 1;
+			v2 = 2 * random.nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		return v1 * StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+	}
+
 	private static class Normal extends NumberGenerator {
 
-		private final Random rand;
 		private final double mean;
 		private final double std;
 
 		Normal(double mean, double std) {
 			this.mean = mean;
 			this.std = std;
-			this.rand = new Random();
 		}
 
 		@Override
-		public double next() {
-			return rand.nextGaussian() * std + mean;
+		public double next(SplittableRandom random) {
+			return standardNormal(random) * std + mean;
+		}
+
+		@Override
+		public void fill(double[] values, SplittableRandom random) {
+			if (values == null)
+				return;
+			standardNormals(values, random);
+			for (int i = 0; i < values.length; i++) {
+				values[i] = values[i] * std + mean;
+			}
 		}
 	}
 
@@ -74,34 +154,42 @@ public abstract class NumberGenerator {
 		}
 
 		@Override
-		public double next() {
-			return Math.exp(normal.next()) * factor;
+		public double next(SplittableRandom random) {
+			return StrictMath.exp(normal.next(random)) * factor;
+		}
+
+		@Override
+		public void fill(double[] values, SplittableRandom random) {
+			if (values == null)
+				return;
+			normal.fill(values, random);
+			for (int i = 0; i < values.length; i++) {
+				values[i] = StrictMath.exp(values[i]) * factor;
+			}
 		}
 	}
 
 	private static class Uniform extends NumberGenerator {
 
-		private final Random rand;
 		private final double min;
 		private final double range;
 
 		Uniform(double min, double max) {
 			this.min = min;
 			this.range = max - min;
-			this.rand = new Random();
 		}
 
 		@Override
-		public double next() {
-			return min + rand.nextDouble() * range;
+		public double next(SplittableRandom random) {
+			return min + random.nextDouble() * range;
 		}
 	}
 
 	private static class Triangular extends NumberGenerator {
 
-		private double min;
-		private double max;
-		private double mode;
+		private final double min;
+		private final double max;
+		private final double mode;
 
 		Triangular(double min, double mode, double max) {
 			this.min = min;
@@ -113,10 +201,10 @@ public abstract class NumberGenerator {
 		 * see http://en.wikipedia.org/wiki/Triangular_distribution
 		 */
 		@Override
-		public double next() {
+		public double next(SplittableRandom random) {
 			if (max == min)
 				return mode;
-			double u = Math.random();
+			double u = random.nextDouble();
 			double fMode = (mode - min) / (max - min);
 			if (u <= fMode)
 				return min + Math.sqrt(u * (max - min) * (mode - min));
@@ -126,17 +214,23 @@ public abstract class NumberGenerator {
 
 	private static class Discrete extends NumberGenerator {
 
-		private double val;
+		private final double val;
 
 		public Discrete(double val) {
 			this.val = val;
 		}
 
 		@Override
-		public double next() {
+		public double next(SplittableRandom random) {
 			return val;
 		}
 
+		@Override
+		public void fill(double[] values, SplittableRandom random) {
+			if (values == null)
+				return;
+			Arrays.fill(values, val);
+		}
 	}
 
 }
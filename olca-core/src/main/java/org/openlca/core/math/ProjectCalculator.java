@@ -0,0 +1,204 @@
+package org.openlca.core.math;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.matrix.MatrixDataGroup;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.model.Project;
+import org.openlca.core.model.ProjectVariant;
+import org.openlca.core.model.descriptors.Descriptor;
+import org.openlca.core.model.descriptors.ImpactMethodDescriptor;
+import org.openlca.core.results.ContributionResult;
+import org.openlca.core.results.ProjectResult;
+import org.openlca.core.results.SimpleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calculates the variants of a project. The variants are grouped by their
+ * product systems and the variants of a group share the tech-index, the
+ * exchanges, and the impact matrices of their product system (see
+ * `MatrixDataGroup`). The variants are calculated in parallel on a bounded
+ * number of threads.
+ */
+public class ProjectCalculator {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final IDatabase db;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private Callback callback;
+
+	public ProjectCalculator(IDatabase db) {
+		this.db = db;
+	}
+
+	/**
+	 * Sets the maximum number of variants that are calculated at the same
+	 * time. The default is the number of available processors.
+	 */
+	public ProjectCalculator withThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	public ProjectCalculator withCallback(Callback callback) {
+		this.callback = callback;
+		return this;
+	}
+
+	/**
+	 * Calculates the enabled variants of the given project. When the
+	 * calculation is canceled via the callback, the returned result only
+	 * contains the variants that were finished before.
+	 */
+	public ProjectResult calculate(Project project) {
+		var result = new ProjectResult();
+		if (project == null)
+			return result;
+		var variants = new ArrayList<ProjectVariant>();
+		for (var v : project.variants) {
+			if (!v.isDisabled && v.productSystem != null) {
+				variants.add(v);
+			}
+		}
+		if (variants.isEmpty())
+			return result;
+
+		var method = project.impactMethod != null
+				? Descriptor.of(project.impactMethod)
+				: null;
+		var groups = new HashMap<Long, Group>();
+		for (var v : variants) {
+			groups.computeIfAbsent(v.productSystem.id,
+					id -> new Group(v, method));
+		}
+		log.trace("calculate {} project variants in {} groups",
+				variants.size(), groups.size());
+
+		var results = new ContributionResult[variants.size()];
+		var finished = new AtomicInteger();
+		var pool = Executors.newFixedThreadPool(
+				Math.min(threads, variants.size()));
+		try {
+			var futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < variants.size(); i++) {
+				int idx = i;
+				var v = variants.get(i);
+				futures.add(pool.submit(() -> {
+					if (isCanceled())
+						return;
+					var setup = setupOf(project, v);
+					results[idx] = groups.get(v.productSystem.id)
+							.calculate(setup);
+					int n = finished.incrementAndGet();
+					if (callback != null) {
+						callback.progress(v, n, variants.size());
+					}
+				}));
+			}
+			for (var future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("project calculation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(
+					"failed to calculate project variant", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null) {
+				result.addResult(variants.get(i), results[i]);
+			}
+		}
+		return result;
+	}
+
+	private boolean isCanceled() {
+		return callback != null && callback.cancel();
+	}
+
+	private CalculationSetup setupOf(Project project, ProjectVariant v) {
+		var setup = new CalculationSetup(v.productSystem);
+		setup.setUnit(v.unit);
+		setup.setFlowPropertyFactor(v.flowPropertyFactor);
+		setup.setAmount(v.amount);
+		setup.allocationMethod = v.allocationMethod;
+		setup.impactMethod = project.impactMethod != null
+				? Descriptor.of(project.impactMethod)
+				: null;
+		setup.nwSet = project.nwSet != null
+				? Descriptor.of(project.nwSet)
+				: null;
+		setup.parameterRedefs.addAll(v.parameterRedefs);
+		setup.withCosts = true;
+		// TODO: how to handle regionalization here?
+		return setup;
+	}
+
+	/**
+	 * The variants of a product system. The matrix data group is created when
+	 * the first variant of the group is calculated.
+	 */
+	private class Group {
+
+		final ProjectVariant first;
+		final ImpactMethodDescriptor method;
+		MatrixDataGroup matrices;
+
+		Group(ProjectVariant first, ImpactMethodDescriptor method) {
+			this.first = first;
+			this.method = method;
+		}
+
+		synchronized MatrixDataGroup matrices() {
+			if (matrices == null) {
+				matrices = MatrixDataGroup.of(db, first.productSystem, method);
+			}
+			return matrices;
+		}
+
+		ContributionResult calculate(CalculationSetup setup) {
+			Map<ProcessProduct, SimpleResult> subResults =
+					setup.productSystem.withoutNetwork
+							? Collections.emptyMap()
+							: new SubSystemCalculator(db).calculate(setup);
+			var data = matrices().build(setup, subResults);
+			return new LcaCalculator(db, data).calculateContributions();
+		}
+	}
+
+	/**
+	 * A callback for the progress and cancellation of a project calculation.
+	 * Note that the methods of a callback are called from different threads.
+	 */
+	public interface Callback {
+
+		/**
+		 * Returns true if the calculation should be canceled. The variants
+		 * that are not yet started are then skipped.
+		 */
+		default boolean cancel() {
+			return false;
+		}
+
+		/**
+		 * Is called when the given variant was calculated with the number of
+		 * finished variants and the total number of variants.
+		 */
+		default void progress(ProjectVariant variant, int finished, int total) {
+		}
+	}
+}
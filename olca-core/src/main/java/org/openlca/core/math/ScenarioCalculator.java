@@ -0,0 +1,268 @@
+package org.openlca.core.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.matrix.FormulaCells;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.ParameterTable;
+import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.core.matrix.solvers.SymbolicAnalysis;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.ParameterRedef;
+import org.openlca.core.results.SimpleResult;
+import org.openlca.expressions.FormulaInterpreter;
+
+/**
+ * Calculates the results of a calculation setup for a set of parameter
+ * scenarios. A scenario is a set of parameter redefinitions that are applied
+ * on top of the parameter redefinitions of the setup.
+ * <p>
+ * The matrices are built only once together with their formula dependent
+ * cells (see `FormulaCells`). For a scenario, a new formula interpreter is
+ * created from a `ParameterTable` and only the cells with formulas that
+ * depend on the redefined parameters (directly or via other parameters) are
+ * re-evaluated in copies of the matrices. These copies share the sparsity
+ * structure of the base matrices, so that the technology matrices of all
+ * scenarios can be factorized with the same symbolic analysis. Multiple
+ * scenarios are calculated in parallel where each scenario has its own
+ * interpreter.
+ * <p>
+ * Product systems with sub-systems or library links are calculated with a
+ * full matrix build for each scenario.
+ */
+public class ScenarioCalculator {
+
+	private final IDatabase db;
+	private final CalculationSetup setup;
+
+	/**
+	 * The base matrices with the formula cells or `null` when the scenarios
+	 * are calculated with full matrix builds.
+	 */
+	private MatrixData base;
+	private ParameterTable parameters;
+	private SymbolicAnalysis analysis;
+
+	// the positions of the formula cells in the value arrays of the
+	// base matrices
+	private int[] techSlots;
+	private int[] enviSlots;
+	private int[] impactSlots;
+
+	private ScenarioCalculator(IDatabase db, CalculationSetup setup) {
+		this.db = db;
+		this.setup = setup;
+	}
+
+	public static ScenarioCalculator of(IDatabase db, CalculationSetup setup) {
+		var calc = new ScenarioCalculator(db, setup);
+		calc.init();
+		return calc;
+	}
+
+	private void init() {
+		var techIndex = TechIndex.of(setup.productSystem, db);
+		techIndex.setDemand(setup.getDemandValue());
+		for (int i = 0; i < techIndex.size(); i++) {
+			var provider = techIndex.getProviderAt(i);
+			if (provider.isFromLibrary()
+					|| provider.process == null
+					|| provider.process.type == ModelType.PRODUCT_SYSTEM)
+				return;
+		}
+
+		var data = MatrixData.of(db, techIndex)
+				.withSetup(setup)
+				.withUncertainties(false)
+				.withFormulaCells(true)
+				.build();
+		if (data.hasLibraryLinks())
+			return;
+		data.compress();
+
+		// extend the sparsity structures with the formula cells so that their
+		// values can be set without changing the structures
+		data.techMatrix = withCells(data.techMatrix, data.techFormulas);
+		techSlots = slotsOf(data.techMatrix, data.techFormulas);
+		data.flowMatrix = withCells(data.flowMatrix, data.enviFormulas);
+		enviSlots = slotsOf(data.flowMatrix, data.enviFormulas);
+		data.impactMatrix = withCells(data.impactMatrix, data.impactFormulas);
+		impactSlots = slotsOf(data.impactMatrix, data.impactFormulas);
+
+		var contexts = new HashSet<>(techIndex.getProcessIds());
+		if (data.impactIndex != null) {
+			data.impactIndex.each((i, impact) -> contexts.add(impact.id));
+		}
+		parameters = ParameterTable.forScenarios(db, contexts);
+		analysis = MatrixSolver.Instance.getNew().analyze(data.techMatrix);
+		base = data;
+	}
+
+	private static MatrixReader withCells(MatrixReader m, FormulaCells cells) {
+		if (m == null || cells == null || cells.isEmpty())
+			return m;
+		var csc = m instanceof CSCMatrix
+				? (CSCMatrix) m
+				: CSCMatrix.of(m);
+		var list = cells.cells();
+		int[] rows = new int[list.size()];
+		int[] cols = new int[list.size()];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = list.get(i).row;
+			cols[i] = list.get(i).col;
+		}
+		return csc.withCells(rows, cols);
+	}
+
+	private static int[] slotsOf(MatrixReader m, FormulaCells cells) {
+		if (!(m instanceof CSCMatrix) || cells == null)
+			return null;
+		var csc = (CSCMatrix) m;
+		var list = cells.cells();
+		int[] slots = new int[list.size()];
+		for (int i = 0; i < slots.length; i++) {
+			var cell = list.get(i);
+			slots[i] = csc.indexOf(cell.row, cell.col);
+		}
+		return slots;
+	}
+
+	/**
+	 * Returns true if the scenarios are calculated on the pre-built matrices
+	 * and false if they are calculated with a full matrix build for each
+	 * scenario (e.g. for systems with sub-systems).
+	 */
+	public boolean isBatched() {
+		return base != null;
+	}
+
+	/**
+	 * Creates the matrix data of the given scenario. The indices are shared
+	 * with the base data. This only works when the calculator is batched (see
+	 * `isBatched`).
+	 */
+	public MatrixData dataOf(Collection<ParameterRedef> scenario) {
+		if (base == null)
+			throw new IllegalStateException(
+					"the calculator does not support batched scenarios");
+		var redefs = new ArrayList<>(setup.parameterRedefs);
+		if (scenario != null) {
+			redefs.addAll(scenario);
+		}
+		var interpreter = parameters.interpreter(redefs);
+		var names = parameters.dependentsOf(scenario);
+
+		var data = new MatrixData();
+		data.techIndex = base.techIndex;
+		data.flowIndex = base.flowIndex;
+		data.impactIndex = base.impactIndex;
+		data.techMatrix = eval(base.techMatrix,
+				base.techFormulas, techSlots, interpreter, names);
+		data.flowMatrix = eval(base.flowMatrix,
+				base.enviFormulas, enviSlots, interpreter, names);
+		data.impactMatrix = eval(base.impactMatrix,
+				base.impactFormulas, impactSlots, interpreter, names);
+		if (base.costVector != null) {
+			var costs = base.costVector.clone();
+			if (base.costFormulas != null) {
+				for (var cell : base.costFormulas.cells()) {
+					if (cell.dependsOn(names)) {
+						costs[cell.col] = cell.eval(interpreter);
+					}
+				}
+			}
+			data.costVector = costs;
+		}
+		return data;
+	}
+
+	private static MatrixReader eval(MatrixReader m, FormulaCells cells,
+			int[] slots, FormulaInterpreter interpreter, Set<String> names) {
+		if (m == null || cells == null || slots == null)
+			return m;
+		var csc = (CSCMatrix) m;
+		var values = csc.values.clone();
+		var list = cells.cells();
+		for (int i = 0; i < slots.length; i++) {
+			var cell = list.get(i);
+			if (cell.dependsOn(names)) {
+				values[slots[i]] = cell.eval(interpreter);
+			}
+		}
+		// the structure arrays are shared, so that the symbolic analysis of
+		// the technology matrix can be reused
+		return new CSCMatrix(csc.rows, csc.columns, values,
+				csc.columnPointers, csc.rowIndices);
+	}
+
+	/**
+	 * Calculates the result of the given scenario.
+	 */
+	public SimpleResult calculate(Collection<ParameterRedef> scenario) {
+		if (base == null)
+			return new SystemCalculator(db).calculateSimple(setupOf(scenario));
+		return new LcaCalculator(db, dataOf(scenario))
+				.withAnalysis(analysis)
+				.calculateSimple();
+	}
+
+	/**
+	 * Calculates the results of the given scenarios in parallel. The results
+	 * are returned in the order of the scenarios.
+	 */
+	public List<SimpleResult> calculateAll(
+			List<? extends Collection<ParameterRedef>> scenarios) {
+		if (scenarios == null || scenarios.isEmpty())
+			return new ArrayList<>();
+		var results = new SimpleResult[scenarios.size()];
+		if (base == null) {
+			// the full matrix builds are done sequentially; they are
+			// parallelized internally
+			for (int i = 0; i < results.length; i++) {
+				results[i] = calculate(scenarios.get(i));
+			}
+		} else {
+			IntStream.range(0, results.length)
+					.parallel()
+					.forEach(i -> results[i] = calculate(scenarios.get(i)));
+		}
+		return Arrays.asList(results);
+	}
+
+	private CalculationSetup setupOf(Collection<ParameterRedef> scenario) {
+		var s = new CalculationSetup(setup.productSystem);
+		s.setUnit(setup.getUnit());
+		s.setFlowPropertyFactor(setup.getFlowPropertyFactor());
+		s.setAmount(setup.getAmount());
+		s.allocationMethod = setup.allocationMethod;
+		s.impactMethod = setup.impactMethod;
+		s.nwSet = setup.nwSet;
+		s.withCosts = setup.withCosts;
+		s.withRegionalization = setup.withRegionalization;
+		s.parameterRedefs.addAll(setup.parameterRedefs);
+		if (scenario != null) {
+			s.parameterRedefs.addAll(scenario);
+		}
+		return s;
+	}
+
+	/**
+	 * Disposes the shared symbolic analysis of the technology matrix.
+	 */
+	public void dispose() {
+		if (analysis != null) {
+			analysis.dispose();
+			analysis = null;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package org.openlca.core.math;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -9,6 +10,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.database.ImpactMethodDao;
@@ -21,8 +25,11 @@ import org.openlca.core.matrix.MatrixData;
 import org.openlca.core.matrix.ParameterTable;
 import org.openlca.core.matrix.ProcessProduct;
 import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.CSCMatrix;
 import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.core.matrix.solvers.SymbolicAnalysis;
 import org.openlca.core.model.ModelType;
+import org.openlca.core.model.ParameterRedef;
 import org.openlca.core.model.ProcessLink;
 import org.openlca.core.model.ProductSystem;
 import org.openlca.core.results.SimpleResult;
@@ -58,6 +65,10 @@ import org.slf4j.LoggerFactory;
  * a sub-system $s_i$ when $s_i \prec s_j$. With this, the number generation and
  * calculation have to be done only once for each simulation step for each
  * product system $s_i \in S$.
+ *
+ * The symbolic analyses of the technology matrices are kept between the
+ * iterations; thus, `dispose` must be called when the simulator is not used
+ * anymore.
  */
 public class Simulator {
 
@@ -69,37 +80,40 @@ public class Simulator {
 	public final Set<ProcessProduct> pinnedProducts = new HashSet<>();
 
 	private final IDatabase db;
-	private final MatrixSolver solver;
 
 	/**
-	 * The node of the host-system. This is the node that provides the final
-	 * data of the Monte-Carlo simulation.
+	 * The main worker that is used for the sequential runs. It contains the
+	 * simulation graph of the host-system and its sub-systems. The additional
+	 * workers of a parallel simulation are copies of this worker.
+	 */
+	private Worker main;
+
+	/**
+	 * The workers of a parallel simulation. These are lazily initialized when
+	 * a parallel simulation is started. The first worker is always the main
+	 * worker.
 	 */
-	private Node root;
+	private final List<Worker> workers = new ArrayList<>();
 
 	/**
-	 * The topological ordered sub-systems (this is empty when the host-system
-	 * does not contain sub-systems). The matrix data of the sub-systems do not
-	 * contain LCIA data as we only need the LCI (and LCC) results of them. The
-	 * same calculation properties of the host-system (allocation method etc.)
-	 * are shared with these sub-systems. In a simulation run we can just
-	 * calculate the results of the sub-system from $0...n$. When a system $j$
-	 * depends on a sub-system $i$ the topological order assures that it was
-	 * already calculated before.
+	 * The number of threads that are used for a parallel simulation.
 	 */
-	private final List<Node> subNodes = new ArrayList<>();
+	private int threads = 1;
 
 	/**
-	 * Maps the ID of a product system to the respective node in the simulation
-	 * graph. Contains all nodes, also the root system.
+	 * The seed from which the random streams of the iterations are derived.
+	 * Each iteration gets its own stream that only depends on this seed and
+	 * the index of the iteration (see `streamOf`).
 	 */
-	private final Map<Long, Node> nodeIndex = new HashMap<>();
+	private long seed = new SplittableRandom().nextLong();
+
+	/** The index of the next iteration of the simulation. */
+	private long iteration;
 
 	private SimulationResult result;
 
 	private Simulator(IDatabase db) {
 		this.db = db;
-		this.solver = MatrixSolver.Instance.getNew();
 	}
 
 	public static Simulator create(
@@ -111,26 +125,52 @@ public class Simulator {
 		return g;
 	}
 
+	/**
+	 * Set the number of threads that should be used when running multiple
+	 * iterations via `run(int)`. Each thread has its own copy of the matrix
+	 * data, parameters, and solver of the simulation. Note that this copy is
+	 * created for each additional thread, so the memory consumption grows with
+	 * the number of threads.
+	 */
+	public Simulator withThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Set the seed of the simulation. The random numbers of an iteration,
+	 * including the numbers of the `rand` function in formulas, are drawn
+	 * from a stream that only depends on this seed and the index of the
+	 * iteration. Thus, two simulations with the same seed produce identical
+	 * results, independent of the number of threads and of how the iterations
+	 * are started (`nextRun` or `run`). Setting the seed after some iterations
+	 * applies to the following iterations.
+	 */
+	public Simulator withSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
 	/**
 	 * Get the result of the simulation.
 	 */
 	public SimulationResult getResult() {
 		if (result != null)
 			return result;
-		result = new SimulationResult(root.data);
+		result = new SimulationResult(main.root.data);
 		return result;
 	}
 
 	public TechIndex getTechIndex() {
-		return root.data.techIndex;
+		return main.root.data.techIndex;
 	}
 
 	public FlowIndex getEnviIndex() {
-		return root.data.flowIndex;
+		return main.root.data.flowIndex;
 	}
 
 	public ImpactIndex getImpactIndex() {
-		return root.data.impactIndex;
+		return main.root.data.impactIndex;
 	}
 
 	/**
@@ -141,98 +181,118 @@ public class Simulator {
 	 * (which you get via `getResult()`, so it does not need to be cached.
 	 */
 	public SimpleResult nextRun() {
-		try {
+		var run = main.next(streamOf(iteration++));
+		if (run == null)
+			return null;
+		append(run);
+		return run.result;
+	}
 
-			// generate the numbers and calculate the overall result
-			for (var sub : subNodes) {
-				generateData(sub);
-				var calc = new LcaCalculator(db, sub.data);
-				sub.lastResult = calc.calculateSimple();
+	/**
+	 * Runs the given number of iterations. If the simulator was configured to
+	 * use multiple threads (see `withThreads`), the iterations are distributed
+	 * over these threads where each thread runs on its own copy of the
+	 * simulation data. The results of the iterations are appended in the order
+	 * of the iterations to the result of the simulator. Returns the number of
+	 * iterations that finished without errors.
+	 */
+	public int run(int iterations) {
+		if (iterations <= 0)
+			return 0;
+		int n = Math.min(threads, iterations);
+		if (n == 1) {
+			int count = 0;
+			for (int i = 0; i < iterations; i++) {
+				if (nextRun() != null) {
+					count++;
+				}
 			}
-			generateData(root);
-			var calc = new LcaCalculator(db, root.data);
-			var next = calc.calculateSimple();
-			var result = getResult();
-			result.append(next);
-
-			// calculate results of possible pinned products
-			for (ProcessProduct pinned : pinnedProducts) {
-				int idx = next.techIndex.getIndex(pinned);
-				if (idx < 0)
-					continue;
+			return count;
+		}
 
-				// A, B, C, s, t are the standard symbols
-				// in LCA calculations
-				var A = root.data.techMatrix;
-				var B = root.data.flowMatrix;
-				var C = root.data.impactMatrix;
-				double[] s = next.scalingVector;
-
-				// direct contributions
-				SimpleResult direct = new SimpleResult();
-				double si = s[idx];
-				direct.totalFlowResults = B.getColumn(idx);
-				for (int row = 0; row < next.flowIndex.size(); row++) {
-					direct.totalFlowResults[row] *= si;
-				}
-				if (C != null) {
-					direct.totalImpactResults = solver.multiply(
-							C, direct.totalFlowResults);
-				}
+		// initialize the workers
+		if (workers.isEmpty()) {
+			workers.add(main);
+		}
+		while (workers.size() < n) {
+			workers.add(main.copy());
+		}
 
-				// upstream contributions
-				SimpleResult upstream = new SimpleResult();
-				double fi = si * A.get(idx, idx);
-				double loopFactor = LcaCalculator.getLoopFactor(A, s, next.techIndex);
-				fi *= loopFactor;
-				double[] su = solver.solve(A, idx, fi);
-				upstream.totalFlowResults = solver.multiply(B, su);
-				if (C != null) {
-					upstream.totalImpactResults = solver.multiply(
-							C, upstream.totalFlowResults);
+		// each worker runs every n-th iteration with the
+		// random stream of the respective iteration
+		long base = iteration;
+		iteration += iterations;
+		var runs = new Run[iterations];
+		var tasks = new ArrayList<Callable<Void>>(n);
+		for (int w = 0; w < n; w++) {
+			var worker = workers.get(w);
+			int offset = w;
+			tasks.add(() -> {
+				for (int i = offset; i < iterations; i += n) {
+					runs[i] = worker.next(streamOf(base + i));
 				}
+				return null;
+			});
+		}
+		var pool = Executors.newFixedThreadPool(n);
+		try {
+			pool.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("parallel simulation interrupted", e);
+		} finally {
+			pool.shutdown();
+		}
+
+		int count = 0;
+		for (var run : runs) {
+			if (run == null)
+				continue;
+			append(run);
+			count++;
+		}
+		return count;
+	}
 
-				result.append(pinned, direct, upstream);
+	/**
+	 * Disposes the symbolic analyses of the technology matrices that are
+	 * reused in the iterations of the simulation (these can hold native
+	 * memory). This should be called when the simulation is finished or
+	 * cancelled. When the simulator is used again, the analyses are created
+	 * again.
+	 */
+	public void dispose() {
+		main.dispose();
+		for (var worker : workers) {
+			if (worker != main) {
+				worker.dispose();
 			}
-			return next;
-		} catch (Throwable e) {
-			Logger log = LoggerFactory.getLogger(this.getClass());
-			log.trace("simulation run failed", e);
-			return null;
 		}
 	}
 
-	private void generateData(Node node) {
-		FormulaInterpreter fi = node.parameters.simulate();
-		node.data.simulate(fi);
+	/**
+	 * Returns the random stream of the iteration with the given index. The
+	 * seed of the stream is mixed from the seed of the simulation and the
+	 * index so that the streams of neighbouring iterations are independent.
+	 */
+	private SplittableRandom streamOf(long i) {
+		long z = seed + (i + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return new SplittableRandom(z ^ (z >>> 31));
+	}
 
-		if (node.subSystems != null) {
-			for (ProcessProduct subLink : node.subSystems) {
-				// add the LCI result of the sub-system
-				Node sub = nodeIndex.get(subLink.id());
-				if (sub == null)
-					continue;
-				if (sub.lastResult == null
-						|| sub.lastResult.totalFlowResults == null)
-					continue; // should not happen
-				int col = node.data.techIndex.getIndex(subLink);
-				if (col < 0)
-					continue;
-				sub.lastResult.flowIndex.each((i, f) -> {
-					double val = sub.lastResult.totalFlowResults[i];
-					int row = node.data.flowIndex.of(f.flow, f.location);
-					if (row >= 0) {
-						var fm = node.data.flowMatrix.asMutable();
-						fm.set(row, col, val);
-						node.data.flowMatrix = fm;
-					}
-				});
-			}
+	private void append(Run run) {
+		var result = getResult();
+		result.append(run.result);
+		for (var pinned : run.pinned) {
+			result.append(pinned.product, pinned.direct, pinned.upstream);
 		}
 	}
 
 	private void init(IDatabase db, CalculationSetup setup) {
 		long rootID = setup.productSystem.id;
+		main = new Worker(db, pinnedProducts);
 
 		// check whether the root system has sub-system links;
 		// only when this is true we need to collect and order
@@ -245,8 +305,8 @@ public class Simulator {
 			}
 		}
 		if (!hasSubSystems) {
-			root = new Node(setup, db, Collections.emptyMap());
-			nodeIndex.put(root.systemID, root);
+			main.root = new Node(setup, db, Collections.emptyMap());
+			main.nodeIndex.put(main.root.systemID, main.root);
 			return;
 		}
 
@@ -333,11 +393,11 @@ public class Simulator {
 			}
 
 			Node node = new Node(_setup, db, subResults);
-			nodeIndex.put(system, node);
+			main.nodeIndex.put(system, node);
 			if (system == rootID) {
-				root = node;
+				main.root = node;
 			} else {
-				subNodes.add(node);
+				main.subNodes.add(node);
 
 				// for the sub-nodes we need to initialize an empty
 				// result so that the respective host-systems will
@@ -355,13 +415,13 @@ public class Simulator {
 
 		// finally, we add the sub-system links to the nodes so
 		// the we do not need to collect them in the simulation
-		for (Node node : nodeIndex.values()) {
+		for (Node node : main.nodeIndex.values()) {
 			List<LongPair> subRels = allRels.get(node.systemID);
 			if (subRels == null || subRels.isEmpty())
 				continue;
 			node.subSystems = new HashSet<>();
 			for (LongPair rel : subRels) {
-				Node subNode = nodeIndex.get(rel.first);
+				Node subNode = main.nodeIndex.get(rel.first);
 				if (subNode == null)
 					continue;
 				node.subSystems.add(subNode.product);
@@ -369,6 +429,246 @@ public class Simulator {
 		}
 	}
 
+	/**
+	 * A worker runs the iterations of a simulation on its own simulation graph:
+	 * the node of the host-system and the nodes of its sub-systems. Thus,
+	 * multiple workers can run in parallel without sharing mutable state.
+	 */
+	private static class Worker {
+
+		final IDatabase db;
+		final Set<ProcessProduct> pinnedProducts;
+		final MatrixSolver solver;
+
+		/** The random stream of the current iteration of this worker. */
+		private SplittableRandom random;
+
+		/**
+		 * The node of the host-system. This is the node that provides the final
+		 * data of the Monte-Carlo simulation.
+		 */
+		Node root;
+
+		/**
+		 * The topological ordered sub-systems (this is empty when the
+		 * host-system does not contain sub-systems). The matrix data of the
+		 * sub-systems do not contain LCIA data as we only need the LCI (and
+		 * LCC) results of them. The same calculation properties of the
+		 * host-system (allocation method etc.) are shared with these
+		 * sub-systems. In a simulation run we can just calculate the results of
+		 * the sub-system from $0...n$. When a system $j$ depends on a
+		 * sub-system $i$ the topological order assures that it was already
+		 * calculated before.
+		 */
+		final List<Node> subNodes = new ArrayList<>();
+
+		/**
+		 * Maps the ID of a product system to the respective node in the
+		 * simulation graph. Contains all nodes, also the root system.
+		 */
+		final Map<Long, Node> nodeIndex = new HashMap<>();
+
+		Worker(IDatabase db, Set<ProcessProduct> pinnedProducts) {
+			this.db = db;
+			this.pinnedProducts = pinnedProducts;
+			this.solver = MatrixSolver.Instance.getNew();
+		}
+
+		/**
+		 * Creates a copy of this worker with copies of all nodes of the
+		 * simulation graph.
+		 */
+		Worker copy() {
+			var copy = new Worker(db, pinnedProducts);
+			for (var node : nodeIndex.values()) {
+				copy.nodeIndex.put(node.systemID, node.copy(db));
+			}
+			copy.root = copy.nodeIndex.get(root.systemID);
+			for (var sub : subNodes) {
+				copy.subNodes.add(copy.nodeIndex.get(sub.systemID));
+			}
+			return copy;
+		}
+
+		/**
+		 * Runs the next iteration on the simulation graph of this worker with
+		 * the given random stream. Returns `null` if the calculation failed.
+		 */
+		Run next(SplittableRandom random) {
+			this.random = random;
+			try {
+
+				// generate the numbers and calculate the overall result
+				for (var sub : subNodes) {
+					generateData(sub);
+					sub.lastResult = calculate(sub);
+				}
+				generateData(root);
+				var next = calculate(root);
+				var run = new Run(next);
+
+				// calculate results of possible pinned products
+				for (ProcessProduct pinned : pinnedProducts) {
+					int idx = next.techIndex.getIndex(pinned);
+					if (idx < 0)
+						continue;
+
+					// A, B, C, s, t are the standard symbols
+					// in LCA calculations
+					var A = root.data.techMatrix;
+					var B = root.data.flowMatrix;
+					var C = root.data.impactMatrix;
+					double[] s = next.scalingVector;
+
+					// direct contributions
+					SimpleResult direct = new SimpleResult();
+					double si = s[idx];
+					direct.totalFlowResults = B.getColumn(idx);
+					for (int row = 0; row < next.flowIndex.size(); row++) {
+						direct.totalFlowResults[row] *= si;
+					}
+					if (C != null) {
+						direct.totalImpactResults = solver.multiply(
+								C, direct.totalFlowResults);
+					}
+
+					// upstream contributions
+					SimpleResult upstream = new SimpleResult();
+					double fi = si * A.get(idx, idx);
+					double loopFactor = LcaCalculator.getLoopFactor(
+							A, s, next.techIndex);
+					fi *= loopFactor;
+					double[] su = solver.solve(A, idx, fi);
+					upstream.totalFlowResults = solver.multiply(B, su);
+					if (C != null) {
+						upstream.totalImpactResults = solver.multiply(
+								C, upstream.totalFlowResults);
+					}
+
+					run.pinned.add(new PinnedRun(pinned, direct, upstream));
+				}
+				return run;
+			} catch (Throwable e) {
+				Logger log = LoggerFactory.getLogger(this.getClass());
+				log.trace("simulation run failed", e);
+				return null;
+			}
+		}
+
+		/**
+		 * Calculates the result of the given node. The symbolic analysis of
+		 * the technology matrix is done only once and reused in the following
+		 * iterations as long as the sparsity pattern of the matrix does not
+		 * change (the values of CSC matrices are generated in place).
+		 */
+		private SimpleResult calculate(Node node) {
+			var calc = new LcaCalculator(db, node.data);
+			var techMatrix = node.data.techMatrix;
+			if (node.analysis == null
+					|| !node.analysis.isApplicableTo(techMatrix)) {
+				if (node.analysis != null) {
+					node.analysis.dispose();
+				}
+				node.analysis = solver.analyze(techMatrix);
+			}
+			return calc.withAnalysis(node.analysis).calculateSimple();
+		}
+
+		void dispose() {
+			for (var node : nodeIndex.values()) {
+				if (node.analysis != null) {
+					node.analysis.dispose();
+					node.analysis = null;
+				}
+			}
+		}
+
+		private void generateData(Node node) {
+			FormulaInterpreter fi = node.parameters.simulate(random);
+			node.data.simulate(fi, random);
+
+			if (node.subSystems != null) {
+				for (ProcessProduct subLink : node.subSystems) {
+					// add the LCI result of the sub-system
+					Node sub = nodeIndex.get(subLink.id());
+					if (sub == null)
+						continue;
+					if (sub.lastResult == null
+							|| sub.lastResult.totalFlowResults == null)
+						continue; // should not happen
+					int col = node.data.techIndex.getIndex(subLink);
+					if (col < 0)
+						continue;
+					setSubResult(node, sub.lastResult, col);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the LCI result of a sub-system into the given column of the
+	 * intervention matrix of the host-system. If the intervention matrix is a
+	 * CSC matrix, the values are set in place. Its sparsity structure is
+	 * extended once if it does not contain all flows of the sub-system.
+	 */
+	private static void setSubResult(Node host, SimpleResult sub, int col) {
+		var flowIdx = host.data.flowIndex;
+		var rows = new int[sub.flowIndex.size()];
+		sub.flowIndex.each((i, f) -> rows[i] = flowIdx.of(f.flow, f.location));
+
+		if (!(host.data.flowMatrix instanceof CSCMatrix)) {
+			var fm = host.data.flowMatrix.asMutable();
+			for (int i = 0; i < rows.length; i++) {
+				if (rows[i] >= 0) {
+					fm.set(rows[i], col, sub.totalFlowResults[i]);
+				}
+			}
+			host.data.flowMatrix = fm;
+			return;
+		}
+
+		var csc = (CSCMatrix) host.data.flowMatrix;
+		for (int i = 0; i < rows.length; i++) {
+			int row = rows[i];
+			if (row < 0)
+				continue;
+			int idx = csc.indexOf(row, col);
+			if (idx < 0) {
+				var cols = new int[rows.length];
+				Arrays.fill(cols, col);
+				csc = csc.withCells(rows, cols);
+				host.data.flowMatrix = csc;
+				idx = csc.indexOf(row, col);
+			}
+			csc.values[idx] = sub.totalFlowResults[i];
+		}
+	}
+
+	/**
+	 * The result of a single iteration.
+	 */
+	private static class Run {
+		final SimpleResult result;
+		final List<PinnedRun> pinned = new ArrayList<>();
+
+		Run(SimpleResult result) {
+			this.result = result;
+		}
+	}
+
+	private static class PinnedRun {
+		final ProcessProduct product;
+		final SimpleResult direct;
+		final SimpleResult upstream;
+
+		PinnedRun(ProcessProduct product,
+				SimpleResult direct, SimpleResult upstream) {
+			this.product = product;
+			this.direct = direct;
+			this.upstream = upstream;
+		}
+	}
+
 	/**
 	 * A node contains the data for the simulation of a single product (sub-)
 	 * system.
@@ -379,9 +679,23 @@ public class Simulator {
 		final MatrixData data;
 		final ParameterTable parameters;
 
+		/**
+		 * The parameter contexts and redefinitions of the node; we keep them
+		 * to create copies of the parameter table in parallel simulations.
+		 */
+		final Set<Long> paramContexts;
+		final List<ParameterRedef> paramRedefs;
+
 		Set<ProcessProduct> subSystems;
 		SimpleResult lastResult;
 
+		/**
+		 * The symbolic analysis of the technology matrix of the node which is
+		 * reused in the iterations of the simulation. Each copy of a node
+		 * creates its own analysis.
+		 */
+		SymbolicAnalysis analysis;
+
 		Node(CalculationSetup setup, IDatabase db,
 				Map<ProcessProduct, SimpleResult> subResults) {
 
@@ -390,7 +704,7 @@ public class Simulator {
 			data = MatrixData.of(db, setup, subResults);
 
 			// parameters
-			HashSet<Long> paramContexts = new HashSet<>();
+			paramContexts = new HashSet<>();
 			data.techIndex.each((i, p) -> {
 				if (p.process != null
 						&& p.process.type == ModelType.PROCESS) {
@@ -402,8 +716,29 @@ public class Simulator {
 						setup.impactMethod.id)
 						.forEach(d -> paramContexts.add(d.id));
 			}
+			paramRedefs = new ArrayList<>(setup.parameterRedefs);
+			parameters = ParameterTable.forSimulation(
+					db, paramContexts, paramRedefs);
+		}
+
+		private Node(Node other, IDatabase db) {
+			systemID = other.systemID;
+			product = other.product;
+			data = other.data.copy();
+			paramContexts = other.paramContexts;
+			paramRedefs = other.paramRedefs;
 			parameters = ParameterTable.forSimulation(
-					db, paramContexts, setup.parameterRedefs);
+					db, paramContexts, paramRedefs);
+			subSystems = other.subSystems;
+			lastResult = other.lastResult;
+		}
+
+		/**
+		 * Creates a copy of this node with its own matrix data and parameter
+		 * table so that it can be used in parallel to this node.
+		 */
+		Node copy(IDatabase db) {
+			return new Node(this, db);
 		}
 	}
 
@@ -0,0 +1,242 @@
+package org.openlca.core.math;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.openlca.core.database.FlowDao;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.ProductSystemDao;
+import org.openlca.core.matrix.LongPair;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.model.ProductSystem;
+import org.openlca.core.results.SimpleResult;
+import org.openlca.util.TopoSort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calculates the results of the sub-systems of a product system. The
+ * sub-system graph is collected once and each product system is loaded only
+ * once from the database. The sub-systems are then calculated in topological
+ * order, level by level, where the sub-systems of a level are calculated in
+ * parallel. A sub-system that occurs under multiple hosts is calculated only
+ * once for each distinct setup; the setups are identified by the ID of the
+ * sub-system and a fingerprint of the calculation relevant properties (see
+ * `keyOf`).
+ * <p>
+ * An instance of this class is used for a single calculation. It does not
+ * cache results across calculations as the underlying data may change.
+ */
+class SubSystemCalculator {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final IDatabase db;
+
+	/** The loaded product systems: system ID -> system. */
+	private final Map<Long, ProductSystem> systems = new HashMap<>();
+
+	/** The sub-system products of the loaded systems: system ID -> products. */
+	private final Map<Long, Set<ProcessProduct>> links = new HashMap<>();
+
+	/** The calculation nodes: setup key -> node. */
+	private final Map<String, Node> nodes = new HashMap<>();
+
+	SubSystemCalculator(IDatabase db) {
+		this.db = db;
+	}
+
+	/**
+	 * Calculates the sub-systems of the product system of the given setup. It
+	 * returns an empty map when there are no sub-systems.
+	 */
+	Map<ProcessProduct, SimpleResult> calculate(CalculationSetup setup) {
+		if (setup == null || setup.productSystem == null)
+			return Collections.emptyMap();
+		var root = setup.productSystem;
+		systems.put(root.id, root);
+		var order = collectGraph(root);
+		if (order.isEmpty())
+			return Collections.emptyMap();
+
+		// create the nodes top-down: the setup of a sub-system depends on the
+		// setup of its host; the topological order contains the sub-systems
+		// before their hosts, so we iterate it in reverse order
+		var rootNode = new Node(setup);
+		var bySystem = new HashMap<Long, List<Node>>();
+		bySystem.put(root.id, List.of(rootNode));
+		for (int i = order.size() - 1; i >= 0; i--) {
+			long systemId = order.get(i);
+			var hosts = bySystem.get(systemId);
+			var products = links.get(systemId);
+			if (hosts == null || products == null)
+				continue;
+			for (var host : hosts) {
+				for (var product : products) {
+					var sub = nodeOf(host.setup, product.id());
+					if (sub == null)
+						continue;
+					host.subNodes.put(product, sub);
+					var subs = bySystem.computeIfAbsent(
+							product.id(), id -> new ArrayList<>());
+					if (!subs.contains(sub)) {
+						subs.add(sub);
+					}
+				}
+			}
+		}
+
+		// calculate the nodes bottom-up, level by level
+		var levels = new HashMap<Integer, List<Node>>();
+		int maxLevel = 0;
+		for (long systemId : order) {
+			var sysNodes = bySystem.get(systemId);
+			if (sysNodes == null)
+				continue;
+			for (var node : sysNodes) {
+				if (node == rootNode)
+					continue;
+				int level = 0;
+				for (var sub : node.subNodes.values()) {
+					level = Math.max(level, sub.level + 1);
+				}
+				node.level = level;
+				maxLevel = Math.max(maxLevel, level);
+				levels.computeIfAbsent(level, l -> new ArrayList<>()).add(node);
+			}
+		}
+		for (int level = 0; level <= maxLevel; level++) {
+			var levelNodes = levels.get(level);
+			if (levelNodes == null)
+				continue;
+			log.trace("calculate {} sub-systems on level {}",
+					levelNodes.size(), level);
+			levelNodes.parallelStream().forEach(Node::calculate);
+		}
+		return rootNode.subResults();
+	}
+
+	/**
+	 * Collects the sub-system graph of the given root system and returns the
+	 * IDs of the systems in topological order: the sub-systems come before
+	 * their hosts.
+	 */
+	private List<Long> collectGraph(ProductSystem root) {
+		var sysDao = new ProductSystemDao(db);
+		var flowDao = new FlowDao(db);
+		var rels = new HashSet<LongPair>();
+		var queue = new ArrayList<ProductSystem>();
+		queue.add(root);
+		while (!queue.isEmpty()) {
+			var system = queue.remove(queue.size() - 1);
+			if (system.withoutNetwork)
+				continue;
+			var products = new HashSet<ProcessProduct>();
+			for (var link : system.processLinks) {
+				if (!link.isSystemLink)
+					continue;
+				var sys = sysDao.getDescriptor(link.providerId);
+				var flow = flowDao.getDescriptor(link.flowId);
+				if (sys == null || flow == null) {
+					log.error("could not load descriptors of system link {}", link);
+					continue;
+				}
+				products.add(ProcessProduct.of(sys, flow));
+				rels.add(LongPair.of(sys.id, system.id));
+				if (systems.containsKey(sys.id))
+					continue;
+				var sub = sysDao.getForId(sys.id);
+				systems.put(sys.id, sub);
+				if (sub != null) {
+					queue.add(sub);
+				}
+			}
+			if (!products.isEmpty()) {
+				links.put(system.id, products);
+			}
+		}
+		if (rels.isEmpty())
+			return Collections.emptyList();
+		var order = TopoSort.of(rels);
+		if (order == null)
+			throw new RuntimeException(
+					"there are sub-system cycles in the product system");
+		return order;
+	}
+
+	/**
+	 * Returns the node of the given sub-system under a host with the given
+	 * setup. Returns an existing node if there is one for an equivalent setup.
+	 */
+	private Node nodeOf(CalculationSetup hostSetup, long systemId) {
+		var system = systems.get(systemId);
+		if (system == null)
+			return null;
+		var setup = new CalculationSetup(system);
+		setup.parameterRedefs.addAll(hostSetup.parameterRedefs);
+		ParameterRedefs.addTo(setup, system);
+		setup.withCosts = hostSetup.withCosts;
+		setup.withUncertainties = hostSetup.withUncertainties;
+		setup.withRegionalization = hostSetup.withRegionalization;
+		setup.allocationMethod = hostSetup.allocationMethod;
+		return nodes.computeIfAbsent(keyOf(setup), key -> new Node(setup));
+	}
+
+	/**
+	 * Creates the cache key of the given sub-system setup from the ID of the
+	 * system and the setup properties that are relevant for its result. The
+	 * parameter redefinitions are sorted so that their order does not matter.
+	 */
+	static String keyOf(CalculationSetup setup) {
+		var redefs = setup.parameterRedefs.stream()
+				.map(redef -> redef.contextType + ":" + redef.contextId + ":"
+						+ (redef.name == null
+								? ""
+								: redef.name.trim().toLowerCase())
+						+ "=" + redef.value)
+				.sorted()
+				.collect(Collectors.joining(";"));
+		return setup.productSystem.id
+				+ "|" + setup.allocationMethod
+				+ "|" + setup.withCosts
+				+ "|" + setup.withUncertainties
+				+ "|" + setup.withRegionalization
+				+ "|" + redefs;
+	}
+
+	private class Node {
+
+		final CalculationSetup setup;
+		final Map<ProcessProduct, Node> subNodes = new HashMap<>();
+		int level;
+		SimpleResult result;
+
+		Node(CalculationSetup setup) {
+			this.setup = setup;
+		}
+
+		Map<ProcessProduct, SimpleResult> subResults() {
+			if (subNodes.isEmpty())
+				return Collections.emptyMap();
+			var results = new HashMap<ProcessProduct, SimpleResult>();
+			for (var e : subNodes.entrySet()) {
+				var r = e.getValue().result;
+				if (r != null) {
+					results.put(e.getKey(), r);
+				}
+			}
+			return results;
+		}
+
+		void calculate() {
+			var data = MatrixData.of(db, setup, subResults());
+			result = new LcaCalculator(db, data).calculateSimple();
+		}
+	}
+}
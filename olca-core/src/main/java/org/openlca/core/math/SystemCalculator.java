@@ -1,21 +1,18 @@
 package org.openlca.core.math;
 
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
-import org.openlca.core.database.FlowDao;
 import org.openlca.core.database.IDatabase;
-import org.openlca.core.database.ProductSystemDao;
 import org.openlca.core.library.LibraryDir;
 import org.openlca.core.matrix.MatrixData;
 import org.openlca.core.matrix.ProcessProduct;
 import org.openlca.core.matrix.solvers.JavaSolver;
 import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.core.model.ParameterRedef;
 import org.openlca.core.model.Project;
-import org.openlca.core.model.ProjectVariant;
-import org.openlca.core.model.descriptors.Descriptor;
 import org.openlca.core.results.ContributionResult;
 import org.openlca.core.results.FullResult;
 import org.openlca.core.results.ProjectResult;
@@ -28,8 +25,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Calculates the results of a calculation setup or project. The same calculator
  * can be used for different setups. The product systems of the setups may
- * contain sub-systems. The calculator does not check if there are obvious
- * errors like sub-system cycles etc.
+ * contain sub-systems. A calculation fails with an exception when there are
+ * cycles in the sub-system graph of a product system.
  */
 public class SystemCalculator {
 
@@ -55,36 +52,29 @@ public class SystemCalculator {
 		return calculator(setup).calculateFull();
 	}
 
-	public ProjectResult calculate(Project project) {
-		ProjectResult result = new ProjectResult();
-		if (project == null)
-			return result;
-
-		var method = project.impactMethod != null
-				? Descriptor.of(project.impactMethod)
-				: null;
-		var nwSet = project.nwSet != null
-				? Descriptor.of(project.nwSet)
-				: null;
-
-		// calculate the project variants
-		for (ProjectVariant v : project.variants) {
-			if (v.isDisabled)
-				continue;
-			var setup = new CalculationSetup(v.productSystem);
-			setup.setUnit(v.unit);
-			setup.setFlowPropertyFactor(v.flowPropertyFactor);
-			setup.setAmount(v.amount);
-			setup.allocationMethod = v.allocationMethod;
-			setup.impactMethod = method;
-			setup.nwSet = nwSet;
-			setup.parameterRedefs.addAll(v.parameterRedefs);
-			setup.withCosts = true;
-			// TODO: how to handle regionalization here?
-			ContributionResult cr = calculateContributions(setup);
-			result.addResult(v, cr);
+	/**
+	 * Calculates the given setup for each of the given parameter scenarios. A
+	 * scenario is a list of parameter redefinitions that are applied on top of
+	 * the redefinitions of the setup. The matrices are built only once for all
+	 * scenarios (see `ScenarioCalculator`).
+	 */
+	public List<SimpleResult> calculateScenarios(CalculationSetup setup,
+			List<? extends Collection<ParameterRedef>> scenarios) {
+		log.trace("calculate product system - {} scenarios",
+				scenarios == null ? 0 : scenarios.size());
+		var calculator = ScenarioCalculator.of(db, setup);
+		try {
+			return calculator.calculateAll(scenarios);
+		} finally {
+			calculator.dispose();
 		}
-		return result;
+	}
+
+	/**
+	 * Calculates the variants of the given project (see `ProjectCalculator`).
+	 */
+	public ProjectResult calculate(Project project) {
+		return new ProjectCalculator(db).calculate(project);
 	}
 
 	private LcaCalculator calculator(CalculationSetup setup) {
@@ -94,8 +84,10 @@ public class SystemCalculator {
 	}
 
 	/**
-	 * Calculates (recursively) the sub-systems of the product system of the
-	 * given setup. It returns an empty map when there are no subsystems.
+	 * Calculates the sub-systems of the product system of the given setup. It
+	 * returns an empty map when there are no subsystems. Each sub-system is
+	 * calculated only once per distinct setup, in topological order (see
+	 * `SubSystemCalculator`).
 	 */
 	private Map<ProcessProduct, SimpleResult> calculateSubSystems(
 			CalculationSetup setup) {
@@ -103,41 +95,6 @@ public class SystemCalculator {
 				|| setup.productSystem == null
 				|| setup.productSystem.withoutNetwork)
 			return Collections.emptyMap();
-
-		// collect the sub-systems
-		var subSystems = new HashSet<ProcessProduct>();
-		var sysDao = new ProductSystemDao(db);
-		var flowDao = new FlowDao(db);
-		for (var link : setup.productSystem.processLinks) {
-			if (!link.isSystemLink)
-				continue;
-			var sys = sysDao.getDescriptor(link.providerId);
-			var flow = flowDao.getDescriptor(link.flowId);
-			if (sys == null || flow == null) {
-				log.error("could not load descriptors of system link {}", link);
-				continue;
-			}
-			subSystems.add(ProcessProduct.of(sys, flow));
-		}
-		if (subSystems.isEmpty())
-			return Collections.emptyMap();
-
-		// calculate the LCI results of the sub-systems
-		var subResults = new HashMap<ProcessProduct, SimpleResult>();
-		for (var pp : subSystems) {
-			var subSystem = sysDao.getForId(pp.id());
-			if (subSystem == null)
-				continue;
-			var subSetup = new CalculationSetup(subSystem);
-			subSetup.parameterRedefs.addAll(setup.parameterRedefs);
-			ParameterRedefs.addTo(subSetup, subSystem);
-			subSetup.withCosts = setup.withCosts;
-			subSetup.withUncertainties = setup.withUncertainties;
-			subSetup.withRegionalization = setup.withRegionalization;
-			subSetup.allocationMethod = setup.allocationMethod;
-			var subResult = calculateSimple(subSetup);
-			subResults.put(pp, subResult);
-		}
-		return subResults;
+		return new SubSystemCalculator(db).calculate(setup);
 	}
 }
@@ -51,9 +51,7 @@ class Accumulator {
 				return;
 			}
 		}
-		double w = aggType == AggregationType.WEIGHTED_SQUARED_AVERAGE
-			? Math.pow(weight, 2)
-			: Math.abs(weight);
+		double w = weightOf(weight);
 		accSum += _dq * w;
 		accTotalWeight += w;
 	}
@@ -77,13 +75,7 @@ class Accumulator {
 		if (aggType == AggregationType.MAXIMUM) {
 			return (byte) Math.min(accMax, max);
 		}
-		if (accTotalWeight == 0)
-			return 0;
-		double value = accSum / accTotalWeight;
-		byte accDQ = ceiling
-			? (byte) Math.round(Math.ceil(value))
-			: (byte) Math.round(value);
-		return min(accDQ, max);
+		return scoreOf(accSum, accTotalWeight);
 	}
 
 	/**
@@ -124,15 +116,53 @@ class Accumulator {
 			value += dq * weight;
 		}
 
+		return scoreOf(value, totalWeight);
+	}
+
+	/**
+	 * Returns the value of the given score in a weighted average or `0` if the
+	 * score should be skipped.
+	 */
+	byte valueOf(byte dq) {
+		if (dq != 0)
+			return dq;
+		return zeroToMax ? max : 0;
+	}
+
+	/**
+	 * Returns the weight of the given value in a weighted average.
+	 */
+	double weightOf(double weight) {
+		return aggType == AggregationType.WEIGHTED_SQUARED_AVERAGE
+			? Math.pow(weight, 2)
+			: Math.abs(weight);
+	}
+
+	/**
+	 * Returns the score of a weighted average with the given sum of the
+	 * weighted values and the total weight.
+	 */
+	byte scoreOf(double sum, double totalWeight) {
 		if (totalWeight == 0)
 			return 0;
-		value /= totalWeight;
+		double value = sum / totalWeight;
 		byte m = ceiling
 			? (byte) Math.round(Math.ceil(value))
 			: (byte) Math.round(value);
 		return min(m, max);
 	}
 
+	/**
+	 * Returns the score of a maximum aggregation with the given maximum of the
+	 * scores and a flag that indicates whether a missing score (`0`) was
+	 * contained in the scores.
+	 */
+	byte scoreOf(byte maxDQ, boolean withNA) {
+		return withNA && zeroToMax
+			? max
+			: min(maxDQ, max);
+	}
+
 	private static byte min(byte b1, byte b2) {
 		return b1 > b2 ? b2 : b1;
 	}
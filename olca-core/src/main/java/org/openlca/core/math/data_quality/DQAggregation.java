@@ -0,0 +1,297 @@
+package org.openlca.core.math.data_quality;
+
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import org.openlca.core.matrix.format.DenseByteMatrix;
+import org.openlca.core.results.solutions.ResultProvider;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Aggregates the exchange data quality scores of a result. Only the non-zero
+ * entries of the scaled intervention matrix and the characterization matrix
+ * are visited: a zero weight does not change a weighted average and the
+ * maximum aggregation does not depend on the weights at all. The indicators
+ * are aggregated in parallel and the entries are visited in the same order
+ * as in a dense iteration so that the results are exactly the same.
+ */
+class DQAggregation {
+
+	private final DQCalculationSetup setup;
+	private final ResultProvider provider;
+	private final DenseByteMatrix[] exchangeData;
+	private final byte max;
+
+	private final int k;
+	private final int m;
+	private final int n;
+	private final int q;
+
+	/** The scaled intervention matrix with the flows in the rows. */
+	private Rows flows;
+
+	/** The characterization matrix with the impacts in the rows. */
+	private Rows factors;
+
+	/** A k*m matrix with the aggregated flow results. */
+	DenseByteMatrix flowResult;
+
+	/** A k*q matrix with the aggregated impact results. */
+	DenseByteMatrix impactResult;
+
+	/** A q*m matrix with the impact results per flow for each indicator. */
+	DenseByteMatrix[] flowImpactResult;
+
+	/** A q*n matrix with the impact results per product for each indicator. */
+	DenseByteMatrix[] processImpactResult;
+
+	private DQAggregation(DQCalculationSetup setup, ResultProvider provider,
+			DenseByteMatrix[] exchangeData) {
+		this.setup = setup;
+		this.provider = provider;
+		this.exchangeData = exchangeData;
+		this.max = (byte) setup.exchangeSystem.getScoreCount();
+		this.k = exchangeData.length;
+		this.m = provider.flowIndex().size();
+		this.n = provider.techIndex().size();
+		this.q = provider.hasImpacts()
+			? provider.impactIndex().size()
+			: 0;
+	}
+
+	/**
+	 * Aggregates the given exchange data with the flow results of the given
+	 * provider. The exchange data contain a flow*product matrix for each data
+	 * quality indicator of the exchange system of the setup. The impact
+	 * results are only calculated when the provider has impact results.
+	 */
+	static DQAggregation of(DQCalculationSetup setup,
+			ResultProvider provider, DenseByteMatrix[] exchangeData) {
+		var agg = new DQAggregation(setup, provider, exchangeData);
+		agg.run();
+		return agg;
+	}
+
+	private void run() {
+		flowResult = new DenseByteMatrix(k, m);
+		boolean withImpacts = q > 0;
+		if (withImpacts) {
+			impactResult = new DenseByteMatrix(k, q);
+			flowImpactResult = new DenseByteMatrix[k];
+			processImpactResult = new DenseByteMatrix[k];
+			for (int i = 0; i < k; i++) {
+				flowImpactResult[i] = new DenseByteMatrix(q, m);
+				processImpactResult[i] = new DenseByteMatrix(q, n);
+			}
+		}
+
+		boolean isMaximum = setup.aggregationType == AggregationType.MAXIMUM;
+		if (!isMaximum) {
+			flows = Rows.of(m, n, provider::directFlowsOf);
+			if (withImpacts) {
+				factors = Rows.of(q, m, provider::impactFactorsOf);
+			}
+		}
+
+		IntStream.range(0, k).parallel().forEach(indicator -> {
+			var acc = new Accumulator(setup, max);
+			if (isMaximum) {
+				maxOf(indicator, acc);
+				return;
+			}
+			averageFlowsOf(indicator, acc);
+			if (withImpacts) {
+				averageImpactsOf(indicator, acc);
+			}
+		});
+	}
+
+	/**
+	 * For the maximum aggregation, the flow and flow-impact results are the
+	 * maximum scores of the flow rows, the process-impact results the maximum
+	 * scores of the product columns, and the impact results the maximum of the
+	 * flow results; independent of the respective weights.
+	 */
+	private void maxOf(int indicator, Accumulator acc) {
+		byte[] data = exchangeData[indicator].data;
+		byte[] rowMax = new byte[m];
+		boolean[] rowNA = new boolean[m];
+		byte[] colMax = new byte[n];
+		boolean[] colNA = new boolean[n];
+		for (int product = 0; product < n; product++) {
+			int offset = product * m;
+			for (int flow = 0; flow < m; flow++) {
+				byte dq = data[offset + flow];
+				if (dq == 0) {
+					rowNA[flow] = true;
+					colNA[product] = true;
+					continue;
+				}
+				if (dq > rowMax[flow]) {
+					rowMax[flow] = dq;
+				}
+				if (dq > colMax[product]) {
+					colMax[product] = dq;
+				}
+			}
+		}
+
+		byte total = 0;
+		for (int flow = 0; flow < m; flow++) {
+			byte score = acc.scoreOf(rowMax[flow], rowNA[flow]);
+			flowResult.set(indicator, flow, score);
+			if (score > total) {
+				total = score;
+			}
+			if (q > 0) {
+				var flowImpacts = flowImpactResult[indicator];
+				for (int impact = 0; impact < q; impact++) {
+					flowImpacts.set(impact, flow, score);
+				}
+			}
+		}
+		if (q == 0)
+			return;
+
+		var processImpacts = processImpactResult[indicator];
+		for (int product = 0; product < n; product++) {
+			byte score = acc.scoreOf(colMax[product], colNA[product]);
+			for (int impact = 0; impact < q; impact++) {
+				processImpacts.set(impact, product, score);
+			}
+		}
+		for (int impact = 0; impact < q; impact++) {
+			impactResult.set(indicator, impact, total);
+		}
+	}
+
+	private void averageFlowsOf(int indicator, Accumulator acc) {
+		byte[] data = exchangeData[indicator].data;
+		for (int flow = 0; flow < m; flow++) {
+			double sum = 0;
+			double totalWeight = 0;
+			for (int i = flows.offsets[flow]; i < flows.offsets[flow + 1]; i++) {
+				byte dq = acc.valueOf(data[flow + m * flows.indices[i]]);
+				if (dq == 0)
+					continue;
+				double w = acc.weightOf(flows.values[i]);
+				sum += dq * w;
+				totalWeight += w;
+			}
+			flowResult.set(indicator, flow, acc.scoreOf(sum, totalWeight));
+		}
+	}
+
+	private void averageImpactsOf(int indicator, Accumulator acc) {
+		byte[] data = exchangeData[indicator].data;
+		var flowImpacts = flowImpactResult[indicator];
+		var processImpacts = processImpactResult[indicator];
+
+		// the primitive accumulators of the products
+		double[] productSums = new double[n];
+		double[] productWeights = new double[n];
+		boolean[] visited = new boolean[n];
+		int[] visitedProducts = new int[n];
+
+		for (int impact = 0; impact < q; impact++) {
+			double sum = 0;
+			double totalWeight = 0;
+			int visitCount = 0;
+
+			for (int j = factors.offsets[impact]; j < factors.offsets[impact + 1]; j++) {
+				int flow = factors.indices[j];
+				double factor = factors.values[j];
+				double flowSum = 0;
+				double flowWeight = 0;
+				for (int i = flows.offsets[flow]; i < flows.offsets[flow + 1]; i++) {
+					int product = flows.indices[i];
+					byte dq = acc.valueOf(data[flow + m * product]);
+					if (dq == 0)
+						continue;
+					double w = acc.weightOf(factor * flows.values[i]);
+					double value = dq * w;
+					sum += value;
+					totalWeight += w;
+					flowSum += value;
+					flowWeight += w;
+					productSums[product] += value;
+					productWeights[product] += w;
+					if (!visited[product]) {
+						visited[product] = true;
+						visitedProducts[visitCount++] = product;
+					}
+				}
+				flowImpacts.set(impact, flow, acc.scoreOf(flowSum, flowWeight));
+			}
+
+			impactResult.set(indicator, impact, acc.scoreOf(sum, totalWeight));
+			for (int v = 0; v < visitCount; v++) {
+				int product = visitedProducts[v];
+				processImpacts.set(impact, product, acc.scoreOf(
+					productSums[product], productWeights[product]));
+				productSums[product] = 0;
+				productWeights[product] = 0;
+				visited[product] = false;
+			}
+		}
+	}
+
+	/**
+	 * The non-zero entries of a matrix in compressed rows. Within a row, the
+	 * entries are sorted by their column indices.
+	 */
+	private static class Rows {
+
+		final int[] offsets;
+		final int[] indices;
+		final double[] values;
+
+		private Rows(int[] offsets, int[] indices, double[] values) {
+			this.offsets = offsets;
+			this.indices = indices;
+			this.values = values;
+		}
+
+		/**
+		 * Collects the non-zero entries of the matrix with the given columns.
+		 */
+		static Rows of(int rows, int columns, IntFunction<double[]> column) {
+			var rowIdx = new TIntArrayList();
+			var colIdx = new TIntArrayList();
+			var vals = new TDoubleArrayList();
+			int[] offsets = new int[rows + 1];
+			for (int col = 0; col < columns; col++) {
+				double[] values = column.apply(col);
+				if (values == null)
+					continue;
+				for (int row = 0; row < values.length; row++) {
+					double val = values[row];
+					if (val == 0)
+						continue;
+					rowIdx.add(row);
+					colIdx.add(col);
+					vals.add(val);
+					offsets[row + 1]++;
+				}
+			}
+			for (int row = 0; row < rows; row++) {
+				offsets[row + 1] += offsets[row];
+			}
+
+			// a stable counting sort keeps the column order within the rows
+			int size = vals.size();
+			int[] indices = new int[size];
+			double[] values = new double[size];
+			int[] next = new int[rows];
+			System.arraycopy(offsets, 0, next, 0, rows);
+			for (int i = 0; i < size; i++) {
+				int pos = next[rowIdx.getQuick(i)]++;
+				indices[pos] = colIdx.getQuick(i);
+				values[pos] = vals.getQuick(i);
+			}
+			return new Rows(offsets, indices, values);
+		}
+	}
+}
@@ -83,8 +83,7 @@ public class DQResult {
 		var r = new DQResult(setup, result);
 		r.loadProcessData(db);
 		r.loadExchangeData(db);
-		r.calculateFlowResults();
-		r.calculateImpactResults();
+		r.aggregate();
 		return r;
 	}
 
@@ -315,107 +314,20 @@ public class DQResult {
 
 	/**
 	 * Aggregate the raw exchange DQ values with the direct flow contribution
-	 * results if applicable.
+	 * results and, if available, the impact factors.
 	 */
-	private void calculateFlowResults() {
-		if (setup.aggregationType == AggregationType.NONE
+	private void aggregate() {
+		if (setup.aggregationType == null
+			|| setup.aggregationType == AggregationType.NONE
 			|| exchangeData == null)
 			return;
-
-		var system = setup.exchangeSystem;
-		int n = result.techIndex.size();
-		int k = system.indicators.size();
-		int m = result.flowIndex.size();
-		flowResult = new DenseByteMatrix(k, m);
-		byte max = (byte) system.getScoreCount();
-
-		var acc = new Accumulator(setup, max);
-		var flowContributions = new double[n];
-		for (int indicator = 0; indicator < k; indicator++) {
-			var b = exchangeData[indicator];
-			for (int flow = 0; flow < m; flow++) {
-				byte[] dqs = b.getRow(flow);
-				for (int product = 0; product < n; product++) {
-					flowContributions[product] = result.provider
-						.directFlowOf(flow, product);
-				}
-				flowResult.set(indicator, flow, acc.get(dqs, flowContributions));
-			}
-		}
-	}
-
-	private void calculateImpactResults() {
-		if (setup.aggregationType == AggregationType.NONE
-			|| exchangeData == null
-			|| !result.hasImpactResults())
+		var agg = DQAggregation.of(setup, result.provider, exchangeData);
+		flowResult = agg.flowResult;
+		if (!result.hasImpactResults())
 			return;
-		var provider = result.provider;
-		if (!provider.hasImpacts())
-			return;
-
-		// initialize the results
-		var system = setup.exchangeSystem;
-		int k = system.indicators.size();
-		int m = result.flowIndex.size();
-		int n = result.techIndex.size();
-		int q = result.impactIndex.size();
-		byte max = (byte) system.getScoreCount();
-		impactResult = new DenseByteMatrix(k, q);
-		flowImpactResult = new DenseByteMatrix[k];
-		processImpactResult = new DenseByteMatrix[k];
-		for (int i = 0; i < k; i++) {
-			flowImpactResult[i] = new DenseByteMatrix(q, m);
-			processImpactResult[i] = new DenseByteMatrix(q, n);
-		}
-
-		// initialize the accumulators
-		var totalImpactAcc = new Accumulator(setup, max);
-		var flowImpactAcc = new Accumulator(setup, max);
-		var processAccs = new Accumulator[n];
-		for (int j = 0; j < n; j++) {
-			processAccs[j] = new Accumulator(setup, max);
-		}
-
-		for (int indicator = 0; indicator < k; indicator++) {
-			var b = exchangeData[indicator];
-
-			for (int impact = 0; impact < q; impact++) {
-
-				// reset the accumulators
-				totalImpactAcc.reset();
-				for (var acc : processAccs) {
-					acc.reset();
-				}
-
-				for (int flow = 0; flow < m; flow++) {
-
-					// get DQ data and calculate weights
-					byte[] dqs = b.getRow(flow);
-					double factor = provider.impactFactorOf(impact, flow);
-
-					double[] weights = new double[provider.techIndex().size()];
-					for (int product = 0; product < weights.length; product++) {
-						weights[product] = factor * provider.directFlowOf(
-							flow, product);
-					}
-
-					// add data
-					totalImpactAcc.addAll(dqs, weights);
-					flowImpactResult[indicator].set(
-						impact, flow, flowImpactAcc.get(dqs, weights));
-					for (int process = 0; process < n; process++) {
-						processAccs[process].add(dqs[process], weights[process]);
-					}
-
-				} // each flow
-
-				impactResult.set(indicator, impact, totalImpactAcc.get());
-				for (int process = 0; process < n; process++) {
-					processImpactResult[indicator].set(
-						impact, process, processAccs[process].get());
-				}
-			} // each impact
-		} // each indicator
+		impactResult = agg.impactResult;
+		flowImpactResult = agg.flowImpactResult;
+		processImpactResult = agg.processImpactResult;
 	}
 
 	private static int[] toInt(byte[] bytes) {
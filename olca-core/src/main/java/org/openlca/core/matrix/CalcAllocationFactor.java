@@ -33,6 +33,28 @@ public class CalcAllocationFactor {
 		return factor;
 	}
 
+	/**
+	 * Creates a copy of this factor with its current state (e.g. a cached value
+	 * of an evaluated formula).
+	 */
+	public CalcAllocationFactor copy() {
+		var copy = new CalcAllocationFactor(processID);
+		copy.amount = amount;
+		copy.evaluated = evaluated;
+		copy.formula = formula;
+		return copy;
+	}
+
+	/** Returns true if a formula is bound to this allocation factor. */
+	public boolean hasFormula() {
+		return formula != null;
+	}
+
+	/** Returns the formula of this factor or `null` if it has no formula. */
+	public String formula() {
+		return formula;
+	}
+
 	/**
 	 * Get the value of the allocation factor. If no formula is bound to the factor,
 	 * simply the value of the factor is returned. Otherwise, the value of the
@@ -58,6 +80,28 @@ public class CalcAllocationFactor {
 		return amount;
 	}
 
+	/**
+	 * Evaluates the formula of this factor with the given interpreter without
+	 * caching the value. In contrast to `get` and `force`, this does not modify
+	 * the factor, so that it can be called with different interpreters from
+	 * multiple threads.
+	 */
+	public double eval(FormulaInterpreter interpreter) {
+		if (formula == null || interpreter == null)
+			return amount;
+		try {
+			var scope = interpreter.getScope(processID);
+			return scope.isPresent()
+					? scope.get().eval(formula)
+					: interpreter.eval(formula);
+		} catch (Exception e) {
+			var log = LoggerFactory.getLogger(getClass());
+			log.error("failed to evaluate formula of allocation factor: "
+					+ formula);
+			return amount;
+		}
+	}
+
 	/**
 	 * If the allocation factor is bound to a formula, this formula is always
 	 * evaluated. No cached value is returned in contrast to the `get` method.
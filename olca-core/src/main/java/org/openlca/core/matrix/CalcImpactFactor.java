@@ -36,6 +36,24 @@ public class CalcImpactFactor {
 				&& uncertaintyType != UncertaintyType.NONE;
 	}
 
+	/**
+	 * Creates a copy of this factor; see {@link CalcExchange#copy()}.
+	 */
+	public CalcImpactFactor copy() {
+		var copy = new CalcImpactFactor();
+		copy.imactCategoryId = imactCategoryId;
+		copy.flowId = flowId;
+		copy.isInput = isInput;
+		copy.conversionFactor = conversionFactor;
+		copy.amount = amount;
+		copy.formula = formula;
+		copy.uncertaintyType = uncertaintyType;
+		copy.parameter1 = parameter1;
+		copy.parameter2 = parameter2;
+		copy.parameter3 = parameter3;
+		return copy;
+	}
+
 	public double matrixValue(FormulaInterpreter interpreter) {
 
 		double a = amount;
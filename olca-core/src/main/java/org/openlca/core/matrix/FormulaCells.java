@@ -0,0 +1,274 @@
+package org.openlca.core.matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.expressions.FormulaInterpreter;
+import org.openlca.formula.Formulas;
+import org.openlca.util.Strings;
+
+/**
+ * Contains the cells of a matrix (or the entries of a vector) with values that
+ * depend on formulas of exchanges, allocation factors, or characterization
+ * factors. The value of such a cell is the sum of a constant part and the
+ * values of its formula terms. Thus, the cells can be re-evaluated with
+ * another formula interpreter (e.g. with other parameter values) without
+ * rebuilding the matrix. The formula cells are collected when the matrices
+ * are built with `withFormulaCells(true)` (see `MatrixConfig`).
+ */
+public final class FormulaCells {
+
+	/** The cells by their positions in the order in which they were added. */
+	private final LinkedHashMap<Long, Cell> map = new LinkedHashMap<>();
+
+	/**
+	 * The list of the cells. It is created in `finish` so that it can be
+	 * read from multiple threads afterwards.
+	 */
+	private List<Cell> cells;
+
+	/**
+	 * Adds a term for the amount of the given exchange to the cell. The given
+	 * value is the value of that term in the matrix.
+	 */
+	void add(int row, int col, CalcExchange e, CalcAllocationFactor af,
+			double value) {
+		cell(row, col).add(new AmountTerm(e, af), value);
+	}
+
+	/**
+	 * Adds a term for the costs of the given exchange to the entry of the
+	 * given column in a cost vector.
+	 */
+	void addCosts(int col, CalcExchange e, CalcAllocationFactor af,
+			double value) {
+		cell(0, col).add(new CostTerm(e, af), value);
+	}
+
+	/**
+	 * Sets the given characterization factor as the only term of the cell. If
+	 * the factor has no formula, the cell is removed. The factor is copied as
+	 * the same factor can be set to multiple cells with different directions
+	 * in regionalized calculations.
+	 */
+	void set(int row, int col, CalcImpactFactor f, double value) {
+		if (map.remove(key(row, col)) != null) {
+			cells = null;
+		}
+		if (Strings.nullOrEmpty(f.formula))
+			return;
+		cell(row, col).add(new ImpactTerm(f.copy()), value);
+	}
+
+	private Cell cell(int row, int col) {
+		long key = key(row, col);
+		var cell = map.get(key);
+		if (cell == null) {
+			cell = new Cell(row, col);
+			map.put(key, cell);
+			cells = null;
+		}
+		return cell;
+	}
+
+	private static long key(int row, int col) {
+		return (((long) row) << 32) | (col & 0xffffffffL);
+	}
+
+	/**
+	 * Calculates the constant parts of the cells from the values of the given
+	 * matrix. This needs to be called when the matrix was built.
+	 */
+	void finish(MatrixReader matrix) {
+		for (var cell : map.values()) {
+			cell.constant = matrix.get(cell.row, cell.col) - cell.baseValue;
+			cell.variables = cell.collectVariables();
+		}
+		cells = new ArrayList<>(map.values());
+	}
+
+	/**
+	 * Calculates the constant parts of the cells from the values of the given
+	 * vector where the columns of the cells are the positions in the vector.
+	 */
+	void finish(double[] vector) {
+		for (var cell : map.values()) {
+			cell.constant = vector[cell.col] - cell.baseValue;
+			cell.variables = cell.collectVariables();
+		}
+		cells = new ArrayList<>(map.values());
+	}
+
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Returns the cells in the order in which they were added.
+	 */
+	public List<Cell> cells() {
+		var list = cells;
+		if (list == null) {
+			list = new ArrayList<>(map.values());
+			cells = list;
+		}
+		return list;
+	}
+
+	public static final class Cell {
+
+		public final int row;
+		public final int col;
+
+		private final List<Term> terms = new ArrayList<>(1);
+		private double baseValue;
+		private double constant;
+		private Set<String> variables = Collections.emptySet();
+
+		private Cell(int row, int col) {
+			this.row = row;
+			this.col = col;
+		}
+
+		private void add(Term term, double value) {
+			terms.add(term);
+			baseValue += value;
+		}
+
+		/**
+		 * Evaluates the value of this cell with the given interpreter. The cell
+		 * is not modified by this, so that it can be evaluated with different
+		 * interpreters from multiple threads at the same time.
+		 */
+		public double eval(FormulaInterpreter interpreter) {
+			double value = constant;
+			for (var term : terms) {
+				value += term.eval(interpreter);
+			}
+			return value;
+		}
+
+		/**
+		 * Returns true if a formula of this cell contains one of the given
+		 * variable names (in lower case).
+		 */
+		public boolean dependsOn(Set<String> names) {
+			if (names == null || names.isEmpty())
+				return false;
+			for (var v : variables) {
+				if (names.contains(v))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the names of the variables of the formulas of this cell in
+		 * lower case.
+		 */
+		public Set<String> variables() {
+			return variables;
+		}
+
+		private Set<String> collectVariables() {
+			var vars = new HashSet<String>();
+			for (var term : terms) {
+				for (var formula : term.formulas()) {
+					if (Strings.nullOrEmpty(formula))
+						continue;
+					for (var v : Formulas.getVariables(formula)) {
+						vars.add(v.trim().toLowerCase());
+					}
+				}
+			}
+			return vars;
+		}
+	}
+
+	private interface Term {
+
+		double eval(FormulaInterpreter interpreter);
+
+		String[] formulas();
+	}
+
+	private static class AmountTerm implements Term {
+
+		private final CalcExchange exchange;
+		private final CalcAllocationFactor factor;
+
+		AmountTerm(CalcExchange exchange, CalcAllocationFactor factor) {
+			this.exchange = exchange;
+			this.factor = factor;
+		}
+
+		@Override
+		public double eval(FormulaInterpreter interpreter) {
+			double af = factor != null
+					? factor.eval(interpreter)
+					: 1;
+			return exchange.matrixValue(interpreter, af);
+		}
+
+		@Override
+		public String[] formulas() {
+			return new String[]{
+					exchange.formula,
+					factor != null ? factor.formula() : null};
+		}
+	}
+
+	private static class CostTerm implements Term {
+
+		private final CalcExchange exchange;
+		private final CalcAllocationFactor factor;
+
+		CostTerm(CalcExchange exchange, CalcAllocationFactor factor) {
+			this.exchange = exchange;
+			this.factor = factor;
+		}
+
+		@Override
+		public double eval(FormulaInterpreter interpreter) {
+			double af = factor != null
+					? factor.eval(interpreter)
+					: 1;
+			return exchange.costValue(interpreter, af);
+		}
+
+		@Override
+		public String[] formulas() {
+			return new String[]{
+					exchange.costFormula,
+					factor != null ? factor.formula() : null};
+		}
+	}
+
+	private static class ImpactTerm implements Term {
+
+		private final CalcImpactFactor factor;
+
+		ImpactTerm(CalcImpactFactor factor) {
+			this.factor = factor;
+		}
+
+		@Override
+		public double eval(FormulaInterpreter interpreter) {
+			return factor.matrixValue(interpreter);
+		}
+
+		@Override
+		public String[] formulas() {
+			return new String[]{factor.formula};
+		}
+	}
+}
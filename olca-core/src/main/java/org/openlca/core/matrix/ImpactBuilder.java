@@ -29,10 +29,12 @@ public final class ImpactBuilder {
 	private final ImpactIndex impactIndex;
 	private final FormulaInterpreter interpreter;
 	private final boolean withUncertainties;
+	private final boolean withFormulaCells;
 
 	private final ConversionTable conversions;
 	private MatrixBuilder matrix;
 	private UMatrix uncertainties;
+	private FormulaCells formulas;
 
 	private ImpactBuilder(Config config) {
 		this.db = config.db;
@@ -59,6 +61,7 @@ public final class ImpactBuilder {
 		}
 
 		withUncertainties = config.withUncertainties;
+		withFormulaCells = config.withFormulaCells;
 		conversions = ConversionTable.create(db);
 	}
 
@@ -78,6 +81,9 @@ public final class ImpactBuilder {
 		uncertainties = withUncertainties
 			? new UMatrix()
 			: null;
+		formulas = withFormulaCells
+			? new FormulaCells()
+			: null;
 		if (flowIndex.isRegionalized) {
 			fillRegionalized();
 		} else {
@@ -89,6 +95,10 @@ public final class ImpactBuilder {
 		data.impactIndex = impactIndex;
 		data.impactMatrix = matrix.finish();
 		data.impactUncertainties = uncertainties;
+		if (formulas != null) {
+			formulas.finish(data.impactMatrix);
+			data.impactFormulas = formulas;
+		}
 		return data;
 	}
 
@@ -125,7 +135,7 @@ public final class ImpactBuilder {
 				// set the matrix value
 				int row = impactIndex.of(impactID);
 				int col = flowIndex.of(flowID);
-				matrix.set(row, col, f.matrixValue(interpreter));
+				set(row, col, f);
 
 				// set possible uncertainties
 				if (uncertainties != null) {
@@ -201,7 +211,7 @@ public final class ImpactBuilder {
 				}
 				if (addIt) {
 					int col = flowIndex.of(flowID, locationID);
-					matrix.set(row, col, f.matrixValue(interpreter));
+					set(row, col, f);
 					if (uncertainties != null) {
 						uncertainties.add(row, col, f);
 					}
@@ -229,7 +239,7 @@ public final class ImpactBuilder {
 				if (factor == null)
 					continue;
 				factor.isInput = f.isInput;
-				matrix.set(row, col, factor.matrixValue(interpreter));
+				set(row, col, factor);
 				if (uncertainties != null) {
 					uncertainties.add(row, col, factor);
 				}
@@ -237,6 +247,14 @@ public final class ImpactBuilder {
 		});
 	}
 
+	private void set(int row, int col, CalcImpactFactor f) {
+		double value = f.matrixValue(interpreter);
+		matrix.set(row, col, value);
+		if (formulas != null) {
+			formulas.set(row, col, f, value);
+		}
+	}
+
 	private String query() {
 		return "SELECT"
 				+ /* 1 */ " f_impact_category,"
@@ -274,6 +292,7 @@ public final class ImpactBuilder {
 		public ImpactIndex impactIndex;
 		public Matrix impactMatrix;
 		public UMatrix impactUncertainties;
+		public FormulaCells impactFormulas;
 
 		/**
 		 * Adds the impact data to the given matrix data.
@@ -291,6 +310,7 @@ public final class ImpactBuilder {
 			data.impactIndex = impactIndex;
 			data.impactMatrix = impactMatrix;
 			data.impactUncertainties = impactUncertainties;
+			data.impactFormulas = impactFormulas;
 		}
 	}
 
@@ -299,6 +319,7 @@ public final class ImpactBuilder {
 		private final IDatabase db;
 		private final FlowIndex flows;
 		private boolean withUncertainties;
+		private boolean withFormulaCells;
 		private FormulaInterpreter interpreter;
 		private ImpactIndex impacts;
 
@@ -311,6 +332,7 @@ public final class ImpactBuilder {
 			this.db	= conf.db;
 			this.flows = flows;
 			this.withUncertainties = conf.withUncertainties;
+			this.withFormulaCells = conf.withFormulaCells;
 			this.interpreter = conf.interpreter;
 			this.impacts = conf.impactIndex;
 		}
@@ -320,6 +342,11 @@ public final class ImpactBuilder {
 			return this;
 		}
 
+		public Config withFormulaCells() {
+			this.withFormulaCells = true;
+			return this;
+		}
+
 		public Config withInterpreter(FormulaInterpreter interpreter) {
 			this.interpreter = interpreter;
 			return this;
@@ -1,6 +1,13 @@
 package org.openlca.core.matrix;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import org.openlca.core.database.LocationDao;
 import org.openlca.core.matrix.cache.ExchangeTable;
@@ -9,11 +16,22 @@ import org.openlca.core.matrix.format.MatrixBuilder;
 import org.openlca.core.matrix.uncertainties.UMatrix;
 import org.openlca.core.model.ModelType;
 import org.openlca.core.model.descriptors.LocationDescriptor;
+import org.openlca.util.Strings;
 
 import gnu.trove.map.hash.TLongObjectHashMap;
 
 public class InventoryBuilder {
 
+	/**
+	 * The exchanges are read in batches of this size. The exchanges of a batch
+	 * are split into contiguous shards that are mapped to matrix entries in
+	 * parallel.
+	 */
+	private static final int BATCH_SIZE = 1 << 16;
+
+	/** The minimum number of exchanges of a shard. */
+	private static final int MIN_SHARD_SIZE = 1 << 12;
+
 	private final MatrixConfig conf;
 	private final TechIndex techIndex;
 	private final FlowTable flows;
@@ -28,7 +46,19 @@ public class InventoryBuilder {
 	private UMatrix enviUncerts;
 	private double[] costs;
 
+	private FormulaCells techFormulas;
+	private FormulaCells enviFormulas;
+	private FormulaCells costFormulas;
+
 	public InventoryBuilder(MatrixConfig conf) {
+		this(conf, null);
+	}
+
+	/**
+	 * Creates a builder that registers the elementary flows in the given flow
+	 * index. If the given index is `null`, a new index is created.
+	 */
+	InventoryBuilder(MatrixConfig conf, FlowIndex flowIndex) {
 		this.conf = conf;
 
 		// setup the indices
@@ -44,18 +74,22 @@ public class InventoryBuilder {
 		// create the index of elementary flows; when the system has sub-systems
 		// we add the flows of the sub-systems to the index; note that there
 		// can be elementary flows that only occur in a sub-system
-		flowIndex = conf.withRegionalization
-			? FlowIndex.createRegionalized()
-			: FlowIndex.create();
+		if (flowIndex != null) {
+			this.flowIndex = flowIndex;
+		} else {
+			this.flowIndex = conf.withRegionalization
+				? FlowIndex.createRegionalized()
+				: FlowIndex.create();
+		}
 		if (conf.subResults != null) {
 			for (var subResult : conf.subResults.values()) {
-				flowIndex.putAll(subResult.flowIndex);
+				this.flowIndex.putAll(subResult.flowIndex);
 			}
 		}
 
 		// create the matrix structures
-		techBuilder = new MatrixBuilder();
-		enviBuilder = new MatrixBuilder();
+		techBuilder = MatrixBuilder.triplets();
+		enviBuilder = MatrixBuilder.triplets();
 		if (conf.withUncertainties) {
 			techUncerts = new UMatrix();
 			enviUncerts = new UMatrix();
@@ -63,12 +97,31 @@ public class InventoryBuilder {
 		if (conf.withCosts) {
 			costs = new double[conf.techIndex.size()];
 		}
+		if (conf.withFormulaCells) {
+			techFormulas = new FormulaCells();
+			enviFormulas = new FormulaCells();
+			if (conf.withCosts) {
+				costFormulas = new FormulaCells();
+			}
+		}
 	}
 
 	public MatrixData build() {
-
-		// fill the matrices
 		fillMatrices();
+		return data();
+	}
+
+	/**
+	 * Builds the matrices with the entries of the given processes only; the
+	 * columns of all other providers are empty in the returned data. This is
+	 * used to update the columns of these processes in existing matrices.
+	 */
+	MatrixData build(Set<Long> processIds) {
+		putExchanges(processIds);
+		return data();
+	}
+
+	private MatrixData data() {
 		int n = techIndex.size();
 		int m = flowIndex.size();
 
@@ -78,31 +131,37 @@ public class InventoryBuilder {
 		// product data
 		data.techIndex = techIndex;
 		techBuilder.minSize(n, n);
-		data.techMatrix = techBuilder.finish();
+		data.techMatrix = techBuilder.compress();
 		data.techUncertainties = techUncerts;
+		if (techFormulas != null) {
+			techFormulas.finish(data.techMatrix);
+			data.techFormulas = techFormulas;
+		}
 
 		// optional elementary flows
 		if (m > 0) {
 			data.flowIndex = flowIndex;
 			enviBuilder.minSize(m, n);
-			data.flowMatrix = enviBuilder.finish();
+			data.flowMatrix = enviBuilder.compress();
 			data.enviUncertainties = enviUncerts;
+			if (enviFormulas != null) {
+				enviFormulas.finish(data.flowMatrix);
+				data.enviFormulas = enviFormulas;
+			}
 		}
 
 		// optional costs
 		data.costVector = costs;
+		if (costFormulas != null) {
+			costFormulas.finish(costs);
+			data.costFormulas = costFormulas;
+		}
 		return data;
 	}
 
 	private void fillMatrices() {
 			// fill the matrices with process data
-			var exchanges = new ExchangeTable(conf.db);
-			exchanges.each(techIndex, exchange -> {
-				var products = techIndex.getProviders(exchange.processId);
-				for (ProcessProduct product : products) {
-					putExchangeValue(product, exchange);
-				}
-			});
+			putExchanges(null);
 
 			// now put the entries of the sub-system into the matrices
 			var subSystems = new HashSet<ProcessProduct>();
@@ -149,10 +208,88 @@ public class InventoryBuilder {
 			}
 	}
 
-	private void putExchangeValue(ProcessProduct provider, CalcExchange e) {
+	/**
+	 * Puts the exchanges of the given processes or of all processes of the
+	 * tech-index if the given set is `null` into the matrices. In the latter
+	 * case, the exchanges of the configuration are used if present.
+	 */
+	private void putExchanges(Set<Long> processIds) {
+		if (processIds == null && conf.exchanges != null) {
+			int n = conf.exchanges.size();
+			for (int start = 0; start < n; start += BATCH_SIZE) {
+				putAll(conf.exchanges.subList(
+						start, Math.min(n, start + BATCH_SIZE)));
+			}
+			return;
+		}
+		var exchanges = new ExchangeTable(conf.db);
+		var batch = new ArrayList<CalcExchange>();
+		Consumer<CalcExchange> fn = exchange -> {
+			batch.add(exchange);
+			if (batch.size() == BATCH_SIZE) {
+				putAll(batch);
+				batch.clear();
+			}
+		};
+		if (processIds == null) {
+			exchanges.each(techIndex, fn);
+		} else {
+			exchanges.each(processIds, fn);
+		}
+		putAll(batch);
+	}
+
+	/**
+	 * Puts the given exchanges into the matrices. The mapping of the exchanges
+	 * to matrix entries (the resolution of providers, matrix rows and columns,
+	 * allocation factors, and values without formulas) is done in parallel for
+	 * contiguous shards of the exchanges. The entries are then written in the
+	 * order of the exchanges, so that the order of the flow index and the
+	 * summation order of the matrix cells are the same as in a sequential
+	 * build. Formulas are evaluated in this sequential step as the formula
+	 * interpreter is not thread safe.
+	 */
+	private void putAll(List<CalcExchange> exchanges) {
+		int n = exchanges.size();
+		if (n == 0)
+			return;
+		// when the builder runs in a fork-join pool, the parallel stream below
+		// runs in that pool
+		int parallelism = ForkJoinTask.inForkJoinPool()
+				? ForkJoinTask.getPool().getParallelism()
+				: ForkJoinPool.getCommonPoolParallelism();
+		int shardCount = Math.min(parallelism, n / MIN_SHARD_SIZE);
+		if (shardCount < 2) {
+			put(shard(exchanges));
+			return;
+		}
+		var shards = new Shard[shardCount];
+		IntStream.range(0, shardCount).parallel().forEach(i -> {
+			int start = (int) ((long) i * n / shardCount);
+			int end = (int) ((long) (i + 1) * n / shardCount);
+			shards[i] = shard(exchanges.subList(start, end));
+		});
+		for (var shard : shards) {
+			put(shard);
+		}
+	}
+
+	private Shard shard(List<CalcExchange> exchanges) {
+		var shard = new Shard(exchanges.size());
+		for (var exchange : exchanges) {
+			var products = techIndex.getProviders(exchange.processId);
+			for (ProcessProduct product : products) {
+				putExchangeValue(shard, product, exchange);
+			}
+		}
+		return shard;
+	}
+
+	private void putExchangeValue(
+			Shard shard, ProcessProduct provider, CalcExchange e) {
 		if (e.isElementary()) {
 			// elementary flows
-			addIntervention(provider, e);
+			shard.addIntervention(provider, e);
 			return;
 		}
 
@@ -161,10 +298,10 @@ public class InventoryBuilder {
 			if (linkedProvider != null) {
 				// linked product input or waste output
 				int row = techIndex.getIndex(linkedProvider);
-				add(row, provider, techBuilder, e);
+				shard.addTech(row, provider, e);
 			} else {
 				// unlinked product input or waste output
-				addIntervention(provider, e);
+				shard.addIntervention(provider, e);
 			}
 			return;
 		}
@@ -172,40 +309,56 @@ public class InventoryBuilder {
 		if (provider.equals(e.processId, e.flowId)) {
 			// the reference product or waste flow
 			int idx = techIndex.getIndex(provider);
-			add(idx, provider, techBuilder, e);
+			shard.addTech(idx, provider, e);
 			return;
 		}
 
 		if (!conf.hasAllocation()) {
 			// non allocated output products or waste inputs
-			addIntervention(provider, e);
+			shard.addIntervention(provider, e);
 		}
 	}
 
-	private void addIntervention(ProcessProduct provider, CalcExchange e) {
-		int row = flowIndex.register(provider, e, flows, locations);
-		add(row, provider, enviBuilder, e);
+	private void put(Shard shard) {
+		for (var entry : shard.entries) {
+			if (entry.isTech) {
+				add(entry.row, entry, techBuilder);
+			} else {
+				int row = flowIndex.register(
+						entry.provider, entry.exchange, flows, locations);
+				add(row, entry, enviBuilder);
+			}
+		}
 	}
 
-	private void add(int row, ProcessProduct provider, MatrixBuilder matrix,
-			CalcExchange exchange) {
-
-		int col = techIndex.getIndex(provider);
+	private void add(int row, Entry entry, MatrixBuilder matrix) {
+		int col = entry.col;
 		if (row < 0 || col < 0)
 			return;
 
-		var allocationFactor = allocationIndex != null && exchange.isAllocatable()
-				? allocationIndex.getFactor(provider, exchange.exchangeId)
-				: null;
-		var af = allocationFactor != null
-				? allocationFactor.get(conf.interpreter)
-				: 1;
-
-		double value = exchange.matrixValue(conf.interpreter, af);
+		var exchange = entry.exchange;
+		var allocationFactor = entry.allocationFactor;
+		double value;
+		double cost;
+		if (entry.isEvaluated) {
+			value = entry.value;
+			cost = entry.cost;
+		} else {
+			var af = allocationFactor != null
+					? allocationFactor.get(conf.interpreter)
+					: 1;
+			value = exchange.matrixValue(conf.interpreter, af);
+			cost = conf.withCosts
+					? exchange.costValue(conf.interpreter, af)
+					: 0;
+			if (conf.withFormulaCells) {
+				putFormulas(row, entry, matrix, value, cost);
+			}
+		}
 		matrix.add(row, col, value);
 
 		if (conf.withCosts) {
-			costs[col] += exchange.costValue(conf.interpreter, af);
+			costs[col] += cost;
 		}
 
 		if (conf.withUncertainties) {
@@ -217,4 +370,105 @@ public class InventoryBuilder {
 			}
 		}
 	}
+
+	/**
+	 * Registers the formula dependent values of the given entry in the formula
+	 * cells of the respective matrix and the cost vector.
+	 */
+	private void putFormulas(int row, Entry entry, MatrixBuilder matrix,
+			double value, double cost) {
+		var e = entry.exchange;
+		var af = entry.allocationFactor;
+		boolean afFormula = af != null && af.hasFormula();
+		if (afFormula || Strings.notEmpty(e.formula)) {
+			var formulas = matrix == techBuilder
+					? techFormulas
+					: enviFormulas;
+			formulas.add(row, entry.col, e, af, value);
+		}
+		if (costFormulas != null
+				&& (afFormula || Strings.notEmpty(e.costFormula))) {
+			costFormulas.addCosts(entry.col, e, af, cost);
+		}
+	}
+
+	/**
+	 * A matrix entry of an exchange and provider.
+	 */
+	private static class Entry {
+		CalcExchange exchange;
+		ProcessProduct provider;
+		CalcAllocationFactor allocationFactor;
+		boolean isTech;
+		int row;
+		int col;
+
+		/**
+		 * True when the value and costs could be calculated without a formula
+		 * interpreter.
+		 */
+		boolean isEvaluated;
+		double value;
+		double cost;
+	}
+
+	/**
+	 * The matrix entries of a contiguous range of exchanges.
+	 */
+	private class Shard {
+
+		final ArrayList<Entry> entries;
+
+		Shard(int exchangeCount) {
+			entries = new ArrayList<>(exchangeCount);
+		}
+
+		void addIntervention(ProcessProduct provider, CalcExchange e) {
+			// the row is registered in the flow index when the shard is put
+			// into the matrices
+			add(-1, provider, e, false);
+		}
+
+		void addTech(int row, ProcessProduct provider, CalcExchange e) {
+			add(row, provider, e, true);
+		}
+
+		private void add(int row, ProcessProduct provider, CalcExchange e,
+				boolean isTech) {
+			int col = techIndex.getIndex(provider);
+			if (isTech && (row < 0 || col < 0))
+				return;
+			var entry = new Entry();
+			entry.exchange = e;
+			entry.provider = provider;
+			entry.isTech = isTech;
+			entry.row = row;
+			entry.col = col;
+			entry.allocationFactor = allocationIndex != null && e.isAllocatable()
+					? allocationIndex.getFactor(provider, e.exchangeId)
+					: null;
+			evaluate(entry);
+			entries.add(entry);
+		}
+
+		private void evaluate(Entry entry) {
+			var e = entry.exchange;
+			var interpreter = conf.interpreter;
+			if (interpreter != null) {
+				if (Strings.notEmpty(e.formula)
+						|| (conf.withCosts && Strings.notEmpty(e.costFormula))
+						|| (entry.allocationFactor != null
+								&& entry.allocationFactor.hasFormula()))
+					return;
+			}
+			var af = entry.allocationFactor != null
+					? entry.allocationFactor.get(null)
+					: 1;
+			entry.value = e.matrixValue(null, af);
+			if (conf.withCosts) {
+				entry.cost = e.costValue(null, af);
+			}
+			entry.isEvaluated = true;
+		}
+	}
 }
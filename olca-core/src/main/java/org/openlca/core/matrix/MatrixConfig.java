@@ -24,6 +24,12 @@ public class MatrixConfig {
 	public final boolean withUncertainties;
 	public final boolean withCosts;
 	public final boolean withRegionalization;
+
+	/**
+	 * If true, the formula dependent cells of the matrices are collected in
+	 * the matrix data (see `FormulaCells`).
+	 */
+	public final boolean withFormulaCells;
 	public final AllocationMethod allocationMethod;
 
 	/**
@@ -33,6 +39,13 @@ public class MatrixConfig {
 	public final ImpactIndex impactIndex;
 	public final FormulaInterpreter interpreter;
 
+	/**
+	 * Optional exchanges of the processes in the tech-index. If this is
+	 * `null`, the exchanges are read from the database. This is used to share
+	 * the exchanges between calculations on the same product system.
+	 */
+	public final List<CalcExchange> exchanges;
+
 	private MatrixConfig(Builder builder) {
 		this.db = builder.db;
 		this.techIndex = builder.techIndex;
@@ -59,12 +72,14 @@ public class MatrixConfig {
 		withUncertainties = builder.withUncertainties;
 		withCosts = builder.withCosts;
 		withRegionalization = builder.withRegionalization;
+		withFormulaCells = builder.withFormulaCells;
 		allocationMethod = builder.allocationMethod == null
 			? AllocationMethod.NONE
 			: builder.allocationMethod;
 		subResults = builder.subResults != null
 			? builder.subResults
 			: Collections.emptyMap();
+		exchanges = builder.exchanges;
 	}
 
 	public static Builder of(IDatabase db, TechIndex techIndex) {
@@ -87,11 +102,13 @@ public class MatrixConfig {
 		private ImpactIndex impacts;
 		private List<ParameterRedef> redefs;
 		private Map<ProcessProduct, SimpleResult> subResults;
+		private List<CalcExchange> exchanges;
 
 		private AllocationMethod allocationMethod;
 		private boolean withUncertainties;
 		private boolean withCosts;
 		private boolean withRegionalization;
+		private boolean withFormulaCells;
 
 		private Builder(IDatabase db, TechIndex techIndex) {
 			this.db = db;
@@ -126,6 +143,11 @@ public class MatrixConfig {
 			return this;
 		}
 
+		public Builder withFormulaCells(boolean b) {
+			withFormulaCells = b;
+			return this;
+		}
+
 		public Builder withAllocation(AllocationMethod method) {
 			allocationMethod = method;
 			return this;
@@ -158,6 +180,22 @@ public class MatrixConfig {
 			return this;
 		}
 
+		/**
+		 * Sets the exchanges of the processes in the tech-index so that they
+		 * are not read from the database again (see `MatrixDataGroup`).
+		 */
+		public Builder withExchanges(List<CalcExchange> exchanges) {
+			this.exchanges = exchanges;
+			return this;
+		}
+
+		/**
+		 * Creates the configuration without building the matrices.
+		 */
+		MatrixConfig create() {
+			return new MatrixConfig(this);
+		}
+
 		public MatrixData build() {
 			var conf = new MatrixConfig(this);
 			var data = new InventoryBuilder(conf).build();
@@ -2,6 +2,7 @@ package org.openlca.core.matrix;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.math.CalculationSetup;
@@ -80,6 +81,23 @@ public class MatrixData {
 	 */
 	public UMatrix impactUncertainties;
 
+	/**
+	 * Contains the formula dependent cells of the technology matrix. This field
+	 * is only used (not null) when the matrices were built with formula cells,
+	 * e.g. for parameter scenarios (see `FormulaCells`). The same applies to
+	 * the other formula cell fields.
+	 */
+	public FormulaCells techFormulas;
+
+	/** The formula dependent cells of the intervention matrix. */
+	public FormulaCells enviFormulas;
+
+	/** The formula dependent cells of the impact matrix. */
+	public FormulaCells impactFormulas;
+
+	/** The formula dependent entries of the cost vector. */
+	public FormulaCells costFormulas;
+
 	private Boolean _hasLibraryLinks;
 
 	/**
@@ -115,23 +133,77 @@ public class MatrixData {
 	/**
 	 * Generates new random values and modifies the respective matrices. Note that
 	 * the matrix instances may change so you need to be carefully with aliases.
+	 * Matrices in the CSC format are modified in place: only the values of the
+	 * uncertain cells are overwritten and the sparsity structure is kept (it is
+	 * only extended once when it does not contain all uncertain cells).
 	 */
 	public void simulate(FormulaInterpreter interpreter) {
-		if (techMatrix != null && techUncertainties != null) {
-			var t = techMatrix.asMutable();
-			techUncertainties.generate(t, interpreter);
-			techMatrix = t;
-		}
-		if (flowMatrix != null && enviUncertainties != null) {
-			var f = flowMatrix.asMutable();
-			enviUncertainties.generate(f, interpreter);
-			flowMatrix = f;
-		}
-		if (impactMatrix != null && impactUncertainties != null) {
-			var c = impactMatrix.asMutable();
-			impactUncertainties.generate(c, interpreter);
-			impactMatrix = c;
-		}
+		simulate(interpreter, new SplittableRandom());
+	}
+
+	/**
+	 * Same as `simulate(interpreter)` but the random numbers are drawn from the
+	 * given stream. With a seeded stream, the generated matrices are
+	 * reproducible.
+	 */
+	public void simulate(FormulaInterpreter interpreter,
+		SplittableRandom random) {
+		techMatrix = simulate(techMatrix, techUncertainties, interpreter, random);
+		flowMatrix = simulate(flowMatrix, enviUncertainties, interpreter, random);
+		impactMatrix = simulate(
+			impactMatrix, impactUncertainties, interpreter, random);
+	}
+
+	private static MatrixReader simulate(MatrixReader matrix, UMatrix u,
+		FormulaInterpreter interpreter, SplittableRandom random) {
+		if (matrix == null || u == null)
+			return matrix;
+		if (matrix instanceof CSCMatrix)
+			return u.generateInPlace((CSCMatrix) matrix, interpreter, random);
+		var m = matrix.asMutable();
+		u.generate(m, interpreter, random);
+		return m;
+	}
+
+	/**
+	 * Creates a copy of this matrix data. The indices and formula cells are
+	 * shared with the copy but the matrices, the cost vector, and the
+	 * uncertainty matrices are copied, so that the copy can be modified (e.g.
+	 * via `simulate`) independently from this instance.
+	 */
+	public MatrixData copy() {
+		var copy = new MatrixData();
+		copy.techIndex = techIndex;
+		copy.flowIndex = flowIndex;
+		copy.impactIndex = impactIndex;
+		copy.techMatrix = techMatrix != null
+			? techMatrix.copy()
+			: null;
+		copy.flowMatrix = flowMatrix != null
+			? flowMatrix.copy()
+			: null;
+		copy.impactMatrix = impactMatrix != null
+			? impactMatrix.copy()
+			: null;
+		copy.costVector = costVector != null
+			? costVector.clone()
+			: null;
+		copy.techUncertainties = techUncertainties != null
+			? techUncertainties.copy()
+			: null;
+		copy.enviUncertainties = enviUncertainties != null
+			? enviUncertainties.copy()
+			: null;
+		copy.impactUncertainties = impactUncertainties != null
+			? impactUncertainties.copy()
+			: null;
+		// the formula cells are not modified after the matrices are built
+		copy.techFormulas = techFormulas;
+		copy.enviFormulas = enviFormulas;
+		copy.impactFormulas = impactFormulas;
+		copy.costFormulas = costFormulas;
+		copy._hasLibraryLinks = _hasLibraryLinks;
+		return copy;
 	}
 
 	public boolean isSparse() {
@@ -0,0 +1,451 @@
+package org.openlca.core.matrix;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.IDatabaseListener;
+import org.openlca.core.database.ProcessDao;
+import org.openlca.core.math.CalculationSetup;
+import org.openlca.core.matrix.format.MatrixBuilder;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.core.matrix.solvers.SymbolicAnalysis;
+import org.openlca.core.model.AllocationMethod;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.descriptors.Descriptor;
+
+/**
+ * Keeps the matrix data of product systems and updates them incrementally
+ * when processes of these systems change. For a changed process, only the
+ * columns of its providers in the technology and intervention matrices (and
+ * the cost vector and uncertainty matrices) are rebuilt. New elementary flows
+ * are appended to the flow index and the impact matrix is then rebuilt for
+ * the extended index. Elementary flows that are not used anymore are kept in
+ * the index with empty rows; apart from this and the order of the flow index,
+ * the matrices are the same as in a full rebuild via `MatrixData.of`.
+ * <p>
+ * The cache registers itself as listener of the database. Changes that are
+ * not done via the data access objects can be passed into `evict` in the same
+ * way as for the `MatrixCache`. A change of a flow, unit, currency, location,
+ * or global parameter clears the cache. Product systems with sub-systems or
+ * library links are not cached.
+ */
+public final class MatrixDataCache {
+
+	private final IDatabase db;
+	private final HashMap<Long, Entry> entries = new HashMap<>();
+
+	/**
+	 * The symbolic analyses of the product systems that cannot be cached
+	 * (their matrix data are rebuilt for each request).
+	 */
+	private final HashMap<Long, Analysis> analyses = new HashMap<>();
+	private final IDatabaseListener listener;
+
+	private MatrixDataCache(IDatabase db) {
+		this.db = db;
+		this.listener = new IDatabaseListener() {
+			@Override
+			public void modelInserted(Descriptor d) {
+				// a new global parameter can be used in existing formulas
+				if (d != null && d.type == ModelType.PARAMETER) {
+					evictAll();
+				}
+			}
+
+			@Override
+			public void modelUpdated(Descriptor d) {
+				if (d != null) {
+					evict(d.type, d.id);
+				}
+			}
+
+			@Override
+			public void modelDeleted(Descriptor d) {
+				if (d != null) {
+					evict(d.type, d.id);
+				}
+			}
+		};
+	}
+
+	public static MatrixDataCache of(IDatabase db) {
+		var cache = new MatrixDataCache(db);
+		db.addListener(cache.listener);
+		return cache;
+	}
+
+	/**
+	 * Removes all entries from this cache and the listener from the database.
+	 */
+	public synchronized void dispose() {
+		db.removeListener(listener);
+		evictAll();
+	}
+
+	/**
+	 * Returns the matrix data of the given setup. The data are built or updated
+	 * if necessary. The returned data are a copy that can be modified by the
+	 * caller. Note that the product system is identified by its ID, changes of
+	 * a product system need to be stored in the database (or passed into
+	 * `evict`) before they are visible here.
+	 */
+	public synchronized MatrixData get(CalculationSetup setup) {
+		var entry = entryOf(setup);
+		return entry != null
+				? entry.data.copy()
+				: MatrixData.of(db, setup);
+	}
+
+	/**
+	 * Returns a symbolic analysis of the technology matrix of the given setup
+	 * that can be passed into a calculator. The analysis is reused as long as
+	 * the sparsity pattern of the technology matrix does not change by updates
+	 * of the matrix data. The returned analysis is always owned by this cache:
+	 * it must not be disposed by the caller but is disposed when the product
+	 * system is evicted or the cache is disposed.
+	 */
+	public synchronized SymbolicAnalysis analysisOf(
+			CalculationSetup setup, MatrixSolver solver) {
+		var entry = entryOf(setup);
+		if (entry != null)
+			return entry.analysis.get(solver, entry.data.techMatrix);
+		var data = MatrixData.of(db, setup);
+		data.compress();
+		var analysis = analyses.computeIfAbsent(
+				setup.productSystem.id, id -> new Analysis());
+		return analysis.get(solver, data.techMatrix);
+	}
+
+	/**
+	 * Marks the given model as changed. The matrix data are updated on the
+	 * next request.
+	 */
+	public synchronized void evict(ModelType type, long id) {
+		if (type == null)
+			return;
+		switch (type) {
+		case PROCESS:
+			for (var entry : entries.values()) {
+				if (entry.data.techIndex.isProvider(id)) {
+					entry.dirty.add(id);
+				}
+			}
+			break;
+		case PRODUCT_SYSTEM:
+			var entry = entries.remove(id);
+			if (entry != null) {
+				entry.dispose();
+			}
+			var analysis = analyses.remove(id);
+			if (analysis != null) {
+				analysis.dispose();
+			}
+			break;
+		case IMPACT_CATEGORY:
+		case IMPACT_METHOD:
+			for (var e : entries.values()) {
+				e.impactsDirty = true;
+			}
+			break;
+		case FLOW:
+		case FLOW_PROPERTY:
+		case UNIT:
+		case UNIT_GROUP:
+		case CURRENCY:
+		case LOCATION:
+		case PARAMETER:
+			evictAll();
+			break;
+		default:
+			break;
+		}
+	}
+
+	public synchronized void evictAll() {
+		for (var entry : entries.values()) {
+			entry.dispose();
+		}
+		entries.clear();
+		for (var analysis : analyses.values()) {
+			analysis.dispose();
+		}
+		analyses.clear();
+	}
+
+	/**
+	 * Returns the current entry of the given setup or `null` if the setup
+	 * cannot be cached.
+	 */
+	private Entry entryOf(CalculationSetup setup) {
+		var system = setup.productSystem;
+		var key = Key.of(setup);
+		var entry = entries.get(system.id);
+		if (entry != null && entry.key.equals(key)) {
+			if (update(entry, setup))
+				return entry;
+		}
+		if (entry != null) {
+			entries.remove(system.id);
+			entry.dispose();
+		}
+
+		var data = MatrixData.of(db, setup);
+		if (!isCacheable(data))
+			return null;
+		entry = new Entry(key, data);
+		entries.put(system.id, entry);
+		return entry;
+	}
+
+	private boolean isCacheable(MatrixData data) {
+		if (data.hasLibraryLinks())
+			return false;
+		var techIndex = data.techIndex;
+		for (int i = 0; i < techIndex.size(); i++) {
+			var provider = techIndex.getProviderAt(i);
+			if (provider.process == null
+					|| provider.process.type != ModelType.PROCESS)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Updates the matrix data of the given entry. Returns false if this is
+	 * not possible and the data need to be rebuilt.
+	 */
+	private boolean update(Entry entry, CalculationSetup setup) {
+		if (entry.dirty.isEmpty() && !entry.impactsDirty)
+			return true;
+		var data = entry.data;
+		var techIndex = data.techIndex;
+
+		// deleted processes change the tech-index
+		var processes = new HashSet<>(entry.dirty);
+		if (!processes.isEmpty()) {
+			var existing = new ProcessDao(db).getDescriptors(processes);
+			if (existing.size() != processes.size())
+				return false;
+		}
+
+		var conf = MatrixConfig.of(db, techIndex)
+				.withSetup(setup)
+				.create();
+
+		// rebuild the columns of the changed processes
+		var oldFlowIndex = data.flowIndex;
+		if (!processes.isEmpty()) {
+			var flowIndex = conf.withRegionalization
+					? FlowIndex.createRegionalized()
+					: FlowIndex.create();
+			flowIndex.putAll(oldFlowIndex);
+			var patch = new InventoryBuilder(conf, flowIndex)
+					.build(processes);
+			patch(data, patch, columnsOf(techIndex, processes));
+		}
+
+		// rebuild the impact matrix when the flow index changed
+		boolean flowsChanged = data.flowIndex != oldFlowIndex
+				&& (oldFlowIndex == null
+						|| data.flowIndex.size() != oldFlowIndex.size());
+		if ((flowsChanged || entry.impactsDirty) && conf.hasImpacts()) {
+			if (FlowIndex.isEmpty(data.flowIndex)) {
+				data.impactIndex = conf.impactIndex;
+			} else {
+				ImpactBuilder.of(conf, data.flowIndex)
+						.build()
+						.addTo(data);
+			}
+		}
+
+		entry.dirty.clear();
+		entry.impactsDirty = false;
+		return true;
+	}
+
+	private int[] columnsOf(TechIndex techIndex, Set<Long> processes) {
+		var columns = new ArrayList<Integer>();
+		for (var process : processes) {
+			for (var provider : techIndex.getProviders(process)) {
+				int col = techIndex.getIndex(provider);
+				if (col >= 0) {
+					columns.add(col);
+				}
+			}
+		}
+		return columns.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Replaces the given columns of the matrix data with the columns of the
+	 * given patch.
+	 */
+	private void patch(MatrixData data, MatrixData patch, int[] columns) {
+		int n = data.techIndex.size();
+		var patched = new boolean[n];
+		for (int col : columns) {
+			patched[col] = true;
+		}
+
+		data.techMatrix = replaceColumns(
+				data.techMatrix, patch.techMatrix, patched, n);
+		if (patch.flowIndex != null) {
+			data.flowMatrix = replaceColumns(data.flowMatrix,
+					patch.flowMatrix, patched, patch.flowIndex.size());
+			data.flowIndex = patch.flowIndex;
+		}
+
+		if (data.costVector != null && patch.costVector != null) {
+			for (int col : columns) {
+				data.costVector[col] = patch.costVector[col];
+			}
+		}
+
+		if (data.techUncertainties != null) {
+			data.techUncertainties.replaceColumns(
+					patch.techUncertainties, columns);
+		} else {
+			data.techUncertainties = patch.techUncertainties;
+		}
+		if (data.enviUncertainties != null) {
+			data.enviUncertainties.replaceColumns(
+					patch.enviUncertainties, columns);
+		} else {
+			data.enviUncertainties = patch.enviUncertainties;
+		}
+	}
+
+	private MatrixReader replaceColumns(MatrixReader matrix,
+			MatrixReader patch, boolean[] patched, int rows) {
+		var builder = MatrixBuilder.triplets();
+		builder.minSize(rows, patched.length);
+		if (matrix != null) {
+			matrix.iterate((row, col, val) -> {
+				if (!patched[col]) {
+					builder.set(row, col, val);
+				}
+			});
+		}
+		if (patch != null) {
+			patch.iterate((row, col, val) -> {
+				if (patched[col]) {
+					builder.set(row, col, val);
+				}
+			});
+		}
+		return builder.compress();
+	}
+
+	private static class Entry {
+
+		final Key key;
+		final MatrixData data;
+		final Set<Long> dirty = new HashSet<>();
+		boolean impactsDirty;
+		final Analysis analysis = new Analysis();
+
+		Entry(Key key, MatrixData data) {
+			this.key = key;
+			this.data = data;
+			data.compress();
+		}
+
+		void dispose() {
+			analysis.dispose();
+		}
+	}
+
+	/**
+	 * Holds the symbolic analysis of the technology matrix of a product
+	 * system and the solver that created it.
+	 */
+	private static class Analysis {
+
+		SymbolicAnalysis analysis;
+		MatrixSolver solver;
+
+		SymbolicAnalysis get(MatrixSolver solver, MatrixReader techMatrix) {
+			if (analysis != null
+					&& this.solver == solver
+					&& !analysis.isDisposed()
+					&& analysis.isApplicableTo(techMatrix))
+				return analysis;
+			dispose();
+			analysis = solver.analyze(techMatrix);
+			this.solver = solver;
+			return analysis;
+		}
+
+		void dispose() {
+			if (analysis != null) {
+				analysis.dispose();
+				analysis = null;
+			}
+		}
+	}
+
+	/**
+	 * The settings of a calculation setup that change the matrix data.
+	 */
+	private static class Key {
+
+		long system;
+		double demand;
+		AllocationMethod allocation;
+		long impactMethod;
+		boolean withCosts;
+		boolean withUncertainties;
+		boolean withRegionalization;
+		List<String> redefs;
+
+		static Key of(CalculationSetup setup) {
+			var key = new Key();
+			key.system = setup.productSystem.id;
+			key.demand = setup.getDemandValue();
+			key.allocation = setup.allocationMethod;
+			key.impactMethod = setup.impactMethod != null
+					? setup.impactMethod.id
+					: 0;
+			key.withCosts = setup.withCosts;
+			key.withUncertainties = setup.withUncertainties;
+			key.withRegionalization = setup.withRegionalization;
+			key.redefs = new ArrayList<>();
+			for (var redef : setup.parameterRedefs) {
+				var u = redef.uncertainty;
+				key.redefs.add(redef.name + "/" + redef.contextId + "/"
+						+ redef.value + "/" + (u == null ? "" : u.distributionType
+						+ "/" + u.parameter1 + "/" + u.parameter2
+						+ "/" + u.parameter3));
+			}
+			return key;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			var other = (Key) obj;
+			return system == other.system
+					&& demand == other.demand
+					&& allocation == other.allocation
+					&& impactMethod == other.impactMethod
+					&& withCosts == other.withCosts
+					&& withUncertainties == other.withUncertainties
+					&& withRegionalization == other.withRegionalization
+					&& Objects.equals(redefs, other.redefs);
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(system);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.openlca.core.matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.math.CalculationSetup;
+import org.openlca.core.matrix.ImpactBuilder.ImpactData;
+import org.openlca.core.matrix.cache.ExchangeTable;
+import org.openlca.core.model.ProductSystem;
+import org.openlca.core.model.descriptors.ImpactMethodDescriptor;
+import org.openlca.core.results.SimpleResult;
+
+/**
+ * Builds the matrix data of multiple calculation setups of the same product
+ * system, e.g. the variants of a project that differ in their amounts,
+ * allocation methods, or parameter redefinitions. The tech-index and the
+ * exchanges of the product system are read only once from the database and
+ * are shared between the setups. The impact matrices are shared between the
+ * setups with equal flow indices; characterization factors with formulas are
+ * re-evaluated for each setup with its own parameter redefinitions.
+ * <p>
+ * The group is created for a fixed impact method. It is safe to build the
+ * matrix data of different setups from multiple threads.
+ */
+public final class MatrixDataGroup {
+
+	private final IDatabase db;
+	private final TechIndex techIndex;
+	private final List<CalcExchange> exchanges;
+	private final ImpactIndex impactIndex;
+
+	/** The shared impact data of the flow indices built so far. */
+	private final List<ImpactData> impacts = new ArrayList<>();
+
+	private MatrixDataGroup(IDatabase db, ProductSystem system,
+			ImpactMethodDescriptor method) {
+		this.db = db;
+		this.techIndex = TechIndex.of(system, db);
+		var list = new ArrayList<CalcExchange>();
+		new ExchangeTable(db).each(techIndex, list::add);
+		this.exchanges = Collections.unmodifiableList(list);
+		this.impactIndex = method != null
+				? ImpactIndex.of(db, method)
+				: null;
+	}
+
+	/**
+	 * Creates a group for the given product system and impact method. The
+	 * impact method can be `null`.
+	 */
+	public static MatrixDataGroup of(IDatabase db, ProductSystem system,
+			ImpactMethodDescriptor method) {
+		return new MatrixDataGroup(db, system, method);
+	}
+
+	/**
+	 * Builds the matrix data of the given setup. The product system of the
+	 * setup must be the system of this group and the impact method of the
+	 * setup is ignored; the impact method of the group is used instead.
+	 */
+	public MatrixData build(CalculationSetup setup,
+			Map<ProcessProduct, SimpleResult> subResults) {
+		var index = techIndex.copy();
+		index.setDemand(setup.getDemandValue());
+		var builder = MatrixConfig.of(db, index)
+				.withSetup(setup)
+				.withExchanges(exchanges)
+				.withSubResults(subResults);
+		if (impactIndex != null) {
+			builder.withImpacts(impactIndex);
+		}
+		var conf = builder.create();
+		var data = new InventoryBuilder(conf).build();
+		if (!conf.hasImpacts())
+			return data;
+		if (FlowIndex.isEmpty(data.flowIndex)) {
+			data.impactIndex = conf.impactIndex;
+			return data;
+		}
+
+		// the uncertainties of the factors are not shared
+		if (conf.withUncertainties) {
+			ImpactBuilder.of(conf, data.flowIndex)
+					.build()
+					.addTo(data);
+			return data;
+		}
+
+		var shared = impactsOf(conf, data.flowIndex);
+		data.impactIndex = shared.impactIndex;
+		data.impactMatrix = shared.impactMatrix;
+		var formulas = shared.impactFormulas;
+		if (formulas != null && !formulas.isEmpty()) {
+			var matrix = shared.impactMatrix.copy();
+			for (var cell : formulas.cells()) {
+				matrix.set(cell.row, cell.col, cell.eval(conf.interpreter));
+			}
+			data.impactMatrix = matrix;
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the shared impact data for the given flow index. The formula
+	 * cells of the returned data need to be evaluated for the respective
+	 * setup.
+	 */
+	private synchronized ImpactData impactsOf(
+			MatrixConfig conf, FlowIndex flowIndex) {
+		for (var data : impacts) {
+			if (sameFlows(data.flowIndex, flowIndex))
+				return data;
+		}
+		var data = ImpactBuilder.of(conf, flowIndex)
+				.withFormulaCells()
+				.build();
+		impacts.add(data);
+		return data;
+	}
+
+	private static boolean sameFlows(FlowIndex a, FlowIndex b) {
+		if (a == b)
+			return true;
+		if (a.size() != b.size() || a.isRegionalized != b.isRegionalized)
+			return false;
+		for (int i = 0; i < a.size(); i++) {
+			var fa = a.at(i);
+			var fb = b.at(i);
+			if (fa.isInput != fb.isInput || !fa.equals(fb))
+				return false;
+		}
+		return true;
+	}
+}
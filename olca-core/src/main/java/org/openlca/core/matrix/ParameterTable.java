@@ -1,10 +1,15 @@
 package org.openlca.core.matrix;
 
 import java.sql.ResultSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.database.NativeSql;
@@ -13,6 +18,7 @@ import org.openlca.core.model.ParameterRedef;
 import org.openlca.core.model.ParameterScope;
 import org.openlca.core.model.UncertaintyType;
 import org.openlca.expressions.FormulaInterpreter;
+import org.openlca.formula.Formulas;
 import org.slf4j.LoggerFactory;
 
 import gnu.trove.impl.Constants;
@@ -31,6 +37,20 @@ public class ParameterTable {
 	 */
 	private TLongObjectHashMap<Map<String, NumberGenerator>> numberGens;
 
+	/**
+	 * The scanned parameter bindings in case the parameter table is build for
+	 * scenarios. These are used to create new interpreters without scanning
+	 * the database again.
+	 */
+	private List<Binding> bindings;
+
+	/**
+	 * Maps the name of a parameter to the names of the parameters with
+	 * formulas that directly use it (all in lower case). This is only
+	 * available in case the parameter table is build for scenarios.
+	 */
+	private Map<String, Set<String>> dependents;
+
 	private final FormulaInterpreter interpreter = new FormulaInterpreter();
 
 	private ParameterTable() {
@@ -75,12 +95,117 @@ public class ParameterTable {
 		return table;
 	}
 
+	/**
+	 * Builds a parameter table for the calculation of parameter scenarios. The
+	 * table keeps the parameters of the given contexts in memory so that new
+	 * interpreters with other parameter redefinitions can be created without
+	 * scanning the database again (see `interpreter(redefs)`).
+	 */
+	public static ParameterTable forScenarios(IDatabase db, Set<Long> contexts) {
+		var table = new ParameterTable();
+		table.bindings = new ArrayList<>();
+		try {
+			table.scan(db, contexts);
+		} catch (Exception e) {
+			var log = LoggerFactory.getLogger(ParameterTable.class);
+			log.error("Failed to scan parameter table", e);
+		}
+		table.dependents = new HashMap<>();
+		for (var b : table.bindings) {
+			if (b.formula == null)
+				continue;
+			for (var v : Formulas.getVariables(b.formula)) {
+				table.dependents.computeIfAbsent(
+						v.trim().toLowerCase(), k -> new HashSet<>())
+						.add(b.name.trim().toLowerCase());
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Creates a new interpreter with the parameters of this table and the
+	 * given redefinitions. This only works when the table was build for
+	 * scenarios. It does not modify the table, so that it can be called from
+	 * multiple threads where each thread gets its own interpreter.
+	 */
+	public FormulaInterpreter interpreter(Collection<ParameterRedef> redefs) {
+		if (bindings == null)
+			throw new IllegalStateException(
+					"the parameter table was not build for scenarios");
+		var interpreter = new FormulaInterpreter();
+		for (var b : bindings) {
+			var scope = b.owner == 0
+					? interpreter.getGlobalScope()
+					: interpreter.getOrCreate(b.owner);
+			if (b.formula != null) {
+				scope.bind(b.name, b.formula);
+			} else {
+				scope.bind(b.name, b.value);
+			}
+		}
+		if (redefs != null) {
+			for (var redef : redefs) {
+				bind(interpreter, redef);
+			}
+		}
+		return interpreter;
+	}
+
+	/**
+	 * Returns the names (in lower case) of the parameters of the given
+	 * redefinitions and of all parameters with formulas that directly or
+	 * indirectly depend on them. Parameters are only identified by their
+	 * names here, so the returned set can contain parameters of other
+	 * contexts with the same names. This only works when the table was build
+	 * for scenarios.
+	 */
+	public Set<String> dependentsOf(Collection<ParameterRedef> redefs) {
+		if (dependents == null)
+			throw new IllegalStateException(
+					"the parameter table was not build for scenarios");
+		var names = new HashSet<String>();
+		if (redefs == null)
+			return names;
+		var queue = new ArrayDeque<String>();
+		for (var redef : redefs) {
+			if (redef.name == null)
+				continue;
+			var name = redef.name.trim().toLowerCase();
+			if (names.add(name)) {
+				queue.add(name);
+			}
+		}
+		while (!queue.isEmpty()) {
+			var next = dependents.get(queue.poll());
+			if (next == null)
+				continue;
+			for (var name : next) {
+				if (names.add(name)) {
+					queue.add(name);
+				}
+			}
+		}
+		return names;
+	}
+
 	/**
 	 * Calculates new random values for the parameters in this table that have an
 	 * uncertainty distribution assigned. It re-binds the values of theses
 	 * parameters in the underlying interpreter with the generated values.
 	 */
 	public FormulaInterpreter simulate() {
+		return simulate(new SplittableRandom());
+	}
+
+	/**
+	 * Same as `simulate()` but the random values are drawn from the given
+	 * stream. The `rand` function in formulas also draws its numbers from
+	 * this stream; thus, with a seeded stream the generated values are
+	 * reproducible.
+	 */
+	public FormulaInterpreter simulate(SplittableRandom random) {
+		interpreter.setRandom(random::nextDouble);
 		if (numberGens == null)
 			return interpreter;
 		var it = numberGens.iterator();
@@ -95,7 +220,7 @@ public class ParameterTable {
 				continue;
 			generators.forEach((name, gen) -> {
 				if (gen != null) {
-					scope.bind(name, gen.next());
+					scope.bind(name, gen.next(random));
 				}
 			});
 		}
@@ -106,10 +231,7 @@ public class ParameterTable {
 		if (redefs == null)
 			return;
 		for (var redef : redefs) {
-			var scope = redef.contextId == null
-					? interpreter.getGlobalScope()
-					: interpreter.getScopeOrGlobal(redef.contextId);
-			scope.bind(redef.name, redef.value);
+			bind(interpreter, redef);
 			if (numberGens == null)
 				continue;
 
@@ -130,6 +252,13 @@ public class ParameterTable {
 		}
 	}
 
+	private static void bind(FormulaInterpreter interpreter, ParameterRedef redef) {
+		var scope = redef.contextId == null
+				? interpreter.getGlobalScope()
+				: interpreter.getScopeOrGlobal(redef.contextId);
+		scope.bind(redef.name, redef.value);
+	}
+
 	private void scan(IDatabase db, Set<Long> contexts) {
 		String sql = "select scope, f_owner, name, is_input_param, "
 				+ "value, formula";
@@ -165,6 +294,11 @@ public class ParameterTable {
 			} else {
 				scope.bind(name, r.getString(6));
 			}
+			if (bindings != null && name != null) {
+				bindings.add(isInput
+						? new Binding(owner, name, r.getDouble(5), null)
+						: new Binding(owner, name, 0, r.getString(6)));
+			}
 
 			// bind a possible number generator
 			if (numberGens != null) {
@@ -213,4 +347,19 @@ public class ParameterTable {
 			throw new RuntimeException(e);
 		}
 	}
+
+	private static class Binding {
+
+		final long owner;
+		final String name;
+		final double value;
+		final String formula;
+
+		Binding(long owner, String name, double value, String formula) {
+			this.owner = owner;
+			this.name = name;
+			this.value = value;
+			this.formula = formula;
+		}
+	}
 }
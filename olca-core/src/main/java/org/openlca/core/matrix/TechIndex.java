@@ -14,9 +14,12 @@ import org.openlca.core.database.NativeSql;
 import org.openlca.core.database.ProcessDao;
 import org.openlca.core.database.ProductSystemDao;
 import org.openlca.core.math.ReferenceAmount;
+import org.openlca.core.matrix.cache.ExchangeSnapshot;
 import org.openlca.core.model.FlowType;
 import org.openlca.core.model.ProductSystem;
 import org.openlca.core.model.descriptors.CategorizedDescriptor;
+import org.openlca.core.model.descriptors.FlowDescriptor;
+import org.openlca.core.model.descriptors.ProcessDescriptor;
 
 import gnu.trove.map.hash.TLongObjectHashMap;
 
@@ -150,33 +153,52 @@ public class TechIndex implements TechLinker {
 	private static void eachProviderOf(IDatabase db, Consumer<ProcessProduct> fn) {
 		var processes = new ProcessDao(db).descriptorMap();
 		var flows = new FlowDao(db).descriptorMap();
+		var snapshot = ExchangeSnapshot.of(db);
+		if (snapshot != null) {
+			for (int row = 0; row < snapshot.size(); row++) {
+				var provider = providerOf(processes, flows, snapshot.owner(row),
+						snapshot.flow(row), snapshot.isInput(row));
+				if (provider != null) {
+					fn.accept(provider);
+				}
+			}
+			return;
+		}
 		String sql = "select f_owner, f_flow, is_input from tbl_exchanges";
 		NativeSql.on(db).query(sql, r -> {
-			long flowID = r.getLong(2);
-			var flow = flows.get(flowID);
-			if (flow == null
-					|| flow.flowType == null
-					|| flow.flowType == FlowType.ELEMENTARY_FLOW)
-				return true;
-			var type = flow.flowType;
-			boolean isInput = r.getBoolean(3);
-			if (isInput && type == FlowType.PRODUCT_FLOW)
-				return true;
-			if (!isInput && type == FlowType.WASTE_FLOW)
-				return true;
-			long procID = r.getLong(1);
-			var process = processes.get(procID);
-			if (process == null) {
-				// note that product system results could be
-				// stored in the exchanges table; in this
-				// case the process would be null.
-				return true;
+			var provider = providerOf(processes, flows, r.getLong(1),
+					r.getLong(2), r.getBoolean(3));
+			if (provider != null) {
+				fn.accept(provider);
 			}
-			fn.accept(ProcessProduct.of(process, flow));
 			return true;
 		});
 	}
 
+	private static ProcessProduct providerOf(
+			TLongObjectHashMap<ProcessDescriptor> processes,
+			TLongObjectHashMap<FlowDescriptor> flows,
+			long procID, long flowID, boolean isInput) {
+		var flow = flows.get(flowID);
+		if (flow == null
+				|| flow.flowType == null
+				|| flow.flowType == FlowType.ELEMENTARY_FLOW)
+			return null;
+		var type = flow.flowType;
+		if (isInput && type == FlowType.PRODUCT_FLOW)
+			return null;
+		if (!isInput && type == FlowType.WASTE_FLOW)
+			return null;
+		var process = processes.get(procID);
+		if (process == null) {
+			// note that product system results could be
+			// stored in the exchanges table; in this
+			// case the process would be null.
+			return null;
+		}
+		return ProcessProduct.of(process, flow);
+	}
+
 	/**
 	 * The demand value. This is the amount of the reference flow given in the
 	 * reference unit and flow property. The default value is 1.0.
@@ -361,4 +383,19 @@ public class TechIndex implements TechLinker {
 	public Set<ProcessProduct> content() {
 		return new HashSet<>(providers);
 	}
+
+	/**
+	 * Creates a copy of this index with the same providers, links, and demand
+	 * value. The copy can be modified (e.g. its demand value) independently
+	 * from this index.
+	 */
+	public TechIndex copy() {
+		var copy = new TechIndex(providers.get(0));
+		for (int i = 1; i < providers.size(); i++) {
+			copy.put(providers.get(i));
+		}
+		copy.links.putAll(links);
+		copy.demand = demand;
+		return copy;
+	}
 }
@@ -7,7 +7,8 @@ public interface TechLinker {
 	/**
 	 * Get the linked provider for the given product input or waste output.
 	 * You should never pass null into this method. Also make sure that the
-	 * given exchange is linkable.
+	 * given exchange is linkable. This method may be called from multiple
+	 * threads when the matrices are built.
 	 */
 	ProcessProduct providerOf(CalcExchange e);
 
@@ -29,7 +30,7 @@ public interface TechLinker {
 		 * matrix builder only works correctly when each product (waste) is only
 		 * produced (treated) by a single process in the database.
 		 */
-		private TLongObjectHashMap<ProcessProduct> providers;
+		private volatile TLongObjectHashMap<ProcessProduct> providers;
 
 		private Default(TechIndex techIndex) {
 			this.techIndex = techIndex;
@@ -46,12 +47,18 @@ public interface TechLinker {
 				if (p != null)
 					return p;
 			}
-			if (providers == null) {
-				providers = new TLongObjectHashMap<>();
-				techIndex.each(
-					(i, pp) -> providers.put(pp.flowId(), pp));
+			var map = providers;
+			if (map == null) {
+				synchronized (this) {
+					map = providers;
+					if (map == null) {
+						var m = new TLongObjectHashMap<ProcessProduct>();
+						techIndex.each((i, pp) -> m.put(pp.flowId(), pp));
+						providers = map = m;
+					}
+				}
 			}
-			return providers.get(e.flowId);
+			return map.get(e.flowId);
 		}
 	}
 }
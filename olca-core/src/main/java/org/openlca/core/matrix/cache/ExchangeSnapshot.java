@@ -0,0 +1,932 @@
+package org.openlca.core.matrix.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.IntConsumer;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.IDatabaseListener;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.model.ModelType;
+import org.openlca.core.model.UncertaintyType;
+import org.openlca.core.model.descriptors.Descriptor;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * A columnar snapshot of the calculation relevant columns of the exchange
+ * table. The rows are grouped by their owners so that the exchanges of a
+ * process can be directly accessed without a table scan. The snapshot is
+ * written to a file in the file storage location of the database and is
+ * memory mapped from there.
+ * <p>
+ * A snapshot file is kept between sessions. It contains a stamp of the
+ * database state from which it was created: the maximum exchange ID and the
+ * version, last change, and last internal exchange ID of each process. When
+ * the file is loaded, the exchanges of the processes with a different stamp
+ * (and the owners of exchanges with a larger ID) are read again from the
+ * database and patched into the snapshot; the rows of all other processes are
+ * taken from the file.
+ * <p>
+ * Snapshots are optional and need to be enabled for a database via
+ * `ExchangeSnapshot.enable(db)`. The `ExchangeTable` (and thus the inventory
+ * builder) and the provider searches then read the exchanges from the
+ * snapshot. When a process is changed via the database listeners or an
+ * eviction of the matrix cache, only the rows of that process are patched on
+ * the next access. Note that modifications of the exchange table via native
+ * SQL are not tracked and, when they do not change the process stamps, are
+ * also not detected in later sessions; call `ExchangeSnapshot.invalidate(db)`
+ * after such modifications.
+ */
+public final class ExchangeSnapshot {
+
+	/** The version of the file format. */
+	static final int VERSION = 2;
+
+	private static final int MAGIC = 0x4F4C4558;
+	private static final String FILE_PREFIX = "exchanges_";
+	private static final String FILE_SUFFIX = ".snapshot";
+
+	private static final Map<IDatabase, Slot> slots = new WeakHashMap<>();
+
+	private final int size;
+	private final int dbVersion;
+	private final Stamps stamps;
+	private final String[] strings;
+
+	private final LongBuffer ids;
+	private final LongBuffer owners;
+	private final LongBuffer flows;
+	private final LongBuffer flowPropertyFactors;
+	private final LongBuffer units;
+	private final LongBuffer providers;
+	private final LongBuffer currencies;
+	private final LongBuffer locations;
+	private final DoubleBuffer amounts;
+	private final DoubleBuffer costs;
+	private final DoubleBuffer parameters1;
+	private final DoubleBuffer parameters2;
+	private final DoubleBuffer parameters3;
+	private final IntBuffer formulas;
+	private final IntBuffer costFormulas;
+	private final ByteBuffer flags;
+	private final ByteBuffer uncertaintyTypes;
+
+	/** owner ID -> position of the first row of the owner */
+	private final TLongIntHashMap ownerStarts;
+
+	private ExchangeSnapshot(ByteBuffer buffer) {
+		var header = new Header(buffer);
+		size = header.rows;
+		dbVersion = header.dbVersion;
+		strings = header.strings;
+		int pos = header.columnStart;
+
+		ids = longs(buffer, pos);
+		owners = longs(buffer, pos += 8 * size);
+		flows = longs(buffer, pos += 8 * size);
+		flowPropertyFactors = longs(buffer, pos += 8 * size);
+		units = longs(buffer, pos += 8 * size);
+		providers = longs(buffer, pos += 8 * size);
+		currencies = longs(buffer, pos += 8 * size);
+		locations = longs(buffer, pos += 8 * size);
+		amounts = doubles(buffer, pos += 8 * size);
+		costs = doubles(buffer, pos += 8 * size);
+		parameters1 = doubles(buffer, pos += 8 * size);
+		parameters2 = doubles(buffer, pos += 8 * size);
+		parameters3 = doubles(buffer, pos += 8 * size);
+		formulas = ints(buffer, pos += 8 * size);
+		costFormulas = ints(buffer, pos += 4 * size);
+		flags = bytes(buffer, pos += 4 * size);
+		uncertaintyTypes = bytes(buffer, pos += size);
+		stamps = Stamps.of(buffer, header, (pos + size + 7) & ~7);
+
+		ownerStarts = new TLongIntHashMap();
+		long last = 0;
+		for (int i = 0; i < size; i++) {
+			long owner = owners.get(i);
+			if (i == 0 || owner != last) {
+				ownerStarts.put(owner, i);
+				last = owner;
+			}
+		}
+	}
+
+	/**
+	 * Enables the exchange snapshot for the given database. An existing
+	 * snapshot file is loaded and patched on the first access; if there is no
+	 * such file, the snapshot is created then.
+	 */
+	public static void enable(IDatabase db) {
+		if (db == null)
+			return;
+		synchronized (slots) {
+			if (slots.containsKey(db))
+				return;
+			var slot = new Slot(db.getFileStorageLocation());
+			db.addListener(slot.listener);
+			slots.put(db, slot);
+		}
+	}
+
+	/**
+	 * Disables the exchange snapshot for the given database. The snapshot file
+	 * is kept and is checked against the process stamps when the snapshot is
+	 * enabled again.
+	 */
+	public static void disable(IDatabase db) {
+		if (db == null)
+			return;
+		Slot slot;
+		synchronized (slots) {
+			slot = slots.remove(db);
+		}
+		if (slot != null) {
+			db.removeListener(slot.listener);
+		}
+	}
+
+	public static boolean isEnabled(IDatabase db) {
+		if (db == null)
+			return false;
+		synchronized (slots) {
+			return slots.containsKey(db);
+		}
+	}
+
+	/**
+	 * Returns the current snapshot of the given database or `null` if the
+	 * snapshot is not enabled for that database. The snapshot is loaded or
+	 * rebuilt if necessary.
+	 */
+	public static ExchangeSnapshot of(IDatabase db) {
+		var slot = slotOf(db);
+		return slot != null
+				? slot.get(db)
+				: null;
+	}
+
+	/**
+	 * Invalidates the snapshot of the given database if it is enabled. The
+	 * snapshot file is deleted and the snapshot is rebuilt from the complete
+	 * exchange table on the next access.
+	 */
+	public static void invalidate(IDatabase db) {
+		var slot = slotOf(db);
+		if (slot != null) {
+			slot.invalidate();
+		}
+	}
+
+	/**
+	 * Marks the exchanges of the given process as changed in the snapshot of
+	 * the given database if it is enabled. Only the rows of this process are
+	 * read again on the next access.
+	 */
+	public static void invalidate(IDatabase db, long processId) {
+		var slot = slotOf(db);
+		if (slot != null) {
+			slot.changed(processId);
+		}
+	}
+
+	private static Slot slotOf(IDatabase db) {
+		if (db == null)
+			return null;
+		synchronized (slots) {
+			return slots.get(db);
+		}
+	}
+
+	/**
+	 * Creates a new snapshot from the exchange table of the given database in
+	 * memory.
+	 */
+	public static ExchangeSnapshot build(IDatabase db) {
+		var stamps = Stamps.query(db);
+		return new ExchangeSnapshot(
+				Builder.scan(db).toBuffer(db.getVersion(), stamps));
+	}
+
+	/** Returns the number of rows (exchanges) of this snapshot. */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Calls the given function with the row positions of the exchanges of the
+	 * given owner (process).
+	 */
+	public void eachRowOf(long owner, IntConsumer fn) {
+		if (!ownerStarts.containsKey(owner))
+			return;
+		for (int i = ownerStarts.get(owner); i < size; i++) {
+			if (owners.get(i) != owner)
+				return;
+			fn.accept(i);
+		}
+	}
+
+	public long id(int row) {
+		return ids.get(row);
+	}
+
+	public long owner(int row) {
+		return owners.get(row);
+	}
+
+	public long flow(int row) {
+		return flows.get(row);
+	}
+
+	public long flowPropertyFactor(int row) {
+		return flowPropertyFactors.get(row);
+	}
+
+	public long unit(int row) {
+		return units.get(row);
+	}
+
+	public double amount(int row) {
+		return amounts.get(row);
+	}
+
+	public String formula(int row) {
+		return string(formulas.get(row));
+	}
+
+	public boolean isInput(int row) {
+		return (flags.get(row) & 1) != 0;
+	}
+
+	public boolean isAvoided(int row) {
+		return (flags.get(row) & 2) != 0;
+	}
+
+	/** Returns 0 if the exchange has no default provider. */
+	public long defaultProvider(int row) {
+		return providers.get(row);
+	}
+
+	/** Returns 0 if the exchange has no location. */
+	public long location(int row) {
+		return locations.get(row);
+	}
+
+	/** Returns true if the exchange has a currency and thus costs. */
+	public boolean hasCosts(int row) {
+		return currencies.get(row) >= 0;
+	}
+
+	public long currency(int row) {
+		return currencies.get(row);
+	}
+
+	public double costValue(int row) {
+		return costs.get(row);
+	}
+
+	public String costFormula(int row) {
+		return string(costFormulas.get(row));
+	}
+
+	/** Returns `null` if no uncertainty type is assigned. */
+	public UncertaintyType uncertaintyType(int row) {
+		int type = uncertaintyTypes.get(row);
+		return type < 0
+				? null
+				: UncertaintyType.values()[type];
+	}
+
+	public double parameter1(int row) {
+		return parameters1.get(row);
+	}
+
+	public double parameter2(int row) {
+		return parameters2.get(row);
+	}
+
+	public double parameter3(int row) {
+		return parameters3.get(row);
+	}
+
+	private String string(int idx) {
+		return idx < 0
+				? null
+				: strings[idx];
+	}
+
+	private static LongBuffer longs(ByteBuffer buffer, int pos) {
+		return buffer.duplicate().position(pos).slice().asLongBuffer();
+	}
+
+	private static DoubleBuffer doubles(ByteBuffer buffer, int pos) {
+		return buffer.duplicate().position(pos).slice().asDoubleBuffer();
+	}
+
+	private static IntBuffer ints(ByteBuffer buffer, int pos) {
+		return buffer.duplicate().position(pos).slice().asIntBuffer();
+	}
+
+	private static ByteBuffer bytes(ByteBuffer buffer, int pos) {
+		return buffer.duplicate().position(pos).slice();
+	}
+
+
+	/**
+	 * The header of a snapshot: the format version, the database version, the
+	 * number of exchanges and process stamps, the maximum exchange ID, and the
+	 * table of strings (formulas).
+	 */
+	private static class Header {
+
+		final int version;
+		final int dbVersion;
+		final int rows;
+		final int stampCount;
+		final long maxExchangeId;
+		final String[] strings;
+		final int columnStart;
+
+		Header(ByteBuffer buffer) {
+			var b = buffer.duplicate().position(0);
+			if (b.getInt() != MAGIC)
+				throw new IllegalArgumentException("not an exchange snapshot");
+			version = b.getInt();
+			if (version != VERSION)
+				throw new IllegalArgumentException(
+						"unsupported snapshot version " + version);
+			dbVersion = b.getInt();
+			rows = b.getInt();
+			stampCount = b.getInt();
+			strings = new String[b.getInt()];
+			maxExchangeId = b.getLong();
+			for (int i = 0; i < strings.length; i++) {
+				var bytes = new byte[b.getInt()];
+				b.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			// the columns are aligned at 8 bytes
+			columnStart = (b.position() + 7) & ~7;
+		}
+	}
+
+	/**
+	 * The state of the processes from which a snapshot was created: the
+	 * version, last change, and last internal exchange ID of each process and
+	 * the maximum ID of the exchanges. The processes with a different stamp in
+	 * the database are patched when a snapshot is loaded.
+	 */
+	private static class Stamps {
+
+		final long maxExchangeId;
+		final long[] ids;
+		final long[] versions;
+		final long[] lastChanges;
+		final long[] lastInternalIds;
+
+		private Stamps(long maxExchangeId, int size) {
+			this.maxExchangeId = maxExchangeId;
+			ids = new long[size];
+			versions = new long[size];
+			lastChanges = new long[size];
+			lastInternalIds = new long[size];
+		}
+
+		static Stamps of(ByteBuffer buffer, Header header, int pos) {
+			var stamps = new Stamps(header.maxExchangeId, header.stampCount);
+			int n = header.stampCount;
+			longs(buffer, pos).get(stamps.ids);
+			longs(buffer, pos += 8 * n).get(stamps.versions);
+			longs(buffer, pos += 8 * n).get(stamps.lastChanges);
+			longs(buffer, pos + 8 * n).get(stamps.lastInternalIds);
+			return stamps;
+		}
+
+		static Stamps query(IDatabase db) {
+			long[] maxId = {0};
+			NativeSql.on(db).query(
+					"SELECT MAX(id) FROM tbl_exchanges", r -> {
+						maxId[0] = r.getLong(1);
+						return false;
+					});
+			var ids = new TLongArrayList();
+			var versions = new TLongArrayList();
+			var lastChanges = new TLongArrayList();
+			var lastInternalIds = new TLongArrayList();
+			String sql = "SELECT id, version, last_change, last_internal_id"
+					+ " FROM tbl_processes";
+			NativeSql.on(db).query(sql, r -> {
+				ids.add(r.getLong(1));
+				versions.add(r.getLong(2));
+				lastChanges.add(r.getLong(3));
+				lastInternalIds.add(r.getLong(4));
+				return true;
+			});
+			var stamps = new Stamps(maxId[0], ids.size());
+			ids.toArray(stamps.ids);
+			versions.toArray(stamps.versions);
+			lastChanges.toArray(stamps.lastChanges);
+			lastInternalIds.toArray(stamps.lastInternalIds);
+			return stamps;
+		}
+
+		int size() {
+			return ids.length;
+		}
+
+		/**
+		 * Returns the IDs of the processes that were added, deleted, or have
+		 * a different stamp in the given stamps.
+		 */
+		TLongHashSet diff(Stamps other) {
+			var index = new TLongIntHashMap(other.size(), 0.5f, -1L, -1);
+			for (int i = 0; i < other.size(); i++) {
+				index.put(other.ids[i], i);
+			}
+			var changed = new TLongHashSet();
+			var found = new TLongHashSet();
+			for (int i = 0; i < size(); i++) {
+				long id = ids[i];
+				int j = index.get(id);
+				if (j < 0
+						|| versions[i] != other.versions[j]
+						|| lastChanges[i] != other.lastChanges[j]
+						|| lastInternalIds[i] != other.lastInternalIds[j]) {
+					changed.add(id);
+				}
+				found.add(id);
+			}
+			for (long id : other.ids) {
+				if (!found.contains(id)) {
+					changed.add(id);
+				}
+			}
+			return changed;
+		}
+	}
+
+	/**
+	 * Reads the exchange table into columns.
+	 */
+	private static class Builder {
+
+		final TLongArrayList ids = new TLongArrayList();
+		final TLongArrayList owners = new TLongArrayList();
+		final TLongArrayList flows = new TLongArrayList();
+		final TLongArrayList flowPropertyFactors = new TLongArrayList();
+		final TLongArrayList units = new TLongArrayList();
+		final TLongArrayList providers = new TLongArrayList();
+		final TLongArrayList currencies = new TLongArrayList();
+		final TLongArrayList locations = new TLongArrayList();
+		final TDoubleArrayList amounts = new TDoubleArrayList();
+		final TDoubleArrayList costs = new TDoubleArrayList();
+		final TDoubleArrayList parameters1 = new TDoubleArrayList();
+		final TDoubleArrayList parameters2 = new TDoubleArrayList();
+		final TDoubleArrayList parameters3 = new TDoubleArrayList();
+		final TIntArrayList formulas = new TIntArrayList();
+		final TIntArrayList costFormulas = new TIntArrayList();
+		final TByteArrayList flags = new TByteArrayList();
+		final TByteArrayList uncertaintyTypes = new TByteArrayList();
+
+		final ArrayList<String> strings = new ArrayList<>();
+		final TObjectIntHashMap<String> stringIndex = new TObjectIntHashMap<>(
+				16, 0.5f, -1);
+
+		static Builder scan(IDatabase db) {
+			var b = new Builder();
+			b.read(db, "");
+			return b;
+		}
+
+		/**
+		 * Creates a copy of the given snapshot where the rows of the given
+		 * processes are read again from the database.
+		 */
+		static Builder patch(
+				ExchangeSnapshot snapshot, TLongHashSet processes, IDatabase db) {
+			var b = new Builder();
+			for (int row = 0; row < snapshot.size; row++) {
+				if (!processes.contains(snapshot.owner(row))) {
+					b.copy(snapshot, row);
+				}
+			}
+			var ids = processes.toArray();
+			Arrays.sort(ids);
+			int chunk = 1000;
+			for (int start = 0; start < ids.length; start += chunk) {
+				var in = new StringBuilder();
+				int end = Math.min(ids.length, start + chunk);
+				for (int i = start; i < end; i++) {
+					if (i > start) {
+						in.append(',');
+					}
+					in.append(ids[i]);
+				}
+				b.read(db, " WHERE f_owner IN (" + in + ")");
+			}
+			return b;
+		}
+
+		private void read(IDatabase db, String where) {
+			String sql = "SELECT"
+					+ /* 1 */ " id,"
+					+ /* 2 */ " f_owner,"
+					+ /* 3 */ " f_flow,"
+					+ /* 4 */ " f_flow_property_factor,"
+					+ /* 5 */ " f_unit,"
+					+ /* 6 */ " resulting_amount_value,"
+					+ /* 7 */ " resulting_amount_formula,"
+					+ /* 8 */ " is_input,"
+					+ /* 9 */ " avoided_product,"
+					+ /* 10 */ " f_default_provider,"
+					+ /* 11 */ " cost_value,"
+					+ /* 12 */ " cost_formula,"
+					+ /* 13 */ " f_currency,"
+					+ /* 14 */ " distribution_type,"
+					+ /* 15 */ " parameter1_value,"
+					+ /* 16 */ " parameter2_value,"
+					+ /* 17 */ " parameter3_value,"
+					+ /* 18 */ " f_location"
+					+ " FROM tbl_exchanges" + where + " ORDER BY f_owner, id";
+			NativeSql.on(db).query(sql, r -> {
+				ids.add(r.getLong(1));
+				owners.add(r.getLong(2));
+				flows.add(r.getLong(3));
+				flowPropertyFactors.add(r.getLong(4));
+				units.add(r.getLong(5));
+				amounts.add(r.getDouble(6));
+				formulas.add(string(r.getString(7)));
+				byte flags = 0;
+				if (r.getBoolean(8)) {
+					flags |= 1;
+				}
+				if (r.getBoolean(9)) {
+					flags |= 2;
+				}
+				this.flags.add(flags);
+				providers.add(r.getLong(10));
+				costs.add(r.getDouble(11));
+				costFormulas.add(string(r.getString(12)));
+				long currency = r.getLong(13);
+				currencies.add(r.wasNull() ? -1 : currency);
+				int uncertainty = r.getInt(14);
+				uncertaintyTypes.add(r.wasNull() ? -1 : (byte) uncertainty);
+				parameters1.add(r.getDouble(15));
+				parameters2.add(r.getDouble(16));
+				parameters3.add(r.getDouble(17));
+				locations.add(r.getLong(18));
+				return true;
+			});
+		}
+
+		private void copy(ExchangeSnapshot s, int row) {
+			ids.add(s.ids.get(row));
+			owners.add(s.owners.get(row));
+			flows.add(s.flows.get(row));
+			flowPropertyFactors.add(s.flowPropertyFactors.get(row));
+			units.add(s.units.get(row));
+			providers.add(s.providers.get(row));
+			currencies.add(s.currencies.get(row));
+			locations.add(s.locations.get(row));
+			amounts.add(s.amounts.get(row));
+			costs.add(s.costs.get(row));
+			parameters1.add(s.parameters1.get(row));
+			parameters2.add(s.parameters2.get(row));
+			parameters3.add(s.parameters3.get(row));
+			formulas.add(string(s.formula(row)));
+			costFormulas.add(string(s.costFormula(row)));
+			flags.add(s.flags.get(row));
+			uncertaintyTypes.add(s.uncertaintyTypes.get(row));
+		}
+
+		private int string(String s) {
+			if (s == null)
+				return -1;
+			int idx = stringIndex.get(s);
+			if (idx >= 0)
+				return idx;
+			idx = strings.size();
+			strings.add(s);
+			stringIndex.put(s, idx);
+			return idx;
+		}
+
+		ByteBuffer toBuffer(int dbVersion, Stamps stamps) {
+			int rows = ids.size();
+			var stringBytes = new ArrayList<byte[]>(strings.size());
+			int headerSize = 32;
+			for (var s : strings) {
+				var bytes = s.getBytes(StandardCharsets.UTF_8);
+				stringBytes.add(bytes);
+				headerSize += 4 + bytes.length;
+			}
+			int columnStart = (headerSize + 7) & ~7;
+			long stampStart = (columnStart
+					+ (long) rows * (13 * 8 + 2 * 4 + 2) + 7) & ~7;
+			long total = stampStart + (long) stamps.size() * 4 * 8;
+			if (total > Integer.MAX_VALUE)
+				throw new IllegalStateException(
+						"exchange table too large for a snapshot");
+
+			var buffer = ByteBuffer.allocate((int) total);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(dbVersion);
+			buffer.putInt(rows);
+			buffer.putInt(stamps.size());
+			buffer.putInt(strings.size());
+			buffer.putLong(stamps.maxExchangeId);
+			for (var bytes : stringBytes) {
+				buffer.putInt(bytes.length);
+				buffer.put(bytes);
+			}
+			buffer.position(columnStart);
+			for (var column : new TLongArrayList[]{ids, owners, flows,
+					flowPropertyFactors, units, providers, currencies, locations}) {
+				for (int i = 0; i < rows; i++) {
+					buffer.putLong(column.getQuick(i));
+				}
+			}
+			for (var column : new TDoubleArrayList[]{amounts, costs,
+					parameters1, parameters2, parameters3}) {
+				for (int i = 0; i < rows; i++) {
+					buffer.putDouble(column.getQuick(i));
+				}
+			}
+			for (var column : new TIntArrayList[]{formulas, costFormulas}) {
+				for (int i = 0; i < rows; i++) {
+					buffer.putInt(column.getQuick(i));
+				}
+			}
+			buffer.put(flags.toArray());
+			buffer.put(uncertaintyTypes.toArray());
+			buffer.position((int) stampStart);
+			for (var column : new long[][]{stamps.ids, stamps.versions,
+					stamps.lastChanges, stamps.lastInternalIds}) {
+				for (long val : column) {
+					buffer.putLong(val);
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Holds the current snapshot of a database. It does not reference the
+	 * database so that the registry does not prevent closed databases from
+	 * being garbage collected. Each snapshot is written to a new file so that
+	 * a file that is still mapped (by readers of an older snapshot) never
+	 * needs to be replaced. Only the file with the highest generation number
+	 * is read; older files that could not be deleted (e.g. because they are
+	 * still mapped on Windows) are just deleted later.
+	 */
+	private static class Slot {
+
+		final File dir;
+		final IDatabaseListener listener;
+		volatile ExchangeSnapshot current;
+
+		/** The last snapshot; it is patched with the changed processes. */
+		private ExchangeSnapshot base;
+		private final TLongHashSet changed = new TLongHashSet();
+		private File currentFile;
+		private int generation;
+		private boolean readFile = true;
+
+		Slot(File dir) {
+			this.dir = dir;
+			this.listener = new IDatabaseListener() {
+				@Override
+				public void modelInserted(Descriptor d) {
+					onChange(d);
+				}
+
+				@Override
+				public void modelUpdated(Descriptor d) {
+					onChange(d);
+				}
+
+				@Override
+				public void modelDeleted(Descriptor d) {
+					onChange(d);
+				}
+			};
+		}
+
+		private void onChange(Descriptor d) {
+			if (d != null && d.type == ModelType.PROCESS) {
+				changed(d.id);
+			}
+		}
+
+		synchronized void changed(long processId) {
+			changed.add(processId);
+			current = null;
+		}
+
+		/**
+		 * Releases the current snapshot and deletes its file. There is no
+		 * portable way to unmap a buffer in Java; the mapping is released when
+		 * the snapshot is garbage collected.
+		 */
+		synchronized void invalidate() {
+			current = null;
+			base = null;
+			changed.clear();
+			readFile = false;
+			deleteFiles(null);
+			currentFile = null;
+		}
+
+		ExchangeSnapshot get(IDatabase db) {
+			var snapshot = current;
+			if (snapshot != null)
+				return snapshot;
+			synchronized (this) {
+				if (current != null)
+					return current;
+				if (base == null && readFile) {
+					readFile = false;
+					base = read(db);
+				}
+				var stamps = Stamps.query(db);
+				if (base == null) {
+					var buffer = Builder.scan(db)
+							.toBuffer(db.getVersion(), stamps);
+					base = write(buffer);
+				} else {
+					var processes = base.stamps.diff(stamps);
+					processes.addAll(changed);
+					if (stamps.maxExchangeId > base.stamps.maxExchangeId) {
+						processes.addAll(ownersAfter(
+								db, base.stamps.maxExchangeId));
+					}
+					if (!processes.isEmpty()) {
+						var buffer = Builder.patch(base, processes, db)
+								.toBuffer(db.getVersion(), stamps);
+						base = write(buffer);
+					}
+				}
+				changed.clear();
+				current = base;
+				return current;
+			}
+		}
+
+		/**
+		 * Returns the owners of the exchanges with an ID that is larger than
+		 * the given ID.
+		 */
+		private static TLongHashSet ownersAfter(IDatabase db, long id) {
+			var owners = new TLongHashSet();
+			String sql = "SELECT DISTINCT f_owner FROM tbl_exchanges"
+					+ " WHERE id > " + id;
+			NativeSql.on(db).query(sql, r -> {
+				owners.add(r.getLong(1));
+				return true;
+			});
+			return owners;
+		}
+
+		/**
+		 * Maps the snapshot file with the highest generation number if it
+		 * was created for the current database version.
+		 */
+		private ExchangeSnapshot read(IDatabase db) {
+			var files = files();
+			if (files.length == 0)
+				return null;
+			var file = files[files.length - 1];
+			var log = LoggerFactory.getLogger(getClass());
+			try (var channel = FileChannel.open(file.toPath())) {
+				var buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				var snapshot = new ExchangeSnapshot(buffer);
+				if (snapshot.dbVersion != db.getVersion()) {
+					deleteFiles(null);
+					return null;
+				}
+				log.trace("use exchange snapshot {}", file);
+				currentFile = file;
+				deleteFiles(file);
+				return snapshot;
+			} catch (Exception e) {
+				log.warn("failed to read exchange snapshot " + file, e);
+				deleteFiles(null);
+				return null;
+			}
+		}
+
+		/**
+		 * Writes the snapshot into a new file and maps it into memory. If this
+		 * fails, the snapshot is kept in memory.
+		 */
+		private ExchangeSnapshot write(ByteBuffer buffer) {
+			if (dir == null)
+				return new ExchangeSnapshot(buffer);
+			// the new file must have the highest generation number, also
+			// when older files could not be deleted
+			var files = files();
+			if (files.length > 0) {
+				generation = Math.max(
+						generation, generationOf(files[files.length - 1]));
+			}
+			var file = new File(dir, FILE_PREFIX + (++generation) + FILE_SUFFIX);
+			try {
+				if (!dir.exists()) {
+					Files.createDirectories(dir.toPath());
+				}
+				try (var channel = FileChannel.open(file.toPath(),
+						StandardOpenOption.CREATE,
+						StandardOpenOption.READ,
+						StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+					var b = buffer.duplicate();
+					while (b.hasRemaining()) {
+						channel.write(b);
+					}
+					var mapped = channel.map(
+							FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					currentFile = file;
+					deleteFiles(file);
+					return new ExchangeSnapshot(mapped);
+				}
+			} catch (Exception e) {
+				var log = LoggerFactory.getLogger(getClass());
+				log.warn("failed to write exchange snapshot " + file, e);
+				delete(file);
+				return new ExchangeSnapshot(buffer);
+			}
+		}
+
+		/**
+		 * Returns the snapshot files in the storage folder of the database
+		 * sorted by their generation numbers.
+		 */
+		private File[] files() {
+			if (dir == null)
+				return new File[0];
+			var files = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX)
+					&& name.endsWith(FILE_SUFFIX));
+			if (files == null)
+				return new File[0];
+			Arrays.sort(files, Comparator.comparingInt(Slot::generationOf));
+			return files;
+		}
+
+		private static int generationOf(File file) {
+			var name = file.getName();
+			try {
+				return Integer.parseInt(name.substring(
+						FILE_PREFIX.length(),
+						name.length() - FILE_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * Deletes the snapshot files in the storage folder of the database
+		 * except the given file (which can be `null`).
+		 */
+		private void deleteFiles(File keep) {
+			for (var file : files()) {
+				if (!file.equals(keep)) {
+					delete(file);
+				}
+			}
+		}
+
+		private static void delete(File file) {
+			try {
+				Files.deleteIfExists(file.toPath());
+			} catch (IOException e) {
+				var log = LoggerFactory.getLogger(Slot.class);
+				log.debug("could not delete exchange snapshot {}; "
+						+ "it is deleted later", file);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.openlca.core.matrix.cache;
 
 import java.sql.ResultSet;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import org.openlca.core.database.IDatabase;
@@ -29,16 +30,34 @@ public class ExchangeTable {
 	 * index.
 	 */
 	public void each(TechIndex techIndex, Consumer<CalcExchange> fn) {
+		// avoid full table scans in LCI databases
+		each(techIndex.getProcessIds(), techIndex.size() < 1000, fn);
+	}
+
+	/**
+	 * Calls the given function for each exchange of the given processes.
+	 */
+	public void each(Set<Long> processIds, Consumer<CalcExchange> fn) {
+		each(processIds, true, fn);
+	}
+
+	private void each(Set<Long> processIds, boolean filtered,
+			Consumer<CalcExchange> fn) {
+		var snapshot = ExchangeSnapshot.of(db);
+		if (snapshot != null) {
+			each(snapshot, processIds, fn);
+			return;
+		}
 		String sql = query();
-		if (techIndex.size() < 1000) {
-			// avoid full table scans in LCI databases
-			sql += " where f_owner in " + CacheUtil.asSql(
-					techIndex.getProcessIds());
+		if (filtered) {
+			if (processIds.isEmpty())
+				return;
+			sql += " where f_owner in " + CacheUtil.asSql(processIds);
 		}
 		try {
 			NativeSql.on(db).query(sql, r -> {
 				long owner = r.getLong(2);
-				if (techIndex.isProvider(owner)) {
+				if (processIds.contains(owner)) {
 					try {
 						fn.accept(next(owner, r));
 					} catch (Exception e) {
@@ -55,6 +74,17 @@ public class ExchangeTable {
 		}
 	}
 
+	/**
+	 * Reads the exchanges directly from the columns of the snapshot; the
+	 * exchanges of a process are stored in consecutive rows there.
+	 */
+	private void each(ExchangeSnapshot snapshot, Set<Long> processIds,
+			Consumer<CalcExchange> fn) {
+		for (long owner : processIds) {
+			snapshot.eachRowOf(owner, row -> fn.accept(next(snapshot, row)));
+		}
+	}
+
 	private static String query() {
 		return "SELECT"
 				+ /* 1 */ " id,"
@@ -111,10 +141,45 @@ public class ExchangeTable {
 		return e;
 	}
 
+	private CalcExchange next(ExchangeSnapshot s, int row) {
+		CalcExchange e = new CalcExchange();
+		e.exchangeId = s.id(row);
+		e.processId = s.owner(row);
+		e.flowId = s.flow(row);
+		e.flowType = flowTypes.get(e.flowId);
+		e.conversionFactor = getConversionFactor(
+				s.flowPropertyFactor(row), s.unit(row));
+		e.amount = s.amount(row);
+		e.formula = s.formula(row);
+		e.isInput = s.isInput(row);
+		e.isAvoided = s.isAvoided(row);
+		e.defaultProviderId = s.defaultProvider(row);
+		e.locationId = s.location(row);
+
+		// costs
+		if (s.hasCosts(row)) {
+			e.costValue = s.costValue(row);
+			e.costFormula = s.costFormula(row);
+			e.currencyFactor = conversions.getCurrencyFactor(s.currency(row));
+		}
+
+		// uncertainties
+		var uncertaintyType = s.uncertaintyType(row);
+		if (uncertaintyType != null) {
+			e.uncertaintyType = uncertaintyType;
+			e.parameter1 = s.parameter1(row);
+			e.parameter2 = s.parameter2(row);
+			e.parameter3 = s.parameter3(row);
+		}
+		return e;
+	}
+
 	private double getConversionFactor(ResultSet record) throws Exception {
-		long propertyFactorId = record.getLong(4);
+		return getConversionFactor(record.getLong(4), record.getLong(5));
+	}
+
+	private double getConversionFactor(long propertyFactorId, long unitId) {
 		double propertyFactor = conversions.getPropertyFactor(propertyFactorId);
-		long unitId = record.getLong(5);
 		double unitFactor = conversions.getUnitFactor(unitId);
 		if (propertyFactor == 0)
 			return 0;
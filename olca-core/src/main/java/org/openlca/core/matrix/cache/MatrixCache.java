@@ -76,6 +76,7 @@ public final class MatrixCache {
 		if (exchangeCache != null)
 			exchangeCache.invalidateAll();
 		processTable = null;
+		ExchangeSnapshot.invalidate(database);
 	}
 
 	public synchronized void evict(ModelType type, long id) {
@@ -119,6 +120,7 @@ public final class MatrixCache {
 
 	private void evictProcess(long id) {
 		processTable = null;
+		ExchangeSnapshot.invalidate(database, id);
 		if (exchangeCache != null)
 			exchangeCache.invalidate(id);
 	}
@@ -135,6 +137,7 @@ public final class MatrixCache {
 			break;
 		case PROCESS:
 			processTable = null;
+			ExchangeSnapshot.invalidate(database, id);
 			break;
 		case UNIT:
 			baseEviction();
@@ -56,25 +56,19 @@ public class ProcessTable {
 		}
 
 		// index flow -> process relations
+		var snapshot = ExchangeSnapshot.of(db);
+		if (snapshot != null) {
+			for (int row = 0; row < snapshot.size(); row++) {
+				index(snapshot.owner(row), snapshot.flow(row),
+						snapshot.isInput(row));
+			}
+			log.trace("{} providers mapped", processes.size());
+			return;
+		}
 		String query = "select f_owner, f_flow, is_input from tbl_exchanges";
 		try {
 			NativeSql.on(db).query(query, r -> {
-				long processId = r.getLong(1);
-				long flowId = r.getLong(2);
-				boolean isInput = r.getBoolean(3);
-				FlowDescriptor flow = flows.get(flowId);
-				if (flow == null)
-					return true;
-				FlowType t = flow.flowType;
-				if ((isInput && t == FlowType.WASTE_FLOW)
-						|| (!isInput && t == FlowType.PRODUCT_FLOW)) {
-					TLongArrayList list = flowProviders.get(flowId);
-					if (list == null) {
-						list = new TLongArrayList();
-						flowProviders.put(flowId, list);
-					}
-					list.add(processId);
-				}
+				index(r.getLong(1), r.getLong(2), r.getBoolean(3));
 				return true;
 			});
 			log.trace("{} providers mapped", processes.size());
@@ -83,6 +77,22 @@ public class ProcessTable {
 		}
 	}
 
+	private void index(long processId, long flowId, boolean isInput) {
+		FlowDescriptor flow = flows.get(flowId);
+		if (flow == null)
+			return;
+		FlowType t = flow.flowType;
+		if ((isInput && t == FlowType.WASTE_FLOW)
+				|| (!isInput && t == FlowType.PRODUCT_FLOW)) {
+			TLongArrayList list = flowProviders.get(flowId);
+			if (list == null) {
+				list = new TLongArrayList();
+				flowProviders.put(flowId, list);
+			}
+			list.add(processId);
+		}
+	}
+
 	/** Returns the process type for the given process-ID. */
 	public ProcessType getType(long processId) {
 		ProcessDescriptor d = processes.get(processId);
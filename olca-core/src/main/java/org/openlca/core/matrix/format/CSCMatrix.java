@@ -1,9 +1,12 @@
 package org.openlca.core.matrix.format;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TLongHashSet;
 
 /**
  * Implements a compressed-column representation of a sparse matrix (CSC =
@@ -12,6 +15,13 @@ import gnu.trove.list.array.TIntArrayList;
  */
 public class CSCMatrix implements MatrixReader {
 
+	/**
+	 * The minimum number of multiplications of a task when a matrix product
+	 * is calculated in parallel. Smaller products are calculated in a single
+	 * thread.
+	 */
+	private static final int MIN_TASK_SIZE = 1 << 15;
+
 	/**
 	 * The total number of rows.
 	 */
@@ -174,6 +184,103 @@ public class CSCMatrix implements MatrixReader {
 		}
 	}
 
+	@Override
+	public void iterateColumn(int col, EntryFunction fn) {
+		int start = columnPointers[col];
+		int end = col < (columns - 1)
+				? columnPointers[col + 1]
+				: values.length;
+		for (int i = start; i < end; i++) {
+			double val = values[i];
+			if (val != 0) {
+				fn.value(rowIndices[i], col, val);
+			}
+		}
+	}
+
+	/**
+	 * Returns the position of the given matrix cell in the `values` array of
+	 * this matrix or `-1` if the cell is not part of the sparsity structure of
+	 * this matrix. Values of existing cells can be directly modified via this
+	 * position without changing the structure of the matrix.
+	 */
+	public int indexOf(int row, int col) {
+		if (col < 0 || col >= columns)
+			return -1;
+		int start = columnPointers[col];
+		int end = columnPointers[col + 1];
+		for (int idx = start; idx < end; idx++) {
+			if (rowIndices[idx] == row)
+				return idx;
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates a new matrix with the entries of this matrix and the given
+	 * additional cells in its sparsity structure. The additional cells are
+	 * stored as explicit zeros. Cells that are already part of the structure
+	 * or that are out of the matrix bounds are ignored.
+	 */
+	public CSCMatrix withCells(int[] cellRows, int[] cellCols) {
+
+		// collect the missing cells
+		var missing = new TLongHashSet();
+		int[] extra = new int[columns];
+		for (int i = 0; i < cellRows.length; i++) {
+			int row = cellRows[i];
+			int col = cellCols[i];
+			if (row < 0 || row >= rows || col < 0 || col >= columns)
+				continue;
+			if (indexOf(row, col) >= 0)
+				continue;
+			long key = ((long) col) * rows + row;
+			if (missing.add(key)) {
+				extra[col]++;
+			}
+		}
+		if (missing.isEmpty())
+			return this;
+
+		// copy the existing columns and leave space for the missing cells
+		int n = values.length + missing.size();
+		var newValues = new double[n];
+		var newRows = new int[n];
+		var newPointers = new int[columns + 1];
+		int[] next = new int[columns];
+		int pos = 0;
+		for (int col = 0; col < columns; col++) {
+			newPointers[col] = pos;
+			int start = columnPointers[col];
+			int len = columnPointers[col + 1] - start;
+			System.arraycopy(values, start, newValues, pos, len);
+			System.arraycopy(rowIndices, start, newRows, pos, len);
+			pos += len;
+			next[col] = pos;
+			pos += extra[col];
+		}
+		newPointers[columns] = n;
+
+		// insert the missing cells as explicit zeros; we keep the row indices
+		// sorted in each column as they are sorted in `compress`
+		var it = missing.iterator();
+		while (it.hasNext()) {
+			long key = it.next();
+			int col = (int) (key / rows);
+			int row = (int) (key % rows);
+			int k = next[col];
+			while (k > newPointers[col] && newRows[k - 1] > row) {
+				newRows[k] = newRows[k - 1];
+				newValues[k] = newValues[k - 1];
+				k--;
+			}
+			newRows[k] = row;
+			newValues[k] = 0;
+			next[col]++;
+		}
+		return new CSCMatrix(rows, columns, newValues, newPointers, newRows);
+	}
+
 	/**
 	 * Note that this method changes the data of this matrix in place. This is
 	 * a fast operation of CSC matrices.
@@ -191,4 +298,203 @@ public class CSCMatrix implements MatrixReader {
 		}
 	}
 
+	/**
+	 * Calculates the product `y = A * v` directly on the compressed columns of
+	 * this matrix. For large matrices, the columns are split into ranges with
+	 * a similar number of non-zero entries which are multiplied in parallel.
+	 * Each range is added to its own result vector so that this is only done
+	 * when the matrix has more non-zero entries than rows.
+	 */
+	@Override
+	public double[] multiply(double[] v) {
+		int tasks = tasksFor(values.length);
+		tasks = Math.min(tasks, values.length / Math.max(1, rows));
+		if (tasks < 2) {
+			var y = new double[rows];
+			multiplyColumns(0, columns, v, 0, y, 0);
+			return y;
+		}
+		var ranges = partition(tasks);
+		var partials = new double[tasks][];
+		IntStream.range(0, tasks).parallel().forEach(t -> {
+			var y = new double[rows];
+			multiplyColumns(ranges[t], ranges[t + 1], v, 0, y, 0);
+			partials[t] = y;
+		});
+		var y = partials[0];
+		for (int t = 1; t < tasks; t++) {
+			var partial = partials[t];
+			for (int i = 0; i < rows; i++) {
+				y[i] += partial[i];
+			}
+		}
+		return y;
+	}
+
+	/**
+	 * Calculates the product `C = A * B` of this sparse matrix `A` with the
+	 * given dense matrix `B`. The columns of `C` are calculated in parallel
+	 * for large products.
+	 */
+	public DenseMatrix multiply(DenseMatrix b) {
+		if (columns != b.rows)
+			throw new IllegalArgumentException("a.columns != b.rows");
+		if (b.columns == 1)
+			return new DenseMatrix(rows, 1, multiply(b.data));
+		var c = new DenseMatrix(rows, b.columns);
+		var cols = IntStream.range(0, b.columns);
+		if (tasksFor((long) values.length * b.columns) > 1) {
+			cols = cols.parallel();
+		}
+		cols.forEach(j -> multiplyColumns(
+				0, columns, b.data, j * b.rows, c.data, j * rows));
+		return c;
+	}
+
+	/**
+	 * Calculates the sparse product `C = A * B` of this matrix `A` with the
+	 * given sparse matrix `B` column by column (Gustavson's algorithm). For
+	 * large products, ranges of columns are calculated in parallel. The row
+	 * indices in the columns of the result are sorted.
+	 */
+	public CSCMatrix multiply(CSCMatrix b) {
+		if (columns != b.rows)
+			throw new IllegalArgumentException("a.columns != b.rows");
+
+		// the number of multiplications is the sum of the lengths of the
+		// columns in A that are selected by the entries in B
+		long work = 0;
+		for (int k : b.rowIndices) {
+			work += columnPointers[k + 1] - columnPointers[k];
+		}
+		int tasks = tasksFor(work);
+		var ranges = b.partition(tasks);
+		var parts = new Product[tasks];
+		var stream = IntStream.range(0, tasks);
+		if (tasks > 1) {
+			stream = stream.parallel();
+		}
+		stream.forEach(t -> parts[t] = productOf(b, ranges[t], ranges[t + 1]));
+
+		// concatenate the column ranges
+		int nnz = 0;
+		for (var part : parts) {
+			nnz += part.rows.size();
+		}
+		var cValues = new double[nnz];
+		var cRows = new int[nnz];
+		var cPointers = new int[b.columns + 1];
+		int pos = 0;
+		for (int t = 0; t < tasks; t++) {
+			var part = parts[t];
+			int n = part.rows.size();
+			part.rows.toArray(cRows, 0, pos, n);
+			part.values.toArray(cValues, 0, pos, n);
+			int colPos = pos;
+			for (int j = ranges[t]; j < ranges[t + 1]; j++) {
+				cPointers[j] = colPos;
+				colPos += part.counts[j - ranges[t]];
+			}
+			pos += n;
+		}
+		cPointers[b.columns] = nnz;
+		return new CSCMatrix(rows, b.columns, cValues, cPointers, cRows);
+	}
+
+	private Product productOf(CSCMatrix b, int start, int end) {
+		var product = new Product(end - start);
+		var acc = new double[rows];
+		var marks = new int[rows];
+		Arrays.fill(marks, -1);
+		var touched = new int[rows];
+		for (int j = start; j < end; j++) {
+			int count = 0;
+			for (int kb = b.columnPointers[j]; kb < b.columnPointers[j + 1]; kb++) {
+				double bkj = b.values[kb];
+				if (bkj == 0)
+					continue;
+				int k = b.rowIndices[kb];
+				for (int ka = columnPointers[k]; ka < columnPointers[k + 1]; ka++) {
+					int i = rowIndices[ka];
+					if (marks[i] != j) {
+						marks[i] = j;
+						acc[i] = 0;
+						touched[count++] = i;
+					}
+					acc[i] += values[ka] * bkj;
+				}
+			}
+			Arrays.sort(touched, 0, count);
+			for (int t = 0; t < count; t++) {
+				int i = touched[t];
+				product.rows.add(i);
+				product.values.add(acc[i]);
+			}
+			product.counts[j - start] = count;
+		}
+		return product;
+	}
+
+	/**
+	 * Adds `A[:, start:end] * x[xOffset + start : xOffset + end]` to the
+	 * vector `y` starting at position `yOffset`.
+	 */
+	private void multiplyColumns(int start, int end, double[] x, int xOffset,
+			double[] y, int yOffset) {
+		for (int col = start; col < end; col++) {
+			double xj = x[xOffset + col];
+			if (xj == 0)
+				continue;
+			int last = columnPointers[col + 1];
+			for (int k = columnPointers[col]; k < last; k++) {
+				y[yOffset + rowIndices[k]] += values[k] * xj;
+			}
+		}
+	}
+
+	/**
+	 * Splits the columns of this matrix into the given number of ranges with a
+	 * similar number of non-zero entries. Range `t` goes from column
+	 * `ranges[t]` (inclusive) to `ranges[t + 1]` (exclusive).
+	 */
+	private int[] partition(int parts) {
+		var ranges = new int[parts + 1];
+		ranges[parts] = columns;
+		int col = 0;
+		for (int p = 1; p < parts; p++) {
+			long target = (long) values.length * p / parts;
+			while (col < columns && columnPointers[col] < target) {
+				col++;
+			}
+			ranges[p] = col;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Returns the number of tasks in which a matrix product with the given
+	 * number of multiplications is split. A value of 1 means that the product
+	 * is calculated in the calling thread.
+	 */
+	public static int tasksFor(long work) {
+		long tasks = work / MIN_TASK_SIZE;
+		if (tasks < 2)
+			return 1;
+		int threads = ForkJoinPool.getCommonPoolParallelism();
+		return (int) Math.min(tasks, threads);
+	}
+
+	/**
+	 * The entries of a column range of a sparse matrix product.
+	 */
+	private static class Product {
+		final int[] counts;
+		final TIntArrayList rows = new TIntArrayList();
+		final TDoubleArrayList values = new TDoubleArrayList();
+
+		Product(int columns) {
+			counts = new int[columns];
+		}
+	}
+
 }
@@ -55,6 +55,17 @@ public class DenseMatrix implements Matrix {
 		return col;
 	}
 
+	@Override
+	public void iterateColumn(int col, EntryFunction fn) {
+		int start = index(0, col);
+		for (int row = 0; row < rows; row++) {
+			double val = data[start + row];
+			if (val != 0) {
+				fn.value(row, col, val);
+			}
+		}
+	}
+
 	@Override
 	public double[] getRow(int i) {
 		double[] row = new double[columns];
@@ -170,6 +170,18 @@ public class HashPointMatrix implements Matrix {
 		}
 	}
 
+	@Override
+	public void iterateColumn(int col, EntryFunction fn) {
+		var colVals = data.get(col);
+		if (colVals == null)
+			return;
+		var iter = colVals.iterator();
+		while (iter.hasNext()) {
+			iter.advance();
+			fn.value(iter.key(), col, iter.value());
+		}
+	}
+
 	/**
 	 * Scales each column j of the matrix with the value v[j] of the given
 	 * vector: M * diagm(v). The matrix is modified in-place.
@@ -1,5 +1,8 @@
 package org.openlca.core.matrix.format;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +13,13 @@ import org.slf4j.LoggerFactory;
  * growing dense matrix block and fast array copying if the fill rate exceeds a
  * specific value. See https://github.com/msrocka/blockm for further
  * information.
+ * <p>
+ * A builder that is created via `MatrixBuilder.triplets()` collects the
+ * entries as triplets (row, column, value) in growable primitive arrays
+ * instead. The triplets are then sorted into a CSC matrix with two counting
+ * sorts in `compress()`, where duplicate entries are summed up in the order in
+ * which they were added. This avoids the hashing of the sparse matrix for
+ * large matrices.
  */
 public class MatrixBuilder {
 
@@ -24,6 +34,8 @@ public class MatrixBuilder {
 	private int denseCols; // we need these because
 	private int denseRows; // dense is null by default
 
+	private Triplets triplets;
+
 	public MatrixBuilder() {
 		this(0.4, 10_000);
 	}
@@ -37,6 +49,16 @@ public class MatrixBuilder {
 		this.checkpoint = checkpoint;
 	}
 
+	/**
+	 * Creates a builder that collects the matrix entries as triplets, see the
+	 * class documentation.
+	 */
+	public static MatrixBuilder triplets() {
+		var builder = new MatrixBuilder();
+		builder.triplets = new Triplets();
+		return builder;
+	}
+
 	public void minSize(int rows, int cols) {
 		if (sparse.rows < rows) {
 			sparse.rows = rows;
@@ -47,6 +69,8 @@ public class MatrixBuilder {
 	}
 
 	public boolean isEmpty() {
+		if (triplets != null)
+			return triplets.size == 0;
 		return dense == null && sparse.isEmpty();
 	}
 
@@ -56,6 +80,10 @@ public class MatrixBuilder {
 	public void set(int row, int col, double val) {
 		if (val == 0 || row < 0 || col < 0)
 			return;
+		if (triplets != null) {
+			triplets.add(row, col, val, true);
+			return;
+		}
 		if (row < denseRows && col < denseCols) {
 			dense.set(row, col, val);
 			return;
@@ -84,6 +112,10 @@ public class MatrixBuilder {
 	public void add(int row, int col, double w) {
 		if (w == 0 || row < 0 || col < 0)
 			return;
+		if (triplets != null) {
+			triplets.add(row, col, w, false);
+			return;
+		}
 		double v = row < denseRows && col < denseCols
 			? dense.get(row, col)
 			: sparse.get(row, col);
@@ -91,6 +123,9 @@ public class MatrixBuilder {
 	}
 
 	public Matrix finish() {
+		if (triplets != null) {
+			return compress().asMutable();
+		}
 		if (dense != null) {
 			mapDense();
 			log.trace("Finish matrix builder with "
@@ -112,6 +147,35 @@ public class MatrixBuilder {
 		return sparse;
 	}
 
+	/**
+	 * Finishes the builder and returns the matrix in the CSC format or as
+	 * dense matrix when the fill rate exceeds the maximum fill rate of sparse
+	 * matrices.
+	 */
+	public MatrixReader compress() {
+		if (triplets == null) {
+			var m = finish();
+			return m instanceof HashPointMatrix
+					? ((HashPointMatrix) m).compress()
+					: m;
+		}
+		int rows = Math.max(sparse.rows, triplets.maxRow + 1);
+		int cols = Math.max(sparse.cols, triplets.maxCol + 1);
+		var csc = triplets.compress(rows, cols);
+		triplets = new Triplets();
+		// double casts to avoid integer overflows
+		double fr = csc.values.length / ((double) rows * (double) cols);
+		log.trace("Fill rate = {}", fr);
+		if (fr <= maxSparseFileRate) {
+			log.trace("Finish matrix builder with "
+					+ "sparse {}*{} matrix", rows, cols);
+			return csc;
+		}
+		log.trace("Finish matrix builder with "
+				+ "dense {}*{} matrix", rows, cols);
+		return MatrixConverter.dense(csc);
+	}
+
 	private void mapDense() {
 		if (dense == null) {
 			dense = new DenseMatrix(
@@ -137,4 +201,118 @@ public class MatrixBuilder {
 		sparse.clear();
 		sparseEntries = 0;
 	}
+
+	/**
+	 * The entries of a matrix as (row, column, value) triplets in the order in
+	 * which they were added. Entries that were added via `set` are marked so
+	 * that they replace the previous entries of the same cell.
+	 */
+	private static class Triplets {
+
+		int size;
+		int[] rows = new int[1024];
+		int[] cols = new int[1024];
+		double[] values = new double[1024];
+		BitSet sets;
+		int maxRow = -1;
+		int maxCol = -1;
+
+		void add(int row, int col, double val, boolean isSet) {
+			if (size == rows.length) {
+				int n = size + (size >> 1);
+				rows = Arrays.copyOf(rows, n);
+				cols = Arrays.copyOf(cols, n);
+				values = Arrays.copyOf(values, n);
+			}
+			if (isSet) {
+				if (sets == null) {
+					sets = new BitSet();
+				}
+				sets.set(size);
+			}
+			rows[size] = row;
+			cols[size] = col;
+			values[size] = val;
+			size++;
+			if (row > maxRow) {
+				maxRow = row;
+			}
+			if (col > maxCol) {
+				maxCol = col;
+			}
+		}
+
+		CSCMatrix compress(int nRows, int nCols) {
+
+			// stable counting sort by rows
+			int[] rowPtr = new int[nRows + 1];
+			for (int k = 0; k < size; k++) {
+				rowPtr[rows[k] + 1]++;
+			}
+			for (int i = 0; i < nRows; i++) {
+				rowPtr[i + 1] += rowPtr[i];
+			}
+			int[] byRow = new int[size];
+			for (int k = 0; k < size; k++) {
+				byRow[rowPtr[rows[k]]++] = k;
+			}
+			rowPtr = null;
+
+			// stable counting sort by columns; the entries of a column are
+			// then sorted by rows and the entries of a cell by their order
+			int[] colPtr = new int[nCols + 1];
+			for (int k = 0; k < size; k++) {
+				colPtr[cols[k] + 1]++;
+			}
+			for (int j = 0; j < nCols; j++) {
+				colPtr[j + 1] += colPtr[j];
+			}
+			int[] next = Arrays.copyOf(colPtr, nCols);
+			int[] order = new int[size];
+			for (int p = 0; p < size; p++) {
+				int k = byRow[p];
+				order[next[cols[k]]++] = k;
+			}
+			byRow = null;
+			next = null;
+
+			// sum up the entries of each cell; the sums are stored in the
+			// value of the first entry of the cell and the first entries of
+			// non-zero cells are moved to the front of the order
+			int nnz = 0;
+			int start = 0;
+			for (int j = 0; j < nCols; j++) {
+				int end = colPtr[j + 1];
+				int p = start;
+				while (p < end) {
+					int first = order[p];
+					int row = rows[first];
+					double sum = values[first];
+					p++;
+					while (p < end && rows[order[p]] == row) {
+						int k = order[p];
+						sum = sets != null && sets.get(k)
+								? values[k]
+								: sum + values[k];
+						p++;
+					}
+					if (sum != 0) {
+						values[first] = sum;
+						order[nnz++] = first;
+					}
+				}
+				start = end;
+				colPtr[j + 1] = nnz;
+			}
+
+			var rowIndices = new int[nnz];
+			var cscValues = new double[nnz];
+			for (int p = 0; p < nnz; p++) {
+				int k = order[p];
+				rowIndices[p] = rows[k];
+				cscValues[p] = values[k];
+			}
+			return new CSCMatrix(nRows, nCols, cscValues, colPtr, rowIndices);
+		}
+	}
 }
@@ -28,6 +28,18 @@ public final class MatrixConverter {
 		return d;
 	}
 
+	/**
+	 * Returns the given matrix if it is already in the compressed sparse
+	 * column format or converts it into this format otherwise.
+	 */
+	public static CSCMatrix csc(MatrixReader m) {
+		if (m instanceof CSCMatrix)
+			return (CSCMatrix) m;
+		if (m instanceof HashPointMatrix)
+			return ((HashPointMatrix) m).compress();
+		return CSCMatrix.of(m);
+	}
+
 	public static HashPointMatrix hashSparse(Matrix matrix) {
 		if (matrix instanceof HashPointMatrix)
 			return (HashPointMatrix) matrix;
@@ -50,6 +50,24 @@ public interface MatrixReader {
 		}
 	}
 
+	/**
+	 * Iterates over the non-zero values in the given column of this matrix.
+	 * There is no defined order in which the entries are processed. Sparse
+	 * matrix layouts should overwrite this function so that no dense column
+	 * is allocated.
+	 */
+	default void iterateColumn(int col, EntryFunction fn) {
+		if (fn == null)
+			return;
+		var column = getColumn(col);
+		for (int row = 0; row < column.length; row++) {
+			double val = column[row];
+			if (val != 0) {
+				fn.value(row, col, val);
+			}
+		}
+	}
+
 	/**
 	 * Performs a matrix-vector multiplication with the given vector v. It uses
 	 * the iterate function which can be fast for sparse matrices. For dense
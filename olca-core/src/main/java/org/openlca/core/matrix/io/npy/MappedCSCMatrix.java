@@ -0,0 +1,268 @@
+package org.openlca.core.matrix.io.npy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.EntryFunction;
+import org.openlca.core.matrix.format.MatrixReader;
+
+/**
+ * A read-only view on a sparse matrix in compressed sparse column (CSC)
+ * format in a memory mapped NPZ file. This only works when the arrays of the
+ * matrix are stored uncompressed in the NPZ file, as it is done in
+ * `Npz.save` or in NumPy's `savez`. The view is safe for concurrent reads.
+ */
+public final class MappedCSCMatrix implements MatrixReader {
+
+	private final int rows;
+	private final int columns;
+	private final MappedDoubles values;
+	private final MappedInts columnPointers;
+	private final MappedInts rowIndices;
+
+	private MappedCSCMatrix(int rows, int columns, MappedDoubles values,
+			MappedInts columnPointers, MappedInts rowIndices) {
+		this.rows = rows;
+		this.columns = columns;
+		this.values = values;
+		this.columnPointers = columnPointers;
+		this.rowIndices = rowIndices;
+	}
+
+	/**
+	 * Maps the CSC matrix of the given NPZ file. Returns `null` when the file
+	 * does not contain a CSC matrix with uncompressed arrays.
+	 */
+	static MappedCSCMatrix map(File file) {
+		try (var zip = new ZipFile(file)) {
+			if (!"csc".equals(Npz.getFormat(zip)))
+				return null;
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read zip: " + file, e);
+		}
+
+		try (var f = new RandomAccessFile(file, "r");
+			 var channel = f.getChannel()) {
+			var offsets = storedEntries(channel);
+			for (var entry : new String[]{
+					"shape.npy", "data.npy", "indptr.npy", "indices.npy"}) {
+				if (!offsets.containsKey(entry))
+					return null;
+			}
+
+			var shape = mapInts(channel, offsets.get("shape.npy"));
+			if (shape.size < 2)
+				throw new IllegalStateException("shape is < 2");
+			int rows = shape.get(0);
+			int columns = shape.get(1);
+
+			long pos = offsets.get("data.npy");
+			var header = headerAt(channel, pos);
+			if (header.getDType() != DType.Float64)
+				throw new IllegalArgumentException(
+						"not a supported floating point type " + header.dtype);
+			var values = MappedDoubles.map(channel, pos + header.dataOffset,
+					lengthOf(header), header.getByteOrder());
+
+			var columnPointers = mapInts(channel, offsets.get("indptr.npy"));
+			var rowIndices = mapInts(channel, offsets.get("indices.npy"));
+			return new MappedCSCMatrix(
+					rows, columns, values, columnPointers, rowIndices);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to map " + file, e);
+		}
+	}
+
+	private static MappedInts mapInts(FileChannel channel, long pos)
+			throws IOException {
+		var header = headerAt(channel, pos);
+		return MappedInts.map(channel, pos + header.dataOffset,
+				lengthOf(header), header.getDType(), header.getByteOrder());
+	}
+
+	private static Header headerAt(FileChannel channel, long pos)
+			throws IOException {
+		channel.position(pos);
+		return HeaderReader.read(channel);
+	}
+
+	private static long lengthOf(Header header) {
+		return header.shape == null || header.shape.length == 0
+				? 0
+				: Math.max(0, header.shape[0]);
+	}
+
+	/**
+	 * Scans the local file headers of the zip file and returns the positions
+	 * of the data of the uncompressed (stored) entries. We stop when an entry
+	 * has a data descriptor, as its size is then not known from the header.
+	 */
+	private static Map<String, Long> storedEntries(FileChannel channel)
+			throws IOException {
+		var offsets = new HashMap<String, Long>();
+		var head = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+		long pos = 0;
+		long size = channel.size();
+		while (pos + 30 <= size) {
+			head.clear();
+			channel.read(head, pos);
+			if (head.getInt(0) != 0x04034b50)
+				break;
+			int flags = head.getShort(6) & 0xffff;
+			int method = head.getShort(8) & 0xffff;
+			long compressedSize = head.getInt(18) & 0xffffffffL;
+			int nameLength = head.getShort(26) & 0xffff;
+			int extraLength = head.getShort(28) & 0xffff;
+			if ((flags & 8) != 0)
+				break;
+
+			var meta = ByteBuffer.allocate(nameLength + extraLength)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(meta, pos + 30);
+			var name = new String(
+					meta.array(), 0, nameLength, StandardCharsets.UTF_8);
+
+			// the sizes of large entries are stored in a Zip64 extra field
+			// which contains both, the uncompressed and compressed size,
+			// in a local file header
+			if (compressedSize == 0xffffffffL) {
+				int p = nameLength;
+				while (p + 4 <= meta.limit()) {
+					int id = meta.getShort(p) & 0xffff;
+					int length = meta.getShort(p + 2) & 0xffff;
+					if (id == 0x0001 && length >= 16) {
+						compressedSize = meta.getLong(p + 12);
+						break;
+					}
+					p += 4 + length;
+				}
+			}
+
+			long data = pos + 30 + nameLength + extraLength;
+			if (method == 0) {
+				offsets.put(name, data);
+			}
+			pos = data + compressedSize;
+		}
+		return offsets;
+	}
+
+	@Override
+	public int rows() {
+		return rows;
+	}
+
+	@Override
+	public int columns() {
+		return columns;
+	}
+
+	@Override
+	public boolean isSparse() {
+		return true;
+	}
+
+	/**
+	 * Returns the end of the entries of the given column (exclusive).
+	 */
+	private int end(int col) {
+		return col + 1 < columnPointers.size
+				? columnPointers.get(col + 1)
+				: (int) values.size;
+	}
+
+	@Override
+	public double get(int row, int col) {
+		int end = end(col);
+		for (int idx = columnPointers.get(col); idx < end; idx++) {
+			if (rowIndices.get(idx) == row)
+				return values.get(idx);
+		}
+		return 0;
+	}
+
+	@Override
+	public double[] getColumn(int i) {
+		var column = new double[rows];
+		int end = end(i);
+		for (int idx = columnPointers.get(i); idx < end; idx++) {
+			column[rowIndices.get(idx)] = values.get(idx);
+		}
+		return column;
+	}
+
+	@Override
+	public double[] getRow(int i) {
+		var row = new double[columns];
+		for (int col = 0; col < columns; col++) {
+			row[col] = get(i, col);
+		}
+		return row;
+	}
+
+	@Override
+	public void iterate(EntryFunction fn) {
+		if (fn == null)
+			return;
+		for (int col = 0; col < columns; col++) {
+			int end = end(col);
+			for (int idx = columnPointers.get(col); idx < end; idx++) {
+				fn.value(rowIndices.get(idx), col, values.get(idx));
+			}
+		}
+	}
+
+	@Override
+	public void iterateColumn(int col, EntryFunction fn) {
+		int end = end(col);
+		for (int idx = columnPointers.get(col); idx < end; idx++) {
+			double val = values.get(idx);
+			if (val != 0) {
+				fn.value(rowIndices.get(idx), col, val);
+			}
+		}
+	}
+
+	@Override
+	public double[] multiply(double[] v) {
+		var x = new double[rows];
+		for (int col = 0; col < columns; col++) {
+			double vj = v[col];
+			if (vj == 0)
+				continue;
+			int end = end(col);
+			for (int idx = columnPointers.get(col); idx < end; idx++) {
+				x[rowIndices.get(idx)] += vj * values.get(idx);
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Returns a copy of this matrix on the heap.
+	 */
+	@Override
+	public CSCMatrix copy() {
+		int n = (int) values.size;
+		var vals = new double[n];
+		values.get(0, vals, 0, n);
+		var pointers = new int[(int) columnPointers.size];
+		for (int i = 0; i < pointers.length; i++) {
+			pointers[i] = columnPointers.get(i);
+		}
+		var indices = new int[n];
+		for (int i = 0; i < n; i++) {
+			indices[i] = rowIndices.get(i);
+		}
+		return new CSCMatrix(rows, columns, vals, pointers, indices);
+	}
+}
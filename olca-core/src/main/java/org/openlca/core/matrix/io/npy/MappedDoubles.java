@@ -0,0 +1,114 @@
+package org.openlca.core.matrix.io.npy;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An array of 64 bit floating point numbers in a memory mapped file region.
+ * As a single mapped buffer is limited to 2 GiB, the region is mapped in
+ * segments. The array is read-only unless it was created with `mapWritable`.
+ */
+final class MappedDoubles {
+
+	/** The number of values in a segment: 2^27 values = 1 GiB. */
+	private static final int SHIFT = 27;
+	private static final int SEGMENT = 1 << SHIFT;
+	private static final long MASK = SEGMENT - 1;
+
+	final long size;
+	private final MappedByteBuffer[] buffers;
+	private final DoubleBuffer[] segments;
+
+	private MappedDoubles(long size, MappedByteBuffer[] buffers,
+			DoubleBuffer[] segments) {
+		this.size = size;
+		this.buffers = buffers;
+		this.segments = segments;
+	}
+
+	/**
+	 * Maps the given number of values that start at the given position of the
+	 * file channel. The mapping stays valid when the channel is closed.
+	 */
+	static MappedDoubles map(FileChannel channel, long offset, long size,
+			ByteOrder order) throws IOException {
+		return map(channel, FileChannel.MapMode.READ_ONLY, offset, size, order);
+	}
+
+	/**
+	 * Maps the given number of values in little endian byte order that start
+	 * at the given position of the file channel for reading and writing. The
+	 * channel must be opened for writing and the file must be large enough.
+	 */
+	static MappedDoubles mapWritable(FileChannel channel, long offset,
+			long size) throws IOException {
+		return map(channel, FileChannel.MapMode.READ_WRITE, offset, size,
+				ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static MappedDoubles map(FileChannel channel,
+			FileChannel.MapMode mode, long offset, long size, ByteOrder order)
+			throws IOException {
+		int n = (int) ((size + SEGMENT - 1) >>> SHIFT);
+		var buffers = new MappedByteBuffer[n];
+		var segments = new DoubleBuffer[n];
+		for (int i = 0; i < n; i++) {
+			long start = (long) i << SHIFT;
+			long length = Math.min(SEGMENT, size - start);
+			var buffer = channel.map(mode, offset + start * 8, length * 8);
+			buffer.order(order);
+			buffers[i] = buffer;
+			segments[i] = buffer.asDoubleBuffer();
+		}
+		return new MappedDoubles(size, buffers, segments);
+	}
+
+	double get(long i) {
+		return segments[(int) (i >>> SHIFT)].get((int) (i & MASK));
+	}
+
+	/**
+	 * Copies `length` values, starting at the given index, into the given
+	 * array at the given offset.
+	 */
+	void get(long start, double[] target, int offset, int length) {
+		while (length > 0) {
+			int segment = (int) (start >>> SHIFT);
+			int pos = (int) (start & MASK);
+			int n = Math.min(length, SEGMENT - pos);
+			segments[segment].get(pos, target, offset, n);
+			start += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Copies `length` values from the given array, starting at the given
+	 * offset, into this array at the given index. Writes into disjoint
+	 * regions can be done from multiple threads at the same time.
+	 */
+	void put(long start, double[] source, int offset, int length) {
+		while (length > 0) {
+			int segment = (int) (start >>> SHIFT);
+			int pos = (int) (start & MASK);
+			int n = Math.min(length, SEGMENT - pos);
+			segments[segment].put(pos, source, offset, n);
+			start += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Writes the changes of a writable array to the file.
+	 */
+	void force() {
+		for (var buffer : buffers) {
+			buffer.force();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.openlca.core.matrix.io.npy;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only array of 32 or 64 bit integers in a memory mapped file region.
+ * The values are returned as 32 bit integers, which is fine for the indices
+ * of sparse matrices. The region is mapped in segments like in
+ * `MappedDoubles`.
+ */
+final class MappedInts {
+
+	/** The number of values in a segment. */
+	private static final int SHIFT = 27;
+	private static final int SEGMENT = 1 << SHIFT;
+	private static final long MASK = SEGMENT - 1;
+
+	final long size;
+	private final IntBuffer[] ints;
+	private final LongBuffer[] longs;
+
+	private MappedInts(long size, IntBuffer[] ints, LongBuffer[] longs) {
+		this.size = size;
+		this.ints = ints;
+		this.longs = longs;
+	}
+
+	/**
+	 * Maps the given number of values of the given type that start at the
+	 * given position of the file channel. Only `Int32` and `Int64` types are
+	 * supported.
+	 */
+	static MappedInts map(FileChannel channel, long offset, long size,
+			DType type, ByteOrder order) throws IOException {
+		if (type != DType.Int32 && type != DType.Int64)
+			throw new IllegalArgumentException(
+					"not a supported integer type " + type);
+		int width = type.size();
+		int n = (int) ((size + SEGMENT - 1) >>> SHIFT);
+		var ints = type == DType.Int32 ? new IntBuffer[n] : null;
+		var longs = type == DType.Int64 ? new LongBuffer[n] : null;
+		for (int i = 0; i < n; i++) {
+			long start = (long) i << SHIFT;
+			long length = Math.min(SEGMENT, size - start);
+			var buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+					offset + start * width, length * width);
+			buffer.order(order);
+			if (ints != null) {
+				ints[i] = buffer.asIntBuffer();
+			} else {
+				longs[i] = buffer.asLongBuffer();
+			}
+		}
+		return new MappedInts(size, ints, longs);
+	}
+
+	int get(long i) {
+		int segment = (int) (i >>> SHIFT);
+		int pos = (int) (i & MASK);
+		return ints != null
+				? ints[segment].get(pos)
+				: (int) longs[segment].get(pos);
+	}
+}
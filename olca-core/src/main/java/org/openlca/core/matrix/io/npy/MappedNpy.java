@@ -0,0 +1,209 @@
+package org.openlca.core.matrix.io.npy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.MatrixReader;
+
+/**
+ * A read-only view on a dense matrix in a memory mapped NPY file. The file is
+ * mapped once and the values are read directly from the mapped file; thus,
+ * the matrix is not copied into the heap and the pages of the file can be
+ * shared between processes via the page cache of the operating system.
+ * Matrices in column-major (Fortran) and row-major (C) order with 64 bit
+ * floating point numbers in little or big endian byte order are supported.
+ * The view is safe for concurrent reads.
+ * <p>
+ * With `create` a new NPY file of a given size is created and mapped for
+ * writing. The columns of such a matrix can be then set in any order, also
+ * from multiple threads, without holding the full matrix in memory.
+ */
+public final class MappedNpy implements MatrixReader {
+
+	private final File file;
+	private final int rows;
+	private final int columns;
+	private final boolean fortranOrder;
+	private final MappedDoubles data;
+	private final boolean writable;
+
+	private MappedNpy(File file, Header header, MappedDoubles data,
+			boolean writable) {
+		this.file = file;
+		this.rows = header.shape[0];
+		this.columns = header.shape[1];
+		this.fortranOrder = header.fortranOrder;
+		this.data = data;
+		this.writable = writable;
+	}
+
+	public static MappedNpy of(File file) {
+		try (var f = new RandomAccessFile(file, "r");
+			 var channel = f.getChannel()) {
+			var header = HeaderReader.read(channel);
+			DenseReader.checkMatrix(file, header);
+			long size = (long) header.shape[0] * header.shape[1];
+			var data = MappedDoubles.map(
+					channel, header.dataOffset, size, header.getByteOrder());
+			return new MappedNpy(file, header, data, false);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to map " + file, e);
+		}
+	}
+
+	/**
+	 * Creates a new NPY file for a dense matrix with the given number of rows
+	 * and columns in column-major order and maps it for writing. An existing
+	 * file is overwritten. The values of the matrix are initialized with 0.
+	 */
+	public static MappedNpy create(File file, int rows, int columns) {
+		var header = new Header();
+		header.dtype = "<f8";
+		header.shape = new int[]{rows, columns};
+		header.fortranOrder = true;
+		var head = header.toByteBuffer();
+		header.dataOffset = head.limit();
+		long size = (long) rows * columns;
+		try (var f = new RandomAccessFile(file, "rw");
+			 var channel = f.getChannel()) {
+			channel.truncate(0);
+			channel.write(head, 0);
+			f.setLength(header.dataOffset + size * 8);
+			var data = MappedDoubles.mapWritable(
+					channel, header.dataOffset, size);
+			return new MappedNpy(file, header, data, true);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to create " + file, e);
+		}
+	}
+
+	/**
+	 * Returns true if the matrix is stored in column-major (Fortran) order.
+	 * Columns can be read faster than rows then.
+	 */
+	public boolean isFortranOrder() {
+		return fortranOrder;
+	}
+
+	/**
+	 * Sets the values of the given column in a matrix that was created with
+	 * `create`. Different columns can be set from multiple threads at the
+	 * same time.
+	 */
+	public void setColumn(int j, double[] column) {
+		if (!writable)
+			throw new UnsupportedOperationException(
+					"Matrix in " + file + " is read-only.");
+		if (j < 0 || j >= columns)
+			throw new IndexOutOfBoundsException(
+					"Matrix in " + file + " has only " + columns + " columns.");
+		data.put((long) j * rows, column, 0, rows);
+	}
+
+	/**
+	 * Writes the values that were set in a matrix that was created with
+	 * `create` to the file.
+	 */
+	public void flush() {
+		if (writable) {
+			data.force();
+		}
+	}
+
+	@Override
+	public int rows() {
+		return rows;
+	}
+
+	@Override
+	public int columns() {
+		return columns;
+	}
+
+	@Override
+	public boolean isSparse() {
+		return false;
+	}
+
+	private long index(int row, int col) {
+		return fortranOrder
+				? (long) col * rows + row
+				: (long) row * columns + col;
+	}
+
+	@Override
+	public double get(int row, int col) {
+		return data.get(index(row, col));
+	}
+
+	@Override
+	public double[] getColumn(int j) {
+		if (j < 0 || j >= columns)
+			throw new IndexOutOfBoundsException(
+					"Matrix in " + file + " has only " + columns + " columns.");
+		var column = new double[rows];
+		if (fortranOrder) {
+			data.get((long) j * rows, column, 0, rows);
+			return column;
+		}
+		for (int row = 0; row < rows; row++) {
+			column[row] = data.get((long) row * columns + j);
+		}
+		return column;
+	}
+
+	@Override
+	public double[] getRow(int i) {
+		if (i < 0 || i >= rows)
+			throw new IndexOutOfBoundsException(
+					"Matrix in " + file + " has only " + rows + " rows.");
+		var row = new double[columns];
+		if (!fortranOrder) {
+			data.get((long) i * columns, row, 0, columns);
+			return row;
+		}
+		for (int col = 0; col < columns; col++) {
+			row[col] = data.get((long) col * rows + i);
+		}
+		return row;
+	}
+
+	@Override
+	public double[] diag() {
+		int n = Math.min(rows, columns);
+		var diag = new double[n];
+		for (int i = 0; i < n; i++) {
+			diag[i] = get(i, i);
+		}
+		return diag;
+	}
+
+	@Override
+	public double[] multiply(double[] v) {
+		var x = new double[rows];
+		for (int col = 0; col < columns; col++) {
+			double vj = v[col];
+			if (vj == 0)
+				continue;
+			for (int row = 0; row < rows; row++) {
+				x[row] += vj * get(row, col);
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Returns a copy of this matrix on the heap.
+	 */
+	@Override
+	public DenseMatrix copy() {
+		var copy = new DenseMatrix(rows, columns);
+		for (int col = 0; col < columns; col++) {
+			var column = getColumn(col);
+			System.arraycopy(column, 0, copy.data, col * rows, rows);
+		}
+		return copy;
+	}
+}
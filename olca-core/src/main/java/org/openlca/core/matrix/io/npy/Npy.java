@@ -34,6 +34,22 @@ public final class Npy {
 		return DenseReader.read(file);
 	}
 
+	/**
+	 * Maps the dense matrix of the given file into memory instead of loading
+	 * it into the heap (see {@link MappedNpy}).
+	 */
+	public static MappedNpy map(File file) {
+		return MappedNpy.of(file);
+	}
+
+	/**
+	 * Creates a new NPY file for a dense matrix of the given size and maps it
+	 * for writing (see {@link MappedNpy#create}).
+	 */
+	public static MappedNpy create(File file, int rows, int columns) {
+		return MappedNpy.create(file, rows, columns);
+	}
+
 	/**
 	 * Loads a dense matrix of signed bytes from the given file. Only 2d
 	 * matrices in column-major (Fortran) or row-major (C) order of 8 bit signed
@@ -194,8 +210,16 @@ public final class Npy {
 		return data;
 	}
 
+	/**
+	 * The number of values that are converted and written at once when a
+	 * vector is written to a stream.
+	 */
+	private static final int WRITE_CHUNK = 8192;
+
 	/**
 	 * Writes the given vector including its header to the given output stream.
+	 * The values are written in chunks so that no copy of the full vector is
+	 * created in memory.
 	 */
 	static void write(OutputStream out, int[] v) throws IOException {
 		Header h = new Header();
@@ -203,10 +227,14 @@ public final class Npy {
 		h.dtype = "<i4";
 		h.fortranOrder = false;
 		h.write(out);
-		ByteBuffer buff = ByteBuffer.allocate(v.length * 4);
+		var buff = ByteBuffer.allocate(4 * Math.min(v.length, WRITE_CHUNK));
 		buff.order(ByteOrder.LITTLE_ENDIAN);
-		buff.asIntBuffer().put(v);
-		out.write(buff.array());
+		for (int start = 0; start < v.length; start += WRITE_CHUNK) {
+			int n = Math.min(WRITE_CHUNK, v.length - start);
+			buff.clear();
+			buff.asIntBuffer().put(v, start, n);
+			out.write(buff.array(), 0, 4 * n);
+		}
 	}
 
 	/**
@@ -218,10 +246,14 @@ public final class Npy {
 		h.dtype = "<f8";
 		h.fortranOrder = false;
 		h.write(out);
-		var buff = ByteBuffer.allocate(v.length * 8);
+		var buff = ByteBuffer.allocate(8 * Math.min(v.length, WRITE_CHUNK));
 		buff.order(ByteOrder.LITTLE_ENDIAN);
-		buff.asDoubleBuffer().put(v);
-		out.write(buff.array());
+		for (int start = 0; start < v.length; start += WRITE_CHUNK) {
+			int n = Math.min(WRITE_CHUNK, v.length - start);
+			buff.clear();
+			buff.asDoubleBuffer().put(v, start, n);
+			out.write(buff.array(), 0, 8 * n);
+		}
 	}
 
 	static void write(OutputStream out, byte[] v) throws IOException {
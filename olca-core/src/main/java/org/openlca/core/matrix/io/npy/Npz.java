@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -50,6 +51,19 @@ public final class Npz {
 		}
 	}
 
+	/**
+	 * Maps the sparse matrix of the given file into memory (see
+	 * {@link MappedCSCMatrix}). When the arrays of the matrix are compressed
+	 * in the file, they cannot be mapped and the matrix is loaded into the
+	 * heap instead.
+	 */
+	public static MatrixReader map(File file) {
+		var matrix = MappedCSCMatrix.map(file);
+		return matrix != null
+			? matrix
+			: load(file);
+	}
+
 	public static CSCByteMatrix loadByteMatrix(File file) {
 		try (var zip = new ZipFile(file)) {
 			var format = getFormat(zip);
@@ -98,7 +112,7 @@ public final class Npz {
 		return matrix.getColumn(column);
 	}
 
-	private static String getFormat(ZipFile zip) throws IOException {
+	static String getFormat(ZipFile zip) throws IOException {
 		var ze = zip.getEntry("format.npy");
 		if (ze == null)
 			return null;
@@ -162,33 +176,12 @@ public final class Npz {
 		try (var out = new FileOutputStream(file);
 			 var buffer = new BufferedOutputStream(out);
 			 var zip = new ZipOutputStream(buffer)) {
-			zip.setLevel(ZipOutputStream.STORED);
-
-			// row indices
-			zip.putNextEntry(new ZipEntry("indices.npy"));
-			Npy.write(zip, m.rowIndices);
-			zip.closeEntry();
-
-			// column pointers
-			zip.putNextEntry(new ZipEntry("indptr.npy"));
-			Npy.write(zip, m.columnPointers);
-			zip.closeEntry();
-
-			// format
-			zip.putNextEntry(new ZipEntry("format.npy"));
-			writeFormat(zip, "csc");
-			zip.closeEntry();
-
-			// shape
-			zip.putNextEntry(new ZipEntry("shape.npy"));
-			Npy.write(zip, new int[]{m.rows, m.columns});
-			zip.closeEntry();
-
-			// values
-			zip.putNextEntry(new ZipEntry("data.npy"));
-			Npy.write(zip, m.values);
-			zip.closeEntry();
-
+			putStored(zip, "indices.npy", o -> Npy.write(o, m.rowIndices));
+			putStored(zip, "indptr.npy", o -> Npy.write(o, m.columnPointers));
+			putStored(zip, "format.npy", o -> writeFormat(o, "csc"));
+			putStored(zip, "shape.npy",
+				o -> Npy.write(o, new int[]{m.rows, m.columns}));
+			putStored(zip, "data.npy", o -> Npy.write(o, m.values));
 		} catch (IOException e) {
 			throw new RuntimeException("failed to create zip: " + file, e);
 		}
@@ -200,35 +193,61 @@ public final class Npz {
 		try (var out = new FileOutputStream(file);
 			 var buffer = new BufferedOutputStream(out);
 			 var zip = new ZipOutputStream(buffer)) {
-			zip.setLevel(ZipOutputStream.STORED);
+			putStored(zip, "indices.npy", o -> Npy.write(o, m.rowIndices));
+			putStored(zip, "indptr.npy", o -> Npy.write(o, m.columnPointers));
+			putStored(zip, "format.npy", o -> writeFormat(o, "csc"));
+			putStored(zip, "shape.npy",
+				o -> Npy.write(o, new int[]{m.rows, m.columns}));
+			putStored(zip, "data.npy", o -> Npy.write(o, m.values));
+		} catch (IOException e) {
+			throw new RuntimeException("failed to create zip: " + file, e);
+		}
+	}
 
-			// row indices
-			zip.putNextEntry(new ZipEntry("indices.npy"));
-			Npy.write(zip, m.rowIndices);
-			zip.closeEntry();
+	/**
+	 * Writes an uncompressed entry so that the arrays of the NPZ file can be
+	 * memory mapped (see {@link #map(File)}). A stored entry needs its size
+	 * and checksum before its data; thus, the data are streamed twice: first
+	 * into a checksum and then into the zip file.
+	 */
+	private static void putStored(ZipOutputStream zip, String name,
+		EntryWriter writer) throws IOException {
+		var checksum = new Checksum();
+		writer.write(checksum);
+		var entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(checksum.size);
+		entry.setCompressedSize(checksum.size);
+		entry.setCrc(checksum.crc.getValue());
+		zip.putNextEntry(entry);
+		writer.write(zip);
+		zip.closeEntry();
+	}
 
-			// column pointers
-			zip.putNextEntry(new ZipEntry("indptr.npy"));
-			Npy.write(zip, m.columnPointers);
-			zip.closeEntry();
+	@FunctionalInterface
+	private interface EntryWriter {
+		void write(OutputStream out) throws IOException;
+	}
 
-			// format
-			zip.putNextEntry(new ZipEntry("format.npy"));
-			writeFormat(zip, "csc");
-			zip.closeEntry();
+	/**
+	 * Calculates the CRC-32 checksum and size of the bytes that are written
+	 * into it.
+	 */
+	private static class Checksum extends OutputStream {
 
-			// shape
-			zip.putNextEntry(new ZipEntry("shape.npy"));
-			Npy.write(zip, new int[]{m.rows, m.columns});
-			zip.closeEntry();
+		final CRC32 crc = new CRC32();
+		long size;
 
-			// values
-			zip.putNextEntry(new ZipEntry("data.npy"));
-			Npy.write(zip, m.values);
-			zip.closeEntry();
+		@Override
+		public void write(int b) {
+			crc.update(b);
+			size++;
+		}
 
-		} catch (IOException e) {
-			throw new RuntimeException("failed to create zip: " + file, e);
+		@Override
+		public void write(byte[] b, int off, int len) {
+			crc.update(b, off, len);
+			size += len;
 		}
 	}
 
@@ -6,7 +6,8 @@ import org.openlca.core.matrix.format.Matrix;
 /**
  * Stores the factorization of a square matrix `A` (e.g. a LU decomposition)
  * which can be efficiently used to calculate the `x` of an equation
- * `A * b = x` for a given `b`.
+ * `A * b = x` for a given `b`. The `solve` methods of a factorization do not
+ * modify it and can be called from multiple threads at the same time.
  */
 public interface Factorization {
 
@@ -50,6 +51,25 @@ public interface Factorization {
 		return x;
 	}
 
+	/**
+	 * Calculates the solutions for the unit vectors `b_j` with `b_j[i] = val`
+	 * for each index `i = indices[j]` in a single call. The solution of index
+	 * `indices[j]` is stored in the column `j` of the returned matrix. By
+	 * default, this just calls `solve(i, val)` for each index and is not
+	 * faster than these single calls. Implementers that can solve multiple
+	 * right-hand sides at once (e.g. via LAPACK or in one pass over sparse
+	 * factors) should overwrite this method.
+	 */
+	default Matrix solve(int[] indices, double val) {
+		int n = size();
+		var x = new DenseMatrix(n, indices.length);
+		for (int j = 0; j < indices.length; j++) {
+			var xj = solve(indices[j], val);
+			System.arraycopy(xj, 0, x.data, j * n, n);
+		}
+		return x;
+	}
+
 	/**
 	 * Disposes the factorization (e.g. clears native memory etc.).
 	 */
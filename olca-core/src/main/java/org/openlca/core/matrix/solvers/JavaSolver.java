@@ -4,6 +4,8 @@ import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.LUDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
 import org.openlca.core.matrix.format.Matrix;
 import org.openlca.core.matrix.format.JavaMatrix;
 import org.openlca.core.matrix.format.MatrixReader;
@@ -31,6 +33,8 @@ public class JavaSolver implements MatrixSolver {
 
 	@Override
 	public double[] multiply(MatrixReader m, double[] v) {
+		if (m instanceof CSCMatrix || m instanceof HashPointMatrix)
+			return MatrixSolver.super.multiply(m, v);
 		var A = unwrap(m);
 		var b = new Array2DRowRealMatrix(v.length, 1);
 		b.setColumn(0, v);
@@ -46,6 +50,8 @@ public class JavaSolver implements MatrixSolver {
 
 	@Override
 	public Matrix multiply(MatrixReader a, MatrixReader b) {
+		if (a instanceof CSCMatrix || a instanceof HashPointMatrix)
+			return MatrixSolver.super.multiply(a, b);
 		RealMatrix _a = unwrap(a);
 		RealMatrix _b = unwrap(b);
 		RealMatrix c = _a.multiply(_b);
@@ -102,6 +108,15 @@ public class JavaSolver implements MatrixSolver {
 			return new JavaMatrix(x);
 		}
 
+		@Override
+		public Matrix solve(int[] indices, double val) {
+			var b = new Array2DRowRealMatrix(n, indices.length);
+			for (int j = 0; j < indices.length; j++) {
+				b.setEntry(indices[j], j, val);
+			}
+			return new JavaMatrix(lu.getSolver().solve(b));
+		}
+
 		@Override
 		public void dispose() {
 			disposed = true;
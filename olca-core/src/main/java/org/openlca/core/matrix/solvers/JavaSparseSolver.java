@@ -0,0 +1,150 @@
+package org.openlca.core.matrix.solvers;
+
+import java.util.Arrays;
+
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.matrix.format.Matrix;
+import org.openlca.core.matrix.format.MatrixConverter;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.io.npy.MappedCSCMatrix;
+
+/**
+ * A pure Java solver with support for sparse matrices. Sparse matrices are
+ * factorized with a sparse LU decomposition (see `SparseLU`) and dense
+ * matrices are passed to the `JavaSolver`. This solver is not used by
+ * default; it has to be created explicitly, e.g. when sparse systems should be
+ * calculated without the native libraries. Note that `matrix(rows, columns)`
+ * returns a sparse hash-point matrix.
+ */
+public class JavaSparseSolver implements MatrixSolver {
+
+	private final JavaSolver dense = new JavaSolver();
+
+	@Override
+	public boolean hasSparseSupport() {
+		return true;
+	}
+
+	@Override
+	public Matrix matrix(int rows, int columns) {
+		return new HashPointMatrix(rows, columns);
+	}
+
+	@Override
+	public double[] solve(MatrixReader a, int idx, double d) {
+		if (!isSparse(a))
+			return dense.solve(a, idx, d);
+		return SparseLU.of(MatrixConverter.csc(a)).solve(idx, d);
+	}
+
+	@Override
+	public Matrix invert(MatrixReader a) {
+		if (!isSparse(a))
+			return dense.invert(a);
+		var lu = SparseLU.of(MatrixConverter.csc(a));
+		int n = lu.size();
+		var inverse = new DenseMatrix(n, n);
+		for (int j = 0; j < n; j++) {
+			var col = lu.solve(j, 1);
+			System.arraycopy(col, 0, inverse.data, j * n, n);
+		}
+		return inverse;
+	}
+
+	@Override
+	public Matrix multiply(MatrixReader a, MatrixReader b) {
+		return isSparse(a)
+				? MatrixSolver.super.multiply(a, b)
+				: dense.multiply(a, b);
+	}
+
+	@Override
+	public double[] multiply(MatrixReader m, double[] v) {
+		return isSparse(m)
+				? MatrixSolver.super.multiply(m, v)
+				: dense.multiply(m, v);
+	}
+
+	@Override
+	public Factorization factorize(MatrixReader matrix) {
+		return isSparse(matrix)
+				? SparseLU.of(MatrixConverter.csc(matrix))
+				: dense.factorize(matrix);
+	}
+
+	@Override
+	public SymbolicAnalysis analyze(MatrixReader matrix) {
+		return isSparse(matrix)
+				? new Analysis(MatrixConverter.csc(matrix))
+				: MatrixSolver.super.analyze(matrix);
+	}
+
+	private static boolean isSparse(MatrixReader m) {
+		return m instanceof CSCMatrix
+				|| m instanceof HashPointMatrix
+				|| m instanceof MappedCSCMatrix;
+	}
+
+	/**
+	 * Stores the block triangular form and the fill-reducing orderings of a
+	 * sparse matrix which are then reused for the LU decompositions of
+	 * matrices with the same sparsity pattern.
+	 */
+	private class Analysis implements SymbolicAnalysis {
+
+		private final int n;
+		private final SparseLU.Structure structure;
+		private final int[] columnPointers;
+		private final int[] rowIndices;
+		private boolean disposed;
+
+		Analysis(CSCMatrix matrix) {
+			this.n = matrix.rows;
+			this.structure = SparseLU.Structure.of(matrix);
+			this.columnPointers = matrix.columnPointers;
+			this.rowIndices = matrix.rowIndices;
+		}
+
+		@Override
+		public int size() {
+			return n;
+		}
+
+		@Override
+		public boolean isApplicableTo(MatrixReader matrix) {
+			if (!(matrix instanceof CSCMatrix))
+				return false;
+			var csc = (CSCMatrix) matrix;
+			if (csc.rows != n || csc.columns != n)
+				return false;
+			// matrices that are modified in place share the structure arrays
+			if (csc.columnPointers == columnPointers
+					&& csc.rowIndices == rowIndices)
+				return true;
+			return Arrays.equals(csc.columnPointers, columnPointers)
+					&& Arrays.equals(csc.rowIndices, rowIndices);
+		}
+
+		@Override
+		public Factorization factorize(MatrixReader matrix) {
+			var csc = matrix instanceof HashPointMatrix
+					? ((HashPointMatrix) matrix).compress()
+					: matrix;
+			if (disposed || !isApplicableTo(csc))
+				return JavaSparseSolver.this.factorize(csc);
+			return SparseLU.of((CSCMatrix) csc, structure);
+		}
+
+		@Override
+		public void dispose() {
+			disposed = true;
+		}
+
+		@Override
+		public boolean isDisposed() {
+			return disposed;
+		}
+	}
+}
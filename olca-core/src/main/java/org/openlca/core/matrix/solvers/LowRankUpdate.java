@@ -0,0 +1,321 @@
+package org.openlca.core.matrix.solvers;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.MatrixReader;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * A factorization of a matrix `A'` that differs from a matrix `A` only in a
+ * few columns `c_1, ..., c_k`. It reuses an existing factorization of `A` and
+ * applies the Sherman-Morrison-Woodbury formula for the rank-`k` update
+ * `A' = A + U * V^T` where the column `j` of `U` is the difference of the
+ * columns `c_j` of `A'` and `A` and `V` contains the unit vectors `e_c_j`:
+ * <p>
+ * `A'^-1 * b = y - Z * C^-1 * V^T * y` with `y = A^-1 * b`, `Z = A^-1 * U`,
+ * and the `k * k` capacitance matrix `C = I + V^T * Z`.
+ * <p>
+ * Thus, the update costs `k` solves with the factorization of `A` and a solve
+ * with `A'` then costs one solve with `A` plus `O(n * k)` operations. When the
+ * rank of the update is too large or when the update is numerically not
+ * stable, a full factorization of `A'` is created instead (see `of`).
+ */
+public final class LowRankUpdate implements Factorization {
+
+	/**
+	 * The maximum rank of an update. When more columns are changed, a full
+	 * factorization is done.
+	 */
+	private static final int MAX_RANK = 64;
+
+	/**
+	 * The capacitance matrix is considered as ill-conditioned when the ratio
+	 * of its smallest and largest pivot is below this value.
+	 */
+	private static final double MIN_PIVOT_RATIO = 1e-10;
+
+	/**
+	 * The maximum relative residual of the check solve of an update.
+	 */
+	private static final double MAX_RESIDUAL = 1e-10;
+
+	/** The factorization of the base matrix `A`. */
+	private final Factorization base;
+
+	/** The base matrix `A`. */
+	private final MatrixReader matrix;
+
+	/** The changed columns `c_1, ..., c_k`. */
+	private final int[] columns;
+
+	/** The columns of `Z = A^-1 * U`. */
+	private final double[][] z;
+
+	/** The LU decomposition of the capacitance matrix `C`. */
+	private final double[][] lu;
+	private final int[] pivots;
+
+	private boolean disposed;
+
+	private LowRankUpdate(Factorization base, MatrixReader matrix,
+			int[] columns, double[][] z, double[][] lu, int[] pivots) {
+		this.base = base;
+		this.matrix = matrix;
+		this.columns = columns;
+		this.z = z;
+		this.lu = lu;
+		this.pivots = pivots;
+	}
+
+	/**
+	 * Creates a factorization of the matrix `updated` from the given
+	 * factorization of the matrix `a`. The matrices are compared column by
+	 * column to find the changed columns. If the given factorization is
+	 * already an update, the new update is applied on its base factorization
+	 * so that updates can be chained. A full factorization of `updated` is
+	 * created with the given solver when the matrices have different sizes,
+	 * when the rank of the update is too large, or when the update is not
+	 * numerically stable. The given factorization is not disposed by this
+	 * method and must not be disposed as long as the returned update is used.
+	 */
+	public static Factorization of(Factorization f, MatrixReader a,
+			MatrixReader updated, MatrixSolver solver) {
+		var base = f;
+		var matrix = a;
+		if (f instanceof LowRankUpdate) {
+			var u = (LowRankUpdate) f;
+			base = u.base;
+			matrix = u.matrix;
+		}
+
+		var columns = changedColumns(matrix, updated);
+		if (columns == null || base.isDisposed())
+			return solver.factorize(updated);
+		if (columns.length == 0)
+			return base;
+		int n = base.size();
+		if (columns.length > MAX_RANK || 2 * columns.length > n)
+			return solver.factorize(updated);
+
+		var update = create(base, matrix, updated, columns);
+		return update != null && update.isStableFor(updated)
+				? update
+				: solver.factorize(updated);
+	}
+
+	/**
+	 * Returns the indices of the columns in which the given matrices differ or
+	 * `null` if the matrices have different sizes.
+	 */
+	public static int[] changedColumns(MatrixReader a, MatrixReader b) {
+		if (a == null || b == null
+				|| a.rows() != b.rows()
+				|| a.columns() != b.columns())
+			return null;
+		var changed = new TIntArrayList();
+		if (a instanceof CSCMatrix && b instanceof CSCMatrix) {
+			var ca = (CSCMatrix) a;
+			var cb = (CSCMatrix) b;
+			for (int col = 0; col < ca.columns; col++) {
+				if (!sameColumn(ca, cb, col)) {
+					changed.add(col);
+				}
+			}
+		} else {
+			for (int col = 0; col < a.columns(); col++) {
+				if (!Arrays.equals(a.getColumn(col), b.getColumn(col))) {
+					changed.add(col);
+				}
+			}
+		}
+		return changed.toArray();
+	}
+
+	private static boolean sameColumn(CSCMatrix a, CSCMatrix b, int col) {
+		int startA = a.columnPointers[col];
+		int endA = a.columnPointers[col + 1];
+		int startB = b.columnPointers[col];
+		int endB = b.columnPointers[col + 1];
+		if (endA - startA != endB - startB)
+			return false;
+		for (int k = 0; k < endA - startA; k++) {
+			if (a.rowIndices[startA + k] != b.rowIndices[startB + k]
+					|| a.values[startA + k] != b.values[startB + k])
+				return false;
+		}
+		return true;
+	}
+
+	private static LowRankUpdate create(Factorization base,
+			MatrixReader matrix, MatrixReader updated, int[] columns) {
+
+		// Z = A^-1 * U
+		int k = columns.length;
+		var z = new double[k][];
+		for (int j = 0; j < k; j++) {
+			var u = updated.getColumn(columns[j]);
+			var old = matrix.getColumn(columns[j]);
+			for (int i = 0; i < u.length; i++) {
+				u[i] -= old[i];
+			}
+			z[j] = base.solve(u);
+		}
+
+		// C = I + V^T * Z
+		var lu = new double[k][k];
+		for (int i = 0; i < k; i++) {
+			for (int j = 0; j < k; j++) {
+				lu[i][j] = z[j][columns[i]];
+			}
+			lu[i][i] += 1.0;
+		}
+
+		// LU decomposition with partial pivoting; we check the ratio of the
+		// pivots as a cheap estimate of the condition of C
+		var pivots = new int[k];
+		double maxPivot = 0;
+		double minPivot = Double.MAX_VALUE;
+		for (int col = 0; col < k; col++) {
+			int p = col;
+			for (int row = col + 1; row < k; row++) {
+				if (Math.abs(lu[row][col]) > Math.abs(lu[p][col])) {
+					p = row;
+				}
+			}
+			pivots[col] = p;
+			if (p != col) {
+				var tmp = lu[p];
+				lu[p] = lu[col];
+				lu[col] = tmp;
+			}
+			double pivot = lu[col][col];
+			double abs = Math.abs(pivot);
+			if (abs == 0 || !Double.isFinite(abs))
+				return null;
+			maxPivot = Math.max(maxPivot, abs);
+			minPivot = Math.min(minPivot, abs);
+			for (int row = col + 1; row < k; row++) {
+				double f = lu[row][col] / pivot;
+				lu[row][col] = f;
+				if (f == 0)
+					continue;
+				for (int j = col + 1; j < k; j++) {
+					lu[row][j] -= f * lu[col][j];
+				}
+			}
+		}
+		if (minPivot / maxPivot < MIN_PIVOT_RATIO)
+			return null;
+		return new LowRankUpdate(base, matrix, columns, z, lu, pivots);
+	}
+
+	/**
+	 * Solves `A' * x = b` for a fixed pseudo-random vector `b` and checks the
+	 * residual of the solution relative to the magnitudes of `A'` and `x`. We
+	 * do not use a vector of ones here as round values can hide cancellation
+	 * errors.
+	 */
+	private boolean isStableFor(MatrixReader updated) {
+		int n = size();
+		var b = new Random(n).doubles(n).toArray();
+		var x = solve(b);
+		var r = updated.multiply(x);
+		double maxR = 0;
+		double maxX = 0;
+		for (int i = 0; i < n; i++) {
+			if (!Double.isFinite(x[i]))
+				return false;
+			maxR = Math.max(maxR, Math.abs(r[i] - b[i]));
+			maxX = Math.max(maxX, Math.abs(x[i]));
+		}
+		double[] maxA = {0};
+		updated.iterate((row, col, val) ->
+				maxA[0] = Math.max(maxA[0], Math.abs(val)));
+		return maxR <= MAX_RESIDUAL * (1 + maxA[0] * maxX);
+	}
+
+	/**
+	 * Returns the number of changed columns of this update.
+	 */
+	public int rank() {
+		return columns.length;
+	}
+
+	@Override
+	public int size() {
+		return base.size();
+	}
+
+	@Override
+	public double[] solve(int i, double val) {
+		return apply(base.solve(i, val));
+	}
+
+	@Override
+	public double[] solve(double[] b) {
+		return apply(base.solve(b));
+	}
+
+	/**
+	 * Calculates `x = y - Z * C^-1 * V^T * y` in place for `y = A^-1 * b`.
+	 */
+	private double[] apply(double[] y) {
+		int k = columns.length;
+		var t = new double[k];
+		for (int j = 0; j < k; j++) {
+			t[j] = y[columns[j]];
+		}
+
+		// t = C^-1 * t
+		for (int i = 0; i < k; i++) {
+			int p = pivots[i];
+			if (p != i) {
+				double tmp = t[p];
+				t[p] = t[i];
+				t[i] = tmp;
+			}
+		}
+		for (int i = 1; i < k; i++) {
+			double sum = t[i];
+			for (int j = 0; j < i; j++) {
+				sum -= lu[i][j] * t[j];
+			}
+			t[i] = sum;
+		}
+		for (int i = k - 1; i >= 0; i--) {
+			double sum = t[i];
+			for (int j = i + 1; j < k; j++) {
+				sum -= lu[i][j] * t[j];
+			}
+			t[i] = sum / lu[i][i];
+		}
+
+		for (int j = 0; j < k; j++) {
+			double tj = t[j];
+			if (tj == 0)
+				continue;
+			var zj = z[j];
+			for (int i = 0; i < y.length; i++) {
+				y[i] -= zj[i] * tj;
+			}
+		}
+		return y;
+	}
+
+	/**
+	 * Disposes this update. The base factorization is not disposed as it is
+	 * typically shared with other results.
+	 */
+	@Override
+	public void dispose() {
+		disposed = true;
+	}
+
+	@Override
+	public boolean isDisposed() {
+		return disposed || base.isDisposed();
+	}
+}
@@ -1,7 +1,12 @@
 package org.openlca.core.matrix.solvers;
 
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
 import org.openlca.core.matrix.format.Matrix;
+import org.openlca.core.matrix.format.MatrixConverter;
 import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.io.npy.MappedCSCMatrix;
 import org.openlca.julia.Julia;
 import org.openlca.julia.JuliaSolver;
 
@@ -48,13 +53,21 @@ public interface MatrixSolver {
 	Matrix invert(MatrixReader a);
 
 	/**
-	 * Returns the matrix product of the given matrices.
+	 * Returns the matrix product of the given matrices. When `a` is a sparse
+	 * matrix, the product is calculated directly on its compressed columns.
+	 * The result is then a sparse matrix when `b` is sparse too.
 	 */
 	default Matrix multiply(MatrixReader a, MatrixReader b) {
 		if (a == null || b == null)
 			return null;
 		if (a.columns() != b.rows())
 			throw new IllegalArgumentException("a.columns != b.rows");
+		if (isCompressible(a)) {
+			var csc = MatrixConverter.csc(a);
+			if (isCompressible(b))
+				return csc.multiply(MatrixConverter.csc(b)).asMutable();
+			return csc.multiply(MatrixConverter.dense(b));
+		}
 		Matrix r = matrix(a.rows(), b.columns());
 		for (int row = 0; row < a.rows(); row++) {
 			for (int col = 0; col < b.columns(); col++) {
@@ -70,11 +83,14 @@ public interface MatrixSolver {
 
 	/**
 	 * Calculates a matrix-vector product. In openLCA we use this for example
-	 * when we calculate the inventory result: g = B * s
+	 * when we calculate the inventory result: g = B * s. Sparse matrices
+	 * calculate this product directly on their non-zero entries.
 	 */
 	default double[] multiply(MatrixReader m, double[] v) {
 		if (m == null || v == null)
 			return null;
+		if (isCompressible(m) && v.length >= m.columns())
+			return m.multiply(v);
 		int cols = Math.min(m.columns(), v.length);
 		int rows = m.rows();
 		double[] r = new double[rows];
@@ -88,6 +104,27 @@ public interface MatrixSolver {
 
 	Factorization factorize(MatrixReader matrix);
 
+	/**
+	 * Returns true if the given matrix is stored in a sparse format that can
+	 * be cheaply converted into a CSC matrix for the sparse products.
+	 */
+	private static boolean isCompressible(MatrixReader m) {
+		return m instanceof CSCMatrix
+				|| m instanceof HashPointMatrix
+				|| m instanceof MappedCSCMatrix;
+	}
+
+	/**
+	 * Runs the symbolic analysis of the given matrix which can be then used
+	 * for the numeric factorization of matrices with the same sparsity
+	 * pattern. By default, there is no separate analysis step and the returned
+	 * analysis just calls `factorize` for each matrix. Solvers that can split
+	 * the factorization into a symbolic and numeric step should override this.
+	 */
+	default SymbolicAnalysis analyze(MatrixReader matrix) {
+		return SymbolicAnalysis.none(this, matrix);
+	}
+
 	final class Instance {
 
 		private Instance () {
@@ -0,0 +1,275 @@
+package org.openlca.core.matrix.solvers;
+
+import java.util.Arrays;
+
+import org.openlca.core.matrix.format.CSCMatrix;
+
+/**
+ * Calculates a fill-reducing ordering of a sparse square matrix `A` with an
+ * approximate minimum degree algorithm on the pattern of `A + A^T` (similar
+ * to AMD). The graph is stored as a quotient graph: the eliminated nodes
+ * become elements that store their adjacent variables, so that the graph does
+ * not grow during the elimination. Dense rows and columns are removed from the
+ * graph and placed at the end of the ordering.
+ */
+final class MinimumDegree {
+
+	private static final int VARIABLE = 0;
+	private static final int ELEMENT = 1;
+	private static final int ABSORBED = 2;
+	private static final int DENSE = 3;
+
+	private final int n;
+	private final int[][] adj;
+	private final int[] len;
+	private final int[] state;
+	private final int[][] elements;
+
+	// degree lists
+	private final int[] degree;
+	private final int[] head;
+	private final int[] next;
+	private final int[] prev;
+
+	// marks for the nodes of the current pivot and the element weights
+	private final int[] mark;
+	private final int[] wMark;
+	private final int[] w;
+
+	private MinimumDegree(int n) {
+		this.n = n;
+		adj = new int[n][];
+		len = new int[n];
+		state = new int[n];
+		elements = new int[n][];
+		degree = new int[n];
+		head = new int[n];
+		next = new int[n];
+		prev = new int[n];
+		mark = new int[n];
+		wMark = new int[n];
+		w = new int[n];
+	}
+
+	/**
+	 * Returns the ordering of the given matrix: `order[k]` is the column (and
+	 * row) that should be eliminated in step `k`.
+	 */
+	static int[] order(CSCMatrix a) {
+		if (a.rows != a.columns)
+			throw new IllegalArgumentException("matrix is not square");
+		var md = new MinimumDegree(a.rows);
+		md.init(a);
+		return md.eliminate();
+	}
+
+	private void init(CSCMatrix a) {
+
+		// the pattern of A + A^T without the diagonal
+		int[] count = new int[n];
+		for (int col = 0; col < n; col++) {
+			for (int k = a.columnPointers[col]; k < a.columnPointers[col + 1]; k++) {
+				int row = a.rowIndices[k];
+				if (row == col)
+					continue;
+				count[row]++;
+				count[col]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			adj[i] = new int[count[i]];
+		}
+		for (int col = 0; col < n; col++) {
+			for (int k = a.columnPointers[col]; k < a.columnPointers[col + 1]; k++) {
+				int row = a.rowIndices[k];
+				if (row == col)
+					continue;
+				adj[row][len[row]++] = col;
+				adj[col][len[col]++] = row;
+			}
+		}
+
+		// remove duplicate entries
+		for (int i = 0; i < n; i++) {
+			int[] ai = adj[i];
+			Arrays.sort(ai, 0, len[i]);
+			int m = 0;
+			for (int j = 0; j < len[i]; j++) {
+				if (m == 0 || ai[m - 1] != ai[j]) {
+					ai[m++] = ai[j];
+				}
+			}
+			len[i] = m;
+		}
+
+		// mark the dense nodes; threshold as in AMD
+		int dense = Math.max(16, (int) (10 * Math.sqrt(n)));
+		for (int i = 0; i < n; i++) {
+			if (len[i] > dense) {
+				state[i] = DENSE;
+			}
+		}
+
+		// initialize the degree lists
+		Arrays.fill(head, -1);
+		for (int i = 0; i < n; i++) {
+			if (state[i] == DENSE)
+				continue;
+			int d = 0;
+			for (int j = 0; j < len[i]; j++) {
+				if (state[adj[i][j]] != DENSE) {
+					d++;
+				}
+			}
+			degree[i] = d;
+			insert(i);
+		}
+	}
+
+	private int[] eliminate() {
+		int[] order = new int[n];
+		int[] lp = new int[n];
+		int k = 0;
+		int remaining = 0;
+		for (int i = 0; i < n; i++) {
+			if (state[i] != DENSE) {
+				remaining++;
+			}
+		}
+
+		int minDegree = 0;
+		int stamp = 0;
+		while (remaining > 0) {
+
+			// select the pivot with the minimum degree
+			while (head[minDegree] == -1) {
+				minDegree++;
+			}
+			int p = head[minDegree];
+			remove(p);
+			order[k++] = p;
+			remaining--;
+
+			// build the pattern L_p of the new element: the adjacent variables
+			// and the variables of the adjacent elements which are absorbed
+			stamp++;
+			mark[p] = stamp;
+			int lpLen = 0;
+			int[] ap = adj[p];
+			for (int j = 0; j < len[p]; j++) {
+				int e = ap[j];
+				if (state[e] == VARIABLE) {
+					if (mark[e] != stamp) {
+						mark[e] = stamp;
+						lp[lpLen++] = e;
+					}
+				} else if (state[e] == ELEMENT) {
+					for (int v : elements[e]) {
+						if (state[v] == VARIABLE && mark[v] != stamp) {
+							mark[v] = stamp;
+							lp[lpLen++] = v;
+						}
+					}
+					state[e] = ABSORBED;
+					elements[e] = null;
+				}
+			}
+			state[p] = ELEMENT;
+			elements[p] = Arrays.copyOf(lp, lpLen);
+			adj[p] = null;
+			len[p] = 0;
+
+			// calculate w(e) = |L_e \ L_p| for the elements that are adjacent
+			// to the variables in L_p
+			for (int x = 0; x < lpLen; x++) {
+				int i = lp[x];
+				remove(i);
+				int[] ai = adj[i];
+				for (int j = 0; j < len[i]; j++) {
+					int e = ai[j];
+					if (e == p || state[e] != ELEMENT)
+						continue;
+					if (wMark[e] != stamp) {
+						wMark[e] = stamp;
+						w[e] = elements[e].length;
+					}
+					w[e]--;
+				}
+			}
+
+			// update the adjacency lists and the approximate degrees of the
+			// variables in L_p
+			for (int x = 0; x < lpLen; x++) {
+				int i = lp[x];
+				int[] ai = adj[i];
+				int d = lpLen - 1;
+				int m = 0;
+				for (int j = 0; j < len[i]; j++) {
+					int e = ai[j];
+					if (e == p)
+						continue;
+					if (state[e] == VARIABLE) {
+						// variables in L_p are covered by the new element
+						if (mark[e] != stamp) {
+							ai[m++] = e;
+							d++;
+						}
+					} else if (state[e] == ELEMENT) {
+						if (w[e] == 0 && wMark[e] == stamp) {
+							// L_e is a subset of L_p
+							state[e] = ABSORBED;
+							elements[e] = null;
+						} else {
+							ai[m++] = e;
+							d += wMark[e] == stamp
+									? w[e]
+									: elements[e].length;
+						}
+					}
+				}
+				if (m == ai.length) {
+					ai = Arrays.copyOf(ai, m + 1);
+					adj[i] = ai;
+				}
+				ai[m++] = p;
+				len[i] = m;
+				degree[i] = Math.min(d, remaining - 1);
+				insert(i);
+				if (degree[i] < minDegree) {
+					minDegree = degree[i];
+				}
+			}
+		}
+
+		// add the dense nodes at the end
+		for (int i = 0; i < n; i++) {
+			if (state[i] == DENSE) {
+				order[k++] = i;
+			}
+		}
+		return order;
+	}
+
+	private void insert(int i) {
+		int d = degree[i];
+		int h = head[d];
+		next[i] = h;
+		prev[i] = -1;
+		if (h != -1) {
+			prev[h] = i;
+		}
+		head[d] = i;
+	}
+
+	private void remove(int i) {
+		int d = degree[i];
+		if (prev[i] != -1) {
+			next[prev[i]] = next[i];
+		} else {
+			head[d] = next[i];
+		}
+		if (next[i] != -1) {
+			prev[next[i]] = prev[i];
+		}
+	}
+}
@@ -0,0 +1,774 @@
+package org.openlca.core.matrix.solvers;
+
+import java.util.Arrays;
+
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.Matrix;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * A sparse LU decomposition in pure Java. The matrix is first permuted into a
+ * block upper triangular form where each diagonal block is a strongly
+ * connected component of the matrix graph (as in KLU). Technology matrices
+ * typically have a few larger cycles and many processes that are not part of
+ * a cycle, so that most blocks have a single entry. Only the larger blocks are
+ * factorized; the entries outside of the diagonal blocks are used directly in
+ * a block back substitution.
+ * <p>
+ * A block is factorized with a fill-reducing ordering of its columns (see
+ * `MinimumDegree`) and threshold partial pivoting that prefers the diagonal
+ * entries. The factors are calculated column by column with the left-looking
+ * algorithm of Gilbert and Peierls (as in CSparse): each column of `L` and `U`
+ * is the solution of a sparse triangular system with the already calculated
+ * columns of `L`.
+ */
+public final class SparseLU implements Factorization {
+
+	/**
+	 * A diagonal entry is used as pivot when its absolute value is at least
+	 * this fraction of the largest candidate in its column.
+	 */
+	private static final double PIVOT_TOLERANCE = 0.1;
+
+	private final int n;
+	private final Structure structure;
+
+	/** The values of the blocks with a single entry. */
+	private final double[] pivots;
+
+	/** The factorizations of the blocks with more than one entry. */
+	private final Block[] blocks;
+
+	// the entries outside of the diagonal blocks in CSC format
+	private final int[] offPointers;
+	private final int[] offRows;
+	private final double[] offValues;
+
+	private boolean disposed;
+
+	private SparseLU(CSCMatrix a, Structure s) {
+		this.n = a.rows;
+		this.structure = s;
+		int m = s.blockCount();
+		pivots = new double[m];
+		blocks = new Block[m];
+
+		// copy the entries outside of the diagonal blocks; the values of the
+		// matrix may be modified later (e.g. in a simulation)
+		offPointers = new int[n + 1];
+		int count = 0;
+		for (int col = 0; col < n; col++) {
+			int block = s.blockOf[col];
+			for (int k = a.columnPointers[col]; k < a.columnPointers[col + 1]; k++) {
+				if (s.blockOf[a.rowIndices[k]] != block) {
+					count++;
+				}
+			}
+		}
+		offRows = new int[count];
+		offValues = new double[count];
+		int pos = 0;
+		for (int col = 0; col < n; col++) {
+			offPointers[col] = pos;
+			int block = s.blockOf[col];
+			for (int k = a.columnPointers[col]; k < a.columnPointers[col + 1]; k++) {
+				int row = a.rowIndices[k];
+				if (s.blockOf[row] != block) {
+					offRows[pos] = row;
+					offValues[pos++] = a.values[k];
+				}
+			}
+		}
+		offPointers[n] = pos;
+
+		// factorize the diagonal blocks
+		for (int b = 0; b < m; b++) {
+			int size = s.starts[b + 1] - s.starts[b];
+			if (size == 1) {
+				int j = s.nodes[s.starts[b]];
+				double pivot = a.get(j, j);
+				if (pivot == 0)
+					throw new IllegalArgumentException(
+							"matrix is singular; zero pivot in column " + j);
+				pivots[b] = pivot;
+			} else {
+				var block = s.extract(a, b);
+				blocks[b] = new Builder(block, s.orders[b]).build();
+			}
+		}
+	}
+
+	/**
+	 * Calculates the LU decomposition of the given matrix.
+	 */
+	public static SparseLU of(CSCMatrix a) {
+		return of(a, Structure.of(a));
+	}
+
+	/**
+	 * Calculates the LU decomposition of the given matrix without a block
+	 * triangular form and with the given column ordering: `order[k]` is the
+	 * column of `A` that is the column `k` of `A * Q`.
+	 */
+	static SparseLU of(CSCMatrix a, int[] order) {
+		return of(a, Structure.single(a.rows, order));
+	}
+
+	/**
+	 * Calculates the LU decomposition of the given matrix with a structure
+	 * that was calculated for a matrix with the same sparsity pattern.
+	 */
+	static SparseLU of(CSCMatrix a, Structure structure) {
+		if (a.rows != a.columns)
+			throw new IllegalArgumentException("matrix is not square");
+		return new SparseLU(a, structure);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Returns the number of non-zero entries of the factors of the diagonal
+	 * blocks and the entries outside of these blocks.
+	 */
+	public int nonZeros() {
+		int count = offRows.length;
+		for (int b = 0; b < blocks.length; b++) {
+			count += blocks[b] != null
+					? blocks[b].nonZeros()
+					: 1;
+		}
+		return count;
+	}
+
+	@Override
+	public double[] solve(double[] b) {
+		var s = structure;
+		double[] w = Arrays.copyOf(b, n);
+		double[] x = new double[n];
+		for (int blk = 0; blk < blocks.length; blk++) {
+			int start = s.starts[blk];
+			int end = s.starts[blk + 1];
+
+			// solve the diagonal block
+			if (blocks[blk] == null) {
+				int j = s.nodes[start];
+				x[j] = w[j] / pivots[blk];
+			} else {
+				double[] wb = new double[end - start];
+				for (int k = start; k < end; k++) {
+					wb[k - start] = w[s.nodes[k]];
+				}
+				double[] xb = blocks[blk].solve(wb);
+				for (int k = start; k < end; k++) {
+					x[s.nodes[k]] = xb[k - start];
+				}
+			}
+
+			// remove the solved part from the right-hand side of the
+			// remaining blocks
+			for (int k = start; k < end; k++) {
+				int j = s.nodes[k];
+				double xj = x[j];
+				if (xj == 0)
+					continue;
+				for (int p = offPointers[j]; p < offPointers[j + 1]; p++) {
+					w[offRows[p]] -= offValues[p] * xj;
+				}
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Solves the unit vectors of the given indices in one pass over the
+	 * factors. The right-hand sides are stored row by row so that each entry
+	 * of the factors is applied to all of them at once.
+	 */
+	@Override
+	public Matrix solve(int[] indices, double val) {
+		var s = structure;
+		int k = indices.length;
+		double[] w = new double[n * k];
+		for (int c = 0; c < k; c++) {
+			w[indices[c] * k + c] = val;
+		}
+		double[] x = new double[n * k];
+		for (int blk = 0; blk < blocks.length; blk++) {
+			int start = s.starts[blk];
+			int end = s.starts[blk + 1];
+
+			// solve the diagonal block
+			if (blocks[blk] == null) {
+				int j = s.nodes[start] * k;
+				double pivot = pivots[blk];
+				for (int c = 0; c < k; c++) {
+					x[j + c] = w[j + c] / pivot;
+				}
+			} else {
+				blocks[blk].solve(w, x, s.nodes, start, k);
+			}
+
+			// remove the solved part from the right-hand sides of the
+			// remaining blocks
+			for (int pos = start; pos < end; pos++) {
+				int j = s.nodes[pos];
+				int xj = j * k;
+				if (isZero(x, xj, k))
+					continue;
+				for (int p = offPointers[j]; p < offPointers[j + 1]; p++) {
+					int row = offRows[p] * k;
+					double v = offValues[p];
+					for (int c = 0; c < k; c++) {
+						w[row + c] -= v * x[xj + c];
+					}
+				}
+			}
+		}
+
+		// copy the solutions into the columns of the result
+		var r = new DenseMatrix(n, k);
+		for (int i = 0; i < n; i++) {
+			int xi = i * k;
+			for (int c = 0; c < k; c++) {
+				r.data[c * n + i] = x[xi + c];
+			}
+		}
+		return r;
+	}
+
+	private static boolean isZero(double[] x, int offset, int k) {
+		for (int c = 0; c < k; c++) {
+			if (x[offset + c] != 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void dispose() {
+		disposed = true;
+	}
+
+	@Override
+	public boolean isDisposed() {
+		return disposed;
+	}
+
+	/**
+	 * The symbolic structure of a sparse LU decomposition: the block upper
+	 * triangular form and the fill-reducing orderings of the blocks. It only
+	 * depends on the sparsity pattern of the matrix.
+	 */
+	static final class Structure {
+
+		/** The nodes (rows and columns) of the blocks in solution order. */
+		final int[] nodes;
+
+		/** Block `b` contains the nodes `nodes[starts[b]:starts[b + 1]]`. */
+		final int[] starts;
+
+		/** The block of each node. */
+		final int[] blockOf;
+
+		/**
+		 * The column ordering of each block with local indices; `null` for
+		 * blocks with a single node.
+		 */
+		final int[][] orders;
+
+		private Structure(int[] nodes, int[] starts, int[] blockOf) {
+			this.nodes = nodes;
+			this.starts = starts;
+			this.blockOf = blockOf;
+			this.orders = new int[starts.length - 1][];
+		}
+
+		int blockCount() {
+			return starts.length - 1;
+		}
+
+		/**
+		 * A structure with a single block and the given ordering.
+		 */
+		static Structure single(int n, int[] order) {
+			int[] nodes = new int[n];
+			for (int i = 0; i < n; i++) {
+				nodes[i] = i;
+			}
+			var s = new Structure(nodes, new int[]{0, n}, new int[n]);
+			s.orders[0] = order;
+			return s;
+		}
+
+		static Structure of(CSCMatrix a) {
+			int n = a.rows;
+			if (a.columns != n)
+				throw new IllegalArgumentException("matrix is not square");
+
+			// the block triangular form is calculated with a symmetric
+			// permutation which requires a zero-free diagonal
+			for (int col = 0; col < n; col++) {
+				if (a.indexOf(col, col) < 0)
+					return single(n, MinimumDegree.order(a));
+			}
+
+			var s = components(a);
+			for (int b = 0; b < s.blockCount(); b++) {
+				if (s.starts[b + 1] - s.starts[b] > 1) {
+					s.orders[b] = MinimumDegree.order(s.extract(a, b));
+				}
+			}
+			return s;
+		}
+
+		/**
+		 * Calculates the strongly connected components of the graph with the
+		 * edges `j -> i` for the entries `A[i, j]` with a non-recursive
+		 * version of Tarjan's algorithm. A component is found after all
+		 * components that are reachable from it, so that the reverse order of
+		 * the components is the order in which the blocks are solved.
+		 */
+		private static Structure components(CSCMatrix a) {
+			int n = a.rows;
+			int[] index = new int[n];
+			Arrays.fill(index, -1);
+			int[] low = new int[n];
+			boolean[] onStack = new boolean[n];
+			int[] stack = new int[n];
+			int[] calls = new int[n];
+			int[] edges = new int[n];
+			int[] nodes = new int[n];
+			int[] ends = new int[n + 1];
+			int sp = 0;
+			int counter = 0;
+			int found = 0;
+			int blocks = 0;
+
+			for (int root = 0; root < n; root++) {
+				if (index[root] != -1)
+					continue;
+				int cp = 0;
+				index[root] = low[root] = counter++;
+				stack[sp++] = root;
+				onStack[root] = true;
+				edges[root] = a.columnPointers[root];
+				calls[cp++] = root;
+				while (cp > 0) {
+					int v = calls[cp - 1];
+					if (edges[v] < a.columnPointers[v + 1]) {
+						int w = a.rowIndices[edges[v]++];
+						if (index[w] == -1) {
+							index[w] = low[w] = counter++;
+							stack[sp++] = w;
+							onStack[w] = true;
+							edges[w] = a.columnPointers[w];
+							calls[cp++] = w;
+						} else if (onStack[w]) {
+							low[v] = Math.min(low[v], index[w]);
+						}
+						continue;
+					}
+					cp--;
+					if (cp > 0) {
+						int u = calls[cp - 1];
+						low[u] = Math.min(low[u], low[v]);
+					}
+					if (low[v] == index[v]) {
+						int w;
+						do {
+							w = stack[--sp];
+							onStack[w] = false;
+							nodes[found++] = w;
+						} while (w != v);
+						ends[++blocks] = found;
+					}
+				}
+			}
+
+			// a single block keeps the order of the matrix
+			if (blocks == 1)
+				return single(n, null);
+
+			// reverse the order of the blocks
+			int[] ordered = new int[n];
+			int[] starts = new int[blocks + 1];
+			int[] blockOf = new int[n];
+			int pos = 0;
+			for (int b = 0; b < blocks; b++) {
+				int src = blocks - 1 - b;
+				starts[b] = pos;
+				for (int k = ends[src]; k < ends[src + 1]; k++) {
+					int node = nodes[k];
+					ordered[pos++] = node;
+					blockOf[node] = b;
+				}
+			}
+			starts[blocks] = n;
+			return new Structure(ordered, starts, blockOf);
+		}
+
+		/**
+		 * Extracts the diagonal block `b` of the given matrix with local
+		 * indices. With a single block, the nodes are in the order of the
+		 * matrix and the matrix is returned.
+		 */
+		CSCMatrix extract(CSCMatrix a, int b) {
+			if (blockCount() == 1)
+				return a;
+			int start = starts[b];
+			int size = starts[b + 1] - start;
+			int[] local = new int[size];
+			int count = 0;
+			for (int k = 0; k < size; k++) {
+				int col = nodes[start + k];
+				for (int p = a.columnPointers[col]; p < a.columnPointers[col + 1]; p++) {
+					if (blockOf[a.rowIndices[p]] == b) {
+						count++;
+					}
+				}
+			}
+			int[] pointers = new int[size + 1];
+			int[] rows = new int[count];
+			double[] values = new double[count];
+			var localIndex = new TIntIntHashMap(size);
+			for (int k = 0; k < size; k++) {
+				localIndex.put(nodes[start + k], k);
+				local[k] = nodes[start + k];
+			}
+			int pos = 0;
+			for (int k = 0; k < size; k++) {
+				pointers[k] = pos;
+				int col = local[k];
+				for (int p = a.columnPointers[col]; p < a.columnPointers[col + 1]; p++) {
+					int row = a.rowIndices[p];
+					if (blockOf[row] == b) {
+						rows[pos] = localIndex.get(row);
+						values[pos++] = a.values[p];
+					}
+				}
+			}
+			pointers[size] = pos;
+			return new CSCMatrix(size, size, values, pointers, rows);
+		}
+	}
+
+	/**
+	 * The factors `P * A * Q = L * U` of a diagonal block.
+	 */
+	private static final class Block {
+
+		final int n;
+		final int[] q;
+		final int[] pinv;
+
+		// L is a unit lower triangular matrix; the diagonal is the first
+		// entry of each column
+		final int[] lp;
+		final int[] li;
+		final double[] lx;
+
+		// U is an upper triangular matrix; the diagonal is the last entry of
+		// each column
+		final int[] up;
+		final int[] ui;
+		final double[] ux;
+
+		Block(Builder b) {
+			this.n = b.n;
+			this.q = b.q;
+			this.pinv = b.pinv;
+			this.lp = b.lp;
+			this.li = b.li;
+			this.lx = b.lx;
+			this.up = b.up;
+			this.ui = b.ui;
+			this.ux = b.ux;
+		}
+
+		int nonZeros() {
+			return lp[n] + up[n];
+		}
+
+		double[] solve(double[] b) {
+			double[] x = new double[n];
+			for (int i = 0; i < n; i++) {
+				x[pinv[i]] = b[i];
+			}
+
+			// solve L * y = P * b
+			for (int j = 0; j < n; j++) {
+				double xj = x[j];
+				if (xj == 0)
+					continue;
+				for (int p = lp[j] + 1; p < lp[j + 1]; p++) {
+					x[li[p]] -= lx[p] * xj;
+				}
+			}
+
+			// solve U * z = y
+			for (int j = n - 1; j >= 0; j--) {
+				int diag = up[j + 1] - 1;
+				x[j] /= ux[diag];
+				double xj = x[j];
+				if (xj == 0)
+					continue;
+				for (int p = up[j]; p < diag; p++) {
+					x[ui[p]] -= ux[p] * xj;
+				}
+			}
+
+			// x = Q * z
+			double[] r = new double[n];
+			for (int k = 0; k < n; k++) {
+				r[q[k]] = x[k];
+			}
+			return r;
+		}
+
+		/**
+		 * Solves this block for `k` right-hand sides at once. The values of
+		 * the matrix row `i` are stored at `i * k` in `w` and `x`; `nodes`
+		 * maps the positions `start + i` of the block to the matrix rows.
+		 */
+		void solve(double[] w, double[] x, int[] nodes, int start, int k) {
+			double[] y = new double[n * k];
+			for (int i = 0; i < n; i++) {
+				System.arraycopy(w, nodes[start + i] * k, y, pinv[i] * k, k);
+			}
+
+			// solve L * Y = P * B
+			for (int j = 0; j < n; j++) {
+				int yj = j * k;
+				if (isZero(y, yj, k))
+					continue;
+				for (int p = lp[j] + 1; p < lp[j + 1]; p++) {
+					int row = li[p] * k;
+					double v = lx[p];
+					for (int c = 0; c < k; c++) {
+						y[row + c] -= v * y[yj + c];
+					}
+				}
+			}
+
+			// solve U * Z = Y
+			for (int j = n - 1; j >= 0; j--) {
+				int diag = up[j + 1] - 1;
+				int yj = j * k;
+				double d = ux[diag];
+				for (int c = 0; c < k; c++) {
+					y[yj + c] /= d;
+				}
+				if (isZero(y, yj, k))
+					continue;
+				for (int p = up[j]; p < diag; p++) {
+					int row = ui[p] * k;
+					double v = ux[p];
+					for (int c = 0; c < k; c++) {
+						y[row + c] -= v * y[yj + c];
+					}
+				}
+			}
+
+			// X = Q * Z
+			for (int i = 0; i < n; i++) {
+				System.arraycopy(y, i * k, x, nodes[start + q[i]] * k, k);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the factors `L` and `U` of a block.
+	 */
+	private static class Builder {
+
+		final int n;
+		final CSCMatrix a;
+		final int[] q;
+		final int[] pinv;
+
+		final int[] lp;
+		int[] li;
+		double[] lx;
+		final int[] up;
+		int[] ui;
+		double[] ux;
+
+		// work arrays of the sparse triangular solve
+		final double[] x;
+		final int[] xi;
+		final int[] stack;
+		final int[] pstack;
+		final int[] marks;
+
+		Builder(CSCMatrix a, int[] order) {
+			this.n = a.rows;
+			this.a = a;
+			this.q = order;
+			pinv = new int[n];
+			Arrays.fill(pinv, -1);
+			lp = new int[n + 1];
+			up = new int[n + 1];
+			int capacity = 4 * a.columnPointers[n] + n;
+			li = new int[capacity];
+			lx = new double[capacity];
+			ui = new int[capacity];
+			ux = new double[capacity];
+			x = new double[n];
+			xi = new int[n];
+			stack = new int[n];
+			pstack = new int[n];
+			marks = new int[n];
+		}
+
+		Block build() {
+			int lnz = 0;
+			int unz = 0;
+			for (int k = 0; k < n; k++) {
+				lp[k] = lnz;
+				up[k] = unz;
+				ensureCapacity(lnz + n, unz + n);
+
+				// x = L \ A(:, col)
+				int col = q[k];
+				int top = solveL(col, k + 1);
+
+				// find the pivot; the entries of rows that are already
+				// pivotal go into U(:, k)
+				int ipiv = -1;
+				double max = -1;
+				for (int p = top; p < n; p++) {
+					int i = xi[p];
+					if (pinv[i] < 0) {
+						double t = Math.abs(x[i]);
+						if (t > max) {
+							max = t;
+							ipiv = i;
+						}
+					} else {
+						ui[unz] = pinv[i];
+						ux[unz++] = x[i];
+					}
+				}
+				if (ipiv == -1 || max <= 0)
+					throw new IllegalArgumentException(
+							"matrix is singular; no pivot in column " + col);
+				if (pinv[col] < 0 && Math.abs(x[col]) >= max * PIVOT_TOLERANCE) {
+					ipiv = col;
+				}
+
+				// the diagonal entries of U and L
+				double pivot = x[ipiv];
+				ui[unz] = k;
+				ux[unz++] = pivot;
+				pinv[ipiv] = k;
+				li[lnz] = ipiv;
+				lx[lnz++] = 1;
+
+				// L(:, k) = x / pivot
+				for (int p = top; p < n; p++) {
+					int i = xi[p];
+					if (pinv[i] < 0) {
+						li[lnz] = i;
+						lx[lnz++] = x[i] / pivot;
+					}
+					x[i] = 0;
+				}
+			}
+			lp[n] = lnz;
+			up[n] = unz;
+
+			// renumber the rows of L with the pivot order
+			for (int p = 0; p < lnz; p++) {
+				li[p] = pinv[li[p]];
+			}
+			li = Arrays.copyOf(li, lnz);
+			lx = Arrays.copyOf(lx, lnz);
+			ui = Arrays.copyOf(ui, unz);
+			ux = Arrays.copyOf(ux, unz);
+			return new Block(this);
+		}
+
+		/**
+		 * Solves `L * x = A(:, col)` with the columns of `L` that are
+		 * calculated so far. The non-zero pattern of `x` is stored in
+		 * `xi[top:n]` in topological order and `top` is returned.
+		 */
+		private int solveL(int col, int stamp) {
+			int top = n;
+			int start = a.columnPointers[col];
+			int end = a.columnPointers[col + 1];
+			for (int p = start; p < end; p++) {
+				int i = a.rowIndices[p];
+				if (marks[i] != stamp) {
+					top = dfs(i, top, stamp);
+				}
+			}
+			for (int p = start; p < end; p++) {
+				x[a.rowIndices[p]] = a.values[p];
+			}
+			for (int px = top; px < n; px++) {
+				int j = xi[px];
+				int jnew = pinv[j];
+				if (jnew < 0)
+					continue;
+				double xj = x[j];
+				for (int p = lp[jnew] + 1; p < lp[jnew + 1]; p++) {
+					x[li[p]] -= lx[p] * xj;
+				}
+			}
+			return top;
+		}
+
+		/**
+		 * A non-recursive depth-first search in the graph of `L` that starts
+		 * at row `j`. The reached rows are added to `xi` in reverse
+		 * topological order.
+		 */
+		private int dfs(int j, int top, int stamp) {
+			int head = 0;
+			stack[0] = j;
+			while (head >= 0) {
+				j = stack[head];
+				int jnew = pinv[j];
+				if (marks[j] != stamp) {
+					marks[j] = stamp;
+					pstack[head] = jnew < 0 ? 0 : lp[jnew] + 1;
+				}
+				boolean done = true;
+				int end = jnew < 0 ? 0 : lp[jnew + 1];
+				for (int p = pstack[head]; p < end; p++) {
+					int i = li[p];
+					if (marks[i] == stamp)
+						continue;
+					pstack[head] = p + 1;
+					stack[++head] = i;
+					done = false;
+					break;
+				}
+				if (done) {
+					head--;
+					xi[--top] = j;
+				}
+			}
+			return top;
+		}
+
+		private void ensureCapacity(int lnz, int unz) {
+			if (lnz > li.length) {
+				int size = Math.max(2 * li.length, lnz);
+				li = Arrays.copyOf(li, size);
+				lx = Arrays.copyOf(lx, size);
+			}
+			if (unz > ui.length) {
+				int size = Math.max(2 * ui.length, unz);
+				ui = Arrays.copyOf(ui, size);
+				ux = Arrays.copyOf(ux, size);
+			}
+		}
+	}
+}
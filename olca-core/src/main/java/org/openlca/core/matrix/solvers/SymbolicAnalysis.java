@@ -0,0 +1,82 @@
+package org.openlca.core.matrix.solvers;
+
+import org.openlca.core.matrix.format.MatrixReader;
+
+/**
+ * The symbolic analysis of a (sparse) square matrix `A`, e.g. the
+ * fill-reducing ordering of a sparse LU decomposition. It only depends on the
+ * sparsity pattern of `A` and can be reused for the numeric factorization of
+ * all matrices with the same pattern. In a Monte-Carlo simulation, for
+ * example, the values of `A` change in each iteration but its pattern stays
+ * the same.
+ */
+public interface SymbolicAnalysis {
+
+	/**
+	 * Returns the number of rows which must be equal to the number of columns
+	 * of the analyzed matrix `A`.
+	 */
+	int size();
+
+	/**
+	 * Returns true if this analysis can be used for the numeric factorization
+	 * of the given matrix, which is the case when it has the same sparsity
+	 * pattern as the analyzed matrix.
+	 */
+	boolean isApplicableTo(MatrixReader matrix);
+
+	/**
+	 * Creates the numeric factorization of the given matrix. If this analysis
+	 * is not applicable to the matrix, a full factorization is done.
+	 */
+	Factorization factorize(MatrixReader matrix);
+
+	/**
+	 * Disposes the analysis (e.g. clears native memory etc.). The
+	 * factorizations that were created with this analysis are still valid.
+	 */
+	void dispose();
+
+	/**
+	 * Returns true if this analysis is disposed.
+	 */
+	boolean isDisposed();
+
+	/**
+	 * Returns an analysis that does not store anything but just calls
+	 * `factorize` of the given solver for each matrix. This is used for
+	 * solvers that have no separate symbolic analysis step.
+	 */
+	static SymbolicAnalysis none(MatrixSolver solver, MatrixReader matrix) {
+		int n = matrix.rows();
+		return new SymbolicAnalysis() {
+
+			private boolean disposed;
+
+			@Override
+			public int size() {
+				return n;
+			}
+
+			@Override
+			public boolean isApplicableTo(MatrixReader m) {
+				return m != null && m.rows() == n && m.columns() == n;
+			}
+
+			@Override
+			public Factorization factorize(MatrixReader m) {
+				return solver.factorize(m);
+			}
+
+			@Override
+			public void dispose() {
+				disposed = true;
+			}
+
+			@Override
+			public boolean isDisposed() {
+				return disposed;
+			}
+		};
+	}
+}
@@ -1,5 +1,7 @@
 package org.openlca.core.matrix.uncertainties;
 
+import java.util.SplittableRandom;
+
 import org.openlca.core.model.UncertaintyType;
 import org.openlca.expressions.FormulaInterpreter;
 
@@ -13,9 +15,10 @@ public interface UCell {
 	 * Generates the next value of the underlying distribution of this matrix cell.
 	 * If formulas are linked to this cell the injected interpreter should be used
 	 * to evaluate them as possibly values of dependent parameters with uncertainty
-	 * distributions may changed.
+	 * distributions may changed. The random numbers are drawn from the given
+	 * stream.
 	 */
-	double next(FormulaInterpreter interpreter);
+	double next(FormulaInterpreter interpreter, SplittableRandom random);
 
 	/**
 	 * Get the uncertainty distribution type of the cell;
@@ -26,4 +29,11 @@ public interface UCell {
 	 * Get the parameter values of the uncertainty distribution of this cell.
 	 */
 	double[] values();
+
+	/**
+	 * Creates a copy of this cell with its own state (e.g. copies of the
+	 * underlying exchange data and number generators) so that the copy can be
+	 * used independently from this cell, e.g. in a parallel simulation.
+	 */
+	UCell copy();
 }
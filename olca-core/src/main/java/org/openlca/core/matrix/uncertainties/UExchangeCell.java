@@ -1,6 +1,8 @@
 package org.openlca.core.matrix.uncertainties;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import org.openlca.core.math.NumberGenerator;
 import org.openlca.core.matrix.CalcAllocationFactor;
@@ -37,9 +39,9 @@ class UExchangeCell implements UCell {
 	}
 
 	@Override
-	public double next(FormulaInterpreter interpreter) {
+	public double next(FormulaInterpreter interpreter, SplittableRandom random) {
 		if (gen != null) {
-			exchange.amount = gen.next();
+			exchange.amount = gen.next(random);
 		}
 		double af = allocationFactor != null
 			? allocationFactor.force(interpreter)
@@ -47,12 +49,26 @@ class UExchangeCell implements UCell {
 		double amount = exchange.matrixValue(interpreter, af);
 		if (overlay != null) {
 			for (UCell u : overlay) {
-				amount += u.next(interpreter);
+				amount += u.next(interpreter, random);
 			}
 		}
 		return amount;
 	}
 
+	@Override
+	public UCell copy() {
+		var copy = new UExchangeCell(
+			exchange.copy(),
+			allocationFactor != null ? allocationFactor.copy() : null);
+		if (overlay != null) {
+			copy.overlay = new ArrayList<>(overlay.size());
+			for (UCell u : overlay) {
+				copy.overlay.add(u.copy());
+			}
+		}
+		return copy;
+	}
+
 	private static NumberGenerator generator(CalcExchange e) {
 		UncertaintyType t = e.uncertaintyType;
 		if (t == null) {
@@ -1,5 +1,7 @@
 package org.openlca.core.matrix.uncertainties;
 
+import java.util.SplittableRandom;
+
 import org.openlca.core.math.NumberGenerator;
 import org.openlca.core.matrix.CalcImpactFactor;
 import org.openlca.core.model.UncertaintyType;
@@ -18,13 +20,18 @@ class UImpactCell implements UCell {
 	}
 
 	@Override
-	public double next(FormulaInterpreter interpreter) {
+	public double next(FormulaInterpreter interpreter, SplittableRandom random) {
 		if (gen != null) {
-			factor.amount = gen.next();
+			factor.amount = gen.next(random);
 		}
 		return factor.matrixValue(interpreter);
 	}
 
+	@Override
+	public UCell copy() {
+		return new UImpactCell(factor.copy());
+	}
+
 	private static NumberGenerator generator(CalcImpactFactor e) {
 		UncertaintyType t = e.uncertaintyType;
 		if (t == null) {
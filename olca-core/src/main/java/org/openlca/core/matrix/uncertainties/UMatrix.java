@@ -1,15 +1,18 @@
 package org.openlca.core.matrix.uncertainties;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 import org.openlca.core.matrix.CalcAllocationFactor;
 import org.openlca.core.matrix.CalcExchange;
 import org.openlca.core.matrix.CalcImpactFactor;
+import org.openlca.core.matrix.format.CSCMatrix;
 import org.openlca.core.matrix.format.Matrix;
 import org.openlca.expressions.FormulaInterpreter;
 
 import gnu.trove.impl.Constants;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 
 /**
  * An UMatrix is a matrix with uncertainty distributions.
@@ -18,6 +21,14 @@ public class UMatrix {
 
 	private final TIntObjectHashMap<TIntObjectHashMap<UCell>> data;
 
+	/**
+	 * The cached mapping of the cells of this matrix to the positions in the
+	 * value array of a CSC matrix; see `generateInPlace`. It is computed for a
+	 * specific sparsity structure that is identified by the row index array of
+	 * the matrix.
+	 */
+	private Slots slots;
+
 	public UMatrix() {
 		data = new TIntObjectHashMap<>(
 				Constants.DEFAULT_CAPACITY,
@@ -37,6 +48,7 @@ public class UMatrix {
 
 		var rowm = getRow(row);
 		rowm.put(col, new UImpactCell(i));
+		slots = null;
 	}
 
 	public void add(int row, int col, CalcExchange e) {
@@ -72,6 +84,7 @@ public class UMatrix {
 		if (!(cell instanceof UExchangeCell)) {
 			cell = new UExchangeCell(e, af);
 			rowm.put(col, cell);
+			slots = null;
 			return;
 		}
 
@@ -100,7 +113,81 @@ public class UMatrix {
 	 * the given matrix.
 	 */
 	public void generate(Matrix m, FormulaInterpreter interpreter) {
-		each((row, col, cell) -> m.set(row, col, cell.next(interpreter)));
+		generate(m, interpreter, new SplittableRandom());
+	}
+
+	/**
+	 * Generates new values from the given random stream and sets them to the
+	 * given matrix. The cells are always visited in the same order, so that
+	 * the generated values are reproducible with a seeded stream.
+	 */
+	public void generate(Matrix m, FormulaInterpreter interpreter,
+			SplittableRandom random) {
+		each((row, col, cell) -> m.set(
+				row, col, cell.next(interpreter, random)));
+	}
+
+	/**
+	 * Generates new values and writes them directly into the value array of
+	 * the given CSC matrix. The positions of the uncertainty cells in that array
+	 * are computed only once and reused as long as the matrix has the same
+	 * sparsity structure, so that no matrix data are re-allocated in a
+	 * simulation run. If the sparsity structure of the given matrix does not
+	 * contain all cells of this matrix, a new matrix with an extended structure
+	 * is created once (with explicit zeros for the missing cells). Thus, the
+	 * returned matrix should be used instead of the given matrix.
+	 */
+	public CSCMatrix generateInPlace(CSCMatrix m,
+			FormulaInterpreter interpreter, SplittableRandom random) {
+		if (m == null)
+			return null;
+		var matrix = m;
+		if (slots == null || slots.rowIndices != m.rowIndices) {
+			var next = new Slots(this);
+			matrix = m.withCells(next.rows, next.cols);
+			next.mapTo(matrix);
+			slots = next;
+		}
+		var values = matrix.values;
+		var positions = slots.positions;
+		var cells = slots.cells;
+		for (int i = 0; i < cells.length; i++) {
+			values[positions[i]] = cells[i].next(interpreter, random);
+		}
+		return matrix;
+	}
+
+	/**
+	 * Creates a deep copy of this matrix where each cell is copied. The copy can
+	 * be used independently from this matrix, e.g. in a parallel simulation.
+	 */
+	public UMatrix copy() {
+		var copy = new UMatrix();
+		each((row, col, cell) -> copy.getRow(row).put(col, cell.copy()));
+		return copy;
+	}
+
+	/**
+	 * Replaces the cells of the given columns of this matrix with the cells of
+	 * the same columns of the given matrix. Cells of other columns of the
+	 * given matrix are ignored.
+	 */
+	public void replaceColumns(UMatrix source, int[] columns) {
+		var set = new TIntHashSet(columns);
+		var rows = data.valueCollection();
+		for (var row : rows) {
+			for (int col : columns) {
+				row.remove(col);
+			}
+		}
+		if (source != null) {
+			source.each((row, col, cell) -> {
+				if (set.contains(col)) {
+					getRow(row).put(col, cell);
+				}
+			});
+		}
+		slots = null;
 	}
 
 	/**
@@ -119,4 +206,45 @@ public class UMatrix {
 			}
 		}
 	}
+
+	/**
+	 * The cells of an uncertainty matrix as flat arrays in the iteration order
+	 * of the matrix, together with their positions in the value array of a
+	 * CSC matrix.
+	 */
+	private static class Slots {
+
+		final int[] rows;
+		final int[] cols;
+		final UCell[] cells;
+		int[] positions;
+		int[] rowIndices;
+
+		Slots(UMatrix m) {
+			int n = 0;
+			var it = m.data.iterator();
+			while (it.hasNext()) {
+				it.advance();
+				n += it.value().size();
+			}
+			rows = new int[n];
+			cols = new int[n];
+			cells = new UCell[n];
+			int[] i = {0};
+			m.each((row, col, cell) -> {
+				rows[i[0]] = row;
+				cols[i[0]] = col;
+				cells[i[0]] = cell;
+				i[0]++;
+			});
+		}
+
+		void mapTo(CSCMatrix m) {
+			positions = new int[cells.length];
+			for (int i = 0; i < cells.length; i++) {
+				positions[i] = m.indexOf(rows[i], cols[i]);
+			}
+			rowIndices = m.rowIndices;
+		}
+	}
 }
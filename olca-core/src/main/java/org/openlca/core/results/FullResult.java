@@ -15,6 +15,8 @@ import org.openlca.core.model.descriptors.CategorizedDescriptor;
 import org.openlca.core.model.descriptors.ImpactDescriptor;
 import org.openlca.core.results.solutions.ResultProvider;
 
+import gnu.trove.list.array.TIntArrayList;
+
 /**
  * The `FullResult` extends the `ContributionResult`. It contains additionally
  * the upstream contributions to LCI, LCIA, and LCC results where applicable.
@@ -78,6 +80,7 @@ public class FullResult extends ContributionResult {
 	public List<FlowResult> getUpstreamFlowResults(
 			CategorizedDescriptor process) {
 		var results = new ArrayList<FlowResult>();
+		prefetch(process);
 		flowIndex.each((i, flow) -> {
 			double value = getUpstreamFlowResult(process, flow);
 			results.add(new FlowResult(flow, value));
@@ -123,6 +126,7 @@ public class FullResult extends ContributionResult {
 		var results = new ArrayList<ImpactResult>();
 		if (!hasImpactResults())
 			return results;
+		prefetch(process);
 		impactIndex.each((i, impact) -> {
 			var r = new ImpactResult();
 			r.impact = impact;
@@ -132,6 +136,40 @@ public class FullResult extends ContributionResult {
 		return results;
 	}
 
+	/**
+	 * Get the upstream contributions of the given process-product pairs to the
+	 * inventory result of the given flow (in the same order as the products).
+	 * The solutions of the products are calculated in a single bulk request.
+	 */
+	public double[] getUpstreamFlowResults(
+			List<ProcessProduct> products, IndexFlow flow) {
+		var results = new double[products.size()];
+		if (!hasFlowResults())
+			return results;
+		prefetch(products);
+		for (int i = 0; i < results.length; i++) {
+			results[i] = getUpstreamFlowResult(products.get(i), flow);
+		}
+		return results;
+	}
+
+	/**
+	 * Get the upstream contributions of the given process-product pairs to the
+	 * given LCIA category result (in the same order as the products). The
+	 * solutions of the products are calculated in a single bulk request.
+	 */
+	public double[] getUpstreamImpactResults(
+			List<ProcessProduct> products, ImpactDescriptor impact) {
+		var results = new double[products.size()];
+		if (!hasImpactResults())
+			return results;
+		prefetch(products);
+		for (int i = 0; i < results.length; i++) {
+			results[i] = getUpstreamImpactResult(products.get(i), impact);
+		}
+		return results;
+	}
+
 	/**
 	 * Get the upstream contribution of the given process-product pair $j$ to the
 	 * LCC result: $\mathbf{k}_u[j]$.
@@ -184,6 +222,27 @@ public class FullResult extends ContributionResult {
 				: -amount / total;
 	}
 
+	private void prefetch(CategorizedDescriptor process) {
+		prefetch(techIndex.getProviders(process));
+	}
+
+	/**
+	 * Calculates the solutions of the given products in one bulk request so
+	 * that the result provider can solve them in blocks.
+	 */
+	private void prefetch(List<ProcessProduct> products) {
+		if (products == null || products.size() < 2)
+			return;
+		var indices = new TIntArrayList(products.size());
+		for (var product : products) {
+			int idx = techIndex.getIndex(product);
+			if (idx >= 0) {
+				indices.add(idx);
+			}
+		}
+		provider.solutionsOfOne(indices.toArray());
+	}
+
 	/**
 	 * Calculate the upstream tree for the given flow.
 	 */
@@ -2,13 +2,11 @@ package org.openlca.core.results;
 
 import org.openlca.core.database.IDatabase;
 import org.openlca.core.matrix.MatrixData;
-import org.openlca.core.matrix.solvers.JavaSolver;
+import org.openlca.core.matrix.solvers.MatrixSolver;
 import org.openlca.core.results.solutions.EagerResultProvider;
 import org.openlca.core.results.solutions.LazyResultProvider;
 import org.openlca.core.results.solutions.LibraryResultProvider;
 import org.openlca.core.results.solutions.ResultProvider;
-import org.openlca.julia.Julia;
-import org.openlca.julia.JuliaSolver;
 
 final class Results {
 
@@ -16,9 +14,7 @@ final class Results {
 	}
 
 	static ResultProvider eagerOf(IDatabase db, MatrixData data) {
-		var solver = Julia.isLoaded()
-			? new JuliaSolver()
-			: new JavaSolver();
+		var solver = MatrixSolver.Instance.getNew();
 		if (data.hasLibraryLinks())
 			return LibraryResultProvider.of(db, data);
 
@@ -32,9 +28,7 @@ final class Results {
 	}
 
 	static ResultProvider lazyOf(IDatabase db, MatrixData data) {
-		var solver = Julia.isLoaded()
-			? new JuliaSolver()
-			: new JavaSolver();
+		var solver = MatrixSolver.Instance.getNew();
 		if (data.hasLibraryLinks())
 			return LibraryResultProvider.of(db, data);
 		return data.isSparse() && solver.hasSparseSupport()
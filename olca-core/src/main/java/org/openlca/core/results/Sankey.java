@@ -7,6 +7,7 @@ import java.util.PriorityQueue;
 import java.util.function.Consumer;
 
 import gnu.trove.impl.Constants;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 import org.openlca.core.matrix.IndexFlow;
@@ -290,6 +291,7 @@ public class Sankey<T> {
 		 */
 		private void expand(Node node) {
 			var colA = result.provider.techColumnOf(node.index);
+			prefetch(node, colA);
 			for (int i = 0; i < colA.length; i++) {
 				if (i == node.index || colA[i] == 0)
 					continue;
@@ -343,6 +345,23 @@ public class Sankey<T> {
 			}
 		}
 
+		/**
+		 * Calculates the solutions of the providers of the given node that
+		 * are not handled yet in one bulk request. The totals of these
+		 * providers are then calculated from the cached solutions.
+		 */
+		private void prefetch(Node node, double[] colA) {
+			var providers = new TIntArrayList();
+			for (int i = 0; i < colA.length; i++) {
+				if (i != node.index && colA[i] != 0 && !handled.containsKey(i)) {
+					providers.add(i);
+				}
+			}
+			if (providers.size() > 1) {
+				result.provider.solutionsOfOne(providers.toArray());
+			}
+		}
+
 		private void add(Node existing, Node provider) {
 			existing.providers.add(provider);
 			handled.put(provider.index, provider);
@@ -1,9 +1,11 @@
 package org.openlca.core.results;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openlca.core.matrix.IndexFlow;
 import org.openlca.core.matrix.MatrixData;
@@ -15,13 +17,17 @@ import org.openlca.core.model.descriptors.ImpactDescriptor;
  * simulation runs are stored in an array of lists where the flow- and LCIA
  * category indices are mapped to the respective array rows and the result
  * values to the respective list entries.
+ * <p>
+ * Appending results and reading values is thread-safe, so that the result can
+ * be filled by a parallel simulation while other threads read from it.
  */
 public class SimulationResult extends BaseResult {
 
 	private final List<double[]> flowResults = new ArrayList<>();
 	private final List<double[]> impactResults = new ArrayList<>();
 
-	private HashMap<ProcessProduct, PinnedContributions> pinned = new HashMap<>();
+	private final Map<ProcessProduct, PinnedContributions> pinned =
+			new ConcurrentHashMap<>();
 
 	public SimulationResult(MatrixData data) {
 		this.techIndex = data.techIndex;
@@ -33,7 +39,7 @@ public class SimulationResult extends BaseResult {
 	 * Append the total LCI and LCIA result vectors of the given result to this
 	 * simulation result.
 	 */
-	public void append(SimpleResult r) {
+	public synchronized void append(SimpleResult r) {
 		if (r == null)
 			return;
 		if (r.totalFlowResults != null) {
@@ -49,7 +55,7 @@ public class SimulationResult extends BaseResult {
 	 * result. We only append the respective vectors from the results. The
 	 * indices of these vectors need to match with the indices of this result.
 	 */
-	public void append(ProcessProduct product,
+	public synchronized void append(ProcessProduct product,
 			SimpleResult direct, SimpleResult upstream) {
 		if (product == null || direct == null || upstream == null)
 			return;
@@ -73,7 +79,7 @@ public class SimulationResult extends BaseResult {
 	}
 
 	public Set<ProcessProduct> getPinnedProducts() {
-		return pinned.keySet();
+		return new HashSet<>(pinned.keySet());
 	}
 
 	/**
@@ -143,8 +149,8 @@ public class SimulationResult extends BaseResult {
 	 * Get all simulation results of the given flow.
 	 */
 	public double[] getAll(IndexFlow flow) {
-		double[] vals = new double[flowResults.size()];
-		for (int i = 0; i < flowResults.size(); i++) {
+		double[] vals = new double[getNumberOfRuns()];
+		for (int i = 0; i < vals.length; i++) {
 			vals[i] = get(flow, i);
 		}
 		return vals;
@@ -219,18 +225,22 @@ public class SimulationResult extends BaseResult {
 	 * Get all simulation results of the given LCIA category.
 	 */
 	public double[] getAll(ImpactDescriptor impact) {
-		double[] vals = new double[impactResults.size()];
-		for (int i = 0; i < impactResults.size(); i++) {
+		double[] vals;
+		synchronized (this) {
+			vals = new double[impactResults.size()];
+		}
+		for (int i = 0; i < vals.length; i++) {
 			vals[i] = get(impact, i);
 		}
 		return vals;
 	}
 
-	public int getNumberOfRuns() {
+	public synchronized int getNumberOfRuns() {
 		return flowResults.size();
 	}
 
-	private static double val(List<double[]> list, int listIdx, int arrayIdx) {
+	private synchronized double val(
+			List<double[]> list, int listIdx, int arrayIdx) {
 		if (list == null
 				|| listIdx < 0
 				|| arrayIdx < 0
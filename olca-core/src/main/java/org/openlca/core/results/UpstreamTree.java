@@ -1,14 +1,26 @@
 package org.openlca.core.results;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.IntToDoubleFunction;
 
 import org.openlca.core.matrix.IndexFlow;
 
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
 /**
  * Maps the upstream results of the product system graph to a tree where the
  * root is the reference process of the product system.
+ * <p>
+ * The child nodes of a node are calculated on demand from the non-zero
+ * entries of the respective column of the technology matrix and the cached
+ * diagonal of that matrix. Nodes of different parents can be expanded in
+ * parallel: `expand` expands a collection of nodes at once, `level` a whole
+ * level of the tree, and `expand(node, maxDepth, cutoff)` a cutoff-bounded
+ * subtree.
  */
 public class UpstreamTree {
 
@@ -23,6 +35,12 @@ public class UpstreamTree {
 	private final IntToDoubleFunction intensity;
 	private final FullResult r;
 
+	/**
+	 * The diagonal of the technology matrix; it is loaded when the first
+	 * node is expanded.
+	 */
+	private volatile double[] diagonal;
+
 	public UpstreamTree(FullResult r, double total, IntToDoubleFunction intensity) {
 		this(null, r, total, intensity);
 	}
@@ -40,31 +58,128 @@ public class UpstreamTree {
 	}
 
 	public List<UpstreamNode> childs(UpstreamNode parent) {
-		if (parent.childs != null)
-			return parent.childs;
-		parent.childs = new ArrayList<>();
-		if (parent.scaling == 0)
-			return parent.childs;
-
-		var requirements = r.provider.techColumnOf(parent.index);
-		for (int i = 0; i < requirements.length; i++) {
+		var childs = parent.childs;
+		if (childs != null)
+			return childs;
+		if (parent.scaling == 0) {
+			childs = new ArrayList<>(0);
+			parent.childs = childs;
+			return childs;
+		}
+
+		// collect the providers of the parent from the sparse
+		// column of the technology matrix
+		var providers = new TIntArrayList();
+		var amounts = new TDoubleArrayList();
+		r.provider.iterateTechColumn(parent.index, (i, _j, aij) -> {
 			if (i == parent.index)
-				continue;
-			double aij = requirements[i];
-			if (aij == 0)
-				continue;
-			aij *= parent.scaling;
-			UpstreamNode child = new UpstreamNode();
-			double refVal = r.provider.techColumnOf(i)[i];
+				return;
+			providers.add(i);
+			amounts.add(aij);
+		});
+		prefetch(providers);
+
+		var diag = diagonal();
+		childs = new ArrayList<>(providers.size());
+		for (int k = 0; k < providers.size(); k++) {
+			int i = providers.getQuick(k);
+			double aij = amounts.getQuick(k) * parent.scaling;
+			double refVal = diag[i];
+			var child = new UpstreamNode();
 			child.scaling = -aij / refVal;
 			child.index = i;
 			child.provider = r.techIndex.getProviderAt(i);
 			child.result = adopt(intensity.applyAsDouble(i) * refVal * child.scaling);
-			parent.childs.add(child);
+			childs.add(child);
 		}
 
-		parent.childs.sort((n1, n2) -> Double.compare(n2.result, n1.result));
-		return parent.childs;
+		// ties are sorted by their matrix index so that the order does not
+		// depend on the storage order of the matrix
+		childs.sort((n1, n2) -> {
+			int c = Double.compare(n2.result, n1.result);
+			return c != 0
+					? c
+					: Integer.compare(n1.index, n2.index);
+		});
+		parent.childs = childs;
+		return childs;
+	}
+
+	/**
+	 * Expands the given nodes in parallel and returns the list of all their
+	 * child nodes (in the order of the given nodes). The given nodes should
+	 * not be expanded by other threads at the same time.
+	 */
+	public List<UpstreamNode> expand(Collection<UpstreamNode> nodes) {
+		if (nodes == null || nodes.isEmpty())
+			return Collections.emptyList();
+		var list = new ArrayList<>(nodes);
+		if (list.size() == 1)
+			return new ArrayList<>(childs(list.get(0)));
+		diagonal();
+		list.parallelStream().forEach(this::childs);
+		var next = new ArrayList<UpstreamNode>();
+		for (var node : list) {
+			next.addAll(node.childs);
+		}
+		return next;
+	}
+
+	/**
+	 * Returns the nodes of the given level of the tree where the root is at
+	 * level 0. The levels above the requested level are expanded level by
+	 * level, the nodes of each level in parallel.
+	 */
+	public List<UpstreamNode> level(int depth) {
+		List<UpstreamNode> nodes = Collections.singletonList(root);
+		for (int level = 0; level < depth && !nodes.isEmpty(); level++) {
+			nodes = expand(nodes);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Expands the subtree of the given node up to the given maximum depth
+	 * (relative to the given node). A node is only expanded when the absolute
+	 * value of its result is at least the given cutoff share (e.g. `0.01` for
+	 * 1%) of the absolute result of the given node. The nodes of each level
+	 * are expanded in parallel. Note that the tree can be infinite when the
+	 * product system contains loops; thus, the depth is always bounded.
+	 */
+	public void expand(UpstreamNode node, int maxDepth, double cutoff) {
+		if (node == null)
+			return;
+		double limit = Math.abs(cutoff * node.result);
+		List<UpstreamNode> nodes = Collections.singletonList(node);
+		for (int level = 0; level < maxDepth && !nodes.isEmpty(); level++) {
+			var next = new ArrayList<UpstreamNode>(nodes.size());
+			for (var n : nodes) {
+				if (Math.abs(n.result) >= limit) {
+					next.add(n);
+				}
+			}
+			nodes = expand(next);
+		}
+	}
+
+	private double[] diagonal() {
+		var diag = diagonal;
+		if (diag != null)
+			return diag;
+		diag = r.provider.techDiagonal();
+		diagonal = diag;
+		return diag;
+	}
+
+	/**
+	 * Calculates the solutions of the given providers in one bulk request, so
+	 * that the result provider can solve them in blocks instead of one by one
+	 * when the intensities of the child nodes are calculated.
+	 */
+	private void prefetch(TIntArrayList providers) {
+		if (providers.size() > 1) {
+			r.provider.solutionsOfOne(providers.toArray());
+		}
 	}
 
 	/**
@@ -4,9 +4,15 @@ import org.openlca.core.matrix.ImpactIndex;
 import org.openlca.core.matrix.FlowIndex;
 import org.openlca.core.matrix.MatrixData;
 import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.EntryFunction;
 import org.openlca.core.matrix.format.Matrix;
 import org.openlca.core.matrix.solvers.MatrixSolver;
 
+/**
+ * A result provider that calculates all results when it is created. It is not
+ * modified after its creation, so it can be directly used from multiple
+ * threads.
+ */
 public class EagerResultProvider implements ResultProvider {
 
 	private final MatrixData data;
@@ -147,6 +153,16 @@ public class EagerResultProvider implements ResultProvider {
 		return data.techMatrix.getColumn(j);
 	}
 
+	@Override
+	public void iterateTechColumn(int product, EntryFunction fn) {
+		data.techMatrix.iterateColumn(product, fn);
+	}
+
+	@Override
+	public double[] techDiagonal() {
+		return data.techMatrix.diag();
+	}
+
 	@Override
 	public double techValueOf(int row, int col) {
 		return data.techMatrix.get(row, col);
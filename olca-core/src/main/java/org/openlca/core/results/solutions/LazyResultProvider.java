@@ -1,48 +1,76 @@
 package org.openlca.core.results.solutions;
 
+import java.util.Arrays;
+
 import org.openlca.core.matrix.ImpactIndex;
 import org.openlca.core.matrix.FlowIndex;
 import org.openlca.core.matrix.MatrixData;
 import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.EntryFunction;
 import org.openlca.core.matrix.format.Matrix;
 import org.openlca.core.matrix.solvers.Factorization;
+import org.openlca.core.matrix.solvers.LowRankUpdate;
 import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.core.matrix.solvers.SymbolicAnalysis;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
-
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * A result provider that calculates the results of single products on demand
+ * from a factorization of the technology matrix. The calculated vectors are
+ * stored in a `VectorCache` which calculates a vector only once, also when it
+ * is requested by multiple threads at the same time. The lazily calculated
+ * matrices are published via volatile fields.
+ */
 public class LazyResultProvider implements ResultProvider {
 
+	/**
+	 * The maximum number of columns that are solved in a single call when
+	 * the solutions of multiple products are requested.
+	 */
+	private static final int BLOCK_SIZE = 64;
+
 	private final MatrixData data;
 	private final MatrixSolver solver;
 	private final Factorization factorization;
 
+	/**
+	 * The cache of the lazily calculated vectors of this provider. The
+	 * solutions and the total results of single products are stored in
+	 * segments of this cache.
+	 */
+	private final VectorCache cache;
+
 	private final double[] scalingVector;
-	private double[] totalRequirements;
-	private final TIntObjectHashMap<double[]> solutions;
+	private volatile double[] totalRequirements;
+	private final VectorCache.Segment solutions;
 
-	private Matrix directFlows;
+	private volatile Matrix directFlows;
 	private final double[] totalFlows;
-	private final TIntObjectHashMap<double[]> totalFlowsOfOne;
+	private final VectorCache.Segment totalFlowsOfOne;
 
-	private Matrix directImpacts;
+	private volatile Matrix directImpacts;
 	private final double[] totalImpacts;
-	private final TIntObjectHashMap<double[]> totalImpactsOfOne;
+	private final VectorCache.Segment totalImpactsOfOne;
 
 	private final double[] directCosts;
 	private final double totalCosts;
 
-	private LazyResultProvider(MatrixData data) {
+	private LazyResultProvider(MatrixData data, MatrixSolver solver,
+			Factorization factorization) {
 		this.data = data;
-		this.solver = MatrixSolver.Instance.getNew();
-		this.factorization = solver.factorize(data.techMatrix);
+		this.solver = solver;
+		this.factorization = factorization;
 
-		solutions = new TIntObjectHashMap<>();
+		cache = VectorCache.newDefault();
+		solutions = cache.segment();
 		totalFlowsOfOne = data.flowMatrix == null
 				? null
-				: new TIntObjectHashMap<>();
+				: cache.segment();
 		totalImpactsOfOne = data.impactMatrix == null
 				? null
-				: new TIntObjectHashMap<>();
+				: cache.segment();
 
 		// calculate the scaling vector
 		var refIdx = data.techIndex.getIndex(
@@ -79,7 +107,44 @@ public class LazyResultProvider implements ResultProvider {
 	}
 
 	public static LazyResultProvider create(MatrixData data) {
-		return new LazyResultProvider(data);
+		return create(data, null);
+	}
+
+	/**
+	 * Creates a result provider where the technology matrix is factorized
+	 * numerically using the given symbolic analysis. If the analysis is not
+	 * applicable to the technology matrix, a full factorization is done.
+	 */
+	public static LazyResultProvider create(
+			MatrixData data, SymbolicAnalysis analysis) {
+		var solver = MatrixSolver.Instance.getNew();
+		var factorization = analysis != null && !analysis.isDisposed()
+				? analysis.factorize(data.techMatrix)
+				: solver.factorize(data.techMatrix);
+		return new LazyResultProvider(data, solver, factorization);
+	}
+
+	/**
+	 * Creates a result provider for the given data that differ from the data
+	 * of this provider only in some columns of the technology matrix (the
+	 * other matrices can be different). The factorization of this provider is
+	 * reused with a low-rank update for the changed columns (see
+	 * `LowRankUpdate`), so that the scaling vector and the total results of
+	 * the new data are calculated with a few solves only. A full factorization
+	 * is done when the update is not applicable.
+	 */
+	public LazyResultProvider update(MatrixData data) {
+		var f = LowRankUpdate.of(
+				factorization, this.data.techMatrix, data.techMatrix, solver);
+		return new LazyResultProvider(data, solver, f);
+	}
+
+	/**
+	 * Returns the cache of the lazily calculated vectors of this provider,
+	 * e.g. to inspect its counters.
+	 */
+	public VectorCache cache() {
+		return cache;
 	}
 
 	@Override
@@ -114,13 +179,22 @@ public class LazyResultProvider implements ResultProvider {
 
 	@Override
 	public double[] totalRequirements() {
-		if (totalRequirements != null)
+		var t = totalRequirements;
+		if (t != null)
+			return t;
+		synchronized (this) {
+			if (totalRequirements == null) {
+				totalRequirements = calculateTotalRequirements();
+			}
 			return totalRequirements;
+		}
+	}
+
+	private double[] calculateTotalRequirements() {
 		var t = data.techMatrix.diag();
 		for (int i = 0; i < t.length; i++) {
 			t[i] *= scalingVector[i];
 		}
-		totalRequirements = t;
 		return t;
 	}
 
@@ -134,6 +208,16 @@ public class LazyResultProvider implements ResultProvider {
 		return data.techMatrix.getColumn(j);
 	}
 
+	@Override
+	public void iterateTechColumn(int product, EntryFunction fn) {
+		data.techMatrix.iterateColumn(product, fn);
+	}
+
+	@Override
+	public double[] techDiagonal() {
+		return data.techMatrix.diag();
+	}
+
 	@Override
 	public double techValueOf(int row, int col) {
 		return data.techMatrix.get(row, col);
@@ -141,11 +225,41 @@ public class LazyResultProvider implements ResultProvider {
 
 	@Override
 	public double[] solutionOfOne(int product) {
-		var s = solutions.get(product);
-		if (s != null)
-			return s;
-		s = factorization.solve(product, 1.0);
-		solutions.put(product, s);
+		return solutions.computeIfAbsent(
+				product, p -> factorization.solve(p, 1.0));
+	}
+
+	@Override
+	public double[][] solutionsOfOne(int[] products) {
+
+		// collect the products that are not solved yet; we keep the
+		// solutions in a local map as they could be evicted from the cache
+		var s = new double[products.length][];
+		var solved = new TIntObjectHashMap<double[]>();
+		var missing = new TIntHashSet();
+		for (int i = 0; i < products.length; i++) {
+			s[i] = solutions.get(products[i]);
+			if (s[i] == null) {
+				missing.add(products[i]);
+			}
+		}
+
+		// solve the missing products in blocks of multiple columns
+		var unsolved = missing.toArray();
+		for (int offset = 0; offset < unsolved.length; offset += BLOCK_SIZE) {
+			int len = Math.min(BLOCK_SIZE, unsolved.length - offset);
+			var block = Arrays.copyOfRange(unsolved, offset, offset + len);
+			var x = factorization.solve(block, 1.0);
+			for (int j = 0; j < block.length; j++) {
+				solved.put(block[j], solutions.put(block[j], x.getColumn(j)));
+			}
+		}
+
+		for (int i = 0; i < products.length; i++) {
+			if (s[i] == null) {
+				s[i] = solved.get(products[i]);
+			}
+		}
 		return s;
 	}
 
@@ -170,14 +284,19 @@ public class LazyResultProvider implements ResultProvider {
 	}
 
 	private Matrix directFlows() {
-		if (directFlows != null)
-			return directFlows;
+		var flows = directFlows;
+		if (flows != null)
+			return flows;
 		if (data.flowMatrix == null)
 			return null;
-		var m = data.flowMatrix.asMutableCopy();
-		m.scaleColumns(scalingVector);
-		directFlows = m;
-		return directFlows;
+		synchronized (this) {
+			if (directFlows == null) {
+				var m = data.flowMatrix.asMutableCopy();
+				m.scaleColumns(scalingVector);
+				directFlows = m;
+			}
+			return directFlows;
+		}
 	}
 
 	@Override
@@ -200,13 +319,8 @@ public class LazyResultProvider implements ResultProvider {
 	public double[] totalFlowsOfOne(int product) {
 		if (totalFlowsOfOne == null)
 			return EMPTY_VECTOR;
-		var totals = totalFlowsOfOne.get(product);
-		if (totals != null)
-			return totals;
-		var s = solutionOfOne(product);
-		totals = solver.multiply(data.flowMatrix, s);
-		totalFlowsOfOne.put(product, totals);
-		return totals;
+		return totalFlowsOfOne.computeIfAbsent(product,
+				p -> solver.multiply(data.flowMatrix, solutionOfOne(p)));
 	}
 
 	@Override
@@ -247,15 +361,20 @@ public class LazyResultProvider implements ResultProvider {
 	}
 
 	private Matrix directImpacts() {
-		if (directImpacts != null)
-			return directImpacts;
+		var impacts = directImpacts;
+		if (impacts != null)
+			return impacts;
 		if (data.impactMatrix == null)
 			return null;
 		var flows = directFlows();
 		if (flows == null)
 			return null;
-		directImpacts = solver.multiply(data.impactMatrix, flows);
-		return directImpacts;
+		synchronized (this) {
+			if (directImpacts == null) {
+				directImpacts = solver.multiply(data.impactMatrix, flows);
+			}
+			return directImpacts;
+		}
 	}
 
 	@Override
@@ -278,13 +397,8 @@ public class LazyResultProvider implements ResultProvider {
 	public double[] totalImpactsOfOne(int product) {
 		if (totalImpactsOfOne == null)
 			return EMPTY_VECTOR;
-		var h = totalImpactsOfOne.get(product);
-		if (h != null)
-			return h;
-		var g = totalFlowsOfOne(product);
-		h = solver.multiply(data.impactMatrix, g);
-		totalImpactsOfOne.put(product, h);
-		return h;
+		return totalImpactsOfOne.computeIfAbsent(product,
+				p -> solver.multiply(data.impactMatrix, totalFlowsOfOne(p)));
 	}
 
 	@Override
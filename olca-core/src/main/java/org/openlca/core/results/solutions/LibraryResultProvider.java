@@ -25,9 +25,23 @@ import org.openlca.core.matrix.format.MatrixReader;
 import org.openlca.core.matrix.solvers.MatrixSolver;
 import org.openlca.util.Pair;
 
-import gnu.trove.impl.Constants;
-import gnu.trove.map.hash.TIntObjectHashMap;
-
+/**
+ * A result provider for systems that are linked to libraries. The vectors of
+ * the combined system are lazily calculated and cached. Multiple threads can
+ * read from the same provider: the vectors of single products are calculated
+ * only once (see `VectorCache.Segment.computeIfAbsent`) and the total results
+ * are published via volatile fields (they could be calculated more than once
+ * when they are requested by multiple threads at the same time, but this does
+ * not change the result).
+ * <p>
+ * When all libraries contain their intensity matrices `M` (e.g. as
+ * precomputed result tiles) the total flows of one product are directly
+ * combined from the columns of these matrices instead of multiplying the full
+ * intervention matrices `B` of the libraries with the scaling vector. The
+ * total impacts of one library product are just looked up in the LCIA
+ * intensities `CM` of the result tiles when all indicators are from that
+ * library.
+ */
 public class LibraryResultProvider implements ResultProvider {
 
 	private final IDatabase db;
@@ -38,26 +52,46 @@ public class LibraryResultProvider implements ResultProvider {
 	private final ResultProvider foregroundSolution;
 	private final MatrixData fullData;
 
+	/**
+	 * The cache of the lazily calculated and loaded vectors of this provider.
+	 * Each kind of vector is stored in a segment of this cache.
+	 */
+	private final VectorCache cache = VectorCache.newDefault();
+
 	private double[] scalingVector;
-	private double[] totalRequirements;
-	private final TIntObjectHashMap<double[]> solutions = newCache();
-	private final TIntObjectHashMap<double[]> techColumns = newCache();
+	private volatile double[] totalRequirements;
+	private volatile double[] techDiagonal;
+	private final VectorCache.Segment solutions = cache.segment();
+	private final VectorCache.Segment techColumns = cache.segment();
 
-	private double[] totalFlows;
-	private final TIntObjectHashMap<double[]> flowColumns = newCache();
-	private final TIntObjectHashMap<double[]> directFlows = newCache();
-	private final TIntObjectHashMap<double[]> totalFlowsOfOne = newCache();
+	private volatile double[] totalFlows;
+	private final VectorCache.Segment flowColumns = cache.segment();
+	private final VectorCache.Segment directFlows = cache.segment();
+	private final VectorCache.Segment totalFlowsOfOne = cache.segment();
 
-	private double[] totalImpacts;
-	private Matrix flowImpacts;
-	private final TIntObjectHashMap<double[]> directImpacts = newCache();
-	private final TIntObjectHashMap<double[]> totalImpactsOfOne = newCache();
+	private volatile double[] totalImpacts;
+	private volatile Matrix flowImpacts;
+	private final VectorCache.Segment directImpacts = cache.segment();
+	private final VectorCache.Segment totalImpactsOfOne = cache.segment();
 
 	// library maps: libID -> T
 	private final HashMap<String, Library> libraries = new HashMap<>();
 	private final HashMap<String, TechIndex> libTechIndices = new HashMap<>();
 	private final HashMap<String, FlowIndex> libFlowIndices = new HashMap<>();
 
+	/**
+	 * The IDs of the libraries that are linked to products of other
+	 * libraries.
+	 */
+	private final HashSet<String> linkedLibs = new HashSet<>();
+
+	/**
+	 * True when all libraries contain their intensity matrix `M`.
+	 */
+	private boolean withIntensities;
+	private boolean impactTilesChecked;
+	private ImpactTiles impactTiles;
+
 	private LibraryResultProvider(
 			IDatabase db,
 			MatrixData foregroundData) {
@@ -70,16 +104,12 @@ public class LibraryResultProvider implements ResultProvider {
 		this.fullData.impactIndex = foregroundData.impactIndex;
 	}
 
-	private static TIntObjectHashMap<double[]> newCache() {
-		return new TIntObjectHashMap<>(
-				Constants.DEFAULT_CAPACITY,
-				Constants.DEFAULT_LOAD_FACTOR,
-				-1);
-	}
-
-	private double[] put(int key, TIntObjectHashMap<double[]> cache, double[] v) {
-		cache.put(key, v);
-		return v;
+	/**
+	 * Returns the cache of the lazily calculated and loaded vectors of this
+	 * provider, e.g. to inspect its counters.
+	 */
+	public VectorCache cache() {
+		return cache;
 	}
 
 	public static LibraryResultProvider of(
@@ -88,6 +118,10 @@ public class LibraryResultProvider implements ResultProvider {
 		var provider = new LibraryResultProvider(db, foregroundData);
 		provider.initTechIndex();
 		provider.initFlowIndex();
+		provider.withIntensities = provider.libraries.values()
+				.stream()
+				.allMatch(lib -> lib.hasTiles(LibraryMatrix.M)
+						|| lib.hasMatrix(LibraryMatrix.M));
 
 		// calculate the scaling vector
 		var s = provider.solutionOfOne(0);
@@ -137,6 +171,9 @@ public class LibraryResultProvider implements ResultProvider {
 			indexB.each((_pos, product) -> {
 				index.put(product);
 				var nextLibID = product.library();
+				if (!libID.equals(nextLibID)) {
+					linkedLibs.add(libID);
+				}
 				if (nextLibID == null
 						|| libID.equals(nextLibID)
 						|| libraries.containsKey(nextLibID)
@@ -220,24 +257,38 @@ public class LibraryResultProvider implements ResultProvider {
 
 	@Override
 	public double[] totalRequirements() {
-		if (totalRequirements != null)
-			return totalRequirements;
+		var requirements = totalRequirements;
+		if (requirements != null)
+			return requirements;
+		var diag = techDiagonal();
+		var t = new double[diag.length];
+		for (int i = 0; i < t.length; i++) {
+			t[i] = diag[i] * scalingVector[i];
+		}
+		totalRequirements = t;
+		return totalRequirements;
+	}
+
+	@Override
+	public double[] techDiagonal() {
+		var diagonal = techDiagonal;
+		if (diagonal != null)
+			return diagonal;
 
-		// for a library product j, the total requirements
-		// need to be based on the a_{jj} entry of the
-		// technology matrix of the library because our
-		// scaling factor for j is based on the inverse
-		// of that matrix
+		// for a library product j, the diagonal entry is
+		// the a_{jj} entry of the technology matrix of the
+		// library because our scaling factor for j is based
+		// on the inverse of that matrix
 
 		// handle the foreground system
 		var index = fullData.techIndex;
-		var t = new double[index.size()];
+		var diag = new double[index.size()];
 		var techF = foregroundData.techMatrix;
 		for (int i = 0; i < techF.columns(); i++) {
 			var product = index.getProviderAt(i);
 			if (product.isFromLibrary())
 				continue;
-			t[i] = techF.get(i, i) * scalingVector[i];
+			diag[i] = techF.get(i, i);
 		}
 
 		// handle the libraries
@@ -255,19 +306,15 @@ public class LibraryResultProvider implements ResultProvider {
 				var productLib = product.library();
 				if (!Objects.equals(productLib, libID))
 					continue;
-
 				var i = index.getIndex(product);
 				if (i < 0)
 					continue;
-				var si = scalingVector[i];
-				if (si == 0)
-					continue;
-				t[i] = si * libDiag[iB];
+				diag[i] = libDiag[iB];
 			}
 		}
 
-		totalRequirements = t;
-		return totalRequirements;
+		techDiagonal = diag;
+		return techDiagonal;
 	}
 
 	@Override
@@ -278,13 +325,13 @@ public class LibraryResultProvider implements ResultProvider {
 
 	@Override
 	public double[] techColumnOf(int j) {
-		var column = techColumns.get(j);
-		if (column != null)
-			return column;
+		return techColumns.computeIfAbsent(j, this::loadTechColumn);
+	}
 
+	private double[] loadTechColumn(int j) {
 		var index = fullData.techIndex;
 		var product = index.getProviderAt(j);
-		column = new double[index.size()];
+		var column = new double[index.size()];
 		var libID = product.library();
 
 		// in case of a foreground product, we just need
@@ -295,7 +342,7 @@ public class LibraryResultProvider implements ResultProvider {
 		if (libID == null) {
 			var colF = foregroundData.techMatrix.getColumn(j);
 			System.arraycopy(colF, 0, column, 0, colF.length);
-			return put(j, techColumns, column);
+			return column;
 		}
 
 		// in case of a library product, we need to map
@@ -319,17 +366,17 @@ public class LibraryResultProvider implements ResultProvider {
 				continue;
 			column[i] = val;
 		}
-		return put(j, techColumns, column);
+		return column;
 	}
 
 	@Override
 	public double[] solutionOfOne(int product) {
-		var solution = solutions.get(product);
-		if (solution != null)
-			return solution;
+		return solutions.computeIfAbsent(product, this::calculateSolution);
+	}
 
+	private double[] calculateSolution(int product) {
 		var techIndex = fullData.techIndex;
-		solution = new double[techIndex.size()];
+		var solution = new double[techIndex.size()];
 
 		// initialize a queue that is used for adding scaled
 		// sub-solutions of libraries recursively
@@ -394,7 +441,7 @@ public class LibraryResultProvider implements ResultProvider {
 			}
 		}
 
-		return put(product, solutions, solution);
+		return solution;
 	}
 
 	@Override
@@ -409,15 +456,15 @@ public class LibraryResultProvider implements ResultProvider {
 
 	@Override
 	public double[] unscaledFlowsOf(int j) {
-		var column = flowColumns.get(j);
-		if (column != null)
-			return column;
+		return flowColumns.computeIfAbsent(j, this::loadFlowColumn);
+	}
 
+	private double[] loadFlowColumn(int j) {
 		var flowIdx = fullData.flowIndex;
 		if (flowIdx == null)
 			return EMPTY_VECTOR;
 
-		column = new double[flowIdx.size()];
+		var column = new double[flowIdx.size()];
 		var product = fullData.techIndex.getProviderAt(j);
 		var libID = product.library();
 
@@ -432,7 +479,7 @@ public class LibraryResultProvider implements ResultProvider {
 				var colF = flowMatrixF.getColumn(j);
 				System.arraycopy(colF, 0, column, 0, colF.length);
 			}
-			return put(j, flowColumns, column);
+			return column;
 		}
 
 		// in case of a library product, we need to map
@@ -441,12 +488,12 @@ public class LibraryResultProvider implements ResultProvider {
 		var flowIdxB = libFlowIndices.get(libID);
 		var techIdxB = libTechIndices.get(libID);
 		if (lib == null || flowIdxB == null || techIdxB == null)
-			return put(j, flowColumns, column);
+			return column;
 		var jB = techIdxB.getIndex(product);
 		var colB = lib.getColumn(LibraryMatrix.B, jB)
 				.orElse(null);
 		if (colB == null)
-			return put(j, flowColumns, column);
+			return column;
 
 		for (int iB = 0; iB < colB.length; iB++) {
 			double val = colB[iB];
@@ -459,7 +506,7 @@ public class LibraryResultProvider implements ResultProvider {
 			column[i] = val;
 		}
 
-		return put(j, flowColumns, column);
+		return column;
 	}
 
 	@Override
@@ -472,15 +519,16 @@ public class LibraryResultProvider implements ResultProvider {
 
 	@Override
 	public double[] directFlowsOf(int product) {
-		var flows = directFlows.get(product);
-		if (flows != null)
-			return flows;
+		return directFlows.computeIfAbsent(
+				product, this::calculateDirectFlows);
+	}
+
+	private double[] calculateDirectFlows(int product) {
 		var unscaled = unscaledFlowsOf(product);
 		if (empty(unscaled))
 			return EMPTY_VECTOR;
 		var factor = scalingFactorOf(product);
-		flows = scale(unscaled, factor);
-		return put(product, directFlows, flows);
+		return scale(unscaled, factor);
 	}
 
 	@Override
@@ -493,17 +541,21 @@ public class LibraryResultProvider implements ResultProvider {
 
 	@Override
 	public double[] totalFlowsOfOne(int j) {
-		var totals = totalFlowsOfOne.get(j);
-		if (totals != null)
-			return totals;
+		return totalFlowsOfOne.computeIfAbsent(
+				j, this::calculateTotalFlowsOfOne);
+	}
 
+	private double[] calculateTotalFlowsOfOne(int j) {
 		var flowIndex = fullData.flowIndex;
 		if (flowIndex == null || flowIndex.size() == 0) {
 			return EMPTY_VECTOR;
 		}
 
+		if (withIntensities)
+			return combineIntensities(j);
+
 		var s = solutionOfOne(j);
-		totals = new double[flowIndex.size()];
+		var totals = new double[flowIndex.size()];
 
 		// add the foreground result
 		var enviF = foregroundData.flowMatrix;
@@ -546,13 +598,101 @@ public class LibraryResultProvider implements ResultProvider {
 				totals[i] += gB[iB];
 			}
 		}
-		return put(j, totalFlowsOfOne, totals);
+		return totals;
+	}
+
+	/**
+	 * Combines the total flows of one unit of the given product from the
+	 * result of the foreground system and the scaled columns of the intensity
+	 * matrices `M` of the linked library products. This follows the same
+	 * traversal as `calculateSolution`, but the columns of `INV` are only read
+	 * for libraries that are linked to other libraries.
+	 */
+	private double[] combineIntensities(int product) {
+		var flowIndex = fullData.flowIndex;
+		var totals = new double[flowIndex.size()];
+
+		var queue = new ArrayDeque<Pair<ProcessProduct, Double>>();
+		var start = fullData.techIndex.getProviderAt(product);
+		if (start.isFromLibrary()) {
+			queue.push(Pair.of(start, 1.0));
+		} else {
+			// the columns of the library products in the foreground
+			// intervention matrix are empty; thus, we can directly
+			// multiply it with the foreground solution
+			var idxF = foregroundData.techIndex;
+			var sf = foregroundSolution.solutionOfOne(idxF.getIndex(start));
+			var enviF = foregroundData.flowMatrix;
+			if (enviF != null) {
+				var gF = solver.multiply(enviF, sf);
+				System.arraycopy(gF, 0, totals, 0, gF.length);
+			}
+			for (int i = 0; i < sf.length; i++) {
+				var value = sf[i];
+				if (value == 0)
+					continue;
+				var provider = idxF.getProviderAt(i);
+				if (provider.isFromLibrary()) {
+					queue.push(Pair.of(provider, value));
+				}
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			var pair = queue.pop();
+			var p = pair.first;
+			double factor = pair.second;
+			var libID = p.library();
+			if (libID == null)
+				continue;
+			var lib = libraries.get(libID);
+			var techIdxB = libTechIndices.get(libID);
+			if (lib == null || techIdxB == null)
+				continue;
+			int column = techIdxB.getIndex(p);
+
+			// add the scaled intensities
+			var flowIdxB = libFlowIndices.get(libID);
+			var colM = flowIdxB != null
+					? lib.getColumn(LibraryMatrix.M, column).orElse(null)
+					: null;
+			if (colM != null) {
+				for (int iB = 0; iB < colM.length; iB++) {
+					double val = colM[iB];
+					if (val == 0)
+						continue;
+					int i = flowIndex.of(flowIdxB.at(iB));
+					if (i < 0)
+						continue;
+					totals[i] += factor * val;
+				}
+			}
+
+			// follow the links into other libraries
+			if (!linkedLibs.contains(libID))
+				continue;
+			var libSolution = lib.getColumn(LibraryMatrix.INV, column)
+					.orElse(null);
+			if (libSolution == null)
+				continue;
+			for (int i = 0; i < libSolution.length; i++) {
+				var value = libSolution[i];
+				if (value == 0)
+					continue;
+				var provider = techIdxB.getProviderAt(i);
+				if (!Objects.equals(libID, provider.library())) {
+					queue.push(Pair.of(provider, factor * value));
+				}
+			}
+		}
+		return totals;
 	}
 
 	@Override
 	public double[] totalFlows() {
-		if (totalFlows != null)
-			return totalFlows;
+		var flows = totalFlows;
+		if (flows != null)
+			return flows;
 		var m = totalFlowsOfOne(0);
 		var demand = fullData.techIndex.getDemand();
 		var results = Arrays.copyOf(m, m.length);
@@ -568,10 +708,17 @@ public class LibraryResultProvider implements ResultProvider {
 	 * we cache this matrix in the `fullData` object.
 	 */
 	private MatrixReader impactFactors() {
-		if (fullData.impactMatrix != null)
+		synchronized (fullData) {
+			if (fullData.impactMatrix != null)
+				return fullData.impactMatrix;
+			if (!hasFlows() || !hasImpacts())
+				return null;
+			fullData.impactMatrix = buildImpactFactors();
 			return fullData.impactMatrix;
-		if (!hasFlows() || !hasImpacts())
-			return null;
+		}
+	}
+
+	private MatrixReader buildImpactFactors() {
 
 		// allocate a Combined impact matrix C
 		var impactIndex = impactIndex();
@@ -642,8 +789,7 @@ public class LibraryResultProvider implements ResultProvider {
 			});
 		}
 
-		fullData.impactMatrix = builder.finish();
-		return fullData.impactMatrix;
+		return builder.finish();
 	}
 
 	@Override
@@ -663,8 +809,9 @@ public class LibraryResultProvider implements ResultProvider {
 	}
 
 	private MatrixReader flowImpacts() {
-		if (flowImpacts != null)
-			return flowImpacts;
+		var impacts = flowImpacts;
+		if (impacts != null)
+			return impacts;
 		var g = totalFlows();
 		var factors = impactFactors();
 		if (g == null || factors == null)
@@ -693,34 +840,53 @@ public class LibraryResultProvider implements ResultProvider {
 
 	@Override
 	public double[] directImpactsOf(int product) {
-		var impacts = directImpacts.get(product);
-		if (impacts != null)
-			return impacts;
+		return directImpacts.computeIfAbsent(
+				product, this::calculateDirectImpacts);
+	}
+
+	private double[] calculateDirectImpacts(int product) {
 		var factors = impactFactors();
 		var flows = directFlowsOf(product);
 		if (factors == null || empty(flows))
 			return EMPTY_VECTOR;
-		impacts = solver.multiply(factors, flows);
-		return put(product, directImpacts, impacts);
+		return solver.multiply(factors, flows);
 	}
 
 	@Override
 	public double[] totalImpactsOfOne(int product) {
-		var impacts = totalImpactsOfOne.get(product);
-		if (impacts != null)
-			return impacts;
+		return totalImpactsOfOne.computeIfAbsent(
+				product, this::calculateTotalImpactsOfOne);
+	}
+
+	private double[] calculateTotalImpactsOfOne(int product) {
+		var tiles = impactTiles();
+		if (tiles != null) {
+			var impacts = tiles.totalImpactsOf(product);
+			if (impacts != null)
+				return impacts;
+		}
 		var factors = impactFactors();
 		var flows = totalFlowsOfOne(product);
 		if (factors == null || empty(flows))
 			return EMPTY_VECTOR;
-		impacts = solver.multiply(factors, flows);
-		return put(product, totalImpactsOfOne, impacts);
+		return solver.multiply(factors, flows);
+	}
+
+	private ImpactTiles impactTiles() {
+		synchronized (fullData) {
+			if (impactTilesChecked)
+				return impactTiles;
+			impactTilesChecked = true;
+			impactTiles = ImpactTiles.of(this);
+			return impactTiles;
+		}
 	}
 
 	@Override
 	public double[] totalImpacts() {
-		if (totalImpacts != null)
-			return totalImpacts;
+		var impacts = totalImpacts;
+		if (impacts != null)
+			return impacts;
 		var g = totalFlows();
 		var factors = impactFactors();
 		if (g == null || factors == null)
@@ -744,4 +910,81 @@ public class LibraryResultProvider implements ResultProvider {
 	public double totalCosts() {
 		return 0;
 	}
+
+	/**
+	 * The LCIA intensities `CM` of a library with result tiles. These are
+	 * only used when all indicators of the impact index are from that library
+	 * and when the library is not linked to other libraries. The total impacts
+	 * of one unit of a product of that library are then just the respective
+	 * column of `CM`.
+	 */
+	private static class ImpactTiles {
+
+		private final LibraryResultProvider provider;
+		private final String libID;
+		private final Library lib;
+		private final TechIndex techIdx;
+
+		/** Maps the rows of `CM` to the combined impact index. */
+		private final int[] rows;
+
+		private ImpactTiles(LibraryResultProvider provider, String libID,
+				Library lib, TechIndex techIdx, int[] rows) {
+			this.provider = provider;
+			this.libID = libID;
+			this.lib = lib;
+			this.techIdx = techIdx;
+			this.rows = rows;
+		}
+
+		static ImpactTiles of(LibraryResultProvider provider) {
+			var impactIndex = provider.impactIndex();
+			if (impactIndex == null || impactIndex.isEmpty())
+				return null;
+			var libIDs = new HashSet<String>();
+			impactIndex.each((_idx, impact) -> libIDs.add(impact.library));
+			if (libIDs.size() != 1)
+				return null;
+			var libID = libIDs.iterator().next();
+			if (libID == null || provider.linkedLibs.contains(libID))
+				return null;
+			var lib = provider.libraries.get(libID);
+			var techIdx = provider.libTechIndices.get(libID);
+			if (lib == null
+					|| techIdx == null
+					|| !provider.libFlowIndices.containsKey(libID)
+					|| !lib.hasTiles(LibraryMatrix.CM))
+				return null;
+			var libImpacts = lib.syncImpacts(provider.db).orElse(null);
+			if (libImpacts == null)
+				return null;
+			var rows = new int[libImpacts.size()];
+			for (int i = 0; i < rows.length; i++) {
+				rows[i] = impactIndex.of(libImpacts.at(i));
+			}
+			return new ImpactTiles(provider, libID, lib, techIdx, rows);
+		}
+
+		/**
+		 * Returns the total impacts of one unit of the given product or `null`
+		 * when the product is not from the library of the tiles.
+		 */
+		double[] totalImpactsOf(int product) {
+			var p = provider.techIndex().getProviderAt(product);
+			if (!libID.equals(p.library()))
+				return null;
+			var column = lib.getColumn(LibraryMatrix.CM, techIdx.getIndex(p))
+					.orElse(null);
+			if (column == null)
+				return null;
+			var impacts = new double[provider.impactIndex().size()];
+			for (int i = 0; i < column.length; i++) {
+				int row = rows[i];
+				if (row >= 0) {
+					impacts[row] = column[i];
+				}
+			}
+			return impacts;
+		}
+	}
 }
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import org.openlca.core.matrix.ImpactIndex;
 import org.openlca.core.matrix.FlowIndex;
 import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.EntryFunction;
 
 /**
  * Defines the general interface of a `ResultProvider`. The documentation is
@@ -15,6 +16,11 @@ import org.openlca.core.matrix.TechIndex;
  * Because of this, the default implementations in this interface often have
  * copy-behaviour and it is often more efficient to overwrite them in a
  * specific implementation.
+ * <p>
+ * The result providers of this package can be used from multiple threads
+ * without external synchronization, e.g. when a result is shared between
+ * concurrent requests of a server. Lazily calculated values are cached in a
+ * thread-safe way.
  */
 public interface ResultProvider {
 
@@ -128,6 +134,34 @@ public interface ResultProvider {
 	 */
 	double[] techColumnOf(int product);
 
+	/**
+	 * Calls the given function for each non-zero value $a_{ij}$ in the column
+	 * $j$ of the technology matrix $A$. By default this iterates over the
+	 * values of `techColumnOf`. Providers with a sparse technology matrix
+	 * should overwrite this so that no dense column is allocated.
+	 */
+	default void iterateTechColumn(int product, EntryFunction fn) {
+		var column = techColumnOf(product);
+		for (int row = 0; row < column.length; row++) {
+			double val = column[row];
+			if (val != 0) {
+				fn.value(row, product, val);
+			}
+		}
+	}
+
+	/**
+	 * Get the diagonal of the unscaled technology matrix $A$. These are the
+	 * amounts of the reference flows of the processes.
+	 */
+	default double[] techDiagonal() {
+		var diag = new double[techIndex().size()];
+		for (int i = 0; i < diag.length; i++) {
+			diag[i] = techValueOf(i, i);
+		}
+		return diag;
+	}
+
 	/**
 	 * Get the unscaled value $a_{ij}$ from the technology matrix $A$.
 	 */
@@ -151,6 +185,21 @@ public interface ResultProvider {
 	 */
 	double[] solutionOfOne(int product);
 
+	/**
+	 * Returns the solutions $\mathbf{A}^{-1}[:,j]$ for each of the given
+	 * products $j$ (in the same order). This is the same as calling
+	 * `solutionOfOne` for each product but implementations can calculate the
+	 * solutions more efficiently in blocks. Thus, this method should be used
+	 * when the solutions of multiple products are requested in bulk.
+	 */
+	default double[][] solutionsOfOne(int[] products) {
+		var solutions = new double[products.length][];
+		for (int i = 0; i < products.length; i++) {
+			solutions[i] = solutionOfOne(products[i]);
+		}
+		return solutions;
+	}
+
 	/**
 	 * The loop factor $loop_j$ of a product $i$ is calculated via:
 	 * <p>
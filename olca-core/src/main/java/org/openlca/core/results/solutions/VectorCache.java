@@ -0,0 +1,349 @@
+package org.openlca.core.results.solutions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A cache for the vectors (e.g. solutions or total results of single
+ * products) that are lazily calculated in a result provider. A cache can have
+ * a budget of bytes; when adding a vector would exceed this budget, other
+ * vectors are evicted from the cache according to an eviction policy. A
+ * result provider typically uses a single cache with multiple segments (one
+ * for each kind of vector) that share the same budget. Thus, the budget
+ * bounds the memory of the cached vectors of one result.
+ * <p>
+ * The default cache of the result providers is unbounded. This can be changed
+ * via `VectorCache.setDefault`, e.g. in a long-running server:
+ * <pre>
+ * VectorCache.setDefault(() -&gt; VectorCache.lru(512L * 1024 * 1024));
+ * </pre>
+ * A cache can be used from multiple threads. With `computeIfAbsent` a vector
+ * is calculated only once when multiple threads request it at the same time.
+ */
+public final class VectorCache {
+
+	public enum Policy {
+
+		/** Nothing is evicted from the cache. */
+		NONE,
+
+		/** The least recently used vectors are evicted first. */
+		LRU,
+
+		/** The least frequently used vectors are evicted first. */
+		LFU
+	}
+
+	private static volatile Supplier<VectorCache> defaultCache =
+			VectorCache::unbounded;
+
+	private final Policy policy;
+	private final long maxBytes;
+
+	/**
+	 * The cached vectors. For the LRU policy, this map is access-ordered so
+	 * that the least recently used vectors are the eldest entries of the map
+	 * which are evicted when a new vector is added.
+	 */
+	private final LinkedHashMap<Long, Cached> entries;
+
+	/**
+	 * The locks of the vectors that are currently calculated. Only the
+	 * threads that request the same vector wait for each other.
+	 */
+	private final ConcurrentHashMap<Long, Object> pending =
+			new ConcurrentHashMap<>();
+
+	private int segments;
+	private long tick;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private VectorCache(Policy policy, long maxBytes) {
+		this.policy = policy;
+		this.maxBytes = maxBytes;
+		this.entries = new LinkedHashMap<>(16, 0.75f, policy == Policy.LRU) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+				if (policy == Policy.LRU && bytes > maxBytes) {
+					evictEldest();
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Creates a cache without a memory budget.
+	 */
+	public static VectorCache unbounded() {
+		return new VectorCache(Policy.NONE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a cache with the given budget that evicts the least recently
+	 * used vectors first.
+	 */
+	public static VectorCache lru(long maxBytes) {
+		return new VectorCache(Policy.LRU, maxBytes);
+	}
+
+	/**
+	 * Creates a cache with the given budget that evicts the least frequently
+	 * used vectors first.
+	 */
+	public static VectorCache lfu(long maxBytes) {
+		return new VectorCache(Policy.LFU, maxBytes);
+	}
+
+	/**
+	 * Creates a new cache with the current default configuration.
+	 */
+	public static VectorCache newDefault() {
+		return defaultCache.get();
+	}
+
+	/**
+	 * Sets the factory of the caches that are created by the result providers.
+	 */
+	public static void setDefault(Supplier<VectorCache> factory) {
+		defaultCache = factory != null
+				? factory
+				: VectorCache::unbounded;
+	}
+
+	/**
+	 * Creates a new segment of this cache for a specific kind of vectors. The
+	 * segment shares the budget with the other segments of this cache.
+	 */
+	public synchronized Segment segment() {
+		return new Segment(segments++);
+	}
+
+	public Policy policy() {
+		return policy;
+	}
+
+	public long maxBytes() {
+		return maxBytes;
+	}
+
+	/** Returns the number of bytes of the vectors in the cache. */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	/** Returns the number of vectors in the cache. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Removes all vectors from the cache. The counters are not reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "VectorCache{policy=" + policy
+				+ ", size=" + entries.size()
+				+ ", bytes=" + bytes
+				+ ", hits=" + hits
+				+ ", misses=" + misses
+				+ ", evictions=" + evictions + "}";
+	}
+
+	private static long key(int segment, int index) {
+		return ((long) segment << 32) | (index & 0xffffffffL);
+	}
+
+	/**
+	 * The approximated size of a vector in memory.
+	 */
+	private static long sizeOf(double[] v) {
+		return 16 + 8L * v.length;
+	}
+
+	private synchronized double[] get(long key) {
+		var e = entries.get(key);
+		if (e == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		e.hits++;
+		e.lastUse = ++tick;
+		return e.vector;
+	}
+
+	/**
+	 * Returns the cached vector without changing the counters.
+	 */
+	private synchronized double[] peek(long key) {
+		var e = entries.get(key);
+		return e != null
+				? e.vector
+				: null;
+	}
+
+	private synchronized boolean contains(long key) {
+		return entries.containsKey(key);
+	}
+
+	private synchronized void put(long key, double[] v) {
+		if (v == null)
+			return;
+		long size = sizeOf(v);
+		if (size > maxBytes)
+			return;
+		var old = entries.remove(key);
+		if (old != null) {
+			bytes -= old.bytes;
+		}
+		if (policy == Policy.LFU) {
+			while (bytes + size > maxBytes && !entries.isEmpty()) {
+				evictLfu();
+			}
+		}
+		var e = new Cached(v, size);
+		e.lastUse = ++tick;
+		bytes += size;
+		// for LRU, the eldest entries are evicted in `removeEldestEntry`
+		entries.put(key, e);
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache is within its
+	 * budget again. As the size of a new vector is not larger than the budget,
+	 * the new vector, which is the youngest entry, is never evicted.
+	 */
+	private void evictEldest() {
+		var it = entries.values().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			var e = it.next();
+			it.remove();
+			bytes -= e.bytes;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Evicts the least frequently used entry. We just scan the entries here as
+	 * the number of cached vectors is small compared to their size and the
+	 * costs of calculating them.
+	 */
+	private void evictLfu() {
+		Map.Entry<Long, Cached> min = null;
+		for (var e : entries.entrySet()) {
+			if (min == null || isBefore(e.getValue(), min.getValue())) {
+				min = e;
+			}
+		}
+		if (min == null)
+			return;
+		entries.remove(min.getKey());
+		bytes -= min.getValue().bytes;
+		evictions++;
+	}
+
+	private static boolean isBefore(Cached e, Cached other) {
+		if (e.hits != other.hits)
+			return e.hits < other.hits;
+		return e.lastUse < other.lastUse;
+	}
+
+	private static class Cached {
+		final double[] vector;
+		final long bytes;
+		long hits;
+		long lastUse;
+
+		Cached(double[] vector, long bytes) {
+			this.vector = vector;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * A segment of a cache that stores a specific kind of vectors by their
+	 * index (e.g. the solutions of the products).
+	 */
+	public final class Segment {
+
+		private final int id;
+
+		private Segment(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Returns the cached vector of the given index or `null` if it is not
+		 * cached.
+		 */
+		public double[] get(int index) {
+			return VectorCache.this.get(key(id, index));
+		}
+
+		public boolean contains(int index) {
+			return VectorCache.this.contains(key(id, index));
+		}
+
+		/**
+		 * Returns the cached vector of the given index or calculates it with
+		 * the given function and adds it to the cache. When multiple threads
+		 * request the same vector at the same time, only one of them calculates
+		 * it and the others wait for the result. The function can request
+		 * other vectors of this cache, but there must be no cyclic dependencies
+		 * between them.
+		 */
+		public double[] computeIfAbsent(int index, IntFunction<double[]> fn) {
+			long key = key(id, index);
+			var v = VectorCache.this.get(key);
+			if (v != null)
+				return v;
+			var lock = pending.computeIfAbsent(key, k -> new Object());
+			try {
+				synchronized (lock) {
+					var e = peek(key);
+					if (e != null)
+						return e;
+					v = fn.apply(index);
+					VectorCache.this.put(key, v);
+					return v;
+				}
+			} finally {
+				pending.remove(key, lock);
+			}
+		}
+
+		/**
+		 * Adds the given vector to the cache and returns it. Note that the
+		 * vector may be not cached (or evicted later) when the cache has a
+		 * memory budget.
+		 */
+		public double[] put(int index, double[] vector) {
+			VectorCache.this.put(key(id, index), vector);
+			return vector;
+		}
+	}
+}
@@ -60,6 +60,16 @@ public class DenseFactorization implements Factorization {
 		return new DenseMatrix(n, b.columns(), x);
 	}
 
+	@Override
+	public Matrix solve(int[] indices, double val) {
+		var x = new double[n * indices.length];
+		for (int j = 0; j < indices.length; j++) {
+			x[j * n + indices[j]] = val;
+		}
+		Julia.solveDenseFactorization(pointer, indices.length, x);
+		return new DenseMatrix(n, indices.length, x);
+	}
+
 	@Override
 	public boolean isDisposed() {
 		return isDisposed;
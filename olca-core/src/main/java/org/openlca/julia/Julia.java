@@ -352,6 +352,62 @@ public final class Julia {
 			double[] demand,
 			double[] result);
 
+	/**
+	 * Solves `A * X = B` for multiple right-hand sides with a factorized
+	 * matrix (see `umfFactorize` and `umfNumeric`). `B` and `X` are dense
+	 * matrices in column-major order with `n` rows and the given number of
+	 * columns.
+	 */
+	public static native void umfSolveFactorizedMany(
+			long pointer,
+			int n,
+			int columns,
+			double[] b,
+			double[] x);
+
+	/**
+	 * Runs the symbolic analysis (the fill-reducing ordering) of the given
+	 * matrix and returns a pointer to it. The analysis can be reused in
+	 * `umfNumeric` for all matrices with the same sparsity pattern.
+	 */
+	public static native long umfSymbolic(
+			int n,
+			int[] columnPointers,
+			int[] rowIndices,
+			double[] values);
+
+	/**
+	 * Creates the numeric factorization of the given matrix using the given
+	 * symbolic analysis. The matrix must have the same sparsity pattern as the
+	 * matrix of the analysis. The returned pointer can be used in
+	 * `umfSolveFactorized` and must be released via `umfDispose`.
+	 */
+	public static native long umfNumeric(
+			long symbolic,
+			int[] columnPointers,
+			int[] rowIndices,
+			double[] values);
+
+	public static native void umfDisposeSymbolic(long pointer);
+
+	/**
+	 * Sparse matrix-matrix multiplication: C := A * B where A is a sparse
+	 * matrix in compressed column format and B a dense matrix. With
+	 * `colsB = 1` this is a sparse matrix-vector multiplication.
+	 *
+	 * @param rowsA          [in] number of rows of matrix A
+	 * @param colsA          [in] number of columns of matrix A
+	 * @param columnPointers [in] the column pointers of A (size = colsA + 1)
+	 * @param rowIndices     [in] the row indices of the entries of A
+	 * @param values         [in] the non-zero entries of A
+	 * @param colsB          [in] number of columns of matrix B
+	 * @param b              [in] matrix B (size = colsA * colsB)
+	 * @param c              [out] matrix C (size = rowsA * colsB)
+	 */
+	public static native void cscMultiply(int rowsA, int colsA,
+			int[] columnPointers, int[] rowIndices, double[] values,
+			int colsB, double[] b, double[] c);
+
 
 	public static native long createDenseFactorization(
 			int n,
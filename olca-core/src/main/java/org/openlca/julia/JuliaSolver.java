@@ -8,9 +8,13 @@ import org.openlca.core.matrix.format.MatrixConverter;
 import org.openlca.core.matrix.format.MatrixReader;
 import org.openlca.core.matrix.solvers.Factorization;
 import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.core.matrix.solvers.SymbolicAnalysis;
+import org.slf4j.LoggerFactory;
 
 public class JuliaSolver implements MatrixSolver {
 
+	private static volatile boolean hasNativeProducts = true;
+
 	public JuliaSolver() {
 		if (!Julia.isLoaded()) {
 			Julia.load();
@@ -55,9 +59,16 @@ public class JuliaSolver implements MatrixSolver {
 
 	@Override
 	public double[] multiply(MatrixReader m, double[] x) {
-		if (m instanceof HashPointMatrix
-				|| m instanceof CSCMatrix) {
+		if (m instanceof HashPointMatrix)
 			return m.multiply(x);
+		if (m instanceof CSCMatrix) {
+			var csc = (CSCMatrix) m;
+			if (useNativeProduct(csc, 1)) {
+				double[] y = new double[csc.rows];
+				if (nativeProduct(csc, 1, x, y))
+					return y;
+			}
+			return csc.multiply(x);
 		}
 		var a = MatrixConverter.dense(m);
 		double[] y = new double[m.rows()];
@@ -75,6 +86,17 @@ public class JuliaSolver implements MatrixSolver {
 
 	@Override
 	public DenseMatrix multiply(MatrixReader a, MatrixReader b) {
+		if (a instanceof HashPointMatrix
+				|| a instanceof CSCMatrix) {
+			var csc = MatrixConverter.csc(a);
+			var _b = MatrixConverter.dense(b);
+			if (useNativeProduct(csc, _b.columns)) {
+				var c = new DenseMatrix(csc.rows, _b.columns);
+				if (nativeProduct(csc, _b.columns, _b.data, c.data))
+					return c;
+			}
+			return csc.multiply(_b);
+		}
 		DenseMatrix _a = MatrixConverter.dense(a);
 		DenseMatrix _b = MatrixConverter.dense(b);
 		int rowsA = _a.rows();
@@ -89,6 +111,34 @@ public class JuliaSolver implements MatrixSolver {
 		return c;
 	}
 
+	/**
+	 * Large sparse products are calculated with the parallel kernels of the
+	 * CSC matrix. Smaller products are calculated in native code if the
+	 * native libraries provide it.
+	 */
+	private boolean useNativeProduct(CSCMatrix a, int colsB) {
+		return hasNativeProducts
+				&& Julia.hasSparseLibraries()
+				&& CSCMatrix.tasksFor((long) a.values.length * colsB) < 2;
+	}
+
+	private boolean nativeProduct(CSCMatrix a, int colsB, double[] b,
+			double[] c) {
+		try {
+			Julia.cscMultiply(a.rows, a.columns, a.columnPointers,
+					a.rowIndices, a.values, colsB, b, c);
+			return true;
+		} catch (UnsatisfiedLinkError e) {
+			// older versions of the native libraries do not provide the
+			// sparse products
+			hasNativeProducts = false;
+			var log = LoggerFactory.getLogger(getClass());
+			log.warn("no sparse products in native libraries; "
+					+ "use Java implementation");
+			return false;
+		}
+	}
+
 	@Override
 	public Factorization factorize(MatrixReader matrix) {
 		if (matrix instanceof HashPointMatrix) {
@@ -100,4 +150,25 @@ public class JuliaSolver implements MatrixSolver {
 		}
 		return DenseFactorization.of(matrix);
 	}
+
+	@Override
+	public SymbolicAnalysis analyze(MatrixReader matrix) {
+		if (!Julia.hasSparseLibraries()
+				|| !(matrix instanceof HashPointMatrix
+				|| matrix instanceof CSCMatrix))
+			return MatrixSolver.super.analyze(matrix);
+		var csc = matrix instanceof HashPointMatrix
+				? ((HashPointMatrix) matrix).compress()
+				: (CSCMatrix) matrix;
+		try {
+			return SparseAnalysis.of(csc);
+		} catch (UnsatisfiedLinkError e) {
+			// older versions of the native libraries do not provide the
+			// separate symbolic and numeric factorization steps
+			var log = LoggerFactory.getLogger(getClass());
+			log.warn("no symbolic analysis in native libraries; "
+					+ "use full factorizations");
+			return MatrixSolver.super.analyze(matrix);
+		}
+	}
 }
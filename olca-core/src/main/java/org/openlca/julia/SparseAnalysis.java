@@ -0,0 +1,158 @@
+package org.openlca.julia;
+
+import java.util.Arrays;
+
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.matrix.format.Matrix;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.solvers.Factorization;
+import org.openlca.core.matrix.solvers.SymbolicAnalysis;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The symbolic analysis of a sparse matrix with UMFPACK. The numeric
+ * factorizations of matrices with the same sparsity pattern are then created
+ * from this analysis without running the ordering again.
+ */
+public class SparseAnalysis implements SymbolicAnalysis {
+
+	private static volatile boolean hasNativeSolveMany = true;
+
+	private final int n;
+	private final long pointer;
+	private final int[] columnPointers;
+	private final int[] rowIndices;
+	private boolean isDisposed;
+
+	private SparseAnalysis(CSCMatrix matrix, long pointer) {
+		this.n = matrix.rows;
+		this.pointer = pointer;
+		this.columnPointers = matrix.columnPointers;
+		this.rowIndices = matrix.rowIndices;
+	}
+
+	public static SparseAnalysis of(CSCMatrix matrix) {
+		var pointer = Julia.umfSymbolic(
+				matrix.rows,
+				matrix.columnPointers,
+				matrix.rowIndices,
+				matrix.values);
+		return new SparseAnalysis(matrix, pointer);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public boolean isApplicableTo(MatrixReader matrix) {
+		if (!(matrix instanceof CSCMatrix))
+			return false;
+		var csc = (CSCMatrix) matrix;
+		if (csc.rows != n || csc.columns != n)
+			return false;
+		// matrices that are modified in place share the structure arrays
+		if (csc.columnPointers == columnPointers
+				&& csc.rowIndices == rowIndices)
+			return true;
+		return Arrays.equals(csc.columnPointers, columnPointers)
+				&& Arrays.equals(csc.rowIndices, rowIndices);
+	}
+
+	@Override
+	public Factorization factorize(MatrixReader matrix) {
+		var csc = matrix instanceof HashPointMatrix
+				? ((HashPointMatrix) matrix).compress()
+				: matrix;
+		if (isDisposed || !isApplicableTo(csc))
+			return new JuliaSolver().factorize(csc);
+		var m = (CSCMatrix) csc;
+		var fm = Julia.umfNumeric(
+				pointer,
+				m.columnPointers,
+				m.rowIndices,
+				m.values);
+		return new NumericFactorization(n, fm);
+	}
+
+	@Override
+	public boolean isDisposed() {
+		return isDisposed;
+	}
+
+	@Override
+	public void dispose() {
+		if (isDisposed)
+			return;
+		Julia.umfDisposeSymbolic(pointer);
+		isDisposed = true;
+	}
+
+	private static class NumericFactorization implements Factorization {
+
+		private final int n;
+		private final long pointer;
+		private boolean isDisposed;
+
+		NumericFactorization(int n, long pointer) {
+			this.n = n;
+			this.pointer = pointer;
+		}
+
+		@Override
+		public int size() {
+			return n;
+		}
+
+		@Override
+		public double[] solve(double[] b) {
+			var x = new double[n];
+			Julia.umfSolveFactorized(pointer, b, x);
+			return x;
+		}
+
+		/**
+		 * Solves all indices in a single native call that reuses the work
+		 * arrays of UMFPACK for all right-hand sides.
+		 */
+		@Override
+		public Matrix solve(int[] indices, double val) {
+			if (!hasNativeSolveMany)
+				return Factorization.super.solve(indices, val);
+			int k = indices.length;
+			var b = new double[n * k];
+			for (int j = 0; j < k; j++) {
+				b[j * n + indices[j]] = val;
+			}
+			var x = new DenseMatrix(n, k);
+			try {
+				Julia.umfSolveFactorizedMany(pointer, n, k, b, x.data);
+				return x;
+			} catch (UnsatisfiedLinkError e) {
+				// older versions of the native libraries do not provide
+				// this function
+				hasNativeSolveMany = false;
+				LoggerFactory.getLogger(getClass()).warn(
+						"no umfSolveFactorizedMany in native libraries;"
+								+ " solve indices one by one");
+				return Factorization.super.solve(indices, val);
+			}
+		}
+
+		@Override
+		public boolean isDisposed() {
+			return isDisposed;
+		}
+
+		@Override
+		public void dispose() {
+			if (isDisposed)
+				return;
+			Julia.umfDispose(pointer);
+			isDisposed = true;
+		}
+	}
+}
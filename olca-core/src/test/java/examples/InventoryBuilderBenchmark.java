@@ -0,0 +1,99 @@
+package examples;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.derby.DerbyDatabase;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.cache.ExchangeSnapshot;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.model.AllocationMethod;
+
+/**
+ * Builds the matrices of a whole database (`TechIndex.of(db)`) with different
+ * numbers of threads and checks that the results are the same. Pass the name
+ * of a database in the openLCA data folder as first argument.
+ */
+public class InventoryBuilderBenchmark {
+
+	private static final int RUNS = 3;
+
+	public static void main(String[] args) throws Exception {
+		var name = args.length > 0 ? args[0] : "ei37-apos";
+		try (var db = DerbyDatabase.fromDataDir(name)) {
+			var techIndex = TechIndex.of(db);
+			System.out.printf("%d providers%n", techIndex.size());
+
+			MatrixData expected = null;
+			for (boolean snapshot : new boolean[]{false, true}) {
+				if (snapshot) {
+					ExchangeSnapshot.enable(db);
+					ExchangeSnapshot.of(db); // build it
+				}
+				System.out.printf("with exchange snapshot: %b%n", snapshot);
+				int max = Runtime.getRuntime().availableProcessors();
+				for (int threads = 1; threads <= max; threads *= 2) {
+					var data = run(db, techIndex, threads);
+					if (expected == null) {
+						expected = data;
+					} else {
+						check(expected, data);
+					}
+				}
+			}
+			ExchangeSnapshot.disable(db);
+		}
+	}
+
+	private static MatrixData run(IDatabase db, TechIndex techIndex,
+			int threads) throws Exception {
+		var pool = new ForkJoinPool(threads);
+		MatrixData data = null;
+		long total = 0;
+		for (int i = 0; i <= RUNS; i++) {
+			long start = System.nanoTime();
+			data = pool.submit(() -> MatrixData.of(db, techIndex)
+					.withAllocation(AllocationMethod.USE_DEFAULT)
+					.withCosts(true)
+					.build()).get();
+			if (i > 0) { // first run is warm up
+				total += System.nanoTime() - start;
+			}
+		}
+		pool.shutdown();
+		System.out.printf("  %2d threads: %10.1f ms%n",
+				threads, total / (1e6 * RUNS));
+		return data;
+	}
+
+	private static void check(MatrixData expected, MatrixData actual) {
+		int m = expected.flowIndex.size();
+		if (actual.flowIndex.size() != m)
+			throw new IllegalStateException("different flow index sizes");
+		for (int i = 0; i < m; i++) {
+			if (!expected.flowIndex.at(i).equals(actual.flowIndex.at(i)))
+				throw new IllegalStateException("different flow index");
+		}
+		check(expected.techMatrix, actual.techMatrix);
+		check(expected.flowMatrix, actual.flowMatrix);
+		for (int i = 0; i < expected.costVector.length; i++) {
+			if (expected.costVector[i] != actual.costVector[i])
+				throw new IllegalStateException("different costs");
+		}
+	}
+
+	private static void check(MatrixReader expected, MatrixReader actual) {
+		if (expected.rows() != actual.rows()
+				|| expected.columns() != actual.columns())
+			throw new IllegalStateException("different matrix sizes");
+		expected.iterate((row, col, val) -> {
+			if (actual.get(row, col) != val)
+				throw new IllegalStateException("different matrix values");
+		});
+		actual.iterate((row, col, val) -> {
+			if (expected.get(row, col) != val)
+				throw new IllegalStateException("different matrix values");
+		});
+	}
+}
@@ -67,6 +67,7 @@ public class SimulatorExample {
 						i + 1, min, max, t);
 			}
 		}
+		simulator.dispose();
 		System.out.println("all done");
 	}
 
@@ -0,0 +1,85 @@
+package examples;
+
+import java.util.Random;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+
+/**
+ * Compares the sparse matrix-vector and matrix-matrix products of CSC matrices
+ * with the previous paths of the solvers: the dense copies in the
+ * `JavaSolver` and the `iterate` based product of the matrix readers.
+ */
+public class SparseProductBenchmark {
+
+	private static final int RUNS = 10;
+
+	public static void main(String[] args) {
+
+		// an intervention matrix B like structure with a few entries per column
+		System.out.println("B: 4000 x 2000, 20 entries per column");
+		var small = random(4000, 2000, 20);
+		var s = vector(2000);
+		run("dense copy (old JavaSolver)", () -> denseCopy(small, s));
+		run("iterate (MatrixReader)", () -> iterate(small, s));
+		run("CSC kernel", () -> small.multiply(s));
+
+		System.out.println("B: 1000000 x 20000, 50 entries per column");
+		var large = random(1_000_000, 20_000, 50);
+		var sl = vector(20_000);
+		run("iterate (MatrixReader)", () -> iterate(large, sl));
+		run("CSC kernel", () -> large.multiply(sl));
+
+		System.out.println("C * G: 1000 x 4000 (sparse) * 4000 x 500 (dense)");
+		var c = random(1000, 4000, 10);
+		var g = new DenseMatrix(4000, 500, vector(4000 * 500));
+		run("dense copy (old JavaSolver)", () -> {
+			var a = new Array2DRowRealMatrix(c.rows, c.columns);
+			c.iterate(a::setEntry);
+			var b = new Array2DRowRealMatrix(g.rows, g.columns);
+			g.iterate(b::setEntry);
+			a.multiply(b);
+		});
+		run("CSC kernel", () -> c.multiply(g));
+	}
+
+	private static void run(String label, Runnable fn) {
+		// warm up
+		fn.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			fn.run();
+		}
+		double ms = (System.nanoTime() - start) / (1e6 * RUNS);
+		System.out.printf("  %-30s %10.3f ms%n", label, ms);
+	}
+
+	private static double[] denseCopy(CSCMatrix m, double[] v) {
+		var a = new Array2DRowRealMatrix(m.rows, m.columns);
+		m.iterate(a::setEntry);
+		return a.operate(v);
+	}
+
+	private static double[] iterate(CSCMatrix m, double[] v) {
+		double[] x = new double[m.rows];
+		m.iterate((row, col, val) -> x[row] += val * v[col]);
+		return x;
+	}
+
+	private static CSCMatrix random(int rows, int cols, int perColumn) {
+		var random = new Random(42);
+		var m = new HashPointMatrix(rows, cols);
+		for (int col = 0; col < cols; col++) {
+			for (int k = 0; k < perColumn; k++) {
+				m.set(random.nextInt(rows), col, random.nextDouble());
+			}
+		}
+		return m.compress();
+	}
+
+	private static double[] vector(int n) {
+		return new Random(13).doubles(n).toArray();
+	}
+}
@@ -35,6 +35,7 @@ public class SysInSys {
 		});
 
 		SimpleResult r = sim.nextRun();
+		sim.dispose();
 
 		IndexFlow f = r.flowIndex.at(0);
 		System.out.println(f.flow.name + "  -> " + r.getTotalFlowResult(f));
@@ -0,0 +1,85 @@
+package org.openlca.core.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlca.core.Tests;
+import org.openlca.core.model.Actor;
+
+public class ChunkFetchTest {
+
+	private final IDatabase db = Tests.getDb();
+	private final List<Actor> actors = new ArrayList<>();
+
+	@Before
+	public void setup() {
+		for (int i = 0; i < 23; i++) {
+			actors.add(db.insert(Actor.of("actor " + i)));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (var actor : actors) {
+			db.delete(actor);
+		}
+	}
+
+	@Test
+	public void testPaddedSize() {
+		assertEquals(1, ChunkFetch.paddedSize(1, 1000));
+		assertEquals(3, ChunkFetch.paddedSize(3, 1000));
+		assertEquals(7, ChunkFetch.paddedSize(4, 1000));
+		assertEquals(125, ChunkFetch.paddedSize(101, 1000));
+		assertEquals(500, ChunkFetch.paddedSize(499, 1000));
+		assertEquals(1000, ChunkFetch.paddedSize(501, 1000));
+		assertEquals(1000, ChunkFetch.paddedSize(1000, 1000));
+	}
+
+	@Test
+	public void testChunks() {
+		long[] ids = actors.stream()
+				.mapToLong(a -> a.id)
+				.toArray();
+		for (int chunkSize : new int[] { 1, 4, 10, 1000 }) {
+			var fetched = ChunkFetch.on(db)
+					.withChunkSize(chunkSize)
+					.withThreads(3)
+					.queryAll("select id from tbl_actors where id in",
+							ids, r -> r.getLong(1));
+			assertEquals(ids.length, fetched.size());
+			assertEquals(idSet(), new HashSet<>(fetched));
+		}
+	}
+
+	@Test
+	public void testDescriptors() {
+		var dao = new ActorDao(db);
+		var names = new HashSet<String>();
+		long[] ids = actors.stream()
+				.mapToLong(a -> a.id)
+				.toArray();
+		dao.eachDescriptor(ids, d -> names.add(d.name));
+		assertEquals(actors.size(), names.size());
+		assertTrue(names.contains("actor 22"));
+
+		var descriptors = dao.getDescriptors(idSet());
+		assertEquals(actors.size(), descriptors.size());
+	}
+
+	private Set<Long> idSet() {
+		var set = new HashSet<Long>();
+		for (var actor : actors) {
+			set.add(actor.id);
+		}
+		return set;
+	}
+}
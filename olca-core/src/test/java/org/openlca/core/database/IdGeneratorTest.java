@@ -1,8 +1,11 @@
 package org.openlca.core.database;
 
+import java.util.HashSet;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.openlca.core.Tests;
+import org.openlca.core.model.Actor;
 import org.openlca.core.model.Flow;
 import org.openlca.core.model.FlowPropertyFactor;
 
@@ -42,4 +45,21 @@ public class IdGeneratorTest {
 
 	}
 
+	@Test
+	public void testNoDuplicatesAfterClear() {
+		IDatabase db = Tests.getDb();
+
+		// the first insert preallocates a block of IDs from the sequence
+		// which is then reset by `clear`
+		db.insert(Actor.of("first"));
+		db.clear();
+
+		// insert more entities than one block of preallocated IDs
+		var ids = new HashSet<Long>();
+		for (int i = 0; i < 400; i++) {
+			var actor = db.insert(Actor.of("actor " + i));
+			Assert.assertTrue(ids.add(actor.id));
+		}
+		db.clear();
+	}
 }
@@ -0,0 +1,167 @@
+package org.openlca.core.database.usage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlca.core.Tests;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.usage.FormulaIndex.Type;
+import org.openlca.core.model.Flow;
+import org.openlca.core.model.FlowProperty;
+import org.openlca.core.model.ImpactCategory;
+import org.openlca.core.model.Parameter;
+import org.openlca.core.model.ParameterRedef;
+import org.openlca.core.model.ParameterRedefSet;
+import org.openlca.core.model.ParameterScope;
+import org.openlca.core.model.Process;
+import org.openlca.core.model.ProductSystem;
+import org.openlca.core.model.RootEntity;
+import org.openlca.core.model.Unit;
+import org.openlca.core.model.UnitGroup;
+
+public class FormulaIndexTest {
+
+	private final IDatabase db = Tests.getDb();
+	private final List<RootEntity> entities = new ArrayList<>();
+	private Process process;
+	private ImpactCategory impact;
+
+	@Before
+	public void setup() {
+		FormulaIndex.enable(db);
+		insert(Parameter.global("fi_a", 2));
+		insert(Parameter.global("fi_c", "2 * FI_A"));
+		var units = insert(UnitGroup.of("Mass units", Unit.of("kg")));
+		var mass = insert(FlowProperty.of("Mass", units));
+		var product = insert(Flow.product("p", mass));
+		var co2 = insert(Flow.elementary("CO2", mass));
+
+		var p = Process.of("p", product);
+		p.output(co2, 1).formula = "fi_c + 1";
+		var local = new Parameter();
+		local.name = "fi_d";
+		local.scope = ParameterScope.PROCESS;
+		local.isInputParameter = false;
+		local.formula = "sqr(fi_a)";
+		p.parameters.add(local);
+		process = insert(p);
+
+		var i = ImpactCategory.of("GWP");
+		i.factor(co2, 1).formula = "fi_a / 2";
+		impact = insert(i);
+
+		var system = ProductSystem.of(process);
+		var set = new ParameterRedefSet();
+		set.name = "baseline";
+		set.isBaseline = true;
+		var redef = new ParameterRedef();
+		redef.name = "fi_a";
+		redef.value = 3;
+		set.parameters.add(redef);
+		system.parameterSets.add(set);
+		insert(system);
+	}
+
+	@After
+	public void tearDown() {
+		for (int i = entities.size() - 1; i >= 0; i--) {
+			db.delete(entities.get(i));
+		}
+		FormulaIndex.disable(db);
+	}
+
+	private <T extends RootEntity> T insert(T e) {
+		var inserted = db.insert(e);
+		entities.add(inserted);
+		return inserted;
+	}
+
+	@Test
+	public void testEntries() {
+		var index = FormulaIndex.of(db);
+		assertNotNull(index);
+		var types = index.entriesOf("FI_A").stream()
+				.map(e -> e.type)
+				.collect(Collectors.toSet());
+		assertEquals(Set.of(Type.PARAMETER, Type.IMPACT_FACTOR,
+				Type.SYSTEM_REDEF), types);
+
+		// definition, the formula of fi_c, and the local fi_d
+		var params = index.entriesOf("fi_a", Type.PARAMETER);
+		assertEquals(3, params.size());
+		assertEquals(1, params.stream()
+				.filter(e -> e.isDefinitionOf("fi_a"))
+				.count());
+		assertTrue(params.stream()
+				.anyMatch(e -> e.ownerId == process.id));
+
+		var exchanges = index.entriesOf("fi_c", Type.EXCHANGE);
+		assertEquals(1, exchanges.size());
+		assertEquals(process.id, exchanges.get(0).ownerId);
+	}
+
+	@Test
+	public void testDependents() {
+		var index = FormulaIndex.of(db);
+		assertEquals(Set.of("fi_a", "fi_c", "fi_d"), index.dependentsOf("fi_a"));
+		var formulas = index.matrixFormulasOf("fi_a");
+		assertEquals(2, formulas.size());
+		assertTrue(formulas.stream().anyMatch(
+				e -> e.type == Type.EXCHANGE && e.ownerId == process.id));
+		assertTrue(formulas.stream().anyMatch(
+				e -> e.type == Type.IMPACT_FACTOR && e.ownerId == impact.id));
+	}
+
+	@Test
+	public void testUpdates() {
+		process.exchanges.get(1).formula = "fi_d * 2";
+		process = db.update(process);
+		var index = FormulaIndex.of(db);
+		assertTrue(index.entriesOf("fi_c", Type.EXCHANGE).isEmpty());
+		assertEquals(1, index.entriesOf("fi_d", Type.EXCHANGE).size());
+		assertEquals(2, index.matrixFormulasOf("fi_a").size());
+
+		// a new global parameter
+		var global = insert(Parameter.global("fi_e", "fi_a * 3"));
+		assertTrue(FormulaIndex.of(db).dependentsOf("fi_a").contains("fi_e"));
+		entities.remove(global);
+		db.delete(global);
+		assertFalse(FormulaIndex.of(db).dependentsOf("fi_a").contains("fi_e"));
+
+		// delete the impact category
+		entities.remove(impact);
+		db.delete(impact);
+		assertTrue(FormulaIndex.of(db)
+				.entriesOf("fi_a", Type.IMPACT_FACTOR).isEmpty());
+	}
+
+	@Test
+	public void testUsageTree() {
+		var indexed = ParameterUsageTree.of("fi_a", db);
+		FormulaIndex.disable(db);
+		var scanned = ParameterUsageTree.of("fi_a", db);
+		assertEquals(namesOf(scanned.nodes), namesOf(indexed.nodes));
+		assertNull(FormulaIndex.of(db));
+		assertFalse(indexed.isEmpty());
+	}
+
+	private List<String> namesOf(List<ParameterUsageTree.Node> nodes) {
+		var names = new ArrayList<String>();
+		for (var node : nodes) {
+			names.add(node.name + ":" + node.usageType + ":" + node.usage);
+			names.addAll(namesOf(node.childs));
+		}
+		return names;
+	}
+}
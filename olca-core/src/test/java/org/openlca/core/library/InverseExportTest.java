@@ -0,0 +1,104 @@
+package org.openlca.core.library;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.matrix.format.MatrixConverter;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.io.npy.Npy;
+import org.openlca.core.matrix.solvers.JavaSolver;
+import org.openlca.core.matrix.solvers.JavaSparseSolver;
+import org.openlca.core.matrix.solvers.MatrixSolver;
+import org.openlca.util.Dirs;
+
+public class InverseExportTest {
+
+	@Test
+	public void testSparse() throws Exception {
+		var data = randomData(50, 30, new Random(42));
+		check(new JavaSparseSolver(), data, 7);
+	}
+
+	@Test
+	public void testDense() throws Exception {
+		var data = randomData(20, 10, new Random(7));
+		data.techMatrix = MatrixConverter.dense(data.techMatrix);
+		data.flowMatrix = MatrixConverter.dense(data.flowMatrix);
+		check(new JavaSolver(), data, 3);
+	}
+
+	@Test
+	public void testWithoutFlows() throws Exception {
+		var data = randomData(10, 5, new Random(1));
+		data.flowMatrix = null;
+		var dir = Files.createTempDirectory("_olca_lib_test").toFile();
+		var pool = Executors.newFixedThreadPool(2);
+		InverseExport.of(new JavaSparseSolver(), data, dir)
+			.withBlockSize(4)
+			.run(pool);
+		pool.shutdown();
+		assertTrue(new File(dir, "INV.npy").exists());
+		assertTrue(!new File(dir, "M.npy").exists());
+		Dirs.delete(dir);
+	}
+
+	/**
+	 * Compares the block-wise export with the in-memory inversion and
+	 * multiplication.
+	 */
+	private void check(MatrixSolver solver, MatrixData data, int blockSize)
+		throws Exception {
+		var dir = Files.createTempDirectory("_olca_lib_test").toFile();
+		var pool = Executors.newFixedThreadPool(4);
+		InverseExport.of(solver, data, dir)
+			.withBlockSize(blockSize)
+			.run(pool);
+		pool.shutdown();
+
+		var expectedInv = solver.invert(data.techMatrix);
+		var expectedM = solver.multiply(data.flowMatrix, expectedInv);
+		var inv = Npy.load(new File(dir, "INV.npy"));
+		var m = Npy.load(new File(dir, "M.npy"));
+		assertEqual(expectedInv, inv);
+		assertEqual(expectedM, m);
+		Dirs.delete(dir);
+	}
+
+	private void assertEqual(MatrixReader expected, MatrixReader actual) {
+		assertEquals(expected.rows(), actual.rows());
+		assertEquals(expected.columns(), actual.columns());
+		for (int j = 0; j < expected.columns(); j++) {
+			assertArrayEquals(expected.getColumn(j), actual.getColumn(j), 1e-10);
+		}
+	}
+
+	private MatrixData randomData(int n, int m, Random random) {
+		var techMatrix = new HashPointMatrix(n, n);
+		for (int j = 0; j < n; j++) {
+			techMatrix.set(j, j, 1.0);
+			for (int k = 0; k < 2; k++) {
+				int i = random.nextInt(n);
+				if (i != j) {
+					techMatrix.set(i, j, -0.1 * random.nextDouble());
+				}
+			}
+		}
+		var flowMatrix = new HashPointMatrix(m, n);
+		for (int j = 0; j < n; j++) {
+			flowMatrix.set(random.nextInt(m), j, random.nextDouble());
+		}
+		var data = new MatrixData();
+		data.techMatrix = techMatrix;
+		data.flowMatrix = flowMatrix;
+		return data;
+	}
+}
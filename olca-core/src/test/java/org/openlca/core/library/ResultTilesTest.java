@@ -0,0 +1,120 @@
+package org.openlca.core.library;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.matrix.format.MatrixReader;
+import org.openlca.core.matrix.solvers.JavaSparseSolver;
+import org.openlca.jsonld.Json;
+import org.openlca.util.Dirs;
+
+public class ResultTilesTest {
+
+	private File dir;
+	private MatrixData data;
+	private final JavaSparseSolver solver = new JavaSparseSolver();
+
+	@Before
+	public void setup() throws Exception {
+		dir = Files.createTempDirectory("_olca_lib_test").toFile();
+		int n = 10;
+		var techMatrix = new HashPointMatrix(n, n);
+		var flowMatrix = new HashPointMatrix(4, n);
+		for (int j = 0; j < n; j++) {
+			techMatrix.set(j, j, 1.0);
+			techMatrix.set((j + 1) % n, j, -0.1 * (j + 1) / n);
+			flowMatrix.set(j % 4, j, j + 1);
+		}
+		data = new MatrixData();
+		data.techMatrix = techMatrix;
+		data.flowMatrix = flowMatrix;
+		data.impactMatrix = new HashPointMatrix(new double[][]{
+				{1, 0, 2, 0},
+				{0, 0.5, 0, -1},
+		});
+
+		var pool = Executors.newFixedThreadPool(2);
+		InverseExport.of(solver, data, dir)
+				.withBlockSize(3)
+				.withTiles(true)
+				.run(pool);
+		pool.shutdown();
+	}
+
+	@After
+	public void tearDown() {
+		Dirs.delete(dir);
+	}
+
+	@Test
+	public void testReadTiles() {
+		var lib = writeInfo(ResultTiles.VERSION);
+		assertFalse(lib.hasTiles(LibraryMatrix.INV));
+		assertFalse(lib.hasTiles(LibraryMatrix.M));
+		assertTrue(lib.hasTiles(LibraryMatrix.CM));
+		assertFalse(new File(dir, "tiles/INV_0.npz").exists());
+		assertFalse(new File(dir, "tiles/M_0.npz").exists());
+
+		// INV and M are read from the mapped NPY files
+		var inv = solver.invert(data.techMatrix);
+		var m = solver.multiply(data.flowMatrix, inv);
+		var cm = solver.multiply(data.impactMatrix, m);
+		check(lib, LibraryMatrix.INV, inv);
+		check(lib, LibraryMatrix.M, m);
+		check(lib, LibraryMatrix.CM, cm);
+	}
+
+	@Test
+	public void testIgnoreOtherVersions() {
+		var lib = writeInfo(0);
+		assertFalse(lib.hasTiles(LibraryMatrix.CM));
+		assertFalse(lib.getColumn(LibraryMatrix.CM, 0).isPresent());
+		lib = writeInfo(ResultTiles.VERSION + 1);
+		assertFalse(lib.hasTiles(LibraryMatrix.CM));
+
+		// the full matrices can still be read
+		var inv = solver.invert(data.techMatrix);
+		check(lib, LibraryMatrix.INV, inv);
+	}
+
+	@Test
+	public void testTilesAreOptional() {
+		var libDir = new File(dir, "lib_0.1");
+		var lib = Library.create(data, libDir);
+		assertFalse(lib.hasTiles(LibraryMatrix.CM));
+		assertFalse(new File(libDir, "tiles").exists());
+		Dirs.delete(libDir);
+
+		lib = Library.create(data, libDir, true);
+		assertTrue(lib.hasTiles(LibraryMatrix.CM));
+		assertFalse(lib.hasTiles(LibraryMatrix.INV));
+		assertFalse(lib.hasTiles(LibraryMatrix.M));
+		var inv = solver.invert(data.techMatrix);
+		var m = solver.multiply(data.flowMatrix, inv);
+		check(lib, LibraryMatrix.CM, solver.multiply(data.impactMatrix, m));
+	}
+
+	private Library writeInfo(int tiles) {
+		var info = LibraryInfo.of("lib", "0.1");
+		info.resultTiles = tiles;
+		Json.write(info.toJson(), new File(dir, "library.json"));
+		return new Library(dir);
+	}
+
+	private void check(Library lib, LibraryMatrix m, MatrixReader expected) {
+		for (int j = 0; j < expected.columns(); j++) {
+			var column = lib.getColumn(m, j).orElseThrow();
+			assertArrayEquals(expected.getColumn(j), column, 1e-10);
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package org.openlca.core.math;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.SplittableRandom;
+
 import org.junit.Test;
 
 public class NumberGeneratorTest {
@@ -48,6 +51,38 @@ public class NumberGeneratorTest {
 			assertEquals(5.0, genDiscrete.next(), 1e-16);
 	}
 
+	@Test
+	public void testSeededStreams() {
+		var gens = new NumberGenerator[] {
+				NumberGenerator.normal(5, 1),
+				NumberGenerator.logNormal(5, 1.1),
+				NumberGenerator.uniform(1, 5),
+				NumberGenerator.triangular(1, 4, 5) };
+		for (var gen : gens) {
+			var r1 = new SplittableRandom(42);
+			var r2 = new SplittableRandom(42);
+			for (int i = 0; i < 100; i++) {
+				assertEquals(gen.next(r1), gen.next(r2), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testFill() {
+		var gen = NumberGenerator.normal(5, 1);
+		var values = new double[1001];
+		gen.fill(values, new SplittableRandom(42));
+		double sum = 0;
+		for (double val : values) {
+			sum += val;
+		}
+		assertEquals(5, sum / values.length, 0.2);
+
+		var other = new double[1001];
+		gen.fill(other, new SplittableRandom(42));
+		assertArrayEquals(values, other, 0);
+	}
+
 	private void assertInInterval(double val, double lower, double upper) {
 		assertTrue(val >= lower);
 		assertTrue(val <= upper);
@@ -2,21 +2,51 @@ package org.openlca.core.math;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.After;
 import org.junit.Test;
 import org.openlca.core.TestProcess;
 import org.openlca.core.TestSystem;
 import org.openlca.core.Tests;
+import org.openlca.core.database.IDatabase;
 import org.openlca.core.matrix.IndexFlow;
+import org.openlca.core.model.Flow;
+import org.openlca.core.model.FlowProperty;
+import org.openlca.core.model.ImpactCategory;
+import org.openlca.core.model.ImpactMethod;
+import org.openlca.core.model.Parameter;
+import org.openlca.core.model.ParameterRedef;
 import org.openlca.core.model.Process;
+import org.openlca.core.model.ProductSystem;
 import org.openlca.core.model.Project;
 import org.openlca.core.model.ProjectVariant;
+import org.openlca.core.model.RootEntity;
+import org.openlca.core.model.Unit;
+import org.openlca.core.model.UnitGroup;
+import org.openlca.core.model.descriptors.Descriptor;
 import org.openlca.core.results.ProjectResult;
 
 public class ProjectCalculationTest {
 
+	private final IDatabase db = Tests.getDb();
+	private final List<RootEntity> entities = new ArrayList<>();
+
+	@After
+	public void tearDown() {
+		for (int i = entities.size() - 1; i >= 0; i--) {
+			db.delete(entities.get(i));
+		}
+	}
+
+	private <T extends RootEntity> T insert(T e) {
+		var inserted = db.insert(e);
+		entities.add(inserted);
+		return inserted;
+	}
+
 	@Test
 	public void testScaleVariantByAmount() {
 		Project project = new Project();
@@ -61,4 +91,88 @@ public class ProjectCalculationTest {
 		}
 		assertEquals(4, icount.get());
 	}
+
+	/**
+	 * Variants of the same product system with different amounts and
+	 * parameter redefinitions; the characterization factor has a formula so
+	 * that the shared impact matrix needs to be re-evaluated per variant.
+	 */
+	@Test
+	public void testVariantsOfSameSystem() {
+		insert(Parameter.global("a", 2));
+		var units = insert(UnitGroup.of("Mass units", Unit.of("kg")));
+		var mass = insert(FlowProperty.of("Mass", units));
+		var product = insert(Flow.product("p", mass));
+		var co2 = insert(Flow.elementary("CO2", mass));
+		var p = Process.of("p", product);
+		p.output(co2, 2).formula = "a";
+		p = insert(p);
+		var system = insert(ProductSystem.of(p));
+
+		var impact = ImpactCategory.of("GWP", "kg CO2 eq.");
+		impact.factor(co2, 4).formula = "2 * a";
+		impact = insert(impact);
+		var method = insert(ImpactMethod.of("Method").add(impact));
+
+		var project = Project.of("Project");
+		project.impactMethod = method;
+		project.variants.add(variant(system, 1, null));
+		project.variants.add(variant(system, 3, redef(5)));
+		project.variants.add(variant(system, 2, redef(1)));
+		var disabled = variant(system, 2, null);
+		disabled.isDisabled = true;
+		project.variants.add(disabled);
+
+		var progress = new AtomicInteger();
+		var result = new ProjectCalculator(db)
+				.withThreads(2)
+				.withCallback(new ProjectCalculator.Callback() {
+					@Override
+					public void progress(ProjectVariant v, int n, int total) {
+						progress.incrementAndGet();
+						assertEquals(3, total);
+					}
+				})
+				.calculate(project);
+		assertEquals(3, progress.get());
+		assertEquals(3, result.getVariants().size());
+
+		// amount * a * 2 * a
+		var d = Descriptor.of(impact);
+		double[] expected = {8, 150, 4};
+		for (int i = 0; i < expected.length; i++) {
+			var v = project.variants.get(i);
+			assertEquals(expected[i], result.getTotalImpactResult(v, d), 1e-10);
+		}
+
+		// canceled calculations contain no results
+		var canceled = new ProjectCalculator(db)
+				.withCallback(new ProjectCalculator.Callback() {
+					@Override
+					public boolean cancel() {
+						return true;
+					}
+				})
+				.calculate(project);
+		assertEquals(0, canceled.getVariants().size());
+	}
+
+	private ProjectVariant variant(
+			ProductSystem system, double amount, ParameterRedef redef) {
+		var v = new ProjectVariant();
+		v.name = "variant " + amount;
+		v.productSystem = system;
+		v.amount = amount;
+		if (redef != null) {
+			v.parameterRedefs.add(redef);
+		}
+		return v;
+	}
+
+	private ParameterRedef redef(double a) {
+		var redef = new ParameterRedef();
+		redef.name = "a";
+		redef.value = a;
+		return redef;
+	}
 }
@@ -0,0 +1,183 @@
+package org.openlca.core.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlca.core.Tests;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.model.Currency;
+import org.openlca.core.model.Flow;
+import org.openlca.core.model.FlowProperty;
+import org.openlca.core.model.ImpactCategory;
+import org.openlca.core.model.ImpactMethod;
+import org.openlca.core.model.Parameter;
+import org.openlca.core.model.ParameterRedef;
+import org.openlca.core.model.ParameterScope;
+import org.openlca.core.model.Process;
+import org.openlca.core.model.ProductSystem;
+import org.openlca.core.model.RootEntity;
+import org.openlca.core.model.Unit;
+import org.openlca.core.model.UnitGroup;
+import org.openlca.core.model.descriptors.Descriptor;
+import org.openlca.core.results.SimpleResult;
+
+public class ScenarioCalculatorTest {
+
+	private final IDatabase db = Tests.getDb();
+	private final List<RootEntity> entities = new ArrayList<>();
+	private Process p;
+	private CalculationSetup setup;
+
+	@Before
+	public void setup() {
+		insert(Parameter.global("a", 2));
+		insert(Parameter.global("c", "3 * a"));
+		var units = insert(UnitGroup.of("Mass units", Unit.of("kg")));
+		var mass = insert(FlowProperty.of("Mass", units));
+		var product = insert(Flow.product("p", mass));
+		var input = insert(Flow.product("q", mass));
+		var co2 = insert(Flow.elementary("CO2", mass));
+		var ch4 = insert(Flow.elementary("CH4", mass));
+		var eur = Currency.of("EUR");
+		eur.conversionFactor = 1;
+		eur = insert(eur);
+
+		var q = Process.of("q", input);
+		q.output(co2, 6).formula = "c";
+		q.quantitativeReference.currency = eur;
+		q.quantitativeReference.costs = 6.0;
+		q.quantitativeReference.costFormula = "c";
+		q = insert(q);
+
+		p = Process.of("p", product);
+		p.input(input, 0.5).formula = "0.25 * a";
+		p.output(co2, 1.0);
+		p.output(ch4, 5).formula = "d";
+		p.quantitativeReference.currency = eur;
+		p.quantitativeReference.costs = 1.0;
+		p.quantitativeReference.costFormula = "0.5 * a";
+		var d = new Parameter();
+		d.name = "d";
+		d.scope = ParameterScope.PROCESS;
+		d.isInputParameter = true;
+		d.value = 5;
+		p.parameters.add(d);
+		p = insert(p);
+
+		var gwp = ImpactCategory.of("GWP");
+		gwp.factor(co2, 1);
+		gwp.factor(ch4, 25).formula = "12.5 * a";
+		gwp = insert(gwp);
+		var method = ImpactMethod.of("Method");
+		method.impactCategories.add(gwp);
+		method = insert(method);
+
+		var system = insert(ProductSystem.of(p).link(q, p));
+		setup = new CalculationSetup(system);
+		setup.withCosts = true;
+		setup.impactMethod = Descriptor.of(method);
+	}
+
+	@After
+	public void tearDown() {
+		for (int i = entities.size() - 1; i >= 0; i--) {
+			db.delete(entities.get(i));
+		}
+	}
+
+	private <T extends RootEntity> T insert(T e) {
+		var inserted = db.insert(e);
+		entities.add(inserted);
+		return inserted;
+	}
+
+	@Test
+	public void testScenarios() {
+		var scenarios = new ArrayList<List<ParameterRedef>>();
+		scenarios.add(List.of());
+		scenarios.add(List.of(redef("a", 4, null)));
+		scenarios.add(List.of(redef("a", 1, null), redef("d", 7, p)));
+		scenarios.add(List.of(redef("d", 0.5, p)));
+
+		var calc = ScenarioCalculator.of(db, setup);
+		assertTrue(calc.isBatched());
+		var results = calc.calculateAll(scenarios);
+		calc.dispose();
+
+		assertEquals(scenarios.size(), results.size());
+		for (int i = 0; i < scenarios.size(); i++) {
+			check(expected(scenarios.get(i)), results.get(i));
+		}
+
+		// a = 4 => 1 kg of q with 12 kg CO2 + 1 kg CO2 of p
+		var r = results.get(1);
+		r.flowIndex.each((i, flow) -> {
+			if (flow.flow.name.equals("CO2")) {
+				assertEquals(13.0, r.getTotalFlowResult(flow), 1e-10);
+			}
+		});
+		// and 5 kg CH4 with a factor of 12.5 * a = 50
+		var gwp = r.impactIndex.at(0);
+		assertEquals(263.0, r.getTotalImpactResult(gwp), 1e-10);
+	}
+
+	@Test
+	public void testSystemCalculator() {
+		var scenarios = List.of(
+				List.of(redef("a", 3, null)),
+				List.of(redef("d", 2, p)));
+		var results = new SystemCalculator(db)
+				.calculateScenarios(setup, scenarios);
+		for (int i = 0; i < scenarios.size(); i++) {
+			check(expected(scenarios.get(i)), results.get(i));
+		}
+	}
+
+	private SimpleResult expected(Collection<ParameterRedef> scenario) {
+		var s = new CalculationSetup(setup.productSystem);
+		s.withCosts = true;
+		s.impactMethod = setup.impactMethod;
+		s.parameterRedefs.addAll(scenario);
+		return new SystemCalculator(db).calculateSimple(s);
+	}
+
+	private void check(SimpleResult expected, SimpleResult actual) {
+		assertArrayEquals(expected.scalingVector, actual.scalingVector, 1e-10);
+		assertEquals(expected.flowIndex.size(), actual.flowIndex.size());
+		for (int i = 0; i < expected.flowIndex.size(); i++) {
+			var flow = expected.flowIndex.at(i);
+			assertEquals(expected.getTotalFlowResult(flow),
+					actual.getTotalFlowResult(flow), 1e-10);
+		}
+
+		assertTrue(expected.hasCostResults());
+		assertEquals(expected.totalCosts, actual.totalCosts, 1e-10);
+
+		assertTrue(expected.hasImpactResults());
+		assertEquals(expected.impactIndex.size(), actual.impactIndex.size());
+		for (int i = 0; i < expected.impactIndex.size(); i++) {
+			var impact = expected.impactIndex.at(i);
+			double value = expected.getTotalImpactResult(impact);
+			assertTrue(value != 0);
+			assertEquals(value, actual.getTotalImpactResult(impact), 1e-10);
+		}
+	}
+
+	private ParameterRedef redef(String name, double value, Process context) {
+		var redef = new ParameterRedef();
+		redef.name = name;
+		redef.value = value;
+		if (context != null) {
+			redef.contextId = context.id;
+		}
+		return redef;
+	}
+}
@@ -51,6 +51,81 @@ public class SimulatorTest {
 			double val = impacts[0];
 			Assert.assertTrue(val >= 22 && val <= 26);
 		}
+		simulator.dispose();
+
+		Arrays.asList(s, m, p).forEach(db::delete);
+	}
+
+	@Test
+	public void testParallelRuns() {
+		Process p = TestProcess.refProduct("p", 1.0, "kg")
+				.elemOut("CH4", 1.0, "kg")
+				.get();
+		ProductSystem s = TestSystem.of(p).get();
+		ImpactMethod m = TestData.method("method",
+				TestData.impact("GWP")
+						.factor("CH4", "1 * param", "kg")
+						.parameter("param", Uncertainty.uniform(22, 26))
+						.get());
+
+		CalculationSetup setup = new CalculationSetup(s);
+		setup.withUncertainties = true;
+		setup.impactMethod = Descriptor.of(m);
+		Simulator simulator = Simulator.create(
+				setup, db, new JavaSolver())
+				.withThreads(4);
+
+		Assert.assertEquals(100, simulator.run(100));
+		var result = simulator.getResult();
+		Assert.assertEquals(100, result.getNumberOfRuns());
+		var impact = result.getImpacts().get(0);
+		double[] values = result.getAll(impact);
+		Assert.assertEquals(100, values.length);
+		for (double val : values) {
+			Assert.assertTrue(val >= 22 && val <= 26);
+		}
+		simulator.dispose();
+
+		Arrays.asList(s, m, p).forEach(db::delete);
+	}
+
+	@Test
+	public void testSeededRuns() {
+		Process p = TestProcess.refProduct("p", 1.0, "kg")
+				.elemOut("CH4", 1.0, "kg")
+				.get();
+		ProductSystem s = TestSystem.of(p).get();
+		ImpactMethod m = TestData.method("method",
+				TestData.impact("GWP")
+						.factor("CH4", "param + rand()", "kg")
+						.parameter("param", Uncertainty.normal(24, 2))
+						.get());
+
+		CalculationSetup setup = new CalculationSetup(s);
+		setup.withUncertainties = true;
+		setup.impactMethod = Descriptor.of(m);
+
+		// the results must not depend on the number of threads
+		// or on how the iterations are started
+		double[][] results = new double[3][];
+		for (int i = 0; i < 3; i++) {
+			var simulator = Simulator.create(setup, db, new JavaSolver())
+					.withThreads(i == 0 ? 1 : 4)
+					.withSeed(42);
+			if (i == 2) {
+				simulator.nextRun();
+				simulator.run(19);
+				simulator.run(30);
+			} else {
+				Assert.assertEquals(50, simulator.run(50));
+			}
+			var result = simulator.getResult();
+			results[i] = result.getAll(result.getImpacts().get(0));
+			simulator.dispose();
+		}
+		Assert.assertEquals(50, results[0].length);
+		Assert.assertArrayEquals(results[0], results[1], 0);
+		Assert.assertArrayEquals(results[0], results[2], 0);
 
 		Arrays.asList(s, m, p).forEach(db::delete);
 	}
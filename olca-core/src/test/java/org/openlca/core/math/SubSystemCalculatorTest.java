@@ -0,0 +1,172 @@
+package org.openlca.core.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlca.core.Tests;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.model.Flow;
+import org.openlca.core.model.FlowProperty;
+import org.openlca.core.model.Parameter;
+import org.openlca.core.model.ParameterRedef;
+import org.openlca.core.model.ParameterRedefSet;
+import org.openlca.core.model.Process;
+import org.openlca.core.model.ProcessLink;
+import org.openlca.core.model.ProductSystem;
+import org.openlca.core.model.RootEntity;
+import org.openlca.core.model.Unit;
+import org.openlca.core.model.UnitGroup;
+import org.openlca.core.results.SimpleResult;
+
+/**
+ * Tests a system-of-systems where the same sub-system `s` is linked into two
+ * hosts `h1` and `h2` which are both linked into the root system:
+ * <p>
+ * `s -> h1 -> r` and `s -> h2 -> r`
+ * <p>
+ * The leaf process of `s` emits `a` kg of CO2 where `a` is a global parameter.
+ */
+public class SubSystemCalculatorTest {
+
+	private final IDatabase db = Tests.getDb();
+	private final List<RootEntity> entities = new ArrayList<>();
+	private Flow co2;
+	private ProductSystem h2;
+	private ProductSystem root;
+
+	@Before
+	public void setup() {
+		insert(Parameter.global("a", 2));
+		var units = insert(UnitGroup.of("Mass units", Unit.of("kg")));
+		var mass = insert(FlowProperty.of("Mass", units));
+		co2 = insert(Flow.elementary("CO2", mass));
+		var fs = insert(Flow.product("s", mass));
+		var fh1 = insert(Flow.product("h1", mass));
+		var fh2 = insert(Flow.product("h2", mass));
+		var fr = insert(Flow.product("r", mass));
+
+		var ps = Process.of("s", fs);
+		ps.output(co2, 1).formula = "a";
+		ps = insert(ps);
+		var s = insert(ProductSystem.of(ps));
+
+		var ph1 = Process.of("h1", fh1);
+		ph1.input(fs, 1);
+		ph1 = insert(ph1);
+		var h1 = insert(linkSystem(ProductSystem.of(ph1), s, ph1, fs));
+
+		var ph2 = Process.of("h2", fh2);
+		ph2.input(fs, 2);
+		ph2 = insert(ph2);
+		h2 = insert(linkSystem(ProductSystem.of(ph2), s, ph2, fs));
+
+		var pr = Process.of("r", fr);
+		pr.input(fh1, 1);
+		pr.input(fh2, 1);
+		pr = insert(pr);
+		var r = ProductSystem.of(pr);
+		linkSystem(r, h1, pr, fh1);
+		linkSystem(r, h2, pr, fh2);
+		root = insert(r);
+	}
+
+	private ProductSystem linkSystem(ProductSystem host, ProductSystem sub,
+			Process recipient, Flow flow) {
+		var input = recipient.exchanges.stream()
+				.filter(e -> e.isInput && flow.equals(e.flow))
+				.findFirst()
+				.orElseThrow();
+		var link = new ProcessLink();
+		link.isSystemLink = true;
+		link.providerId = sub.id;
+		link.flowId = flow.id;
+		link.processId = recipient.id;
+		link.exchangeId = input.id;
+		host.processes.add(sub.id);
+		host.processLinks.add(link);
+		return host;
+	}
+
+	@After
+	public void tearDown() {
+		for (int i = entities.size() - 1; i >= 0; i--) {
+			db.delete(entities.get(i));
+		}
+	}
+
+	private <T extends RootEntity> T insert(T e) {
+		var inserted = db.insert(e);
+		entities.add(inserted);
+		return inserted;
+	}
+
+	@Test
+	public void testSharedSubSystem() {
+		// 1 * a + 2 * a with a = 2
+		assertEquals(6, co2Of(calculate()), 1e-10);
+	}
+
+	@Test
+	public void testHostRedefinitions() {
+		// the baseline parameter set of h2 redefines `a` for its
+		// sub-system, so that `s` is calculated with two setups:
+		// 1 * 2 + 2 * 3
+		var set = new ParameterRedefSet();
+		set.name = "baseline";
+		set.isBaseline = true;
+		set.parameters.add(redef("a", 3));
+		h2.parameterSets.add(set);
+		h2 = db.update(h2);
+		assertEquals(8, co2Of(calculate()), 1e-10);
+
+		// a redefinition in the root setup overwrites that of h2:
+		// 1 * 4 + 2 * 4
+		var setup = new CalculationSetup(root);
+		setup.parameterRedefs.add(redef("a", 4));
+		var r = new SystemCalculator(db).calculateSimple(setup);
+		assertEquals(12, co2Of(r), 1e-10);
+	}
+
+	@Test
+	public void testKeyOf() {
+		var s1 = new CalculationSetup(root);
+		s1.parameterRedefs.add(redef("a", 1));
+		s1.parameterRedefs.add(redef("b", 2));
+		var s2 = new CalculationSetup(root);
+		s2.parameterRedefs.add(redef("B", 2));
+		s2.parameterRedefs.add(redef("a", 1));
+		assertEquals(SubSystemCalculator.keyOf(s1),
+				SubSystemCalculator.keyOf(s2));
+		s2.withRegionalization = true;
+		assertNotEquals(SubSystemCalculator.keyOf(s1),
+				SubSystemCalculator.keyOf(s2));
+	}
+
+	private SimpleResult calculate() {
+		var setup = new CalculationSetup(root);
+		return new SystemCalculator(db).calculateSimple(setup);
+	}
+
+	private double co2Of(SimpleResult r) {
+		double[] total = {0};
+		r.flowIndex.each((i, f) -> {
+			if (f.flow.id == co2.id) {
+				total[0] = r.getTotalFlowResult(f);
+			}
+		});
+		return total[0];
+	}
+
+	private ParameterRedef redef(String name, double value) {
+		var redef = new ParameterRedef();
+		redef.name = name;
+		redef.value = value;
+		return redef;
+	}
+}
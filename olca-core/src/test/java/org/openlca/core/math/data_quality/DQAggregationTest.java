@@ -0,0 +1,273 @@
+package org.openlca.core.math.data_quality;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openlca.core.matrix.FlowIndex;
+import org.openlca.core.matrix.ImpactIndex;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.DenseByteMatrix;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.model.DQIndicator;
+import org.openlca.core.model.DQScore;
+import org.openlca.core.model.DQSystem;
+import org.openlca.core.model.descriptors.FlowDescriptor;
+import org.openlca.core.model.descriptors.ImpactDescriptor;
+import org.openlca.core.model.descriptors.ProcessDescriptor;
+import org.openlca.core.results.solutions.EagerResultProvider;
+import org.openlca.core.results.solutions.ResultProvider;
+
+/**
+ * Compares the sparse aggregation with the dense reference implementation on
+ * random data. The results have to be exactly the same.
+ */
+public class DQAggregationTest {
+
+	@Test
+	public void testSameAsReference() {
+		int k = 5;
+		var provider = randomProvider(60, 80, 7, 0.2, 42);
+		var data = randomData(k, 60, 80, 42);
+		for (var type : AggregationType.values()) {
+			if (type == AggregationType.NONE)
+				continue;
+			for (var na : NAHandling.values()) {
+				for (boolean ceiling : new boolean[]{true, false}) {
+					var setup = setup(k, type, na, ceiling);
+					var expected = Reference.of(setup, provider, data);
+					var actual = DQAggregation.of(setup, provider, data);
+					check(expected, actual);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testWithoutImpacts() {
+		int k = 3;
+		var provider = randomProvider(20, 10, 0, 0.5, 7);
+		var data = randomData(k, 20, 10, 7);
+		var setup = setup(k, AggregationType.WEIGHTED_AVERAGE,
+			NAHandling.EXCLUDE, false);
+		var expected = Reference.of(setup, provider, data);
+		var actual = DQAggregation.of(setup, provider, data);
+		assertArrayEquals(expected.flowResult.data, actual.flowResult.data);
+		assertEquals(null, actual.impactResult);
+	}
+
+	static void check(Reference expected, DQAggregation actual) {
+		assertArrayEquals(expected.flowResult.data, actual.flowResult.data);
+		assertArrayEquals(expected.impactResult.data, actual.impactResult.data);
+		for (int i = 0; i < expected.flowImpactResult.length; i++) {
+			assertArrayEquals(expected.flowImpactResult[i].data,
+				actual.flowImpactResult[i].data);
+			assertArrayEquals(expected.processImpactResult[i].data,
+				actual.processImpactResult[i].data);
+		}
+	}
+
+	static DQCalculationSetup setup(int k, AggregationType type,
+		NAHandling na, boolean ceiling) {
+		var system = new DQSystem();
+		for (int i = 1; i <= k; i++) {
+			var indicator = new DQIndicator();
+			indicator.position = i;
+			system.indicators.add(indicator);
+			for (int j = 1; j <= 5; j++) {
+				var score = new DQScore();
+				score.position = j;
+				indicator.scores.add(score);
+			}
+		}
+		var setup = new DQCalculationSetup();
+		setup.exchangeSystem = system;
+		setup.aggregationType = type;
+		setup.naHandling = na;
+		setup.ceiling = ceiling;
+		return setup;
+	}
+
+	/**
+	 * Creates a provider with m flows, n products, and q impacts. Each product
+	 * has the given share of non-zero flows.
+	 */
+	static ResultProvider randomProvider(
+		int m, int n, int q, double density, long seed) {
+		var random = new Random(seed);
+		var data = new MatrixData();
+
+		data.techIndex = new TechIndex(product(0));
+		data.techIndex.setDemand(1.0);
+		var techMatrix = new HashPointMatrix(n, n);
+		techMatrix.set(0, 0, 1.0);
+		for (int j = 1; j < n; j++) {
+			data.techIndex.put(product(j));
+			techMatrix.set(j, j, 1.0);
+			techMatrix.set(j, 0, -random.nextDouble());
+		}
+		data.techMatrix = techMatrix;
+
+		data.flowIndex = FlowIndex.create();
+		for (int i = 0; i < m; i++) {
+			var flow = new FlowDescriptor();
+			flow.id = 1000 + i;
+			data.flowIndex.putOutput(flow);
+		}
+		var flowMatrix = new DenseMatrix(m, n);
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < m; i++) {
+				if (random.nextDouble() < density) {
+					flowMatrix.set(i, j, random.nextDouble() - 0.2);
+				}
+			}
+		}
+		data.flowMatrix = flowMatrix;
+
+		if (q > 0) {
+			data.impactIndex = ImpactIndex.empty();
+			var impactMatrix = new DenseMatrix(q, m);
+			for (int i = 0; i < q; i++) {
+				var impact = new ImpactDescriptor();
+				impact.id = 100_000 + i;
+				data.impactIndex.put(impact);
+				for (int j = 0; j < m; j++) {
+					if (random.nextDouble() < 0.5) {
+						impactMatrix.set(i, j, 10 * random.nextDouble());
+					}
+				}
+			}
+			data.impactMatrix = impactMatrix;
+		}
+		return EagerResultProvider.create(data);
+	}
+
+	private static ProcessProduct product(int i) {
+		var process = new ProcessDescriptor();
+		process.id = i + 1;
+		var flow = new FlowDescriptor();
+		flow.id = 10_000 + i;
+		return ProcessProduct.of(process, flow);
+	}
+
+	/**
+	 * Creates random flow*product exchange data with scores from 0 (n.a.) to
+	 * 5 for k indicators.
+	 */
+	static DenseByteMatrix[] randomData(int k, int m, int n, long seed) {
+		var random = new Random(seed);
+		var data = new DenseByteMatrix[k];
+		for (int i = 0; i < k; i++) {
+			data[i] = new DenseByteMatrix(m, n);
+			for (int pos = 0; pos < m * n; pos++) {
+				data[i].data[pos] = (byte) random.nextInt(6);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * The dense aggregation that was used before `DQAggregation`.
+	 */
+	static class Reference {
+
+		DenseByteMatrix flowResult;
+		DenseByteMatrix impactResult;
+		DenseByteMatrix[] flowImpactResult;
+		DenseByteMatrix[] processImpactResult;
+
+		static Reference of(DQCalculationSetup setup, ResultProvider provider,
+			DenseByteMatrix[] exchangeData) {
+			var r = new Reference();
+			r.calculateFlowResults(setup, provider, exchangeData);
+			r.calculateImpactResults(setup, provider, exchangeData);
+			return r;
+		}
+
+		private void calculateFlowResults(DQCalculationSetup setup,
+			ResultProvider provider, DenseByteMatrix[] exchangeData) {
+			var system = setup.exchangeSystem;
+			int n = provider.techIndex().size();
+			int k = system.indicators.size();
+			int m = provider.flowIndex().size();
+			flowResult = new DenseByteMatrix(k, m);
+			byte max = (byte) system.getScoreCount();
+
+			var acc = new Accumulator(setup, max);
+			var flowContributions = new double[n];
+			for (int indicator = 0; indicator < k; indicator++) {
+				var b = exchangeData[indicator];
+				for (int flow = 0; flow < m; flow++) {
+					byte[] dqs = b.getRow(flow);
+					for (int product = 0; product < n; product++) {
+						flowContributions[product] = provider
+							.directFlowOf(flow, product);
+					}
+					flowResult.set(indicator, flow, acc.get(dqs, flowContributions));
+				}
+			}
+		}
+
+		private void calculateImpactResults(DQCalculationSetup setup,
+			ResultProvider provider, DenseByteMatrix[] exchangeData) {
+			if (!provider.hasImpacts())
+				return;
+
+			var system = setup.exchangeSystem;
+			int k = system.indicators.size();
+			int m = provider.flowIndex().size();
+			int n = provider.techIndex().size();
+			int q = provider.impactIndex().size();
+			byte max = (byte) system.getScoreCount();
+			impactResult = new DenseByteMatrix(k, q);
+			flowImpactResult = new DenseByteMatrix[k];
+			processImpactResult = new DenseByteMatrix[k];
+			for (int i = 0; i < k; i++) {
+				flowImpactResult[i] = new DenseByteMatrix(q, m);
+				processImpactResult[i] = new DenseByteMatrix(q, n);
+			}
+
+			var totalImpactAcc = new Accumulator(setup, max);
+			var flowImpactAcc = new Accumulator(setup, max);
+			var processAccs = new Accumulator[n];
+			for (int j = 0; j < n; j++) {
+				processAccs[j] = new Accumulator(setup, max);
+			}
+
+			for (int indicator = 0; indicator < k; indicator++) {
+				var b = exchangeData[indicator];
+				for (int impact = 0; impact < q; impact++) {
+					totalImpactAcc.reset();
+					for (var acc : processAccs) {
+						acc.reset();
+					}
+					for (int flow = 0; flow < m; flow++) {
+						byte[] dqs = b.getRow(flow);
+						double factor = provider.impactFactorOf(impact, flow);
+						double[] weights = new double[n];
+						for (int product = 0; product < n; product++) {
+							weights[product] = factor * provider.directFlowOf(
+								flow, product);
+						}
+						totalImpactAcc.addAll(dqs, weights);
+						flowImpactResult[indicator].set(
+							impact, flow, flowImpactAcc.get(dqs, weights));
+						for (int process = 0; process < n; process++) {
+							processAccs[process].add(dqs[process], weights[process]);
+						}
+					}
+					impactResult.set(indicator, impact, totalImpactAcc.get());
+					for (int process = 0; process < n; process++) {
+						processImpactResult[indicator].set(
+							impact, process, processAccs[process].get());
+					}
+				}
+			}
+		}
+	}
+}
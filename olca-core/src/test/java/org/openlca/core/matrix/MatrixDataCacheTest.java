@@ -0,0 +1,139 @@
+package org.openlca.core.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlca.core.Tests;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.math.CalculationSetup;
+import org.openlca.core.matrix.solvers.JavaSparseSolver;
+import org.openlca.core.model.Flow;
+import org.openlca.core.model.FlowProperty;
+import org.openlca.core.model.Process;
+import org.openlca.core.model.ProductSystem;
+import org.openlca.core.model.Unit;
+import org.openlca.core.model.UnitGroup;
+
+public class MatrixDataCacheTest {
+
+	private final IDatabase db = Tests.getDb();
+
+	private UnitGroup units;
+	private FlowProperty mass;
+	private Flow product;
+	private Flow input;
+	private Flow co2;
+	private Flow ch4;
+	private Process p;
+	private Process q;
+	private ProductSystem system;
+	private MatrixDataCache cache;
+
+	@Before
+	public void setup() {
+		units = db.insert(UnitGroup.of("Mass units", Unit.of("kg")));
+		mass = db.insert(FlowProperty.of("Mass", units));
+		product = db.insert(Flow.product("p", mass));
+		input = db.insert(Flow.product("q", mass));
+		co2 = db.insert(Flow.elementary("CO2", mass));
+
+		q = Process.of("q", input);
+		q.output(co2, 2.0);
+		q = db.insert(q);
+		p = Process.of("p", product);
+		p.input(input, 0.5);
+		p.output(co2, 1.0);
+		p = db.insert(p);
+
+		system = db.insert(ProductSystem.of(p).link(q, p));
+		cache = MatrixDataCache.of(db);
+	}
+
+	@After
+	public void tearDown() {
+		cache.dispose();
+		db.delete(system);
+		db.delete(p);
+		db.delete(q);
+		if (ch4 != null) {
+			db.delete(ch4);
+		}
+		db.delete(co2);
+		db.delete(input);
+		db.delete(product);
+		db.delete(mass);
+		db.delete(units);
+	}
+
+	@Test
+	public void testUpdateAmount() {
+		var setup = new CalculationSetup(system);
+		var first = cache.get(setup);
+		check(MatrixData.of(db, setup), first);
+
+		// change the amounts of process q
+		for (var e : q.exchanges) {
+			e.amount *= 2;
+		}
+		q = db.update(q);
+		var second = cache.get(setup);
+		check(MatrixData.of(db, setup), second);
+
+		// the data were updated and not rebuilt
+		assertSame(first.techIndex, second.techIndex);
+		assertEquals(4.0, second.flowMatrix.get(0, 1), 1e-16);
+	}
+
+	@Test
+	public void testNewFlow() {
+		var setup = new CalculationSetup(system);
+		cache.get(setup);
+
+		ch4 = db.insert(Flow.elementary("CH4", mass));
+		p.output(ch4, 0.1);
+		p = db.update(p);
+		var data = cache.get(setup);
+		assertEquals(2, data.flowIndex.size());
+		check(MatrixData.of(db, setup), data);
+	}
+
+	@Test
+	public void testReuseAnalysis() {
+		var setup = new CalculationSetup(system);
+		var solver = new JavaSparseSolver();
+		var analysis = cache.analysisOf(setup, solver);
+		assertNotNull(analysis);
+
+		// the same pattern with other values
+		for (var e : q.exchanges) {
+			e.amount *= 2;
+		}
+		q = db.update(q);
+		assertSame(analysis, cache.analysisOf(setup, solver));
+	}
+
+	private void check(MatrixData expected, MatrixData actual) {
+		int n = expected.techIndex.size();
+		assertEquals(n, actual.techIndex.size());
+		for (int row = 0; row < n; row++) {
+			for (int col = 0; col < n; col++) {
+				assertEquals(expected.techMatrix.get(row, col),
+						actual.techMatrix.get(row, col), 1e-16);
+			}
+		}
+
+		// the flow index can have another order
+		for (int i = 0; i < expected.flowIndex.size(); i++) {
+			var flow = expected.flowIndex.at(i);
+			int j = actual.flowIndex.of(flow);
+			for (int col = 0; col < n; col++) {
+				assertEquals(expected.flowMatrix.get(i, col),
+						actual.flowMatrix.get(j, col), 1e-16);
+			}
+		}
+	}
+}
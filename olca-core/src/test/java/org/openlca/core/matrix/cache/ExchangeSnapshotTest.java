@@ -0,0 +1,195 @@
+package org.openlca.core.matrix.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlca.core.Tests;
+import org.openlca.core.database.IDatabase;
+import org.openlca.core.database.NativeSql;
+import org.openlca.core.matrix.CalcExchange;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.model.Flow;
+import org.openlca.core.model.FlowProperty;
+import org.openlca.core.model.Process;
+import org.openlca.core.model.Uncertainty;
+import org.openlca.core.model.Unit;
+import org.openlca.core.model.UnitGroup;
+
+public class ExchangeSnapshotTest {
+
+	private final IDatabase db = Tests.getDb();
+
+	private UnitGroup units;
+	private FlowProperty mass;
+	private Flow steel;
+	private Flow co2;
+	private Process process;
+
+	@Before
+	public void setup() {
+		units = db.insert(UnitGroup.of("Mass units", Unit.of("kg")));
+		mass = db.insert(FlowProperty.of("Mass", units));
+		steel = db.insert(Flow.product("Steel", mass));
+		co2 = db.insert(Flow.elementary("CO2", mass));
+		process = Process.of("Steel production", steel);
+		var e = process.output(co2, 2);
+		e.formula = "1 + 1";
+		e.uncertainty = Uncertainty.triangle(1, 2, 3);
+		process = db.insert(process);
+	}
+
+	@After
+	public void tearDown() {
+		ExchangeSnapshot.invalidate(db);
+		ExchangeSnapshot.disable(db);
+		db.delete(process);
+		db.delete(co2);
+		db.delete(steel);
+		db.delete(mass);
+		db.delete(units);
+	}
+
+	@Test
+	public void testSameExchanges() {
+		var expected = exchanges();
+		ExchangeSnapshot.enable(db);
+		var actual = exchanges();
+		assertEquals(2, expected.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			var e = expected.get(i);
+			var a = actual.get(i);
+			assertEquals(e.exchangeId, a.exchangeId);
+			assertEquals(e.processId, a.processId);
+			assertEquals(e.flowId, a.flowId);
+			assertEquals(e.flowType, a.flowType);
+			assertEquals(e.isInput, a.isInput);
+			assertEquals(e.isAvoided, a.isAvoided);
+			assertEquals(e.amount, a.amount, 1e-16);
+			assertEquals(e.formula, a.formula);
+			assertEquals(e.conversionFactor, a.conversionFactor, 1e-16);
+			assertEquals(e.defaultProviderId, a.defaultProviderId);
+			assertEquals(e.locationId, a.locationId);
+			assertEquals(e.uncertaintyType, a.uncertaintyType);
+			assertEquals(e.parameter1, a.parameter1, 1e-16);
+			assertEquals(e.parameter2, a.parameter2, 1e-16);
+			assertEquals(e.parameter3, a.parameter3, 1e-16);
+			assertEquals(e.costValue, a.costValue, 1e-16);
+			assertEquals(e.costFormula, a.costFormula);
+			assertEquals(e.currencyFactor, a.currencyFactor, 1e-16);
+		}
+	}
+
+	@Test
+	public void testInvalidation() {
+		assertNull(ExchangeSnapshot.of(db));
+		ExchangeSnapshot.enable(db);
+		var first = ExchangeSnapshot.of(db);
+		assertNotNull(first);
+		assertSame(first, ExchangeSnapshot.of(db));
+
+		// an update of the process should invalidate the snapshot
+		process.exchanges.stream()
+				.filter(e -> e.flow.id == co2.id)
+				.forEach(e -> e.amount = 42);
+		process = db.update(process);
+		var second = ExchangeSnapshot.of(db);
+		assertNotSame(first, second);
+		var amounts = new ArrayList<Double>();
+		second.eachRowOf(process.id, row -> {
+			if (second.flow(row) == co2.id) {
+				amounts.add(second.amount(row));
+			}
+		});
+		assertEquals(List.of(42.0), amounts);
+	}
+
+	@Test
+	public void testReuseAfterDisable() {
+		ExchangeSnapshot.enable(db);
+		assertEquals(List.of(2.0), co2Amounts(ExchangeSnapshot.of(db)));
+		ExchangeSnapshot.disable(db);
+
+		// a modification via native SQL that does not change the process
+		// stamp is not detected; the snapshot file is used again
+		setCO2Amount(42);
+		ExchangeSnapshot.enable(db);
+		assertEquals(List.of(2.0), co2Amounts(ExchangeSnapshot.of(db)));
+		ExchangeSnapshot.invalidate(db);
+		assertEquals(List.of(42.0), co2Amounts(ExchangeSnapshot.of(db)));
+		ExchangeSnapshot.disable(db);
+
+		// with a new process version, the process is patched
+		setCO2Amount(21);
+		NativeSql.on(db).runUpdate("UPDATE tbl_processes"
+				+ " SET version = version + 1 WHERE id = " + process.id);
+		ExchangeSnapshot.enable(db);
+		assertEquals(List.of(21.0), co2Amounts(ExchangeSnapshot.of(db)));
+	}
+
+	@Test
+	public void testPatchChangedProcess() {
+		var other = Process.of("Other steel production", steel);
+		other.output(co2, 3);
+		other = db.insert(other);
+		ExchangeSnapshot.enable(db);
+		var first = ExchangeSnapshot.of(db);
+		assertEquals(List.of(2.0), co2Amounts(first));
+
+		// only the rows of the updated process are read again
+		setCO2Amount(42);
+		other.exchanges.stream()
+				.filter(e -> e.flow.id == co2.id)
+				.forEach(e -> e.amount = 4);
+		other = db.update(other);
+		var second = ExchangeSnapshot.of(db);
+		assertEquals(first.size(), second.size());
+		assertEquals(List.of(2.0), co2Amounts(second));
+		var amounts = new ArrayList<Double>();
+		second.eachRowOf(other.id, row -> {
+			if (second.flow(row) == co2.id) {
+				amounts.add(second.amount(row));
+			}
+		});
+		assertEquals(List.of(4.0), amounts);
+
+		// deleted processes are removed from the snapshot
+		db.delete(other);
+		var third = ExchangeSnapshot.of(db);
+		assertEquals(first.size() - 2, third.size());
+	}
+
+	private void setCO2Amount(double amount) {
+		NativeSql.on(db).runUpdate("UPDATE tbl_exchanges"
+				+ " SET resulting_amount_value = " + amount
+				+ " WHERE f_owner = " + process.id + " AND f_flow = " + co2.id);
+	}
+
+	private List<Double> co2Amounts(ExchangeSnapshot snapshot) {
+		var amounts = new ArrayList<Double>();
+		snapshot.eachRowOf(process.id, row -> {
+			if (snapshot.flow(row) == co2.id) {
+				amounts.add(snapshot.amount(row));
+			}
+		});
+		return amounts;
+	}
+
+	private List<CalcExchange> exchanges() {
+		var index = new TechIndex(ProcessProduct.of(process, steel));
+		var list = new ArrayList<CalcExchange>();
+		new ExchangeTable(db).each(index, list::add);
+		list.sort((e1, e2) -> Long.compare(e1.exchangeId, e2.exchangeId));
+		return list;
+	}
+}
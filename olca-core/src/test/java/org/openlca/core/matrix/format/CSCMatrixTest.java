@@ -1,9 +1,12 @@
 package org.openlca.core.matrix.format;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class CSCMatrixTest {
@@ -45,6 +48,33 @@ public class CSCMatrixTest {
 		});
 	}
 
+	@Test
+	public void testWithCells() {
+		var hpm = new HashPointMatrix();
+		hpm.set(0, 0, 1);
+		hpm.set(2, 0, 3);
+		hpm.set(1, 2, 2);
+		var csc = CSCMatrix.of(hpm);
+		assertEquals(-1, csc.indexOf(1, 0));
+
+		var ext = csc.withCells(v(1, 2, 0, 7), v(0, 0, 1, 1));
+		assertEquals(5, ext.values.length);
+		assertArrayEquals(v(0, 3, 4, 5), ext.columnPointers);
+		assertArrayEquals(v(0, 1, 2, 0, 1), ext.rowIndices);
+		assertEquals(1.0, ext.get(0, 0), 1e-10);
+		assertEquals(0.0, ext.get(1, 0), 1e-10);
+		assertEquals(3.0, ext.get(2, 0), 1e-10);
+		assertEquals(2.0, ext.get(1, 2), 1e-10);
+
+		int idx = ext.indexOf(1, 0);
+		assertEquals(1, idx);
+		ext.values[idx] = 42;
+		assertEquals(42.0, ext.get(1, 0), 1e-10);
+
+		// nothing to add
+		assertEquals(ext, ext.withCells(v(1), v(0)));
+	}
+
 	@Test
 	public void testScaleColumns() {
 		var hpm = new HashPointMatrix(2, 3);
@@ -160,6 +190,69 @@ public class CSCMatrixTest {
 		}
 	}
 
+	@Test
+	public void testMultiplyVector() {
+		// small and large matrices; the large one is multiplied in parallel
+		for (int n : v(10, 2000)) {
+			var hpm = random(n, n, 50);
+			var csc = hpm.compress();
+			var v = new Random(n).doubles(n).toArray();
+			assertArrayEquals(hpm.multiply(v), csc.multiply(v), 1e-10);
+		}
+	}
+
+	@Test
+	public void testMultiplyDense() {
+		for (int n : v(10, 500)) {
+			var a = random(n, n, 50);
+			var b = MatrixConverter.dense(random(n, 40, n));
+			var c = a.compress().multiply(b);
+			assertEquals(n, c.rows);
+			assertEquals(40, c.columns);
+			for (int j = 0; j < 40; j++) {
+				assertArrayEquals(a.multiply(b.getColumn(j)),
+						c.getColumn(j), 1e-10);
+			}
+		}
+	}
+
+	@Test
+	public void testMultiplySparse() {
+		for (int n : v(10, 1000)) {
+			var a = random(n, n, 50);
+			var b = random(n, n, 50);
+			var c = a.compress().multiply(b.compress());
+			assertEquals(n, c.rows);
+			assertEquals(n, c.columns);
+			var denseB = MatrixConverter.dense(b);
+			for (int j = 0; j < n; j++) {
+				assertArrayEquals(a.multiply(denseB.getColumn(j)),
+						c.getColumn(j), 1e-10);
+
+				// row indices are sorted in each column
+				for (int k = c.columnPointers[j] + 1;
+						 k < c.columnPointers[j + 1]; k++) {
+					assertTrue(c.rowIndices[k - 1] < c.rowIndices[k]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a random sparse matrix with at most the given number of
+	 * non-zero entries per column.
+	 */
+	private HashPointMatrix random(int rows, int cols, int perColumn) {
+		var random = new Random(rows * 31 + cols);
+		var m = new HashPointMatrix(rows, cols);
+		for (int col = 0; col < cols; col++) {
+			for (int k = 0; k < perColumn; k++) {
+				m.set(random.nextInt(rows), col, random.nextDouble());
+			}
+		}
+		return m;
+	}
+
 	private double[] v(double... vals) {
 		return vals;
 	}
@@ -1,7 +1,10 @@
 package org.openlca.core.matrix.format;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 public class MatrixBuilderTest {
@@ -63,4 +66,72 @@ public class MatrixBuilderTest {
 			}
 		}
 	}
+
+	@Test
+	public void testTriplets() {
+		var b = MatrixBuilder.triplets();
+		b.add(2, 1, 1.0);
+		b.add(0, 1, 2.0);
+		b.add(2, 1, 3.0);
+		b.set(1, 0, 4.0);
+		b.add(1, 0, 1.0);
+		b.add(0, 0, 5.0);
+		b.set(0, 0, 6.0);
+		b.add(1, 1, 2.0);
+		b.add(1, 1, -2.0);
+		b.minSize(4, 3);
+		var m = b.compress();
+		assertEquals(CSCMatrix.class, m.getClass());
+		assertEquals(4, m.rows());
+		assertEquals(3, m.columns());
+		var csc = (CSCMatrix) m;
+		assertArrayEquals(new int[]{0, 2, 4, 4}, csc.columnPointers);
+		assertArrayEquals(new int[]{0, 1, 0, 2}, csc.rowIndices);
+		assertArrayEquals(new double[]{6.0, 5.0, 2.0, 4.0}, csc.values, 1e-16);
+	}
+
+	@Test
+	public void testTripletsAsHashBuilder() {
+		var random = new Random(42);
+		var hash = new MatrixBuilder();
+		var triplets = MatrixBuilder.triplets();
+		for (int k = 0; k < 100_000; k++) {
+			int row = random.nextInt(1000);
+			int col = random.nextInt(800);
+			double val = random.nextDouble();
+			if (k % 100 == 0) {
+				hash.set(row, col, val);
+				triplets.set(row, col, val);
+			} else {
+				hash.add(row, col, val);
+				triplets.add(row, col, val);
+			}
+		}
+		var expected = hash.finish();
+		var actual = triplets.compress();
+		assertEquals(expected.rows(), actual.rows());
+		assertEquals(expected.columns(), actual.columns());
+		for (int row = 0; row < expected.rows(); row++) {
+			for (int col = 0; col < expected.columns(); col++) {
+				assertEquals(expected.get(row, col), actual.get(row, col), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testTripletsDense() {
+		var b = MatrixBuilder.triplets();
+		for (int row = 0; row < 200; row++) {
+			for (int col = 0; col < 100; col++) {
+				b.add(row, col, row * col + 1);
+			}
+		}
+		var m = b.finish();
+		assertEquals(DenseMatrix.class, m.getClass());
+		for (int row = 0; row < 200; row++) {
+			for (int col = 0; col < 100; col++) {
+				assertEquals((double) row * col + 1, m.get(row, col), 1e-16);
+			}
+		}
+	}
 }
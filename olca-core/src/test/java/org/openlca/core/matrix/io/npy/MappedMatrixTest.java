@@ -0,0 +1,162 @@
+package org.openlca.core.matrix.io.npy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.matrix.format.MatrixReader;
+
+public class MappedMatrixTest {
+
+	private final double[][] values = {
+			{1., 0., 3.},
+			{0., 5., 0.},
+			{7., 0., 9.},
+			{0., 0., 12.},
+	};
+
+	private final List<File> files = new ArrayList<>();
+
+	@After
+	public void tearDown() {
+		for (var file : files) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	private File tempFile(String suffix) throws IOException {
+		var file = Files.createTempFile("__olca_mapped_", suffix).toFile();
+		files.add(file);
+		return file;
+	}
+
+	@Test
+	public void testFortranOrder() throws IOException {
+		var file = tempFile(".npy");
+		var matrix = new DenseMatrix(4, 3);
+		matrix.setValues(values);
+		Npy.save(file, matrix);
+		var mapped = Npy.map(file);
+		assertTrue(mapped.isFortranOrder());
+		check(mapped);
+	}
+
+	@Test
+	public void testBigEndianCOrder() throws IOException {
+		var file = tempFile(".npy");
+		var header = new Header();
+		header.dtype = ">f8";
+		header.shape = new int[]{4, 3};
+		header.fortranOrder = false;
+		var data = ByteBuffer.allocate(12 * 8).order(ByteOrder.BIG_ENDIAN);
+		for (var row : values) {
+			for (var val : row) {
+				data.putDouble(val);
+			}
+		}
+		try (var out = new FileOutputStream(file)) {
+			header.write(out);
+			out.write(data.array());
+		}
+		var mapped = Npy.map(file);
+		assertTrue(!mapped.isFortranOrder());
+		check(mapped);
+	}
+
+	@Test
+	public void testSparse() throws IOException {
+		var file = tempFile(".npz");
+		var csc = CSCMatrix.of(new HashPointMatrix(values));
+		Npz.save(file, csc);
+		var mapped = Npz.map(file);
+		assertTrue(mapped instanceof MappedCSCMatrix);
+		check(mapped);
+		var copy = (CSCMatrix) mapped.copy();
+		assertArrayEquals(csc.values, copy.values, 1e-16);
+		assertArrayEquals(csc.columnPointers, copy.columnPointers);
+		assertArrayEquals(csc.rowIndices, copy.rowIndices);
+	}
+
+	@Test
+	public void testSkipStoredZeros() throws IOException {
+		var file = tempFile(".npz");
+		var csc = new CSCMatrix(2, 2,
+				new double[]{1., 0., 0., 4.},
+				new int[]{0, 2, 4},
+				new int[]{0, 1, 0, 1});
+		Npz.save(file, csc);
+		var mapped = Npz.map(file);
+		assertTrue(mapped instanceof MappedCSCMatrix);
+		for (int col = 0; col < 2; col++) {
+			var count = new int[1];
+			mapped.iterateColumn(col, (row, _col, val) -> {
+				assertEquals(row, _col);
+				count[0]++;
+			});
+			assertEquals(1, count[0]);
+		}
+	}
+
+	@Test
+	public void testCompressedSparse() throws IOException {
+		// compressed arrays cannot be mapped; they are loaded into the heap
+		var file = tempFile(".npz");
+		var csc = CSCMatrix.of(new HashPointMatrix(values));
+		try (var zip = new ZipOutputStream(new FileOutputStream(file))) {
+			zip.putNextEntry(new ZipEntry("format.npy"));
+			var format = new Header();
+			format.dtype = "|S3";
+			format.write(zip);
+			zip.write(new byte[]{'c', 's', 'c', 0});
+			zip.putNextEntry(new ZipEntry("shape.npy"));
+			Npy.write(zip, new int[]{csc.rows, csc.columns});
+			zip.putNextEntry(new ZipEntry("data.npy"));
+			Npy.write(zip, csc.values);
+			zip.putNextEntry(new ZipEntry("indptr.npy"));
+			Npy.write(zip, csc.columnPointers);
+			zip.putNextEntry(new ZipEntry("indices.npy"));
+			Npy.write(zip, csc.rowIndices);
+		}
+		var matrix = Npz.map(file);
+		assertTrue(matrix instanceof CSCMatrix);
+		check(matrix);
+	}
+
+	private void check(MatrixReader m) {
+		assertEquals(4, m.rows());
+		assertEquals(3, m.columns());
+		for (int row = 0; row < 4; row++) {
+			assertArrayEquals(values[row], m.getRow(row), 1e-16);
+			for (int col = 0; col < 3; col++) {
+				assertEquals(values[row][col], m.get(row, col), 1e-16);
+			}
+		}
+		for (int col = 0; col < 3; col++) {
+			var column = m.getColumn(col);
+			for (int row = 0; row < 4; row++) {
+				assertEquals(values[row][col], column[row], 1e-16);
+			}
+		}
+		assertArrayEquals(new double[]{1, 5, 9}, m.diag(), 1e-16);
+		assertArrayEquals(new double[]{4, 5, 16, 12},
+				m.multiply(new double[]{1, 1, 1}), 1e-16);
+	}
+}
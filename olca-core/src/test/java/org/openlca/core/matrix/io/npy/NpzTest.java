@@ -48,4 +48,32 @@ public class NpzTest {
 			tempFile.deleteOnExit();
 		}
 	}
+
+	@Test
+	public void testLargeCSC() throws IOException {
+		// more values than are written in one chunk
+		int n = 20_000;
+		var values = new double[n];
+		var rowIndices = new int[n];
+		var columnPointers = new int[n + 1];
+		for (int j = 0; j < n; j++) {
+			values[j] = j + 1;
+			rowIndices[j] = (j * 7) % n;
+			columnPointers[j + 1] = j + 1;
+		}
+		var m = new CSCMatrix(n, n, values, columnPointers, rowIndices);
+
+		File tempFile = Files.createTempFile("_npz_test_", ".npz").toFile();
+		Npz.save(tempFile, m);
+		var loaded = (CSCMatrix) Npz.load(tempFile);
+		Assert.assertArrayEquals(values, loaded.values, 1e-16);
+		Assert.assertArrayEquals(rowIndices, loaded.rowIndices);
+		Assert.assertArrayEquals(columnPointers, loaded.columnPointers);
+		var mapped = Npz.map(tempFile);
+		Assert.assertEquals(n, mapped.get((n - 1) * 7 % n, n - 1), 1e-16);
+
+		if (!tempFile.delete()) {
+			tempFile.deleteOnExit();
+		}
+	}
 }
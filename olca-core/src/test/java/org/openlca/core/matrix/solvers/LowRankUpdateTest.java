@@ -0,0 +1,118 @@
+package org.openlca.core.matrix.solvers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+
+public class LowRankUpdateTest {
+
+	private final JavaSparseSolver solver = new JavaSparseSolver();
+
+	@Test
+	public void testUpdateColumns() {
+		int n = 300;
+		var a = random(n, 1);
+		var updated = a.copy();
+		var random = new Random(42);
+		for (int col : new int[]{3, 99, 250}) {
+			updated.set(col, col, 1.5);
+			updated.set(random.nextInt(n), col, -0.2);
+		}
+		var a1 = a.compress();
+		var a2 = updated.compress();
+		assertArrayEquals(new int[]{3, 99, 250},
+				LowRankUpdate.changedColumns(a1, a2));
+
+		var f = LowRankUpdate.of(solver.factorize(a1), a1, a2, solver);
+		assertTrue(f instanceof LowRankUpdate);
+		assertEquals(3, ((LowRankUpdate) f).rank());
+		check(a2, f);
+	}
+
+	@Test
+	public void testChainedUpdates() {
+		int n = 200;
+		var a = random(n, 2);
+		var a1 = a.compress();
+		var base = solver.factorize(a1);
+
+		a.set(10, 10, 2.0);
+		var a2 = a.compress();
+		var f2 = LowRankUpdate.of(base, a1, a2, solver);
+
+		// the second update is applied on the base factorization
+		a.set(5, 20, -0.3);
+		var a3 = a.compress();
+		var f3 = LowRankUpdate.of(f2, a2, a3, solver);
+		assertEquals(2, ((LowRankUpdate) f3).rank());
+		check(a3, f3);
+
+		// no changes to the base matrix
+		assertSame(base, LowRankUpdate.of(f3, a3, a1, solver));
+	}
+
+	@Test
+	public void testFallbackForLargeRank() {
+		int n = 100;
+		var a = random(n, 3);
+		var a1 = a.compress();
+		for (int col = 0; col < n; col++) {
+			a.set(col, col, 2.0);
+		}
+		var a2 = a.compress();
+		var f = LowRankUpdate.of(solver.factorize(a1), a1, a2, solver);
+		assertFalse(f instanceof LowRankUpdate);
+		check(a2, f);
+	}
+
+	@Test
+	public void testFallbackForUnstableUpdate() {
+		// the base matrix is nearly singular and the update removes this; the
+		// Woodbury formula then suffers from cancellation
+		int n = 20;
+		var a = new HashPointMatrix(n, n);
+		for (int i = 0; i < n; i++) {
+			a.set(i, i, 1.0);
+		}
+		a.set(0, 0, 1e-14);
+		var a1 = a.compress();
+		a.set(0, 0, 1.0);
+		a.set(1, 0, -0.5);
+		var a2 = a.compress();
+		var f = LowRankUpdate.of(solver.factorize(a1), a1, a2, solver);
+		assertFalse(f instanceof LowRankUpdate);
+		check(a2, f);
+	}
+
+	private void check(CSCMatrix a, Factorization f) {
+		int n = a.rows;
+		var b = new Random(n).doubles(n).toArray();
+		assertArrayEquals(b, a.multiply(f.solve(b)), 1e-9);
+		var e = new double[n];
+		e[n / 2] = 1.0;
+		assertArrayEquals(e, a.multiply(f.solve(n / 2, 1.0)), 1e-9);
+	}
+
+	private HashPointMatrix random(int n, long seed) {
+		var random = new Random(seed);
+		var a = new HashPointMatrix(n, n);
+		for (int j = 0; j < n; j++) {
+			a.set(j, j, 1.0);
+			for (int k = 0; k < 3; k++) {
+				int i = random.nextInt(n);
+				if (i != j) {
+					a.set(i, j, -0.1 * random.nextDouble());
+				}
+			}
+		}
+		return a;
+	}
+}
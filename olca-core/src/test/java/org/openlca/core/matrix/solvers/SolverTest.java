@@ -38,6 +38,9 @@ public class SolverTest {
 	@DataPoint
 	public static MatrixSolver javaSolver = new JavaSolver();
 
+	@DataPoint
+	public static MatrixSolver javaSparseSolver = new JavaSparseSolver();
+
 	@Theory
 	public void testSimpleSolve(MatrixSolver solver) {
 		log.info("Test simple solve with {}", solver.getClass());
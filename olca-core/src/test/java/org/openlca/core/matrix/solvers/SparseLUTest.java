@@ -0,0 +1,182 @@
+package org.openlca.core.matrix.solvers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openlca.core.matrix.format.CSCMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+
+public class SparseLUTest {
+
+	@Test
+	public void testSimpleSystem() {
+		var a = new HashPointMatrix(new double[][]{
+				{1.0, -0.5, 0.0},
+				{-1.0, 1.0, 0.0},
+				{0.0, -1.0, 2.0},
+		});
+		var lu = SparseLU.of(a.compress());
+		double[] x = lu.solve(0, 1.0);
+		assertArrayEquals(new double[]{2.0, 2.0, 1.0}, x, 1e-12);
+	}
+
+	@Test
+	public void testSolveIndices() {
+		var a = random(50);
+		var lu = SparseLU.of(a.compress());
+		var indices = new int[]{7, 0, 49, 7};
+		var x = lu.solve(indices, 2.0);
+		assertEquals(indices.length, x.columns());
+		for (int j = 0; j < indices.length; j++) {
+			assertArrayEquals(lu.solve(indices[j], 2.0), x.getColumn(j), 1e-12);
+		}
+
+		// a larger system with single-entry and larger diagonal blocks
+		a = random(500);
+		for (int j = 0; j < 250; j++) {
+			for (int i = 0; i < 500; i++) {
+				if (i != j && a.get(i, j) != 0) {
+					a.set(i, j, 0);
+				}
+			}
+			if (j > 0) {
+				a.set(j - 1, j, -0.5);
+			}
+		}
+		lu = SparseLU.of(a.compress());
+		indices = new Random(42).ints(40, 0, 500).toArray();
+		x = lu.solve(indices, 1.0);
+		for (int j = 0; j < indices.length; j++) {
+			var e = a.multiply(x.getColumn(j));
+			for (int i = 0; i < e.length; i++) {
+				assertEquals(i == indices[j] ? 1.0 : 0.0, e[i], 1e-10);
+			}
+		}
+	}
+
+	@Test
+	public void testPivoting() {
+		// zero entries on the diagonal require row exchanges
+		var a = new HashPointMatrix(new double[][]{
+				{0.0, 2.0, 1.0},
+				{3.0, 0.0, 0.0},
+				{1.0, 1.0, 0.0},
+		});
+		var b = new double[]{5.0, 3.0, 3.0};
+		var x = SparseLU.of(a.compress()).solve(b);
+		assertArrayEquals(b, a.multiply(x), 1e-12);
+	}
+
+	@Test
+	public void testRandomSystems() {
+		for (int n : new int[]{1, 10, 100, 2000}) {
+			var a = random(n);
+			var lu = SparseLU.of(a.compress());
+			var b = new Random(n).doubles(n).toArray();
+			assertArrayEquals(b, a.multiply(lu.solve(b)), 1e-9);
+		}
+	}
+
+	@Test
+	public void testFillReducingOrder() {
+		// an arrow matrix with a dense first row and column: eliminating the
+		// first column first would fill the whole matrix
+		int n = 500;
+		var a = new HashPointMatrix(n, n);
+		for (int i = 0; i < n; i++) {
+			a.set(i, i, n);
+			if (i > 0) {
+				a.set(0, i, -1);
+				a.set(i, 0, -1);
+			}
+		}
+		var csc = a.compress();
+		int[] natural = new int[n];
+		for (int i = 0; i < n; i++) {
+			natural[i] = i;
+		}
+		var lu = SparseLU.of(csc);
+		assertTrue(lu.nonZeros() < 4 * n);
+		assertTrue(SparseLU.of(csc, natural).nonZeros() > n * n / 2);
+
+		var b = new Random(n).doubles(n).toArray();
+		assertArrayEquals(b, a.multiply(lu.solve(b)), 1e-9);
+	}
+
+	@Test
+	public void testBlockTriangular() {
+		// a supply chain without cycles can be permuted into a triangular
+		// matrix; there should be no fill-in then
+		int n = 1000;
+		var random = new Random(n);
+		var a = new HashPointMatrix(n, n);
+		for (int j = 0; j < n; j++) {
+			a.set(j, j, 1.0);
+			for (int k = 0; k < 5; k++) {
+				int i = random.nextInt(n);
+				if (i > j) {
+					a.set(i, j, -0.1 * random.nextDouble());
+				}
+			}
+		}
+		// add a cycle
+		a.set(0, 999, -0.5);
+		var csc = a.compress();
+		var lu = SparseLU.of(csc);
+		assertTrue(lu.nonZeros() < 2 * csc.values.length);
+
+		var b = new Random(1).doubles(n).toArray();
+		assertArrayEquals(b, csc.multiply(lu.solve(b)), 1e-9);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSingular() {
+		var a = new HashPointMatrix(new double[][]{
+				{1.0, 2.0},
+				{2.0, 4.0},
+		});
+		SparseLU.of(a.compress());
+	}
+
+	@Test
+	public void testAnalysis() {
+		var solver = new JavaSparseSolver();
+		var a = random(200).compress();
+		var analysis = solver.analyze(a);
+		assertEquals(200, analysis.size());
+
+		// same pattern with other values
+		var values = a.values.clone();
+		for (int i = 0; i < values.length; i++) {
+			values[i] *= 1.5;
+		}
+		var b = new CSCMatrix(200, 200, values, a.columnPointers, a.rowIndices);
+		assertTrue(analysis.isApplicableTo(b));
+		var rhs = new Random(1).doubles(200).toArray();
+		var x = analysis.factorize(b).solve(rhs);
+		assertArrayEquals(rhs, b.multiply(x), 1e-9);
+	}
+
+	/**
+	 * Creates a random, unsymmetric and non-singular sparse matrix with a
+	 * structure similar to a technology matrix.
+	 */
+	private HashPointMatrix random(int n) {
+		var random = new Random(n);
+		var a = new HashPointMatrix(n, n);
+		for (int j = 0; j < n; j++) {
+			a.set(j, j, 1.0 + random.nextDouble());
+			for (int k = 0; k < 4; k++) {
+				int i = random.nextInt(n);
+				if (i != j) {
+					a.set(i, j, -0.2 * random.nextDouble());
+				}
+			}
+		}
+		return a;
+	}
+}
@@ -1,9 +1,12 @@
 package org.openlca.core.matrix.uncertainties;
 
+import java.util.SplittableRandom;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.openlca.core.matrix.CalcAllocationFactor;
 import org.openlca.core.matrix.CalcExchange;
+import org.openlca.core.matrix.format.CSCMatrix;
 import org.openlca.core.matrix.format.HashPointMatrix;
 import org.openlca.core.model.FlowType;
 import org.openlca.core.model.UncertaintyType;
@@ -21,6 +24,39 @@ public class UMatrixTest {
 		Assert.assertEquals(42.0, m.get(42, 42), 1e-16);
 	}
 
+	@Test
+	public void testInPlace() {
+		CalcExchange e = baseExchange();
+		e.parameter1 = 10;
+		e.parameter2 = 20;
+		e.uncertaintyType = UncertaintyType.UNIFORM;
+		UMatrix u = new UMatrix();
+		u.add(1, 1, e);
+		u.add(0, 1, baseExchange());
+
+		var hpm = new HashPointMatrix(2, 2);
+		hpm.set(0, 0, 1);
+		hpm.set(1, 1, 1);
+		var csc = CSCMatrix.of(hpm);
+
+		// the structure is extended in the first call
+		var m = u.generateInPlace(csc, new FormulaInterpreter(),
+				new SplittableRandom(42));
+		Assert.assertNotSame(csc, m);
+		Assert.assertEquals(42.0, m.get(0, 1), 1e-16);
+		Assert.assertEquals(1.0, m.get(0, 0), 1e-16);
+
+		// and reused in the following calls
+		for (int i = 0; i < 10; i++) {
+			var next = u.generateInPlace(m, new FormulaInterpreter(),
+					new SplittableRandom(i));
+			Assert.assertSame(m, next);
+			double val = m.get(1, 1);
+			Assert.assertTrue(val >= 10 && val <= 20);
+			Assert.assertEquals(42.0, m.get(0, 1), 1e-16);
+		}
+	}
+
 	@Test
 	public void testUniformExchange() {
 		CalcExchange e = baseExchange();
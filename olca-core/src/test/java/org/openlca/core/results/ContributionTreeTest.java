@@ -56,6 +56,65 @@ public class ContributionTreeTest {
 
 	}
 
+	@Test
+	public void testLoopLevels() {
+		var tree = loopTree();
+		Assert.assertEquals(2.0, tree.root.result, 1e-10);
+		double[] expected = {2.0, 4.0 / 3.0, 2.0 / 3.0, 1.0 / 3.0};
+		for (int level = 0; level < expected.length; level++) {
+			var nodes = tree.level(level);
+			Assert.assertEquals(1, nodes.size());
+			Assert.assertEquals(expected[level], nodes.get(0).result, 1e-10);
+		}
+	}
+
+	@Test
+	public void testCutoffExpansion() {
+		var tree = loopTree();
+		tree.expand(tree.root, 10, 0.3);
+
+		// 1/3 is below 30% of the root result and is not expanded
+		var node = tree.root;
+		for (int level = 0; level < 3; level++) {
+			Assert.assertNotNull(node.childs);
+			node = node.childs.get(0);
+		}
+		Assert.assertEquals(1.0 / 3.0, node.result, 1e-10);
+		Assert.assertNull(node.childs);
+	}
+
+	/**
+	 * Creates the upstream tree of a system with two processes that provide
+	 * each other with a half unit of their products.
+	 */
+	private UpstreamTree loopTree() {
+		var data = new MatrixData();
+		var techIndex = new TechIndex(provider(1, 1));
+		techIndex.put(provider(2, 2));
+		techIndex.putLink(LongPair.of(1, 2), provider(2, 2));
+		techIndex.putLink(LongPair.of(2, 1), provider(1, 1));
+		data.techIndex = techIndex;
+
+		var enviIndex = FlowIndex.create();
+		var outFlow = new FlowDescriptor();
+		outFlow.id = 4;
+		enviIndex.putOutput(outFlow);
+		data.flowIndex = enviIndex;
+
+		var solver = Tests.getDefaultSolver();
+		var techMatrix = solver.matrix(2, 2);
+		techMatrix.setValues(new double[][] {
+				{ 1, -0.5 },
+				{ -0.5, 1 } });
+		data.techMatrix = techMatrix;
+		var flowMatrix = solver.matrix(1, 2);
+		flowMatrix.setValues(new double[][] { { 1, 1 } });
+		data.flowMatrix = flowMatrix;
+
+		var r = new LcaCalculator(Tests.getDb(), data).calculateFull();
+		return r.getTree(enviIndex.at(0));
+	}
+
 	private ProcessProduct provider(long id, long flowId) {
 		ProcessDescriptor process = new ProcessDescriptor();
 		process.name = "Process " + id;
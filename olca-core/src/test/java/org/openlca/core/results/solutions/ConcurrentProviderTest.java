@@ -0,0 +1,174 @@
+package org.openlca.core.results.solutions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.DenseMatrix;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.model.descriptors.FlowDescriptor;
+import org.openlca.core.model.descriptors.ProcessDescriptor;
+
+/**
+ * Queries a shared result provider from multiple threads and compares the
+ * results with the results of an eager provider.
+ */
+public class ConcurrentProviderTest {
+
+	private final int n = 120;
+	private final int threads = 8;
+	private final int queries = 2000;
+
+	@Test
+	public void testUnboundedCache() throws Exception {
+		var data = data();
+		var expected = EagerResultProvider.create(data);
+		var provider = LazyResultProvider.create(data);
+		stress(provider, expected);
+	}
+
+	@Test
+	public void testBoundedCache() throws Exception {
+		var data = data();
+		var expected = EagerResultProvider.create(data);
+
+		// a budget of a few vectors so that vectors are evicted and
+		// recalculated while other threads read them
+		VectorCache.setDefault(() -> VectorCache.lru(10 * (16 + 8 * n)));
+		LazyResultProvider provider;
+		try {
+			provider = LazyResultProvider.create(data);
+		} finally {
+			VectorCache.setDefault(null);
+		}
+		stress(provider, expected);
+		assertTrue(provider.cache().evictions() > 0);
+	}
+
+	private void stress(ResultProvider provider, ResultProvider expected)
+			throws Exception {
+		var start = new CountDownLatch(1);
+		var tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < threads; t++) {
+			var random = new Random(t);
+			tasks.add(() -> {
+				start.await();
+				for (int q = 0; q < queries; q++) {
+					int j = random.nextInt(n);
+					check(provider, expected, j, random.nextInt(7));
+				}
+				return null;
+			});
+		}
+		var pool = Executors.newFixedThreadPool(threads);
+		try {
+			var futures = new ArrayList<Future<Void>>();
+			for (var task : tasks) {
+				futures.add(pool.submit(task));
+			}
+			start.countDown();
+			for (var future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private void check(ResultProvider provider, ResultProvider expected,
+			int j, int query) {
+		switch (query) {
+			case 0:
+				assertArrayEquals(expected.solutionOfOne(j),
+						provider.solutionOfOne(j), 1e-8);
+				break;
+			case 1:
+				assertArrayEquals(expected.totalFlowsOfOne(j),
+						provider.totalFlowsOfOne(j), 1e-8);
+				break;
+			case 2:
+				assertArrayEquals(expected.totalImpactsOfOne(j),
+						provider.totalImpactsOfOne(j), 1e-8);
+				break;
+			case 3:
+				assertArrayEquals(expected.directFlowsOf(j),
+						provider.directFlowsOf(j), 1e-8);
+				break;
+			case 4:
+				assertArrayEquals(expected.directImpactsOf(j),
+						provider.directImpactsOf(j), 1e-8);
+				break;
+			case 5:
+				assertArrayEquals(expected.totalRequirements(),
+						provider.totalRequirements(), 1e-8);
+				break;
+			default:
+				int[] products = {j, (j + 1) % n, (j + 7) % n};
+				var solutions = provider.solutionsOfOne(products);
+				for (int i = 0; i < products.length; i++) {
+					assertArrayEquals(expected.solutionOfOne(products[i]),
+							solutions[i], 1e-8);
+				}
+		}
+	}
+
+	private MatrixData data() {
+		var random = new Random(42);
+		var data = new MatrixData();
+
+		// a diagonal dominant technology matrix with some inputs
+		var techMatrix = new HashPointMatrix(n, n);
+		for (int j = 0; j < n; j++) {
+			techMatrix.set(j, j, 1.0);
+			for (int k = 0; k < 3; k++) {
+				int i = random.nextInt(n);
+				if (i != j) {
+					techMatrix.set(i, j, -0.1 * random.nextDouble());
+				}
+			}
+		}
+		data.techMatrix = techMatrix;
+		data.techIndex = new TechIndex(product(0));
+		for (int i = 1; i < n; i++) {
+			data.techIndex.put(product(i));
+		}
+		data.techIndex.setDemand(1.0);
+
+		int flows = 20;
+		var flowMatrix = new DenseMatrix(flows, n);
+		for (int i = 0; i < flows; i++) {
+			for (int j = 0; j < n; j++) {
+				flowMatrix.set(i, j, random.nextDouble());
+			}
+		}
+		data.flowMatrix = flowMatrix;
+
+		var impactMatrix = new DenseMatrix(3, flows);
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < flows; j++) {
+				impactMatrix.set(i, j, random.nextDouble());
+			}
+		}
+		data.impactMatrix = impactMatrix;
+		return data;
+	}
+
+	private ProcessProduct product(int i) {
+		var process = new ProcessDescriptor();
+		process.id = i + 1;
+		var flow = new FlowDescriptor();
+		flow.id = i + 1;
+		return ProcessProduct.of(process, flow);
+	}
+}
@@ -30,6 +30,29 @@ public class LazyProviderTest {
 				new double[]{1.0, 1.0, 1.0}, scaling, 1e-10);
 	}
 
+	@Test
+	public void testSolutionsOfOne() {
+		var data = new MatrixData();
+		data.techMatrix = new HashPointMatrix(new double[][]{
+				{1.0, -0.5, 0.0},
+				{-1.0, 1.0, 0.0},
+				{0.0, -1.0, 2.0},
+		});
+		data.techIndex = new TechIndex(product(1));
+		data.techIndex.put(product(2));
+		data.techIndex.put(product(3));
+		data.techIndex.setDemand(1.0);
+
+		var bulk = LazyResultProvider.create(data)
+				.solutionsOfOne(new int[]{2, 0, 1, 2});
+		var single = LazyResultProvider.create(data);
+		int[] expected = {2, 0, 1, 2};
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertArrayEquals(
+					single.solutionOfOne(expected[i]), bulk[i], 1e-10);
+		}
+	}
+
 	private ProcessProduct product(int i) {
 		var process = new ProcessDescriptor();
 		process.id = i;
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
@@ -14,6 +15,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.openlca.core.DataDir;
 import org.openlca.core.Tests;
+import org.openlca.core.database.IDatabase;
 import org.openlca.core.library.Library;
 import org.openlca.core.matrix.ImpactIndex;
 import org.openlca.core.matrix.FlowIndex;
@@ -36,7 +38,7 @@ import org.openlca.util.Dirs;
 public class ResultProviderTest {
 
 	private final ResultProvider provider;
-	private static File libDir;
+	private static final List<File> libDirs = new ArrayList<>();
 
 	public ResultProviderTest(ResultProvider provider) {
 		this.provider = provider;
@@ -46,10 +48,43 @@ public class ResultProviderTest {
 	public static Collection<ResultProvider> setup() throws Exception {
 
 		var db = Tests.getDb();
-		var libID = "test_lib_01.00.000";
-
 		var units = db.insert(UnitGroup.of("Mass units", Unit.of("kg")));
 		var mass = db.insert(FlowProperty.of("Mass", units));
+
+		// write the matrix data as library and create a
+		// foreground system; the second library also has
+		// precomputed result tiles
+		var data = libraryData(db, mass, "test_lib_01.00.000");
+		var tiledData = libraryData(db, mass, "test_lib_tiles_01.00.000");
+		Library.create(data, libDir("test_lib_01.00.000"));
+		Library.create(tiledData, libDir("test_lib_tiles_01.00.000"), true);
+
+		// create the result providers
+		return List.of(
+				EagerResultProvider.create(data),
+				LazyResultProvider.create(data),
+				LibraryResultProvider.of(db, foregroundOf(data)),
+				LibraryResultProvider.of(db, foregroundOf(tiledData))
+		);
+	}
+
+	private static File libDir(String libID) {
+		var dir = new File(DataDir.libraries(), libID);
+		libDirs.add(dir);
+		return dir;
+	}
+
+	private static MatrixData foregroundOf(MatrixData data) {
+		var foreground = new MatrixData();
+		foreground.techIndex = new TechIndex(data.techIndex.getRefFlow());
+		foreground.techIndex.setDemand(1.0);
+		foreground.techMatrix = JavaMatrix.of(new double[][]{{0.5}});
+		foreground.impactIndex = data.impactIndex;
+		return foreground;
+	}
+
+	private static MatrixData libraryData(
+			IDatabase db, FlowProperty mass, String libID) {
 		var data = new MatrixData();
 
 		// tech. flows
@@ -97,29 +132,13 @@ public class ResultProviderTest {
 				{0.0, -1.0},
 				{2.0, -0.5},
 		});
-
-		// write the matrix data as library and create a
-		// foreground system
-		libDir = new File(DataDir.libraries(), libID);
-		Library.create(data, libDir);
-		var foreground = new MatrixData();
-		foreground.techIndex = new TechIndex(data.techIndex.getRefFlow());
-		foreground.techIndex.setDemand(1.0);
-		foreground.techMatrix = JavaMatrix.of(new double[][]{{0.5}});
-		foreground.impactIndex = data.impactIndex;
-
-		// create the result providers
-		return List.of(
-				EagerResultProvider.create(data),
-				LazyResultProvider.create(data),
-				LibraryResultProvider.of(db, foreground)
-		);
+		return data;
 	}
 
 	@AfterClass
 	public static void tearDown() {
 		Tests.getDb().clear();
-		Dirs.delete(libDir);
+		libDirs.forEach(Dirs::delete);
 	}
 
 	@Test
@@ -0,0 +1,141 @@
+package org.openlca.core.results.solutions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.openlca.core.matrix.MatrixData;
+import org.openlca.core.matrix.ProcessProduct;
+import org.openlca.core.matrix.TechIndex;
+import org.openlca.core.matrix.format.HashPointMatrix;
+import org.openlca.core.model.descriptors.FlowDescriptor;
+import org.openlca.core.model.descriptors.ProcessDescriptor;
+
+public class VectorCacheTest {
+
+	/** The size of a vector with 10 elements in the cache. */
+	private final long size = 16 + 8 * 10;
+
+	@Test
+	public void testUnbounded() {
+		var cache = VectorCache.unbounded();
+		var seg = cache.segment();
+		for (int i = 0; i < 100; i++) {
+			seg.put(i, new double[10]);
+		}
+		assertEquals(100, cache.size());
+		assertEquals(100 * size, cache.bytes());
+		assertEquals(0, cache.evictions());
+	}
+
+	@Test
+	public void testSegments() {
+		var cache = VectorCache.unbounded();
+		var a = cache.segment();
+		var b = cache.segment();
+		a.put(1, new double[]{1});
+		b.put(1, new double[]{2});
+		assertEquals(1, a.get(1)[0], 0);
+		assertEquals(2, b.get(1)[0], 0);
+		assertNull(a.get(2));
+		assertEquals(2, cache.hits());
+		assertEquals(1, cache.misses());
+	}
+
+	@Test
+	public void testLRU() {
+		var cache = VectorCache.lru(3 * size);
+		var seg = cache.segment();
+		seg.put(1, new double[10]);
+		seg.put(2, new double[10]);
+		seg.put(3, new double[10]);
+		seg.get(1);
+		seg.put(4, new double[10]);
+
+		// 2 is the least recently used vector
+		assertNull(seg.get(2));
+		assertNotNull(seg.get(1));
+		assertNotNull(seg.get(3));
+		assertNotNull(seg.get(4));
+		assertEquals(1, cache.evictions());
+		assertEquals(3 * size, cache.bytes());
+	}
+
+	@Test
+	public void testLFU() {
+		var cache = VectorCache.lfu(3 * size);
+		var seg = cache.segment();
+		seg.put(1, new double[10]);
+		seg.put(2, new double[10]);
+		seg.put(3, new double[10]);
+		seg.get(1);
+		seg.get(1);
+		seg.get(2);
+		seg.get(3);
+		seg.get(3);
+		seg.put(4, new double[10]);
+
+		// 2 is the least frequently used vector
+		assertNull(seg.get(2));
+		assertNotNull(seg.get(1));
+		assertNotNull(seg.get(3));
+		assertNotNull(seg.get(4));
+		assertEquals(1, cache.evictions());
+	}
+
+	@Test
+	public void testTooLarge() {
+		var cache = VectorCache.lru(size);
+		var seg = cache.segment();
+		seg.put(1, new double[10]);
+		var v = seg.put(2, new double[11]);
+		assertEquals(11, v.length);
+		assertNull(seg.get(2));
+		assertNotNull(seg.get(1));
+	}
+
+	@Test
+	public void testBoundedProvider() {
+		var data = new MatrixData();
+		data.techMatrix = new HashPointMatrix(new double[][]{
+				{1.0, -0.5, 0.0},
+				{-1.0, 1.0, 0.0},
+				{0.0, -1.0, 2.0},
+		});
+		data.flowMatrix = new HashPointMatrix(new double[][]{
+				{1.0, 2.0, 3.0},
+		});
+		data.techIndex = new TechIndex(product(1));
+		data.techIndex.put(product(2));
+		data.techIndex.put(product(3));
+		data.techIndex.setDemand(1.0);
+		var expected = LazyResultProvider.create(data);
+
+		// nothing is cached with a budget of 0 bytes
+		LazyResultProvider provider;
+		VectorCache.setDefault(() -> VectorCache.lru(0));
+		try {
+			provider = LazyResultProvider.create(data);
+		} finally {
+			VectorCache.setDefault(null);
+		}
+		var s = provider.solutionsOfOne(new int[]{0, 1, 2});
+		for (int i = 0; i < 3; i++) {
+			assertArrayEquals(expected.solutionOfOne(i), s[i], 1e-10);
+			assertArrayEquals(expected.totalFlowsOfOne(i),
+					provider.totalFlowsOfOne(i), 1e-10);
+		}
+		assertEquals(0, provider.cache().size());
+		assertEquals(0, provider.cache().hits());
+	}
+
+	private ProcessProduct product(int i) {
+		var process = new ProcessDescriptor();
+		process.id = i;
+		var flow = new FlowDescriptor();
+		flow.id = i;
+		return ProcessProduct.of(process, flow);
+	}
+}
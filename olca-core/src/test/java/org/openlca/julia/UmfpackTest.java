@@ -1,6 +1,8 @@
 package org.openlca.julia;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
 import org.junit.Before;
@@ -72,4 +74,31 @@ public class UmfpackTest {
 				new double[] { 1d, 2d, 3d, 4d, 5d }, x, 1e-8);
 		factorizedM.dispose();
 	}
+
+	@Test
+	public void testSymbolicAnalysis() {
+		var m = CSCMatrix.of(new HashPointMatrix(new double[][] {
+				{ 2.0, 3.0, 0.0, 0.0, 0.0 },
+				{ 3.0, 0.0, 4.0, 0.0, 6.0 },
+				{ 0.0, -1.0, -3.0, 2.0, 0.0 },
+				{ 0.0, 0.0, 1.0, 0.0, 0.0 },
+				{ 0.0, 4.0, 2.0, 0.0, 1.0 } }));
+		var analysis = new JuliaSolver().analyze(m);
+		assertTrue(analysis.isApplicableTo(m));
+		double[] demand = { 8., 45., -3., 3., 19. };
+
+		// scale the values in place and refactorize with the same analysis
+		for (int k = 1; k < 4; k++) {
+			var f = analysis.factorize(m);
+			var x = f.solve(demand);
+			for (int i = 0; i < x.length; i++) {
+				assertEquals((i + 1) / Math.pow(2, k - 1), x[i], 1e-8);
+			}
+			f.dispose();
+			for (int i = 0; i < m.values.length; i++) {
+				m.values[i] *= 2;
+			}
+		}
+		analysis.dispose();
+	}
 }
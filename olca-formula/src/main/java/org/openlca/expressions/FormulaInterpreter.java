@@ -2,6 +2,7 @@ package org.openlca.expressions;
 
 import java.util.HashMap;
 import java.util.Optional;
+import java.util.function.DoubleSupplier;
 
 public class FormulaInterpreter {
 
@@ -21,6 +22,15 @@ public class FormulaInterpreter {
 		scopes.clear();
 	}
 
+	/**
+	 * Sets the source of the random numbers of the `rand` function in all
+	 * scopes of this interpreter. With a seeded source, formulas with random
+	 * numbers are reproducible. By default, `Math.random()` is used.
+	 */
+	public void setRandom(DoubleSupplier random) {
+		globalScope.setRandom(random);
+	}
+
 	/**
 	 * Evaluates the given expression in the global scope of the interpreter.
 	 */
@@ -2,18 +2,53 @@ package org.openlca.expressions;
 
 import java.io.StringReader;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleSupplier;
 
 /**
  * A scope contains bindings of variable names to expressions. Each scope has a
  * reference to a parent scope except of the global scope. An expression can be
  * evaluated in a scope.
- *
+ * <p>
+ * Formulas are compiled only once into expression trees which are cached in
+ * the scope by their normalized text. The cache holds at most
+ * {@link #MAX_COMPILED} expressions; the least recently used expressions are
+ * removed first. Bound variables keep their own compiled expressions. The
+ * values of variables are calculated
+ * on demand in the order of their dependencies and are kept until a binding in
+ * this scope or one of its parent scopes changes. Variables that depend on
+ * random numbers (the <code>rand</code> function) are re-calculated in each
+ * evaluation call of their scope. The random numbers are drawn from the
+ * random source of the global scope (see {@link #setRandom(DoubleSupplier)}).
  */
 public final class Scope {
 
 	private final Scope parent;
 	private final HashMap<String, Variable> variables = new HashMap<>();
-	private final HashMap<String, Integer> evaluationCalls = new HashMap<>();
+
+	/** The maximum number of cached compiled expressions of a scope. */
+	static final int MAX_COMPILED = 10_000;
+
+	private final LinkedHashMap<String, Compiled> compiled =
+			new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, Compiled> eldest) {
+					return size() > MAX_COMPILED;
+				}
+			};
+
+	/** Is increased each time a binding in this scope changes. */
+	private long modCount;
+
+	/** Is increased with each evaluation call on this scope. */
+	private long epoch;
+
+	/** The source of the `rand` function; only used in the global scope. */
+	private DoubleSupplier random;
 
 	Scope() {
 		this(null);
@@ -32,6 +67,7 @@ public final class Scope {
 		var symbol = variable.toLowerCase().trim();
 		var v = new Variable(symbol, value);
 		variables.put(symbol, v);
+		modCount++;
 	}
 
 	/**
@@ -43,45 +79,103 @@ public final class Scope {
 		var symbol = variable.toLowerCase().trim();
 		var v = new Variable(symbol, expression);
 		variables.put(symbol, v);
+		modCount++;
+	}
+
+	/**
+	 * Sets the source of the random numbers of the `rand` function in this
+	 * scope and its child scopes. This is only taken into account in the
+	 * global scope; when no source is set, `Math.random()` is used.
+	 */
+	void setRandom(DoubleSupplier random) {
+		this.random = random;
+	}
+
+	/**
+	 * Returns the next random number of the `rand` function from the random
+	 * source of the global scope.
+	 */
+	public double nextRandom() {
+		if (parent != null)
+			return parent.nextRandom();
+		return random != null
+				? random.getAsDouble()
+				: Math.random();
 	}
 
 	/**
-	 * Removes all variable bindings from the scope.
+	 * Removes all variable bindings and compiled expressions from the scope.
 	 */
 	public void clear() {
 		variables.clear();
-		evaluationCalls.clear();
+		compiled.clear();
+		modCount++;
+	}
+
+	/**
+	 * Compiles the given formula into an expression tree that can be evaluated
+	 * in this scope via {@link #eval(Expression)} without parsing it again. The
+	 * compiled expressions are cached by their normalized text in this scope.
+	 */
+	public Expression compile(String formula) throws InterpreterException {
+		if (formula == null)
+			throw new InterpreterException("The formula is null");
+		try {
+			return compiled(formula).expression;
+		} catch (InterpreterException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new InterpreterException("Compilation of expression "
+					+ formula + " failed: " + e.getMessage(), e);
+		}
 	}
 
 	/**
 	 * Evaluates the given expression in this scope.
 	 */
 	public double eval(String expression) throws InterpreterException {
-		// reset the evaluation calls and values for variables
-		evaluationCalls.clear();
-		for (Variable variable : variables.values()) {
-			if (variable.expression != null) {
-				variable.value = null;
-			}
-		}
+		epoch++;
 		try {
-			return tryEval(expression);
+			return tryEval(compiled(expression).expression, expression);
 		} catch (Throwable e) {
 			throw new InterpreterException("Evaluation of expression "
 					+ expression + " failed: " + e.getMessage(), e);
 		}
 	}
 
-	private double tryEval(String expression) throws Exception {
-		var reader = new StringReader(expression.toLowerCase());
-		var parser = new FormulaParser(reader);
+	/**
+	 * Evaluates the given compiled expression (see {@link #compile(String)}) in
+	 * this scope.
+	 */
+	public double eval(Expression expression) throws InterpreterException {
+		epoch++;
+		try {
+			return tryEval(expression, "");
+		} catch (Throwable e) {
+			throw new InterpreterException("Evaluation of compiled "
+					+ "expression failed: " + e.getMessage(), e);
+		}
+	}
+
+	private Compiled compiled(String formula) throws Exception {
+		var key = formula.trim().toLowerCase();
+		var c = compiled.get(key);
+		if (c != null)
+			return c;
+		var parser = new FormulaParser(new StringReader(key));
 		parser.parse();
 		var e = parser.getExpression();
 		e.check();
+		c = new Compiled(e);
+		compiled.put(key, c);
+		return c;
+	}
+
+	private double tryEval(Expression e, String source) throws Exception {
 		var result = e.evaluate(this);
 		if (result instanceof Double)
 			return (Double) result;
-		throw new InterpreterException("The expression " + expression
+		throw new InterpreterException("The expression " + source
 				+ " does not evaluate to a number.");
 	}
 
@@ -92,7 +186,7 @@ public final class Scope {
 		var v = variables.get(symbol);
 		if (v != null) {
 			// variable is bound in this scope
-			return v.isEvaluated()
+			return isValid(v)
 					? v.value
 					: eval(v);
 		}
@@ -102,28 +196,117 @@ public final class Scope {
 				: Constants.get(name);
 	}
 
+	/**
+	 * Returns a stamp that changes when a binding in this scope or one of its
+	 * parent scopes changes.
+	 */
+	private long stamp() {
+		return parent == null
+				? modCount
+				: modCount + parent.stamp();
+	}
+
+	private boolean isValid(Variable v) {
+		if (v.expression == null)
+			return true;
+		if (v.value == null || v.stamp != stamp())
+			return false;
+		return !v.isVolatile || v.epoch == epoch;
+	}
+
 	private Object eval(Variable var) throws InterpreterException {
-		Integer call = evaluationCalls.get(var.name);
-		if (call != null && call > 0)
+		if (var.inEvaluation)
 			throw new InterpreterException(
 					"Second evaluation call on variable "
 							+ var.name + ". Cyclic dependencies?");
-		evaluationCalls.put(var.name, 1);
+		var.inEvaluation = true;
 		try {
-			var.value = tryEval(var.expression);
+			if (var.compiled == null) {
+				var.compiled = compiled(var.expression);
+			}
+			var.value = tryEval(var.compiled.expression, var.expression);
+			var.stamp = stamp();
+			var.epoch = epoch;
+			var.isVolatile = isVolatile(var.compiled);
 			return var.value;
 		} catch (Throwable e) {
+			var.value = null;
 			throw new InterpreterException("Evaluation of variable "
 					+ var.name + " failed: " + e.getMessage(), e);
+		} finally {
+			var.inEvaluation = false;
+		}
+	}
+
+	/**
+	 * Returns true if the given expression contains a random function or
+	 * depends on a variable with such a function. Called directly after the
+	 * evaluation of the expression so that the dependencies are up to date.
+	 */
+	private boolean isVolatile(Compiled c) {
+		if (c.hasRandom)
+			return true;
+		for (var dep : c.variables) {
+			var v = find(dep);
+			if (v != null && v.isVolatile)
+				return true;
 		}
+		return false;
 	}
 
-	private class Variable {
+	private Variable find(String symbol) {
+		var v = variables.get(symbol);
+		if (v != null)
+			return v;
+		return parent != null
+				? parent.find(symbol)
+				: null;
+	}
+
+	/**
+	 * A compiled expression together with the variable names it references.
+	 */
+	private static class Compiled {
+
+		final Expression expression;
+		final Set<String> variables = new HashSet<>();
+		boolean hasRandom;
+
+		Compiled(Expression expression) {
+			this.expression = expression;
+			scan(expression);
+		}
+
+		private void scan(Expression e) {
+			if (e instanceof VariableFunction) {
+				var name = ((VariableFunction) e).getVariableName();
+				if (name != null) {
+					variables.add(name.trim().toLowerCase());
+				}
+				return;
+			}
+			if ("rand".equals(e.getName())) {
+				hasRandom = true;
+			}
+			if (!(e instanceof AbstractExpression))
+				return;
+			for (var arg : ((AbstractExpression) e).arguments) {
+				scan(arg);
+			}
+		}
+	}
+
+	private static class Variable {
 
 		final String name;
 		final String expression;
 
+		private Compiled compiled;
 		private Double value;
+		private long stamp;
+		private long epoch;
+		private boolean isVolatile;
+		private boolean inEvaluation;
 
 		Variable(String name, String expression) {
 			this.name = name;
@@ -135,9 +318,5 @@ public final class Scope {
 			this.value = value;
 			this.expression = null;
 		}
-
-		public boolean isEvaluated() {
-			return value != null;
-		}
 	}
 }
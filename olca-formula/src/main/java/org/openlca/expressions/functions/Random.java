@@ -8,7 +8,7 @@ class Random extends AbstractExpression {
 
 	@Override
 	public Object evaluate(Scope context) throws ExpressionException {
-		return Math.random();
+		return context.nextRandom();
 	}
 
 	@Override
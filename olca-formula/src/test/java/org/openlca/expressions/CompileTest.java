@@ -0,0 +1,92 @@
+package org.openlca.expressions;
+
+import static org.junit.Assert.*;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class CompileTest {
+
+	@Test
+	public void testCompiledExpression() throws Exception {
+		var interpreter = new FormulaInterpreter();
+		var scope = interpreter.getGlobalScope();
+		scope.bind("a", 2);
+		var e = scope.compile("  A * 21 ");
+		assertSame(e, scope.compile("a * 21"));
+		assertEquals(42.0, scope.eval(e), 1e-16);
+		scope.bind("a", 3);
+		assertEquals(63.0, scope.eval(e), 1e-16);
+	}
+
+	@Test
+	public void testRebindInParentScope() throws Exception {
+		var interpreter = new FormulaInterpreter();
+		interpreter.bind("a", 2);
+		interpreter.bind("b", "a * 2");
+		var local = interpreter.createScope(1);
+		local.bind("c", "b + 1");
+		assertEquals(5.0, local.eval("c"), 1e-16);
+		interpreter.bind("a", 4);
+		assertEquals(9.0, local.eval("c"), 1e-16);
+		assertEquals(8.0, interpreter.eval("b"), 1e-16);
+	}
+
+	@Test
+	public void testRandomDependencies() throws Exception {
+		var interpreter = new FormulaInterpreter();
+		interpreter.bind("r", "rand()");
+		interpreter.bind("s", "r * 2");
+		boolean changed = false;
+		double last = interpreter.eval("s");
+		for (int i = 0; i < 10; i++) {
+			// the same random value within one evaluation
+			assertEquals(0, interpreter.eval("s - 2 * r"), 1e-16);
+			double next = interpreter.eval("s");
+			if (next != last) {
+				changed = true;
+			}
+			last = next;
+		}
+		assertTrue(changed);
+	}
+
+	@Test
+	public void testSeededRandom() throws Exception {
+		double[][] values = new double[2][5];
+		for (int k = 0; k < 2; k++) {
+			var interpreter = new FormulaInterpreter();
+			interpreter.setRandom(new SplittableRandom(42)::nextDouble);
+			var local = interpreter.createScope(1);
+			local.bind("r", "10 * rand()");
+			for (int i = 0; i < 5; i++) {
+				values[k][i] = local.eval("r");
+			}
+		}
+		assertArrayEquals(values[0], values[1], 0);
+	}
+
+	@Test
+	public void testBoundedCache() throws Exception {
+		var scope = new FormulaInterpreter().getGlobalScope();
+		scope.bind("a", 2);
+		scope.bind("b", "a * 21");
+		assertEquals(42.0, scope.eval("b"), 1e-16);
+		var e = scope.compile("a + 1");
+		for (int i = 0; i < Scope.MAX_COMPILED; i++) {
+			scope.compile("a + " + (i + 2));
+		}
+		// evicted from the cache but can be compiled again
+		assertNotSame(e, scope.compile("a + 1"));
+		assertEquals(3.0, scope.eval("a + 1"), 1e-16);
+		// bound variables keep their compiled expressions
+		scope.bind("a", 3);
+		assertEquals(63.0, scope.eval("b"), 1e-16);
+	}
+
+	@Test(expected = InterpreterException.class)
+	public void testCompileError() throws Exception {
+		new FormulaInterpreter().getGlobalScope().compile("2 * (3 + ");
+	}
+}
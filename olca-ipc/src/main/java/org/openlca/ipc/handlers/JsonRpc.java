@@ -91,6 +91,8 @@ class JsonRpc {
 	static <T extends Descriptor> JsonArray encode(Collection<UpstreamNode> l, UpstreamTree tree, EntityCache cache, Consumer<JsonObject> modifier) {
 		if (l == null)
 			return null;
+		// expand the nodes in parallel for the `hasChildren` flags
+		tree.expand(l);
 		return encode(l, node -> encode(node, tree.root.result, cache, json -> {
 			json.addProperty("hasChildren", !tree.childs(node).isEmpty());
 			modifier.accept(json);